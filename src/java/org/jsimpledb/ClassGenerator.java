@@ -7,6 +7,9 @@
 
 package org.jsimpledb;
 
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
 import java.io.PrintStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
@@ -33,6 +36,13 @@ import org.slf4j.LoggerFactory;
  * If the user class implements {@link JObject}, then those methods will also be overridden with concrete implementations
  * in the generated class.
  * </p>
+ *
+ * <p>
+ * Normally classes are generated at runtime, but they may also be generated ahead of time and placed on the classpath
+ * (see {@link JSimpleDB#writeGeneratedClasses JSimpleDB.writeGeneratedClasses()}). Each generated class records a
+ * fingerprint of the information it was generated from; a pre-generated class found on the classpath is only used if its
+ * fingerprint matches, otherwise the class is generated at runtime as usual.
+ * </p>
  */
 class ClassGenerator<T> {
 
@@ -46,6 +56,10 @@ class ClassGenerator<T> {
     // Names of generated fields
     static final String ID_FIELD_NAME = "$id";
     static final String SNAPSHOT_TRANSACTION_FIELD_NAME = "$snapshot";
+    static final String FINGERPRINT_FIELD_NAME = "$fingerprint";
+
+    // Bump this whenever the generated bytecode changes, so previously pre-generated classes are no longer used
+    static final int GENERATED_CODE_VERSION = 1;
 
     // JObject method handles
     static final Method JOBJECT_GET_OBJ_ID_METHOD;
@@ -125,10 +139,15 @@ class ClassGenerator<T> {
     protected final Class<T> modelClass;
     protected final ClassLoader loader;
 
-    private Class<? extends T> subclass;
-    private Class<? extends T> snapshotSubclass;
-    private Constructor<? extends T> constructor;
-    private Constructor<? extends T> snapshotConstructor;
+    // Note: the generated classes are loaded while holding this lock, so it must not be this instance's monitor,
+    // which our class loader acquires via findPregeneratedClass() while holding its own class loading lock
+    private final Object constructorLock = new Object();
+
+    private volatile Constructor<? extends T> constructor;
+    private volatile Constructor<? extends T> snapshotConstructor;
+    private String fingerprint;
+    private Class<?> pregeneratedClass;
+    private boolean pregeneratedChecked;
 
     /**
      * Constructor for application classes.
@@ -155,36 +174,50 @@ class ClassGenerator<T> {
 
     /**
      * Get generated subclass' constructor.
+     *
+     * <p>
+     * This method is thread safe; the class is generated (or loaded) only once.
      */
     public Constructor<? extends T> getConstructor() {
-        if (this.constructor == null) {
-            if (this.subclass == null)
-                this.subclass = this.generateClass();
-            try {
-                this.constructor = this.subclass.getConstructor(ObjId.class);
-            } catch (NoSuchMethodException e) {
-                throw new RuntimeException("internal error", e);
+        Constructor<? extends T> result = this.constructor;
+        if (result == null) {
+            synchronized (this.constructorLock) {
+                if ((result = this.constructor) == null) {
+                    try {
+                        result = this.generateClass().getConstructor(ObjId.class);
+                    } catch (NoSuchMethodException e) {
+                        throw new RuntimeException("internal error", e);
+                    }
+                    result.setAccessible(true);
+                    this.constructor = result;
+                }
             }
-            this.constructor.setAccessible(true);
         }
-        return this.constructor;
+        return result;
     }
 
     /**
      * Get generated snapshot subclass' constructor.
+     *
+     * <p>
+     * This method is thread safe; the class is generated (or loaded) only once.
      */
     public Constructor<? extends T> getSnapshotConstructor() {
-        if (this.snapshotConstructor == null) {
-            if (this.snapshotSubclass == null)
-                this.snapshotSubclass = this.generateSnapshotClass();
-            try {
-                this.snapshotConstructor = this.snapshotSubclass.getConstructor(ObjId.class, SnapshotJTransaction.class);
-            } catch (NoSuchMethodException e) {
-                throw new RuntimeException("internal error", e);
+        Constructor<? extends T> result = this.snapshotConstructor;
+        if (result == null) {
+            synchronized (this.constructorLock) {
+                if ((result = this.snapshotConstructor) == null) {
+                    try {
+                        result = this.generateSnapshotClass().getConstructor(ObjId.class, SnapshotJTransaction.class);
+                    } catch (NoSuchMethodException e) {
+                        throw new RuntimeException("internal error", e);
+                    }
+                    result.setAccessible(true);
+                    this.snapshotConstructor = result;
+                }
             }
-            this.snapshotConstructor.setAccessible(true);
         }
-        return this.snapshotConstructor;
+        return result;
     }
 
     /**
@@ -232,6 +265,84 @@ class ClassGenerator<T> {
         return Type.getInternalName(this.modelClass);
     }
 
+// Pre-generated classes
+
+    /**
+     * Get the fingerprint of the information from which this instance generates bytecode.
+     *
+     * <p>
+     * This covers the model class, and each field's storage ID, kind, and Java bean methods.
+     * Storage ID's depend on the configured {@link StorageIdGenerator}, so they are included explicitly.
+     * </p>
+     */
+    public synchronized String getFingerprint() {
+        if (this.fingerprint == null) {
+            final StringBuilder buf = new StringBuilder();
+            buf.append(GENERATED_CODE_VERSION).append('\n').append(this.getSuperclassName()).append('\n');
+            if (this.jclass != null) {
+                for (JField jfield : this.jclass.jfields.values()) {
+                    buf.append(jfield.getClass().getSimpleName()).append(' ').append(jfield.storageId)
+                      .append(' ').append(jfield.getter.toGenericString());
+                    if (jfield instanceof JSimpleField && ((JSimpleField)jfield).setter != null)
+                        buf.append(' ').append(((JSimpleField)jfield).setter.toGenericString());
+                    buf.append('\n');
+                }
+            }
+            this.fingerprint = Hashing.sha1().hashString(buf, Charsets.UTF_8).toString();
+        }
+        return this.fingerprint;
+    }
+
+    /**
+     * Find an up-to-date pre-generated version of this instance's class or snapshot class visible to our parent loader.
+     *
+     * <p>
+     * The snapshot class is only used if the regular class is also used, so they always come from the same loader.
+     * </p>
+     *
+     * @param name class name (with dots)
+     * @return pre-generated class, or null if there is none or it is out of date
+     */
+    synchronized Class<?> findPregeneratedClass(String name) {
+
+        // Check the regular class first
+        if (!this.pregeneratedChecked) {
+            this.pregeneratedClass = this.loadPregeneratedClass(this.getClassName().replace('/', '.'));
+            if (this.pregeneratedClass != null) {
+                try {
+                    final Object value = this.pregeneratedClass.getField(FINGERPRINT_FIELD_NAME).get(null);
+                    if (this.pregeneratedClass.getSuperclass() != this.modelClass || !this.getFingerprint().equals(value)) {
+                        this.log.warn("ignoring out-of-date pre-generated class " + this.pregeneratedClass.getName());
+                        this.pregeneratedClass = null;
+                    }
+                } catch (Exception e) {
+                    this.log.warn("ignoring invalid pre-generated class " + this.pregeneratedClass.getName() + ": " + e);
+                    this.pregeneratedClass = null;
+                }
+            }
+            if (this.pregeneratedClass != null)
+                this.log.debug("using pre-generated class " + this.pregeneratedClass.getName());
+            this.pregeneratedChecked = true;
+        }
+        if (name.equals(this.getClassName().replace('/', '.')) || this.pregeneratedClass == null)
+            return this.pregeneratedClass;
+
+        // Check the snapshot class
+        final Class<?> snapshotClass = this.loadPregeneratedClass(name);
+        return snapshotClass != null && snapshotClass.getSuperclass() == this.pregeneratedClass ? snapshotClass : null;
+    }
+
+    private Class<?> loadPregeneratedClass(String name) {
+        final ClassLoader parent = this.loader.getParent();
+        if (parent == null)
+            return null;
+        try {
+            return Class.forName(name, false, parent);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
 // Database class
 
     /**
@@ -263,6 +374,11 @@ class ClassGenerator<T> {
         final FieldVisitor idField = cw.visitField(Opcodes.ACC_PROTECTED | Opcodes.ACC_FINAL,
           ID_FIELD_NAME, Type.getDescriptor(ObjId.class), null, null);
         idField.visitEnd();
+
+        // Output "fingerprint" field
+        final FieldVisitor fingerprintField = cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL,
+          FINGERPRINT_FIELD_NAME, Type.getDescriptor(String.class), null, this.getFingerprint());
+        fingerprintField.visitEnd();
     }
 
     private void outputConstructors(ClassWriter cw) {
@@ -54,5 +54,10 @@ class ConvertedIndex<V, T, WV, WT> implements Index<V, T> {
         return new ConvertedNavigableMap<V, NavigableSet<T>, WV, NavigableSet<WT>>(this.index.asMap(),
           this.valueConverter, new NavigableSetConverter<T, WT>(this.targetConverter));
     }
+
+    @Override
+    public Index<V, T> withSnapshotReads() {
+        return new ConvertedIndex<V, T, WV, WT>(this.index.withSnapshotReads(), this.valueConverter, this.targetConverter);
+    }
 }
 
@@ -75,5 +75,11 @@ class ConvertedIndex2<V1, V2, T, WV1, WV2, WT> implements Index2<V1, V2, T> {
     public Index<V1, V2> asIndex() {
         return new ConvertedIndex<V1, V2, WV1, WV2>(this.index.asIndex(), this.value1Converter, this.value2Converter);
     }
+
+    @Override
+    public Index2<V1, V2, T> withSnapshotReads() {
+        return new ConvertedIndex2<V1, V2, T, WV1, WV2, WT>(this.index.withSnapshotReads(),
+          this.value1Converter, this.value2Converter, this.targetConverter);
+    }
 }
 
@@ -102,5 +102,11 @@ class ConvertedIndex3<V1, V2, V3, T, WV1, WV2, WV3, WT> implements Index3<V1, V2
     public Index<V1, V2> asIndex() {
         return new ConvertedIndex<V1, V2, WV1, WV2>(this.index.asIndex(), this.value1Converter, this.value2Converter);
     }
+
+    @Override
+    public Index3<V1, V2, V3, T> withSnapshotReads() {
+        return new ConvertedIndex3<V1, V2, V3, T, WV1, WV2, WV3, WT>(this.index.withSnapshotReads(),
+          this.value1Converter, this.value2Converter, this.value3Converter, this.targetConverter);
+    }
 }
 
@@ -127,5 +127,11 @@ class ConvertedIndex4<V1, V2, V3, V4, T, WV1, WV2, WV3, WV4, WT> implements Inde
     public Index<V1, V2> asIndex() {
         return new ConvertedIndex<V1, V2, WV1, WV2>(this.index.asIndex(), this.value1Converter, this.value2Converter);
     }
+
+    @Override
+    public Index4<V1, V2, V3, V4, T> withSnapshotReads() {
+        return new ConvertedIndex4<V1, V2, V3, V4, T, WV1, WV2, WV3, WV4, WT>(this.index.withSnapshotReads(),
+          this.value1Converter, this.value2Converter, this.value3Converter, this.value4Converter, this.targetConverter);
+    }
 }
 
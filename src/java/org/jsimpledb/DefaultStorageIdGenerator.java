@@ -24,6 +24,10 @@ import org.jsimpledb.core.SetField;
  * {@value #MAX_STORAGE_ID} (exclusive); this corresponds to the range of values that are encoded in three bytes.
  * This provides a target space of 65,280 possible storage IDs, so collisions should be extremely rare.
  * </p>
+ *
+ * <p>
+ * Instances are thread safe.
+ * </p>
  */
 public class DefaultStorageIdGenerator implements StorageIdGenerator {
 
@@ -75,7 +79,7 @@ public class DefaultStorageIdGenerator implements StorageIdGenerator {
         return this.getStorageId("field:" + name + "." + MapField.VALUE_FIELD_NAME);
     }
 
-    private int getStorageId(String string) {
+    private synchronized int getStorageId(String string) {
         this.sha1.reset();
         final byte[] digest = this.sha1.digest(string.getBytes(Charset.forName("UTF-8")));
         int value = 0;
@@ -17,7 +17,6 @@ import org.jsimpledb.change.ListFieldAdd;
 import org.jsimpledb.change.ListFieldClear;
 import org.jsimpledb.change.ListFieldRemove;
 import org.jsimpledb.change.ListFieldReplace;
-import org.jsimpledb.core.ObjId;
 import org.jsimpledb.core.Transaction;
 
 class JListFieldInfo extends JCollectionFieldInfo {
@@ -75,12 +74,5 @@ class JListFieldInfo extends JCollectionFieldInfo {
     private <X, Y> ListConverter<X, Y> createConverter(Converter<X, Y> elementConverter) {
         return new ListConverter<X, Y>(elementConverter);
     }
-
-    @Override
-    public void copyRecurse(CopyState copyState, JTransaction srcTx, JTransaction dstTx,
-      ObjId id, int storageId, int fieldIndex, int[] fields) {
-        assert storageId == this.getElementFieldInfo().storageId;
-        this.copyRecurse(copyState, srcTx, dstTx, srcTx.tx.readListField(id, this.storageId, false), fieldIndex, fields);
-    }
 }
 
@@ -19,7 +19,6 @@ import org.jsimpledb.change.MapFieldClear;
 import org.jsimpledb.change.MapFieldRemove;
 import org.jsimpledb.change.MapFieldReplace;
 import org.jsimpledb.core.MapField;
-import org.jsimpledb.core.ObjId;
 import org.jsimpledb.core.Transaction;
 
 class JMapFieldInfo extends JComplexFieldInfo {
@@ -115,18 +114,6 @@ class JMapFieldInfo extends JComplexFieldInfo {
         return new NavigableMapConverter<K, V, WK, WV>(keyConverter, valueConverter);
     }
 
-    @Override
-    public void copyRecurse(CopyState copyState, JTransaction srcTx, JTransaction dstTx,
-      ObjId id, int storageId, int fieldIndex, int[] fields) {
-        final NavigableMap<?, ?> map = srcTx.tx.readMapField(id, this.storageId, false);
-        if (storageId == this.getKeyFieldInfo().getStorageId())
-            this.copyRecurse(copyState, srcTx, dstTx, map.keySet(), fieldIndex, fields);
-        else if (storageId == this.getValueFieldInfo().getStorageId())
-            this.copyRecurse(copyState, srcTx, dstTx, map.values(), fieldIndex, fields);
-        else
-            throw new RuntimeException("internal error");
-    }
-
 // Object
 
     @Override
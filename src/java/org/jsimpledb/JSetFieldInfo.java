@@ -18,7 +18,6 @@ import org.jsimpledb.change.ListFieldReplace;
 import org.jsimpledb.change.SetFieldAdd;
 import org.jsimpledb.change.SetFieldClear;
 import org.jsimpledb.change.SetFieldRemove;
-import org.jsimpledb.core.ObjId;
 import org.jsimpledb.core.Transaction;
 
 class JSetFieldInfo extends JCollectionFieldInfo {
@@ -74,12 +73,5 @@ class JSetFieldInfo extends JCollectionFieldInfo {
     private <X, Y> NavigableSetConverter<X, Y> createConverter(Converter<X, Y> elementConverter) {
         return new NavigableSetConverter<X, Y>(elementConverter);
     }
-
-    @Override
-    public void copyRecurse(CopyState copyState, JTransaction srcTx, JTransaction dstTx,
-      ObjId id, int storageId, int fieldIndex, int[] fields) {
-        assert storageId == this.getElementFieldInfo().storageId;
-        this.copyRecurse(copyState, srcTx, dstTx, srcTx.tx.readSetField(id, this.storageId, false), fieldIndex, fields);
-    }
 }
 
@@ -9,6 +9,9 @@ package org.jsimpledb;
 
 import com.google.common.collect.Iterables;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
 import java.util.ArrayList;
@@ -20,6 +23,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.jsimpledb.annotation.JSimpleClass;
 import org.jsimpledb.core.Database;
@@ -73,6 +81,13 @@ import org.slf4j.LoggerFactory;
  * {@link SnapshotJTransaction}. See {@link JObject#copyOut JObject.copyOut} and {@link JObject#copyIn JObject.copyIn}.
  * </p>
  *
+ * <p>
+ * The concrete subclasses of the Java model classes are normally generated at runtime. To reduce startup time, they may
+ * instead be generated at build time via {@link #writeGeneratedClasses writeGeneratedClasses()} (or the
+ * {@link org.jsimpledb.ant.SchemaGeneratorTask} ant task) and placed on the classpath next to the model classes;
+ * pre-generated classes are used only when they are up-to-date with respect to the model classes and storage ID's.
+ * </p>
+ *
  * @see JObject
  * @see JTransaction
  * @see JSimpleDBFactory
@@ -80,6 +95,9 @@ import org.slf4j.LoggerFactory;
  */
 public class JSimpleDB {
 
+    // Minimum number of Java model classes for which per-class initialization is done using multiple threads
+    static final int PARALLEL_STARTUP_THRESHOLD = 8;
+
     final Logger log = LoggerFactory.getLogger(this.getClass());
 
     final TreeMap<Integer, JClass<?>> jclasses = new TreeMap<>();
@@ -166,6 +184,8 @@ public class JSimpleDB {
         this.db = database;
         this.configuredVersion = version;
         this.storageIdGenerator = storageIdGenerator;
+        final long startTime = System.nanoTime();
+        long phaseStartTime = startTime;
 
         // Inventory classes; automatically add all @JSimpleClass-annotated superclasses of @JSimpleClass-annotated classes
         final HashSet<Class<?>> jsimpleClasses = new HashSet<>();
@@ -223,117 +243,151 @@ public class JSimpleDB {
             this.addJClass(jclass);
             this.log.debug("added Java model class `" + jclass.name + "' with storage ID " + jclass.storageId);
         }
+        phaseStartTime = this.logStartupPhase("create object types", phaseStartTime);
 
-        // Inventory class generators
-        this.classGenerators = new ArrayList<>(this.jclasses.size() + 1);
-        for (JClass<?> jclass : this.jclasses.values())
-            this.classGenerators.add(jclass.classGenerator);
-        this.untypedClassGenerator = new ClassGenerator<UntypedJObject>(this, UntypedJObject.class);
-        this.classGenerators.add(this.untypedClassGenerator);
+        // Use multiple threads for the per-class work if there are enough classes
+        final ForkJoinPool pool = this.jclasses.size() >= PARALLEL_STARTUP_THRESHOLD ?
+          new ForkJoinPool(Math.min(Runtime.getRuntime().availableProcessors(), this.jclasses.size())) : null;
+        try {
 
-        // Create fields
-        for (JClass<?> jclass : this.jclasses.values())
-            jclass.createFields(this);
+            // Inventory class generators
+            this.classGenerators = new ArrayList<>(this.jclasses.size() + 1);
+            for (JClass<?> jclass : this.jclasses.values())
+                this.classGenerators.add(jclass.classGenerator);
+            this.untypedClassGenerator = new ClassGenerator<UntypedJObject>(this, UntypedJObject.class);
+            this.classGenerators.add(this.untypedClassGenerator);
+
+            // Create fields; custom storage ID generators may depend on invocation order, so only parallelize the default
+            final boolean parallelFields = storageIdGenerator == null
+              || storageIdGenerator.getClass() == DefaultStorageIdGenerator.class;
+            this.forEachJClass(parallelFields ? pool : null, new JClassTask() {
+                @Override
+                public void run(JClass<?> jclass) {
+                    jclass.createFields(JSimpleDB.this);
+                }
+            });
+            phaseStartTime = this.logStartupPhase("create fields", phaseStartTime);
 
-        // Create canonical field info structures
-        final HashMap<Integer, String> fieldDescriptionMap = new HashMap<>();
-        for (JClass<?> jclass : this.jclasses.values()) {
-            for (JField jfield : jclass.jfields.values()) {
-                if (jfield instanceof JComplexField) {
-                    final JComplexField complexField = (JComplexField)jfield;
-                    final JComplexFieldInfo complexFieldInfo = (JComplexFieldInfo)jfield.toJFieldInfo();
-                    for (JSimpleField subField : complexField.getSubFields()) {
-                        this.addJFieldInfo(subField, subField.toJFieldInfo(jfield.storageId), fieldDescriptionMap);
-                        final JSimpleFieldInfo subFieldInfo = (JSimpleFieldInfo)this.jfieldInfos.get(subField.storageId);
-                        complexFieldInfo.getSubFieldInfos().add(subFieldInfo);
-                    }
-                    this.addJFieldInfo(complexField, complexFieldInfo, fieldDescriptionMap);
-                } else
-                    this.addJFieldInfo(jfield, jfield.toJFieldInfo(), fieldDescriptionMap);
+            // Create canonical field info structures
+            final HashMap<Integer, String> fieldDescriptionMap = new HashMap<>();
+            for (JClass<?> jclass : this.jclasses.values()) {
+                for (JField jfield : jclass.jfields.values()) {
+                    if (jfield instanceof JComplexField) {
+                        final JComplexField complexField = (JComplexField)jfield;
+                        final JComplexFieldInfo complexFieldInfo = (JComplexFieldInfo)jfield.toJFieldInfo();
+                        for (JSimpleField subField : complexField.getSubFields()) {
+                            this.addJFieldInfo(subField, subField.toJFieldInfo(jfield.storageId), fieldDescriptionMap);
+                            final JSimpleFieldInfo subFieldInfo = (JSimpleFieldInfo)this.jfieldInfos.get(subField.storageId);
+                            complexFieldInfo.getSubFieldInfos().add(subFieldInfo);
+                        }
+                        this.addJFieldInfo(complexField, complexFieldInfo, fieldDescriptionMap);
+                    } else
+                        this.addJFieldInfo(jfield, jfield.toJFieldInfo(), fieldDescriptionMap);
+                }
             }
-        }
 
-        // Witness all simple fields to corresponding simple field info's
-        for (JClass<?> jclass : this.jclasses.values()) {
-            for (JField jfield : jclass.jfields.values()) {
-                if (jfield instanceof JSimpleField) {
-                    final JSimpleField jsimpleField = (JSimpleField)jfield;
-                    final JSimpleFieldInfo jsimpleFieldInfo = (JSimpleFieldInfo)this.jfieldInfos.get(jfield.storageId);
-                    jsimpleFieldInfo.witness(jsimpleField);
-                }
-                if (jfield instanceof JComplexField) {
-                    final JComplexField complexField = (JComplexField)jfield;
-                    final JComplexFieldInfo complexFieldInfo = (JComplexFieldInfo)this.jfieldInfos.get(jfield.storageId);
-                    for (int i = 0; i < complexField.getSubFields().size(); i++) {
-                        final JSimpleField subField = complexField.getSubFields().get(i);
-                        final JSimpleFieldInfo subFieldInfo = (JSimpleFieldInfo)this.jfieldInfos.get(subField.storageId);
-                        subFieldInfo.witness(subField);
+            // Witness all simple fields to corresponding simple field info's
+            for (JClass<?> jclass : this.jclasses.values()) {
+                for (JField jfield : jclass.jfields.values()) {
+                    if (jfield instanceof JSimpleField) {
+                        final JSimpleField jsimpleField = (JSimpleField)jfield;
+                        final JSimpleFieldInfo jsimpleFieldInfo = (JSimpleFieldInfo)this.jfieldInfos.get(jfield.storageId);
+                        jsimpleFieldInfo.witness(jsimpleField);
+                    }
+                    if (jfield instanceof JComplexField) {
+                        final JComplexField complexField = (JComplexField)jfield;
+                        final JComplexFieldInfo complexFieldInfo = (JComplexFieldInfo)this.jfieldInfos.get(jfield.storageId);
+                        for (int i = 0; i < complexField.getSubFields().size(); i++) {
+                            final JSimpleField subField = complexField.getSubFields().get(i);
+                            final JSimpleFieldInfo subFieldInfo = (JSimpleFieldInfo)this.jfieldInfos.get(subField.storageId);
+                            subFieldInfo.witness(subField);
+                        }
                     }
                 }
             }
-        }
 
-        // Add composite indexes to class; like fields, indexes are inherited (duplicated) from superclasses
-        for (JClass<?> jclass : this.jclasses.values()) {
-            for (Class<?> type = jclass.type; type != null; type = type.getSuperclass()) {
-                final JSimpleClass annotation = type.getAnnotation(JSimpleClass.class);
-                if (annotation != null) {
-                    for (org.jsimpledb.annotation.JCompositeIndex indexAnnotation : annotation.compositeIndexes())
-                        jclass.addCompositeIndex(this, indexAnnotation);
+            // Add composite indexes to class; like fields, indexes are inherited (duplicated) from superclasses
+            for (JClass<?> jclass : this.jclasses.values()) {
+                for (Class<?> type = jclass.type; type != null; type = type.getSuperclass()) {
+                    final JSimpleClass annotation = type.getAnnotation(JSimpleClass.class);
+                    if (annotation != null) {
+                        for (org.jsimpledb.annotation.JCompositeIndex indexAnnotation : annotation.compositeIndexes())
+                            jclass.addCompositeIndex(this, indexAnnotation);
+                    }
                 }
             }
-        }
 
-        // Create canonical info instances for indexes
-        final HashMap<Integer, String> indexDescriptionMap = new HashMap<>();
-        for (JClass<?> jclass : this.jclasses.values()) {
-            for (JCompositeIndex index : jclass.jcompositeIndexes.values()) {
-                final JCompositeIndexInfo indexInfo = index.toJCompositeIndexInfo();
-                for (JSimpleField jfield : index.jfields) {
-                    final JSimpleFieldInfo jfieldInfo = (JSimpleFieldInfo)this.jfieldInfos.get(jfield.storageId);
-                    indexInfo.getJFieldInfos().add(jfieldInfo);
+            // Create canonical info instances for indexes
+            final HashMap<Integer, String> indexDescriptionMap = new HashMap<>();
+            for (JClass<?> jclass : this.jclasses.values()) {
+                for (JCompositeIndex index : jclass.jcompositeIndexes.values()) {
+                    final JCompositeIndexInfo indexInfo = index.toJCompositeIndexInfo();
+                    for (JSimpleField jfield : index.jfields) {
+                        final JSimpleFieldInfo jfieldInfo = (JSimpleFieldInfo)this.jfieldInfos.get(jfield.storageId);
+                        indexInfo.getJFieldInfos().add(jfieldInfo);
+                    }
+                    this.addJCompositeIndexInfo(index, indexInfo, indexDescriptionMap);
                 }
-                this.addJCompositeIndexInfo(index, indexInfo, indexDescriptionMap);
             }
-        }
 
-        // Scan for other method-level annotations
-        for (JClass<?> jclass : this.jclasses.values())
-            jclass.scanAnnotations();
+            phaseStartTime = this.logStartupPhase("create composite indexes", phaseStartTime);
 
-        // Determine which JClass's have validation requirement(s) on creation
-        for (JClass<?> jclass : this.jclasses.values())
-            jclass.calculateValidationRequirement();
-        boolean anyValidation = false;
-        for (JClass<?> jclass : this.jclasses.values()) {
-            if ((anyValidation |= jclass.requiresValidation))
-                break;
-        }
-        this.anyJClassRequiresValidation = anyValidation;
+            // Scan for other method-level annotations and determine which JClass's have validation requirement(s) on creation
+            this.forEachJClass(pool, new JClassTask() {
+                @Override
+                public void run(JClass<?> jclass) {
+                    jclass.scanAnnotations();
+                    jclass.calculateValidationRequirement();
+                }
+            });
+            phaseStartTime = this.logStartupPhase("scan method annotations", phaseStartTime);
 
-        // Detect whether we have any @OnCreate, @OnDelete, and/or @OnVersionChange methods
-        boolean anyOnCreateMethods = false;
-        boolean anyOnDeleteMethods = false;
-        boolean anyOnVersionChangeMethods = false;
-        for (JClass<?> jclass : this.jclasses.values()) {
-            anyOnCreateMethods |= !jclass.onCreateMethods.isEmpty();
-            anyOnDeleteMethods |= !jclass.onDeleteMethods.isEmpty();
-            anyOnVersionChangeMethods |= !jclass.onVersionChangeMethods.isEmpty();
-        }
-        this.hasOnCreateMethods = anyOnCreateMethods;
-        this.hasOnDeleteMethods = anyOnDeleteMethods;
-        this.hasOnVersionChangeMethods = anyOnVersionChangeMethods;
+            // Determine whether any JClass requires validation
+            boolean anyValidation = false;
+            for (JClass<?> jclass : this.jclasses.values()) {
+                if ((anyValidation |= jclass.requiresValidation))
+                    break;
+            }
+            this.anyJClassRequiresValidation = anyValidation;
 
-        // Validate schema
-        this.db.validateSchema(this.getSchemaModel());
+            // Detect whether we have any @OnCreate, @OnDelete, and/or @OnVersionChange methods
+            boolean anyOnCreateMethods = false;
+            boolean anyOnDeleteMethods = false;
+            boolean anyOnVersionChangeMethods = false;
+            for (JClass<?> jclass : this.jclasses.values()) {
+                anyOnCreateMethods |= !jclass.onCreateMethods.isEmpty();
+                anyOnDeleteMethods |= !jclass.onDeleteMethods.isEmpty();
+                anyOnVersionChangeMethods |= !jclass.onVersionChangeMethods.isEmpty();
+            }
+            this.hasOnCreateMethods = anyOnCreateMethods;
+            this.hasOnDeleteMethods = anyOnDeleteMethods;
+            this.hasOnVersionChangeMethods = anyOnVersionChangeMethods;
+
+            // Validate schema
+            this.db.validateSchema(this.getSchemaModel());
+            phaseStartTime = this.logStartupPhase("validate schema", phaseStartTime);
+
+            // Eagerly load all generated Java classes so we "fail fast" if there are any loading errors
+            this.untypedClassGenerator.getConstructor();
+            this.untypedClassGenerator.getSnapshotConstructor();
+            this.forEachJClass(pool, new JClassTask() {
+                @Override
+                public void run(JClass<?> jclass) {
+                    jclass.getClassGenerator().getConstructor();
+                    jclass.getClassGenerator().getSnapshotConstructor();
+                }
+            });
+            this.logStartupPhase("load generated classes", phaseStartTime);
+        } finally {
+            if (pool != null)
+                pool.shutdown();
+        }
 
-        // Eagerly load all generated Java classes so we "fail fast" if there are any loading errors
-        this.untypedClassGenerator.generateClass();
-        this.untypedClassGenerator.generateSnapshotClass();
-        for (JClass<?> jclass : this.jclasses.values()) {
-            final ClassGenerator<?> classGenerator = jclass.getClassGenerator();
-            classGenerator.generateClass();
-            classGenerator.generateSnapshotClass();
+        // Done
+        if (this.log.isDebugEnabled()) {
+            this.log.debug("initialized " + this.jclasses.size() + " Java model classes in "
+              + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + "ms"
+              + (pool != null ? " using " + pool.getParallelism() + " threads" : ""));
         }
     }
 
@@ -342,6 +396,48 @@ public class JSimpleDB {
         return new JClass<T>(this, name, storageId, type);
     }
 
+    // Run task on each JClass, in parallel if a pool is given; the first exception (in storage ID order) is rethrown
+    private void forEachJClass(ForkJoinPool pool, final JClassTask task) {
+        if (pool == null) {
+            for (JClass<?> jclass : this.jclasses.values())
+                task.run(jclass);
+            return;
+        }
+        final ArrayList<Callable<Void>> callables = new ArrayList<>(this.jclasses.size());
+        for (final JClass<?> jclass : this.jclasses.values()) {
+            callables.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    task.run(jclass);
+                    return null;
+                }
+            });
+        }
+        for (Future<Void> future : pool.invokeAll(callables)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JSimpleDBException("interrupted during initialization", e);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException)cause;
+                if (cause instanceof Error)
+                    throw (Error)cause;
+                throw new JSimpleDBException("unexpected exception during initialization", cause);
+            }
+        }
+    }
+
+    // Log how long a startup phase took
+    private long logStartupPhase(String phase, long phaseStartTime) {
+        final long now = System.nanoTime();
+        if (this.log.isDebugEnabled())
+            this.log.debug(phase + " took " + TimeUnit.NANOSECONDS.toMillis(now - phaseStartTime) + "ms");
+        return now;
+    }
+
     StorageIdGenerator getStorageIdGenerator(Annotation annotation, AnnotatedElement target) {
         if (this.storageIdGenerator == null) {
             throw new IllegalArgumentException("invalid @" + annotation.annotationType().getSimpleName()
@@ -415,6 +511,44 @@ public class JSimpleDB {
         return null;
     }
 
+    /**
+     * Write the Java classes generated for this instance's Java model classes into the given directory,
+     * using the usual classpath layout.
+     *
+     * <p>
+     * If that directory is then included in the classpath, subsequently created {@link JSimpleDB} instances with the same
+     * Java model classes and storage ID's will load these classes instead of generating them at runtime. This is typically
+     * done at build time using the {@code classesDir} attribute of {@link org.jsimpledb.ant.SchemaGeneratorTask}.
+     * Classes that are out of date (for example, because a model class has changed) are detected and ignored.
+     * </p>
+     *
+     * @param dir root directory, typically the directory containing the compiled model classes
+     * @return the files written
+     * @throws IllegalArgumentException if {@code dir} is null
+     * @throws IOException if an I/O error occurs
+     */
+    public List<File> writeGeneratedClasses(File dir) throws IOException {
+        if (dir == null)
+            throw new IllegalArgumentException("null dir");
+        final ArrayList<File> files = new ArrayList<>(this.jclasses.size() * 2);
+        for (JClass<?> jclass : this.jclasses.values()) {
+            final ClassGenerator<?> generator = jclass.getClassGenerator();
+            files.add(this.writeClassFile(dir, generator.getClassName(), generator.generateBytecode()));
+            files.add(this.writeClassFile(dir, generator.getSnapshotClassName(), generator.generateSnapshotBytecode()));
+        }
+        return files;
+    }
+
+    private File writeClassFile(File dir, String internalName, byte[] bytecode) throws IOException {
+        final File file = new File(dir, internalName.replace('/', File.separatorChar) + ".class");
+        if (!file.getParentFile().exists() && !file.getParentFile().mkdirs())
+            throw new IOException("error creating directory `" + file.getParentFile() + "'");
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(bytecode);
+        }
+        return file;
+    }
+
 // Transactions
 
     /**
@@ -786,6 +920,29 @@ public class JSimpleDB {
             super(Thread.currentThread().getContextClassLoader());
         }
 
+        // Use an up-to-date pre-generated class, if any, otherwise generate; don't let the parent load stale generated classes
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            ClassGenerator<?> generator = null;
+            for (ClassGenerator<?> classGenerator : JSimpleDB.this.classGenerators) {
+                if (name.equals(classGenerator.getClassName().replace('/', '.'))
+                  || name.equals(classGenerator.getSnapshotClassName().replace('/', '.'))) {
+                    generator = classGenerator;
+                    break;
+                }
+            }
+            if (generator == null)
+                return super.loadClass(name, resolve);
+            synchronized (this.getClassLoadingLock(name)) {
+                Class<?> cl = this.findLoadedClass(name);
+                if (cl == null && (cl = generator.findPregeneratedClass(name)) == null)
+                    cl = this.findClass(name);
+                if (resolve)
+                    this.resolveClass(cl);
+                return cl;
+            }
+        }
+
         // Find matching ClassGenerator, if any, otherwise defer to parent
         @Override
         protected Class<?> findClass(String name) throws ClassNotFoundException {
@@ -804,6 +961,12 @@ public class JSimpleDB {
         }
     }
 
+// JClassTask
+
+    private interface JClassTask {
+        void run(JClass<?> jclass);
+    }
+
 // CleanupCurrentCallback
 
     private static final class CleanupCurrentCallback extends Transaction.CallbackAdapter {
@@ -17,6 +17,8 @@ import com.google.common.collect.Maps;
 import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -135,6 +137,13 @@ import org.slf4j.LoggerFactory;
  * </ul>
  *
  * <p>
+ * <b>Large Values</b>
+ * <ul>
+ *  <li>{@link #readLargeValue readLargeValue()} - Read a large value stored in chunks in a {@code byte[]} list field</li>
+ *  <li>{@link #writeLargeValue writeLargeValue()} - Write a large value in chunks to a {@code byte[]} list field</li>
+ * </ul>
+ *
+ * <p>
  * <b>Snapshot Transactions</b>
  * <ul>
  *  <li>{@link #getSnapshotTransaction getSnapshotTransaction()} - Get the default in-memory transaction
@@ -396,6 +405,56 @@ public class JTransaction {
      * @throws IllegalArgumentException if either parameter is null
      */
     public byte[] getKey(JObject jobj, String fieldName) {
+        return this.tx.getKey(jobj.getObjId(), this.getFieldStorageId(jobj, fieldName));
+    }
+
+// Large Values
+
+    /**
+     * Read a large value stored in chunks in the specified list field, which must have {@code byte[]} elements.
+     *
+     * <p>
+     * The returned stream reads chunks on demand, so only the chunks actually needed are read. The stream must only
+     * be used while this transaction is open. See {@link org.jsimpledb.core.LargeValues} for details.
+     * </p>
+     *
+     * @param jobj Java model object
+     * @param fieldName the name of a non-indexed list field with {@code byte[]} elements in {@code jobj}'s type
+     * @return large value content
+     * @throws StaleTransactionException if this transaction is no longer usable
+     * @throws DeletedObjectException if {@code jobj} does not exist in this transaction
+     * @throws UnknownFieldException if the field is not a non-indexed list field with {@code byte[]} elements
+     * @throws IllegalArgumentException if {@code jobj} does not contain the specified field
+     * @throws IllegalArgumentException if the field does not contain a valid large value
+     * @throws IllegalArgumentException if either parameter is null
+     * @see Transaction#readLargeValue Transaction.readLargeValue()
+     */
+    public InputStream readLargeValue(JObject jobj, String fieldName) {
+        return this.tx.readLargeValue(jobj.getObjId(), this.getFieldStorageId(jobj, fieldName), true);
+    }
+
+    /**
+     * Write a large value in chunks to the specified list field, which must have {@code byte[]} elements,
+     * replacing its previous content. The {@code input} is read to EOF but not closed.
+     *
+     * @param jobj Java model object
+     * @param fieldName the name of a non-indexed list field with {@code byte[]} elements in {@code jobj}'s type
+     * @param input large value content
+     * @param compress true to compress each chunk
+     * @return the length of the value
+     * @throws IOException if an error occurs reading {@code input}
+     * @throws StaleTransactionException if this transaction is no longer usable
+     * @throws DeletedObjectException if {@code jobj} does not exist in this transaction
+     * @throws UnknownFieldException if the field is not a non-indexed list field with {@code byte[]} elements
+     * @throws IllegalArgumentException if {@code jobj} does not contain the specified field
+     * @throws IllegalArgumentException if any parameter is null
+     * @see Transaction#writeLargeValue Transaction.writeLargeValue()
+     */
+    public long writeLargeValue(JObject jobj, String fieldName, InputStream input, boolean compress) throws IOException {
+        return this.tx.writeLargeValue(jobj.getObjId(), this.getFieldStorageId(jobj, fieldName), input, compress, true);
+    }
+
+    private int getFieldStorageId(JObject jobj, String fieldName) {
         if (jobj == null)
             throw new IllegalArgumentException("null jobj");
         final Class<?> type = this.jdb.getJClass(jobj.getObjId()).type;
@@ -404,7 +463,7 @@ public class JTransaction {
             throw new IllegalArgumentException("invalid field name `" + fieldName + "'");
         if (!refPath.targetType.isInstance(jobj))
             throw new IllegalArgumentException("jobj is not an instance of " + refPath.targetType); // should never happen
-        return this.tx.getKey(jobj.getObjId(), refPath.targetFieldInfo.storageId);
+        return refPath.targetFieldInfo.storageId;
     }
 
 // Snapshots
@@ -634,6 +693,31 @@ public class JTransaction {
     void copyTo(CopyState copyState, JTransaction dest, ObjId srcId, ObjId dstId, boolean required, int fieldIndex, int[] fields) {
 
         // Copy current instance unless already copied, upgrading it in the process
+        this.copyObject(copyState, dest, srcId, dstId, required);
+
+        // Traverse the remaining reference fields in the path one level at a time; at each level, all of the references
+        // are read as one batch, so round trips are proportional to the path length instead of the number of objects
+        Iterable<ObjId> ids = Collections.singleton(srcId);
+        while (fieldIndex < fields.length) {
+
+            // Omit objects from which we have already traversed the remainder of the path
+            final int[] pathSuffix = fieldIndex == 0 ? fields : Arrays.copyOfRange(fields, fieldIndex, fields.length);
+            final ArrayList<ObjId> untraversed = new ArrayList<>();
+            for (ObjId id : ids) {
+                if (copyState.markTraversed(id, pathSuffix))
+                    untraversed.add(id);
+            }
+            if (untraversed.isEmpty())
+                return;
+
+            // Follow the next reference field in the path and copy the objects found
+            ids = this.tx.followReferencePath(new int[] { fields[fieldIndex++] }, untraversed);
+            for (ObjId id : ids)
+                this.copyObject(copyState, dest, id, id, false);
+        }
+    }
+
+    private void copyObject(CopyState copyState, JTransaction dest, ObjId srcId, ObjId dstId, boolean required) {
         if (copyState.markCopied(dstId)) {
             try {
                 this.tx.copy(srcId, dstId, dest.tx, true);
@@ -642,29 +726,6 @@ public class JTransaction {
                     throw e;
             }
         }
-
-        // Any more fields to traverse?
-        if (fieldIndex == fields.length)
-            return;
-
-        // Have we already traversed the path?
-        final int[] pathSuffix = fieldIndex == 0 ? fields : Arrays.copyOfRange(fields, fieldIndex, fields.length);
-        if (!copyState.markTraversed(srcId, pathSuffix))
-            return;
-
-        // Recurse through the next reference field in the path
-        final int storageId = fields[fieldIndex++];
-        final JReferenceFieldInfo referenceFieldInfo = this.jdb.getJFieldInfo(storageId, JReferenceFieldInfo.class);
-        final int parentStorageId = referenceFieldInfo.getParentStorageId();
-        if (parentStorageId != 0) {
-            final JComplexFieldInfo parentInfo = this.jdb.getJFieldInfo(parentStorageId, JComplexFieldInfo.class);
-            parentInfo.copyRecurse(copyState, this, dest, srcId, storageId, fieldIndex, fields);
-        } else {
-            assert referenceFieldInfo instanceof JReferenceFieldInfo;
-            final ObjId referrent = (ObjId)this.tx.readSimpleField(srcId, storageId, false);
-            if (referrent != null)
-                this.copyTo(copyState, dest, referrent, referrent, false, fieldIndex, fields);
-        }
     }
 
 // Object/Field Access
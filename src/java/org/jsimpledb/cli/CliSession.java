@@ -18,9 +18,12 @@ import org.jsimpledb.cli.cmd.AbstractCommand;
 import org.jsimpledb.cli.cmd.CompareSchemasCommand;
 import org.jsimpledb.cli.cmd.DeleteSchemaVersionCommand;
 import org.jsimpledb.cli.cmd.EvalCommand;
+import org.jsimpledb.cli.cmd.ExplainCommand;
 import org.jsimpledb.cli.cmd.HelpCommand;
 import org.jsimpledb.cli.cmd.ImportCommand;
 import org.jsimpledb.cli.cmd.InfoCommand;
+import org.jsimpledb.cli.cmd.KVLoadCommand;
+import org.jsimpledb.cli.cmd.KVSaveCommand;
 import org.jsimpledb.cli.cmd.LoadCommand;
 import org.jsimpledb.cli.cmd.QuitCommand;
 import org.jsimpledb.cli.cmd.SaveCommand;
@@ -142,9 +145,12 @@ public class CliSession extends ParseSession {
         this.registerCommand(CompareSchemasCommand.class);
         this.registerCommand(DeleteSchemaVersionCommand.class);
         this.registerCommand(EvalCommand.class);
+        this.registerCommand(ExplainCommand.class);
         this.registerCommand(HelpCommand.class);
         this.registerCommand(ImportCommand.class);
         this.registerCommand(InfoCommand.class);
+        this.registerCommand(KVLoadCommand.class);
+        this.registerCommand(KVSaveCommand.class);
         this.registerCommand(LoadCommand.class);
         this.registerCommand(QuitCommand.class);
         this.registerCommand(SaveCommand.class);
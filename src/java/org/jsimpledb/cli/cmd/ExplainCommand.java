@@ -0,0 +1,56 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.cli.cmd;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+import org.jsimpledb.cli.CliSession;
+import org.jsimpledb.parse.ParseContext;
+import org.jsimpledb.parse.QueryPlanner;
+import org.jsimpledb.parse.expr.Node;
+
+@Command
+public class ExplainCommand extends AbstractCommand {
+
+    public ExplainCommand() {
+        super("explain expr:expr");
+    }
+
+    @Override
+    public String getHelpSummary() {
+        return "shows how filter(), min(), and max() operations in a Java expression would be evaluated";
+    }
+
+    @Override
+    public String getHelpDetail() {
+        return "Prints, for each filter() operation in the expression, whether an index will be used to find the matching objects"
+          + " or every item will be checked, and for each min() or max() operation, whether the result will be read directly"
+          + " from an index. The expression itself is not evaluated.";
+    }
+
+    @Override
+    public CliSession.Action getAction(CliSession session, ParseContext ctx, boolean complete, Map<String, Object> params) {
+        final Node expr = (Node)params.get("expr");
+        return new CliSession.Action() {
+            @Override
+            public void run(CliSession session) throws Exception {
+                final PrintWriter writer = session.getWriter();
+                final List<String> plans = QueryPlanner.explain(session, expr);
+                if (plans.isEmpty()) {
+                    writer.println("No filter(), min(), or max() operations found");
+                    return;
+                }
+                for (String plan : plans)
+                    writer.println(plan);
+            }
+        };
+    }
+}
+
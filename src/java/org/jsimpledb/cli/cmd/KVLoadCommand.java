@@ -0,0 +1,112 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.cli.cmd;
+
+import com.google.common.collect.Lists;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+import org.jsimpledb.cli.CliSession;
+import org.jsimpledb.kv.util.BinarySerializer;
+import org.jsimpledb.parse.ParseContext;
+import org.jsimpledb.parse.ParseException;
+import org.jsimpledb.parse.ParseSession;
+import org.jsimpledb.parse.Parser;
+import org.jsimpledb.parse.util.ParseCastFunction;
+import org.jsimpledb.parse.util.StripPrefixFunction;
+
+import jline.console.completer.FileNameCompleter;
+
+@Command
+public class KVLoadCommand extends AbstractCommand {
+
+    public KVLoadCommand() {
+        super("kv-load file.dump:file+");
+    }
+
+    @Override
+    public String getHelpSummary() {
+        return "Imports raw key/value pairs from binary file(s) created previously via `kv-save'";
+    }
+
+    @Override
+    public String getHelpDetail() {
+        return "Reads key/value pairs from the specified file(s), which must have been created by `kv-save', and writes them"
+          + " directly into the underlying key/value store, overwriting any existing values. To restore a partitioned dump,"
+          + " specify all of the partition files. Each file's block checksums are verified as it is read.";
+    }
+
+    @Override
+    protected Parser<?> getParser(String typeName) {
+        return "file".equals(typeName) ? new FileParser() : super.getParser(typeName);
+    }
+
+    @Override
+    public CliSession.Action getAction(CliSession session, ParseContext ctx, boolean complete, Map<String, Object> params) {
+        final List<?> files = (List<?>)params.get("file.dump");
+
+        // Return import action
+        return new CliSession.Action() {
+            @Override
+            public void run(CliSession session) throws Exception {
+                final BinarySerializer serializer = new BinarySerializer(session.getTransaction().getKVTransaction());
+                for (Object obj : files) {
+                    final File file = (File)obj;
+                    final BufferedInputStream input = new BufferedInputStream(new FileInputStream(file));
+                    final long count;
+                    try {
+                        count = serializer.read(input);
+                    } finally {
+                        try {
+                            input.close();
+                        } catch (IOException e) {
+                            // ignore
+                        }
+                    }
+                    session.getWriter().println("Read " + count + " key/value pairs from `" + file + "'");
+                }
+            }
+        };
+    }
+
+// FileParser
+
+    private class FileParser implements Parser<File> {
+
+        @Override
+        public File parse(ParseSession session, ParseContext ctx, boolean complete) {
+
+            // Get filename
+            final Matcher matcher = ctx.tryPattern("[^\\s;]*");
+            if (matcher == null)
+                throw new ParseException(ctx);
+            final String path = matcher.group();
+
+            // Check file
+            final File file = new File(path);
+            if (!file.exists() || file.isDirectory() || !file.canRead()) {
+                final ArrayList<CharSequence> list = new ArrayList<>();
+                final int index = new FileNameCompleter().complete(path, path.length(), list);
+                throw new ParseException(ctx, "can't read file `" + file + "'").addCompletions(
+                  Lists.transform(Lists.transform(list, new ParseCastFunction<String>(String.class)),
+                    new StripPrefixFunction(path.substring(index))));
+            }
+
+            // Done
+            return file;
+        }
+    }
+}
+
@@ -0,0 +1,171 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.cli.cmd;
+
+import com.google.common.collect.Lists;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+
+import org.dellroad.stuff.io.AtomicUpdateFileOutputStream;
+import org.jsimpledb.cli.CliSession;
+import org.jsimpledb.kv.KVStore;
+import org.jsimpledb.kv.KeyRange;
+import org.jsimpledb.kv.util.BinarySerializer;
+import org.jsimpledb.parse.ParseContext;
+import org.jsimpledb.parse.ParseException;
+import org.jsimpledb.parse.ParseSession;
+import org.jsimpledb.parse.Parser;
+import org.jsimpledb.parse.util.ParseCastFunction;
+import org.jsimpledb.parse.util.StripPrefixFunction;
+
+import jline.console.completer.FileNameCompleter;
+
+@Command
+public class KVSaveCommand extends AbstractCommand {
+
+    public KVSaveCommand() {
+        super("kv-save -z:compress -p:partitions:int file.dump:file");
+    }
+
+    @Override
+    public String getHelpSummary() {
+        return "exports the raw key/value store contents to a binary file";
+    }
+
+    @Override
+    public String getHelpDetail() {
+        return "Writes every key/value pair in the underlying key/value store to the specified file using a compact binary"
+          + " format. The `-z' flag compresses the output. The `-p' flag splits the key space into at most the given number"
+          + " of partitions, which are written concurrently to files named by appending `.0', `.1', etc. to the file name;"
+          + " this requires a key/value store that supports concurrent reads. The file(s) can be read back in via `kv-load'.";
+    }
+
+    @Override
+    protected Parser<?> getParser(String typeName) {
+        return "file".equals(typeName) ? new FileParser() : super.getParser(typeName);
+    }
+
+    @Override
+    public CliSession.Action getAction(CliSession session, ParseContext ctx, boolean complete, Map<String, Object> params) {
+
+        // Parse parameters
+        final boolean compress = params.containsKey("compress");
+        final int maxPartitions = params.containsKey("partitions") ? (Integer)params.get("partitions") : 1;
+        final File file = (File)params.get("file.dump");
+        if (maxPartitions < 1)
+            throw new ParseException(ctx, "invalid number of partitions " + maxPartitions);
+
+        // Return action
+        return new CliSession.Action() {
+            @Override
+            public void run(CliSession session) throws Exception {
+                final KVStore kv = session.getTransaction().getKVTransaction();
+                final BinarySerializer serializer = new BinarySerializer(kv);
+
+                // Write a single file
+                if (maxPartitions == 1) {
+                    final long count = KVSaveCommand.this.write(serializer, file, KeyRange.FULL, compress);
+                    session.getWriter().println("Wrote " + count + " key/value pairs to `" + file + "'");
+                    return;
+                }
+
+                // Write partitions concurrently
+                final List<KeyRange> ranges = serializer.partition(maxPartitions);
+                final ExecutorService executor = Executors.newFixedThreadPool(ranges.size());
+                final ArrayList<Future<Long>> futures = new ArrayList<>(ranges.size());
+                long total = 0;
+                try {
+                    for (int i = 0; i < ranges.size(); i++) {
+                        final File partitionFile = new File(file.getPath() + "." + i);
+                        final KeyRange range = ranges.get(i);
+                        futures.add(executor.submit(new Callable<Long>() {
+                            @Override
+                            public Long call() throws IOException {
+                                return KVSaveCommand.this.write(serializer, partitionFile, range, compress);
+                            }
+                        }));
+                    }
+                    for (Future<Long> future : futures) {
+                        try {
+                            total += future.get();
+                        } catch (ExecutionException e) {
+                            if (e.getCause() instanceof Exception)
+                                throw (Exception)e.getCause();
+                            throw e;
+                        }
+                    }
+                } finally {
+                    executor.shutdownNow();
+                }
+                session.getWriter().println("Wrote " + total + " key/value pairs to " + ranges.size()
+                  + " partition files `" + file + ".0' through `" + file + "." + (ranges.size() - 1) + "'");
+            }
+        };
+    }
+
+    private long write(BinarySerializer serializer, File file, KeyRange range, boolean compress) throws IOException {
+        final AtomicUpdateFileOutputStream updateOutput = new AtomicUpdateFileOutputStream(file);
+        final BufferedOutputStream output = new BufferedOutputStream(updateOutput);
+        boolean success = false;
+        final long count;
+        try {
+            count = serializer.write(output, range, compress);
+            success = true;
+        } finally {
+            if (success) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            } else
+                updateOutput.cancel();
+        }
+        return count;
+    }
+
+// FileParser
+
+    private class FileParser implements Parser<File> {
+
+        @Override
+        public File parse(ParseSession session, ParseContext ctx, boolean complete) {
+
+            // Get filename
+            final Matcher matcher = ctx.tryPattern("[^\\s;]*");
+            if (matcher == null)
+                throw new ParseException(ctx);
+            final String path = matcher.group();
+
+            // Check file
+            final File file = new File(path);
+            if (file.isDirectory() || (!file.exists() && complete)) {
+                final ArrayList<CharSequence> list = new ArrayList<>();
+                final int index = new FileNameCompleter().complete(path, path.length(), list);
+                throw new ParseException(ctx, "can't write to file `" + path + "'").addCompletions(
+                  Lists.transform(Lists.transform(list, new ParseCastFunction<String>(String.class)),
+                    new StripPrefixFunction(path.substring(index))));
+            }
+
+            // Done
+            return file;
+        }
+    }
+}
+
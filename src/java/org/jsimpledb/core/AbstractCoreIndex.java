@@ -7,10 +7,17 @@
 
 package org.jsimpledb.core;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.jsimpledb.kv.KVStore;
 import org.jsimpledb.kv.KeyFilter;
+import org.jsimpledb.kv.KeyRange;
+import org.jsimpledb.kv.KeyRanges;
+import org.jsimpledb.kv.SnapshotReadKVTransaction;
+import org.jsimpledb.kv.util.KeyRangePartitioner;
+import org.jsimpledb.util.ByteReader;
 
 /**
  * Support superclass for the various core index classes.
@@ -18,16 +25,20 @@ import org.jsimpledb.kv.KeyFilter;
 abstract class AbstractCoreIndex {
 
     final Transaction tx;
+    final KVStore kv;
     final AbstractIndexView indexView;
 
 // Constructors
 
-    protected AbstractCoreIndex(Transaction tx, int size, AbstractIndexView indexView) {
+    protected AbstractCoreIndex(Transaction tx, KVStore kv, int size, AbstractIndexView indexView) {
         if (tx == null)
             throw new IllegalArgumentException("null tx");
+        if (kv == null)
+            throw new IllegalArgumentException("null kv");
         if (indexView == null)
             throw new IllegalArgumentException("null indexView");
         this.tx = tx;
+        this.kv = kv;
         this.indexView = indexView;
         if (this.indexView.fieldTypes.length != size)
             throw new RuntimeException("internal error: indexView has the wrong size");
@@ -56,5 +67,92 @@ abstract class AbstractCoreIndex {
      * @throws IllegalArgumentException if {@code keyFilter} is null
      */
     public abstract AbstractCoreIndex filter(int index, KeyFilter keyFilter);
+
+    /**
+     * Partition this index into adjacent sub-indexes suitable for scanning in parallel.
+     *
+     * <p>
+     * Each returned instance is this instance {@linkplain #filter filtered} to a contiguous range of values
+     * of the first indexed field; the union of the returned instances is this instance. Range boundaries are
+     * chosen by sampling the underlying key/value store via {@link KeyRangePartitioner}, so partitions are
+     * roughly balanced when indexed values are evenly distributed. Fewer than {@code maxPartitions} instances
+     * are returned when there are too few distinct values to warrant more.
+     * </p>
+     *
+     * <p>
+     * Because transactions support concurrent reads, each partition may be scanned by a different thread,
+     * and all of them see the same (transactionally consistent) state.
+     * </p>
+     *
+     * @param maxPartitions maximum number of partitions
+     * @return non-empty list of disjoint filtered views of this instance, in increasing value order
+     * @throws IllegalArgumentException if {@code maxPartitions} is less than one
+     * @throws StaleTransactionException if the associated transaction is no longer usable
+     */
+    public abstract List<? extends AbstractCoreIndex> partition(int maxPartitions);
+
+    /**
+     * Get a view of this index whose reads do not cause transaction conflicts.
+     *
+     * <p>
+     * Normally, a transaction that scans an index will fail on commit if another transaction concurrently modifies
+     * any part of the index that was scanned. Scans performed through the returned instance (and any views derived
+     * from it) are exempt from this check. This is appropriate when the correctness of the transaction does not depend
+     * on the index contents remaining unchanged, e.g., when the results are only used as hints, or are verified
+     * separately; avoiding the conflict can greatly reduce retries for transactions that perform large index scans.
+     * </p>
+     *
+     * <p>
+     * This requires support from the underlying key/value transaction, i.e., it must implement
+     * {@link SnapshotReadKVTransaction}; if it does not, the returned instance behaves identically to this instance.
+     * </p>
+     *
+     * @return view of this index with reads that do not cause conflicts
+     * @throws StaleTransactionException if the associated transaction is no longer usable
+     */
+    public abstract AbstractCoreIndex withSnapshotReads();
+
+    /**
+     * Sample boundaries for {@link #partition partition()}.
+     *
+     * @param maxPartitions maximum number of partitions
+     * @return non-empty list of adjacent key ranges covering all encoded values of the first indexed field
+     */
+    List<KeyRanges> getPartitionRanges(int maxPartitions) {
+
+        // Sanity check
+        if (maxPartitions < 1)
+            throw new IllegalArgumentException("maxPartitions < 1");
+        if (this.tx.stale)
+            throw new StaleTransactionException(this.tx);
+
+        // Sample index entries and extract the encoded value of the first indexed field from each
+        final byte[] prefix = this.indexView.prefix;
+        final ArrayList<byte[]> boundaries = new ArrayList<>(maxPartitions - 1);
+        for (byte[] key : KeyRangePartitioner.sampleBoundaries(this.kv, KeyRange.forPrefix(prefix), maxPartitions)) {
+            final ByteReader reader = new ByteReader(key, prefix.length);
+            this.indexView.fieldTypes[0].skip(reader);
+            boundaries.add(reader.getBytes(prefix.length, reader.getOffset() - prefix.length));
+        }
+
+        // Build ranges
+        final ArrayList<KeyRanges> rangesList = new ArrayList<>(boundaries.size() + 1);
+        for (KeyRange range : KeyRangePartitioner.partition(KeyRange.FULL, boundaries))
+            rangesList.add(new KeyRanges(range));
+        return rangesList;
+    }
+
+    /**
+     * Get the {@link KVStore} for {@link #withSnapshotReads withSnapshotReads()}.
+     *
+     * @return key/value view of the associated transaction that does not create read conflicts, if supported
+     */
+    KVStore getSnapshotReadView() {
+        if (this.tx.stale)
+            throw new StaleTransactionException(this.tx);
+        if (!(this.tx.kvt instanceof SnapshotReadKVTransaction))
+            return this.kv;
+        return ((SnapshotReadKVTransaction)this.tx.kvt).getSnapshotReadView();
+    }
 }
 
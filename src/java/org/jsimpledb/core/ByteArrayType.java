@@ -26,10 +26,20 @@ class ByteArrayType extends IntegralArrayType<byte[], Byte> {
     }
 
     @Override
-    protected Byte getArrayElement(byte[] array, int index) {
+    protected byte[] newArray(int length) {
+        return new byte[length];
+    }
+
+    @Override
+    protected long getLongElement(byte[] array, int index) {
         return array[index];
     }
 
+    @Override
+    protected void setLongElement(byte[] array, int index, long value) {
+        array[index] = (byte)value;
+    }
+
     @Override
     protected byte[] createArray(List<Byte> elements) {
         return Bytes.toArray(elements);
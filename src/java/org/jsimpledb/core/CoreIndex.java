@@ -7,11 +7,15 @@
 
 package org.jsimpledb.core;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NavigableMap;
 import java.util.NavigableSet;
 
 import org.jsimpledb.index.Index;
+import org.jsimpledb.kv.KVStore;
 import org.jsimpledb.kv.KeyFilter;
+import org.jsimpledb.kv.KeyRanges;
 import org.jsimpledb.tuple.Tuple2;
 
 /**
@@ -29,14 +33,31 @@ public class CoreIndex<V, T> extends AbstractCoreIndex implements Index<V, T> {
 // Constructors
 
     CoreIndex(Transaction tx, IndexView<V, T> indexView) {
-        super(tx, 2, indexView);
+        this(tx, tx.kvt, indexView);
+    }
+
+    CoreIndex(Transaction tx, KVStore kv, IndexView<V, T> indexView) {
+        super(tx, kv, 2, indexView);
     }
 
 // Methods
 
     @Override
     public CoreIndex<V, T> filter(int index, KeyFilter filter) {
-        return new CoreIndex<V, T>(this.tx, this.getIndexView().filter(index, filter));
+        return new CoreIndex<V, T>(this.tx, this.kv, this.getIndexView().filter(index, filter));
+    }
+
+    @Override
+    public List<CoreIndex<V, T>> partition(int maxPartitions) {
+        final ArrayList<CoreIndex<V, T>> list = new ArrayList<>();
+        for (KeyRanges ranges : this.getPartitionRanges(maxPartitions))
+            list.add(this.filter(0, ranges));
+        return list;
+    }
+
+    @Override
+    public CoreIndex<V, T> withSnapshotReads() {
+        return new CoreIndex<V, T>(this.tx, this.getSnapshotReadView(), this.getIndexView());
     }
 
     @SuppressWarnings("unchecked")
@@ -56,7 +77,7 @@ public class CoreIndex<V, T> extends AbstractCoreIndex implements Index<V, T> {
         final Tuple2FieldType<V, T> tupleFieldType = new Tuple2FieldType<V, T>(iv.getValueType(), iv.getTargetType());
 
         // Build set and apply filtering
-        IndexSet<Tuple2<V, T>> indexSet = new IndexSet<Tuple2<V, T>>(this.tx, tupleFieldType, iv.prefixMode, iv.prefix);
+        IndexSet<Tuple2<V, T>> indexSet = new IndexSet<Tuple2<V, T>>(this.tx, this.kv, tupleFieldType, iv.prefixMode, iv.prefix);
         if (iv.hasFilters())
             indexSet = indexSet.filterKeys(new IndexKeyFilter(this.tx, iv, 2));
 
@@ -71,7 +92,7 @@ public class CoreIndex<V, T> extends AbstractCoreIndex implements Index<V, T> {
         final IndexView<V, T> iv = this.getIndexView();
 
         // Build map and apply filtering
-        IndexMap<V, NavigableSet<T>> indexMap = new IndexMap.OfValues<V, T>(this.tx, iv);
+        IndexMap<V, NavigableSet<T>> indexMap = new IndexMap.OfValues<V, T>(this.tx, this.kv, iv);
         if (this.indexView.hasFilters())
             indexMap = indexMap.filterKeys(new IndexKeyFilter(this.tx, iv, 1));
 
@@ -7,12 +7,16 @@
 
 package org.jsimpledb.core;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NavigableMap;
 import java.util.NavigableSet;
 
 import org.jsimpledb.index.Index;
 import org.jsimpledb.index.Index2;
+import org.jsimpledb.kv.KVStore;
 import org.jsimpledb.kv.KeyFilter;
+import org.jsimpledb.kv.KeyRanges;
 import org.jsimpledb.tuple.Tuple2;
 import org.jsimpledb.tuple.Tuple3;
 
@@ -32,14 +36,31 @@ public class CoreIndex2<V1, V2, T> extends AbstractCoreIndex implements Index2<V
 // Constructors
 
     CoreIndex2(Transaction tx, Index2View<V1, V2, T> indexView) {
-        super(tx, 3, indexView);
+        this(tx, tx.kvt, indexView);
+    }
+
+    CoreIndex2(Transaction tx, KVStore kv, Index2View<V1, V2, T> indexView) {
+        super(tx, kv, 3, indexView);
     }
 
 // Methods
 
     @Override
     public CoreIndex2<V1, V2, T> filter(int index, KeyFilter filter) {
-        return new CoreIndex2<V1, V2, T>(this.tx, this.getIndex2View().filter(index, filter));
+        return new CoreIndex2<V1, V2, T>(this.tx, this.kv, this.getIndex2View().filter(index, filter));
+    }
+
+    @Override
+    public List<CoreIndex2<V1, V2, T>> partition(int maxPartitions) {
+        final ArrayList<CoreIndex2<V1, V2, T>> list = new ArrayList<>();
+        for (KeyRanges ranges : this.getPartitionRanges(maxPartitions))
+            list.add(this.filter(0, ranges));
+        return list;
+    }
+
+    @Override
+    public CoreIndex2<V1, V2, T> withSnapshotReads() {
+        return new CoreIndex2<V1, V2, T>(this.tx, this.getSnapshotReadView(), this.getIndex2View());
     }
 
     @SuppressWarnings("unchecked")
@@ -60,7 +81,8 @@ public class CoreIndex2<V1, V2, T> extends AbstractCoreIndex implements Index2<V
           iv.getValue1Type(), iv.getValue2Type(), iv.getTargetType());
 
         // Build set and apply filtering
-        IndexSet<Tuple3<V1, V2, T>> indexSet = new IndexSet<Tuple3<V1, V2, T>>(this.tx, fieldType, iv.prefixMode, iv.prefix);
+        IndexSet<Tuple3<V1, V2, T>> indexSet = new IndexSet<Tuple3<V1, V2, T>>(this.tx, this.kv,
+          fieldType, iv.prefixMode, iv.prefix);
         if (iv.hasFilters())
             indexSet = indexSet.filterKeys(new IndexKeyFilter(this.tx, iv, 3));
 
@@ -78,7 +100,7 @@ public class CoreIndex2<V1, V2, T> extends AbstractCoreIndex implements Index2<V
         final IndexView<Tuple2<V1, V2>, T> tupleIV = iv.asTuple2IndexView();
 
         // Build map and apply filtering
-        IndexMap<Tuple2<V1, V2>, NavigableSet<T>> indexMap = new IndexMap.OfValues<Tuple2<V1, V2>, T>(this.tx, tupleIV);
+        IndexMap<Tuple2<V1, V2>, NavigableSet<T>> indexMap = new IndexMap.OfValues<Tuple2<V1, V2>, T>(this.tx, this.kv, tupleIV);
         if (tupleIV.hasFilters())
             indexMap = indexMap.filterKeys(new IndexKeyFilter(this.tx, tupleIV, 1));
 
@@ -93,7 +115,7 @@ public class CoreIndex2<V1, V2, T> extends AbstractCoreIndex implements Index2<V
         final Index2View<V1, V2, T> iv = this.getIndex2View();
 
         // Build map and apply filtering
-        IndexMap<V1, Index<V2, T>> indexMap = new IndexMap.OfIndex<V1, V2, T>(this.tx, iv);
+        IndexMap<V1, Index<V2, T>> indexMap = new IndexMap.OfIndex<V1, V2, T>(this.tx, this.kv, iv);
         if (iv.hasFilters())
             indexMap = indexMap.filterKeys(new IndexKeyFilter(this.tx, iv, 1));
 
@@ -103,7 +125,7 @@ public class CoreIndex2<V1, V2, T> extends AbstractCoreIndex implements Index2<V
 
     @Override
     public CoreIndex<V1, V2> asIndex() {
-        return new CoreIndex<V1, V2>(this.tx, this.getIndex2View().asIndexView());
+        return new CoreIndex<V1, V2>(this.tx, this.kv, this.getIndex2View().asIndexView());
     }
 }
 
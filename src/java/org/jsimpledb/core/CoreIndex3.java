@@ -7,13 +7,17 @@
 
 package org.jsimpledb.core;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NavigableMap;
 import java.util.NavigableSet;
 
 import org.jsimpledb.index.Index;
 import org.jsimpledb.index.Index2;
 import org.jsimpledb.index.Index3;
+import org.jsimpledb.kv.KVStore;
 import org.jsimpledb.kv.KeyFilter;
+import org.jsimpledb.kv.KeyRanges;
 import org.jsimpledb.tuple.Tuple2;
 import org.jsimpledb.tuple.Tuple3;
 import org.jsimpledb.tuple.Tuple4;
@@ -35,14 +39,31 @@ public class CoreIndex3<V1, V2, V3, T> extends AbstractCoreIndex implements Inde
 // Constructors
 
     CoreIndex3(Transaction tx, Index3View<V1, V2, V3, T> indexView) {
-        super(tx, 4, indexView);
+        this(tx, tx.kvt, indexView);
+    }
+
+    CoreIndex3(Transaction tx, KVStore kv, Index3View<V1, V2, V3, T> indexView) {
+        super(tx, kv, 4, indexView);
     }
 
 // Methods
 
     @Override
     public CoreIndex3<V1, V2, V3, T> filter(int index, KeyFilter filter) {
-        return new CoreIndex3<V1, V2, V3, T>(this.tx, this.getIndex3View().filter(index, filter));
+        return new CoreIndex3<V1, V2, V3, T>(this.tx, this.kv, this.getIndex3View().filter(index, filter));
+    }
+
+    @Override
+    public List<CoreIndex3<V1, V2, V3, T>> partition(int maxPartitions) {
+        final ArrayList<CoreIndex3<V1, V2, V3, T>> list = new ArrayList<>();
+        for (KeyRanges ranges : this.getPartitionRanges(maxPartitions))
+            list.add(this.filter(0, ranges));
+        return list;
+    }
+
+    @Override
+    public CoreIndex3<V1, V2, V3, T> withSnapshotReads() {
+        return new CoreIndex3<V1, V2, V3, T>(this.tx, this.getSnapshotReadView(), this.getIndex3View());
     }
 
     @SuppressWarnings("unchecked")
@@ -63,7 +84,7 @@ public class CoreIndex3<V1, V2, V3, T> extends AbstractCoreIndex implements Inde
           iv.getValue1Type(), iv.getValue2Type(), iv.getValue3Type(), iv.getTargetType());
 
         // Build set and apply filtering
-        IndexSet<Tuple4<V1, V2, V3, T>> indexSet = new IndexSet<Tuple4<V1, V2, V3, T>>(this.tx,
+        IndexSet<Tuple4<V1, V2, V3, T>> indexSet = new IndexSet<Tuple4<V1, V2, V3, T>>(this.tx, this.kv,
           fieldType, iv.prefixMode, iv.prefix);
         if (iv.hasFilters())
             indexSet = indexSet.filterKeys(new IndexKeyFilter(this.tx, iv, 4));
@@ -82,7 +103,8 @@ public class CoreIndex3<V1, V2, V3, T> extends AbstractCoreIndex implements Inde
         final IndexView<Tuple3<V1, V2, V3>, T> tupleIV = iv.asTuple3IndexView();
 
         // Build map and apply filtering
-        IndexMap<Tuple3<V1, V2, V3>, NavigableSet<T>> indexMap = new IndexMap.OfValues<Tuple3<V1, V2, V3>, T>(this.tx, tupleIV);
+        IndexMap<Tuple3<V1, V2, V3>, NavigableSet<T>> indexMap = new IndexMap.OfValues<Tuple3<V1, V2, V3>, T>(this.tx, this.kv,
+          tupleIV);
         if (tupleIV.hasFilters())
             indexMap = indexMap.filterKeys(new IndexKeyFilter(this.tx, tupleIV, 1));
 
@@ -100,7 +122,7 @@ public class CoreIndex3<V1, V2, V3, T> extends AbstractCoreIndex implements Inde
         final Index2View<Tuple2<V1, V2>, V3, T> tupleIV = iv.asTuple2Index2View();
 
         // Build map and apply filtering
-        IndexMap<Tuple2<V1, V2>, Index<V3, T>> indexMap = new IndexMap.OfIndex<Tuple2<V1, V2>, V3, T>(this.tx, tupleIV);
+        IndexMap<Tuple2<V1, V2>, Index<V3, T>> indexMap = new IndexMap.OfIndex<Tuple2<V1, V2>, V3, T>(this.tx, this.kv, tupleIV);
         if (iv.hasFilters())
             indexMap = indexMap.filterKeys(new IndexKeyFilter(this.tx, tupleIV, 1));
 
@@ -115,7 +137,7 @@ public class CoreIndex3<V1, V2, V3, T> extends AbstractCoreIndex implements Inde
         final Index3View<V1, V2, V3, T> iv = this.getIndex3View();
 
         // Build map and apply filtering
-        IndexMap<V1, Index2<V2, V3, T>> indexMap = new IndexMap.OfIndex2<V1, V2, V3, T>(this.tx, iv);
+        IndexMap<V1, Index2<V2, V3, T>> indexMap = new IndexMap.OfIndex2<V1, V2, V3, T>(this.tx, this.kv, iv);
         if (iv.hasFilters())
             indexMap = indexMap.filterKeys(new IndexKeyFilter(this.tx, iv, 1));
 
@@ -125,12 +147,12 @@ public class CoreIndex3<V1, V2, V3, T> extends AbstractCoreIndex implements Inde
 
     @Override
     public CoreIndex2<V1, V2, V3> asIndex2() {
-        return new CoreIndex2<V1, V2, V3>(this.tx, this.getIndex3View().asIndex2View());
+        return new CoreIndex2<V1, V2, V3>(this.tx, this.kv, this.getIndex3View().asIndex2View());
     }
 
     @Override
     public CoreIndex<V1, V2> asIndex() {
-        return new CoreIndex<V1, V2>(this.tx, this.getIndex3View().asIndex2View().asIndexView());
+        return new CoreIndex<V1, V2>(this.tx, this.kv, this.getIndex3View().asIndex2View().asIndexView());
     }
 }
 
@@ -7,6 +7,8 @@
 
 package org.jsimpledb.core;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NavigableMap;
 import java.util.NavigableSet;
 
@@ -14,7 +16,9 @@ import org.jsimpledb.index.Index;
 import org.jsimpledb.index.Index2;
 import org.jsimpledb.index.Index3;
 import org.jsimpledb.index.Index4;
+import org.jsimpledb.kv.KVStore;
 import org.jsimpledb.kv.KeyFilter;
+import org.jsimpledb.kv.KeyRanges;
 import org.jsimpledb.tuple.Tuple2;
 import org.jsimpledb.tuple.Tuple3;
 import org.jsimpledb.tuple.Tuple4;
@@ -38,14 +42,31 @@ public class CoreIndex4<V1, V2, V3, V4, T> extends AbstractCoreIndex implements
 // Constructors
 
     CoreIndex4(Transaction tx, Index4View<V1, V2, V3, V4, T> indexView) {
-        super(tx, 5, indexView);
+        this(tx, tx.kvt, indexView);
+    }
+
+    CoreIndex4(Transaction tx, KVStore kv, Index4View<V1, V2, V3, V4, T> indexView) {
+        super(tx, kv, 5, indexView);
     }
 
 // Methods
 
     @Override
     public CoreIndex4<V1, V2, V3, V4, T> filter(int index, KeyFilter filter) {
-        return new CoreIndex4<V1, V2, V3, V4, T>(this.tx, this.getIndex4View().filter(index, filter));
+        return new CoreIndex4<V1, V2, V3, V4, T>(this.tx, this.kv, this.getIndex4View().filter(index, filter));
+    }
+
+    @Override
+    public List<CoreIndex4<V1, V2, V3, V4, T>> partition(int maxPartitions) {
+        final ArrayList<CoreIndex4<V1, V2, V3, V4, T>> list = new ArrayList<>();
+        for (KeyRanges ranges : this.getPartitionRanges(maxPartitions))
+            list.add(this.filter(0, ranges));
+        return list;
+    }
+
+    @Override
+    public CoreIndex4<V1, V2, V3, V4, T> withSnapshotReads() {
+        return new CoreIndex4<V1, V2, V3, V4, T>(this.tx, this.getSnapshotReadView(), this.getIndex4View());
     }
 
     @SuppressWarnings("unchecked")
@@ -66,7 +87,7 @@ public class CoreIndex4<V1, V2, V3, V4, T> extends AbstractCoreIndex implements
           iv.getValue1Type(), iv.getValue2Type(), iv.getValue3Type(), iv.getValue4Type(), iv.getTargetType());
 
         // Build set and apply filtering
-        IndexSet<Tuple5<V1, V2, V3, V4, T>> indexSet = new IndexSet<Tuple5<V1, V2, V3, V4, T>>(this.tx,
+        IndexSet<Tuple5<V1, V2, V3, V4, T>> indexSet = new IndexSet<Tuple5<V1, V2, V3, V4, T>>(this.tx, this.kv,
           fieldType, iv.prefixMode, iv.prefix);
         if (iv.hasFilters())
             indexSet = indexSet.filterKeys(new IndexKeyFilter(this.tx, iv, 5));
@@ -86,7 +107,7 @@ public class CoreIndex4<V1, V2, V3, V4, T> extends AbstractCoreIndex implements
 
         // Build map and apply filtering
         IndexMap<Tuple4<V1, V2, V3, V4>, NavigableSet<T>> indexMap = new IndexMap.OfValues<Tuple4<V1, V2, V3, V4>, T>(
-          this.tx, tupleIV);
+          this.tx, this.kv, tupleIV);
         if (tupleIV.hasFilters())
             indexMap = indexMap.filterKeys(new IndexKeyFilter(this.tx, tupleIV, 1));
 
@@ -104,7 +125,8 @@ public class CoreIndex4<V1, V2, V3, V4, T> extends AbstractCoreIndex implements
         final Index2View<Tuple3<V1, V2, V3>, V4, T> tupleIV = iv.asTuple3Index2View();
 
         // Build map and apply filtering
-        IndexMap<Tuple3<V1, V2, V3>, Index<V4, T>> indexMap = new IndexMap.OfIndex<Tuple3<V1, V2, V3>, V4, T>(this.tx, tupleIV);
+        IndexMap<Tuple3<V1, V2, V3>, Index<V4, T>> indexMap = new IndexMap.OfIndex<Tuple3<V1, V2, V3>, V4, T>(this.tx, this.kv,
+          tupleIV);
         if (iv.hasFilters())
             indexMap = indexMap.filterKeys(new IndexKeyFilter(this.tx, tupleIV, 1));
 
@@ -122,7 +144,8 @@ public class CoreIndex4<V1, V2, V3, V4, T> extends AbstractCoreIndex implements
         final Index3View<Tuple2<V1, V2>, V3, V4, T> tupleIV = iv.asTuple2Index3View();
 
         // Build map and apply filtering
-        IndexMap<Tuple2<V1, V2>, Index2<V3, V4, T>> indexMap = new IndexMap.OfIndex2<Tuple2<V1, V2>, V3, V4, T>(this.tx, tupleIV);
+        IndexMap<Tuple2<V1, V2>, Index2<V3, V4, T>> indexMap = new IndexMap.OfIndex2<Tuple2<V1, V2>, V3, V4, T>(this.tx, this.kv,
+          tupleIV);
         if (iv.hasFilters())
             indexMap = indexMap.filterKeys(new IndexKeyFilter(this.tx, tupleIV, 1));
 
@@ -137,7 +160,7 @@ public class CoreIndex4<V1, V2, V3, V4, T> extends AbstractCoreIndex implements
         final Index4View<V1, V2, V3, V4, T> iv = this.getIndex4View();
 
         // Build map and apply filtering
-        IndexMap<V1, Index3<V2, V3, V4, T>> indexMap = new IndexMap.OfIndex3<V1, V2, V3, V4, T>(this.tx, iv);
+        IndexMap<V1, Index3<V2, V3, V4, T>> indexMap = new IndexMap.OfIndex3<V1, V2, V3, V4, T>(this.tx, this.kv, iv);
         if (iv.hasFilters())
             indexMap = indexMap.filterKeys(new IndexKeyFilter(this.tx, iv, 1));
 
@@ -147,17 +170,17 @@ public class CoreIndex4<V1, V2, V3, V4, T> extends AbstractCoreIndex implements
 
     @Override
     public CoreIndex3<V1, V2, V3, V4> asIndex3() {
-        return new CoreIndex3<V1, V2, V3, V4>(this.tx, this.getIndex4View().asIndex3View());
+        return new CoreIndex3<V1, V2, V3, V4>(this.tx, this.kv, this.getIndex4View().asIndex3View());
     }
 
     @Override
     public CoreIndex2<V1, V2, V3> asIndex2() {
-        return new CoreIndex2<V1, V2, V3>(this.tx, this.getIndex4View().asIndex3View().asIndex2View());
+        return new CoreIndex2<V1, V2, V3>(this.tx, this.kv, this.getIndex4View().asIndex3View().asIndex2View());
     }
 
     @Override
     public CoreIndex<V1, V2> asIndex() {
-        return new CoreIndex<V1, V2>(this.tx, this.getIndex4View().asIndex3View().asIndex2View().asIndexView());
+        return new CoreIndex<V1, V2>(this.tx, this.kv, this.getIndex4View().asIndex3View().asIndex2View().asIndexView());
     }
 }
 
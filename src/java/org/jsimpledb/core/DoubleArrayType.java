@@ -10,11 +10,11 @@ package org.jsimpledb.core;
 import com.google.common.primitives.Doubles;
 import com.google.common.reflect.TypeToken;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import org.jsimpledb.util.ByteReader;
+import org.jsimpledb.util.ByteUtil;
 import org.jsimpledb.util.ByteWriter;
 
 /**
@@ -29,6 +29,7 @@ class DoubleArrayType extends ArrayType<double[], Double> {
 
     private static final int NUM_BYTES = 8;
     private static final byte[] END = new byte[NUM_BYTES];
+    private static final int INITIAL_CAPACITY = 16;
 
     private final DoubleType doubleType = new DoubleType();
 
@@ -39,14 +40,17 @@ class DoubleArrayType extends ArrayType<double[], Double> {
 
     @Override
     public double[] read(ByteReader reader) {
-        final ArrayList<Double> list = new ArrayList<>();
+        double[] array = new double[Math.min(reader.remain() / NUM_BYTES, INITIAL_CAPACITY)];
+        int length = 0;
         while (true) {
-            final byte[] next = reader.readBytes(NUM_BYTES);
-            if (Arrays.equals(next, END))
+            final long bits = ByteUtil.readLong(reader);
+            if (bits == 0)
                 break;
-            list.add(this.doubleType.read(new ByteReader(next)));
+            if (length == array.length)
+                array = Arrays.copyOf(array, length * 2 + INITIAL_CAPACITY);
+            array[length++] = DoubleType.decode(bits);
         }
-        return this.createArray(list);
+        return length == array.length ? array : Arrays.copyOf(array, length);
     }
 
     @Override
@@ -55,15 +59,14 @@ class DoubleArrayType extends ArrayType<double[], Double> {
             throw new IllegalArgumentException("null array");
         final int length = this.getArrayLength(array);
         for (int i = 0; i < length; i++)
-            this.doubleType.write(writer, array[i]);
+            ByteUtil.writeLong(writer, DoubleType.encode(array[i]));
         writer.write(END);
     }
 
     @Override
     public void skip(ByteReader reader) {
         while (true) {
-            final byte[] next = reader.readBytes(NUM_BYTES);
-            if (Arrays.equals(next, END))
+            if (ByteUtil.readLong(reader) == 0)
                 break;
         }
     }
@@ -32,16 +32,12 @@ class DoubleType extends PrimitiveType<Double> {
 
     @Override
     public Double read(ByteReader reader) {
-        long bits = ByteUtil.readLong(reader);
-        bits ^= (bits & SIGN_BIT) == 0 ? NEG_XOR : POS_XOR;
-        return Double.longBitsToDouble(bits);
+        return DoubleType.decode(ByteUtil.readLong(reader));
     }
 
     @Override
     public void write(ByteWriter writer, Double value) {
-        long bits = Double.doubleToLongBits(value);
-        bits ^= (bits & SIGN_BIT) != 0 ? NEG_XOR : POS_XOR;
-        ByteUtil.writeLong(writer, bits);
+        ByteUtil.writeLong(writer, DoubleType.encode(value));
     }
 
     @Override
@@ -63,5 +59,30 @@ class DoubleType extends PrimitiveType<Double> {
             return ((Number)obj).doubleValue();
         return super.validate(obj);
     }
+
+// Internal methods
+
+    /**
+     * Encode a {@code double} value into bits that sort in the same order as the value.
+     *
+     * @param value value to encode
+     * @return encoded bits
+     */
+    static long encode(double value) {
+        long bits = Double.doubleToLongBits(value);
+        bits ^= (bits & SIGN_BIT) != 0 ? NEG_XOR : POS_XOR;
+        return bits;
+    }
+
+    /**
+     * Decode bits created by {@link #encode encode()}.
+     *
+     * @param bits encoded bits
+     * @return decoded value
+     */
+    static double decode(long bits) {
+        bits ^= (bits & SIGN_BIT) == 0 ? NEG_XOR : POS_XOR;
+        return Double.longBitsToDouble(bits);
+    }
 }
 
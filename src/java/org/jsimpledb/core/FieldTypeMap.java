@@ -10,6 +10,7 @@ package org.jsimpledb.core;
 import java.util.Collections;
 import java.util.Comparator;
 
+import org.jsimpledb.kv.KVStore;
 import org.jsimpledb.kv.KeyFilter;
 import org.jsimpledb.kv.KeyRange;
 import org.jsimpledb.kv.util.AbstractKVNavigableMap;
@@ -67,7 +68,25 @@ abstract class FieldTypeMap<K, V> extends AbstractKVNavigableMap<K, V> {
      */
     FieldTypeMap(Transaction tx, FieldType<K> keyFieldType, boolean prefixMode, boolean reversed,
       byte[] prefix, KeyRange keyRange, KeyFilter keyFilter, Bounds<K> bounds) {
-        super(tx.kvt, prefixMode, reversed, keyRange, keyFilter, bounds);
+        this(tx, tx.kvt, keyFieldType, prefixMode, reversed, prefix, keyRange, keyFilter, bounds);
+    }
+
+    /**
+     * Internal constructor reading from an alternate view of the transaction's key/value store.
+     *
+     * @param tx transaction
+     * @param kv key/value store view of {@code tx}, e.g., {@link org.jsimpledb.kv.SnapshotReadKVTransaction#getSnapshotReadView}
+     * @param keyFieldType key encoder/decoder
+     * @param prefixMode whether to allow keys to have trailing garbage
+     * @param reversed whether ordering is reversed (implies {@code bounds} are also inverted)
+     * @param prefix implicit prefix of all keys, or null for none
+     * @param keyRange key range restriction; must at least restrict to {@code prefix}
+     * @param keyFilter key filter restriction, or null for none
+     * @param bounds range restriction
+     */
+    FieldTypeMap(Transaction tx, KVStore kv, FieldType<K> keyFieldType, boolean prefixMode, boolean reversed,
+      byte[] prefix, KeyRange keyRange, KeyFilter keyFilter, Bounds<K> bounds) {
+        super(kv, prefixMode, reversed, keyRange, keyFilter, bounds);
         if (keyFieldType == null)
             throw new IllegalArgumentException("null keyFieldType");
         if (prefix == null)
@@ -10,11 +10,11 @@ package org.jsimpledb.core;
 import com.google.common.primitives.Floats;
 import com.google.common.reflect.TypeToken;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import org.jsimpledb.util.ByteReader;
+import org.jsimpledb.util.ByteUtil;
 import org.jsimpledb.util.ByteWriter;
 
 /**
@@ -29,6 +29,7 @@ class FloatArrayType extends ArrayType<float[], Float> {
 
     private static final int NUM_BYTES = 4;
     private static final byte[] END = new byte[NUM_BYTES];
+    private static final int INITIAL_CAPACITY = 16;
 
     private final FloatType floatType = new FloatType();
 
@@ -39,14 +40,17 @@ class FloatArrayType extends ArrayType<float[], Float> {
 
     @Override
     public float[] read(ByteReader reader) {
-        final ArrayList<Float> list = new ArrayList<>();
+        float[] array = new float[Math.min(reader.remain() / NUM_BYTES, INITIAL_CAPACITY)];
+        int length = 0;
         while (true) {
-            final byte[] next = reader.readBytes(NUM_BYTES);
-            if (Arrays.equals(next, END))
+            final int bits = ByteUtil.readInt(reader);
+            if (bits == 0)
                 break;
-            list.add(this.floatType.read(new ByteReader(next)));
+            if (length == array.length)
+                array = Arrays.copyOf(array, length * 2 + INITIAL_CAPACITY);
+            array[length++] = FloatType.decode(bits);
         }
-        return this.createArray(list);
+        return length == array.length ? array : Arrays.copyOf(array, length);
     }
 
     @Override
@@ -55,15 +59,14 @@ class FloatArrayType extends ArrayType<float[], Float> {
             throw new IllegalArgumentException("null array");
         final int length = this.getArrayLength(array);
         for (int i = 0; i < length; i++)
-            this.floatType.write(writer, array[i]);
+            ByteUtil.writeInt(writer, FloatType.encode(array[i]));
         writer.write(END);
     }
 
     @Override
     public void skip(ByteReader reader) {
         while (true) {
-            final byte[] next = reader.readBytes(NUM_BYTES);
-            if (Arrays.equals(next, END))
+            if (ByteUtil.readInt(reader) == 0)
                 break;
         }
     }
@@ -31,16 +31,12 @@ class FloatType extends PrimitiveType<Float> {
 
     @Override
     public Float read(ByteReader reader) {
-        int bits = ByteUtil.readInt(reader);
-        bits ^= (bits & SIGN_BIT) == 0 ? NEG_XOR : POS_XOR;
-        return Float.intBitsToFloat(bits);
+        return FloatType.decode(ByteUtil.readInt(reader));
     }
 
     @Override
     public void write(ByteWriter writer, Float value) {
-        int bits = Float.floatToIntBits(value);
-        bits ^= (bits & SIGN_BIT) != 0 ? NEG_XOR : POS_XOR;
-        ByteUtil.writeInt(writer, bits);
+        ByteUtil.writeInt(writer, FloatType.encode(value));
     }
 
     @Override
@@ -61,5 +57,30 @@ class FloatType extends PrimitiveType<Float> {
             return ((Number)obj).floatValue();
         return super.validate(obj);
     }
+
+// Internal methods
+
+    /**
+     * Encode a {@code float} value into bits that sort in the same order as the value.
+     *
+     * @param value value to encode
+     * @return encoded bits
+     */
+    static int encode(float value) {
+        int bits = Float.floatToIntBits(value);
+        bits ^= (bits & SIGN_BIT) != 0 ? NEG_XOR : POS_XOR;
+        return bits;
+    }
+
+    /**
+     * Decode bits created by {@link #encode encode()}.
+     *
+     * @param bits encoded bits
+     * @return decoded value
+     */
+    static float decode(int bits) {
+        bits ^= (bits & SIGN_BIT) == 0 ? NEG_XOR : POS_XOR;
+        return Float.intBitsToFloat(bits);
+    }
 }
 
@@ -14,6 +14,7 @@ import org.jsimpledb.index.Index;
 import org.jsimpledb.index.Index2;
 import org.jsimpledb.index.Index3;
 import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVStore;
 import org.jsimpledb.kv.KeyFilter;
 import org.jsimpledb.kv.KeyRange;
 import org.jsimpledb.util.Bounds;
@@ -26,14 +27,14 @@ import org.jsimpledb.util.ByteUtil;
 abstract class IndexMap<K, V> extends FieldTypeMap<K, V> {
 
     // Primary constructor
-    private IndexMap(Transaction tx, FieldType<K> keyType, byte[] prefix) {
-        super(tx, keyType, true, prefix);
+    private IndexMap(Transaction tx, KVStore kv, FieldType<K> keyType, byte[] prefix) {
+        this(tx, kv, keyType, false, prefix, KeyRange.forPrefix(prefix), null, new Bounds<K>());
     }
 
     // Internal constructor
-    private IndexMap(Transaction tx, FieldType<K> keyType, boolean reversed,
+    private IndexMap(Transaction tx, KVStore kv, FieldType<K> keyType, boolean reversed,
       byte[] prefix, KeyRange keyRange, KeyFilter keyFilter, Bounds<K> bounds) {
-        super(tx, keyType, true, reversed, prefix, keyRange, keyFilter, bounds);
+        super(tx, kv, keyType, true, reversed, prefix, keyRange, keyFilter, bounds);
     }
 
     public String getDescription() {
@@ -80,15 +81,15 @@ abstract class IndexMap<K, V> extends FieldTypeMap<K, V> {
         private final IndexView<V, E> indexView;
 
         // Primary constructor
-        OfValues(Transaction tx, IndexView<V, E> indexView) {
-            super(tx, indexView.getValueType(), indexView.prefix);
+        OfValues(Transaction tx, KVStore kv, IndexView<V, E> indexView) {
+            super(tx, kv, indexView.getValueType(), indexView.prefix);
             this.indexView = indexView;
         }
 
         // Internal constructor
-        private OfValues(Transaction tx, IndexView<V, E> indexView,
+        private OfValues(Transaction tx, KVStore kv, IndexView<V, E> indexView,
           boolean reversed, KeyRange keyRange, KeyFilter keyFilter, Bounds<V> bounds) {
-            super(tx, indexView.getValueType(), reversed, indexView.prefix, keyRange, keyFilter, bounds);
+            super(tx, kv, indexView.getValueType(), reversed, indexView.prefix, keyRange, keyFilter, bounds);
             this.indexView = indexView;
         }
 
@@ -97,14 +98,15 @@ abstract class IndexMap<K, V> extends FieldTypeMap<K, V> {
         @Override
         protected NavigableMap<V, NavigableSet<E>> createSubMap(boolean newReversed,
           KeyRange newKeyRange, KeyFilter newKeyFilter, Bounds<V> newBounds) {
-            return new OfValues<V, E>(this.tx, this.indexView, newReversed, newKeyRange, newKeyFilter, newBounds);
+            return new OfValues<V, E>(this.tx, this.kv, this.indexView, newReversed, newKeyRange, newKeyFilter, newBounds);
         }
 
     // IndexMap
 
         @Override
         protected NavigableSet<E> decodeValue(byte[] keyPrefix) {
-            IndexSet<E> indexSet = new IndexSet<E>(this.tx, this.indexView.getTargetType(), this.indexView.prefixMode, keyPrefix);
+            IndexSet<E> indexSet = new IndexSet<E>(this.tx, this.kv,
+              this.indexView.getTargetType(), this.indexView.prefixMode, keyPrefix);
             final KeyFilter targetFilter = this.indexView.getFilter(1);
             if (targetFilter != null) {
                 indexSet = indexSet.filterKeys(new IndexKeyFilter(this.tx, keyPrefix,
@@ -124,15 +126,15 @@ abstract class IndexMap<K, V> extends FieldTypeMap<K, V> {
         private final Index2View<V1, V2, T> indexView;
 
         // Primary constructor
-        OfIndex(Transaction tx, Index2View<V1, V2, T> indexView) {
-            super(tx, indexView.getValue1Type(), indexView.prefix);
+        OfIndex(Transaction tx, KVStore kv, Index2View<V1, V2, T> indexView) {
+            super(tx, kv, indexView.getValue1Type(), indexView.prefix);
             this.indexView = indexView;
         }
 
         // Internal constructor
-        private OfIndex(Transaction tx, Index2View<V1, V2, T> indexView,
+        private OfIndex(Transaction tx, KVStore kv, Index2View<V1, V2, T> indexView,
           boolean reversed, KeyRange keyRange, KeyFilter keyFilter, Bounds<V1> bounds) {
-            super(tx, indexView.getValue1Type(), reversed, indexView.prefix, keyRange, keyFilter, bounds);
+            super(tx, kv, indexView.getValue1Type(), reversed, indexView.prefix, keyRange, keyFilter, bounds);
             this.indexView = indexView;
         }
 
@@ -141,14 +143,14 @@ abstract class IndexMap<K, V> extends FieldTypeMap<K, V> {
         @Override
         protected NavigableMap<V1, Index<V2, T>> createSubMap(boolean newReversed,
           KeyRange newKeyRange, KeyFilter newKeyFilter, Bounds<V1> newBounds) {
-            return new OfIndex<V1, V2, T>(this.tx, this.indexView, newReversed, newKeyRange, newKeyFilter, newBounds);
+            return new OfIndex<V1, V2, T>(this.tx, this.kv, this.indexView, newReversed, newKeyRange, newKeyFilter, newBounds);
         }
 
     // IndexMap
 
         @Override
         protected CoreIndex<V2, T> decodeValue(byte[] keyPrefix) {
-            return new CoreIndex<V2, T>(this.tx, this.indexView.asIndexView(keyPrefix));
+            return new CoreIndex<V2, T>(this.tx, this.kv, this.indexView.asIndexView(keyPrefix));
         }
     }
 
@@ -162,15 +164,15 @@ abstract class IndexMap<K, V> extends FieldTypeMap<K, V> {
         private final Index3View<V1, V2, V3, T> indexView;
 
         // Primary constructor
-        OfIndex2(Transaction tx, Index3View<V1, V2, V3, T> indexView) {
-            super(tx, indexView.getValue1Type(), indexView.prefix);
+        OfIndex2(Transaction tx, KVStore kv, Index3View<V1, V2, V3, T> indexView) {
+            super(tx, kv, indexView.getValue1Type(), indexView.prefix);
             this.indexView = indexView;
         }
 
         // Internal constructor
-        private OfIndex2(Transaction tx, Index3View<V1, V2, V3, T> indexView,
+        private OfIndex2(Transaction tx, KVStore kv, Index3View<V1, V2, V3, T> indexView,
           boolean reversed, KeyRange keyRange, KeyFilter keyFilter, Bounds<V1> bounds) {
-            super(tx, indexView.getValue1Type(), reversed, indexView.prefix, keyRange, keyFilter, bounds);
+            super(tx, kv, indexView.getValue1Type(), reversed, indexView.prefix, keyRange, keyFilter, bounds);
             this.indexView = indexView;
         }
 
@@ -179,14 +181,15 @@ abstract class IndexMap<K, V> extends FieldTypeMap<K, V> {
         @Override
         protected NavigableMap<V1, Index2<V2, V3, T>> createSubMap(boolean newReversed,
           KeyRange newKeyRange, KeyFilter newKeyFilter, Bounds<V1> newBounds) {
-            return new OfIndex2<V1, V2, V3, T>(this.tx, this.indexView, newReversed, newKeyRange, newKeyFilter, newBounds);
+            return new OfIndex2<V1, V2, V3, T>(this.tx, this.kv,
+              this.indexView, newReversed, newKeyRange, newKeyFilter, newBounds);
         }
 
     // IndexMap
 
         @Override
         protected CoreIndex2<V2, V3, T> decodeValue(byte[] keyPrefix) {
-            return new CoreIndex2<V2, V3, T>(this.tx, this.indexView.asIndex2View(keyPrefix));
+            return new CoreIndex2<V2, V3, T>(this.tx, this.kv, this.indexView.asIndex2View(keyPrefix));
         }
     }
 
@@ -200,15 +203,15 @@ abstract class IndexMap<K, V> extends FieldTypeMap<K, V> {
         private final Index4View<V1, V2, V3, V4, T> indexView;
 
         // Primary constructor
-        OfIndex3(Transaction tx, Index4View<V1, V2, V3, V4, T> indexView) {
-            super(tx, indexView.getValue1Type(), indexView.prefix);
+        OfIndex3(Transaction tx, KVStore kv, Index4View<V1, V2, V3, V4, T> indexView) {
+            super(tx, kv, indexView.getValue1Type(), indexView.prefix);
             this.indexView = indexView;
         }
 
         // Internal constructor
-        private OfIndex3(Transaction tx, Index4View<V1, V2, V3, V4, T> indexView,
+        private OfIndex3(Transaction tx, KVStore kv, Index4View<V1, V2, V3, V4, T> indexView,
           boolean reversed, KeyRange keyRange, KeyFilter keyFilter, Bounds<V1> bounds) {
-            super(tx, indexView.getValue1Type(), reversed, indexView.prefix, keyRange, keyFilter, bounds);
+            super(tx, kv, indexView.getValue1Type(), reversed, indexView.prefix, keyRange, keyFilter, bounds);
             this.indexView = indexView;
         }
 
@@ -217,14 +220,15 @@ abstract class IndexMap<K, V> extends FieldTypeMap<K, V> {
         @Override
         protected NavigableMap<V1, Index3<V2, V3, V4, T>> createSubMap(boolean newReversed,
           KeyRange newKeyRange, KeyFilter newKeyFilter, Bounds<V1> newBounds) {
-            return new OfIndex3<V1, V2, V3, V4, T>(this.tx, this.indexView, newReversed, newKeyRange, newKeyFilter, newBounds);
+            return new OfIndex3<V1, V2, V3, V4, T>(this.tx, this.kv,
+              this.indexView, newReversed, newKeyRange, newKeyFilter, newBounds);
         }
 
     // IndexMap
 
         @Override
         protected CoreIndex3<V2, V3, V4, T> decodeValue(byte[] keyPrefix) {
-            return new CoreIndex3<V2, V3, V4, T>(this.tx, this.indexView.asIndex3View(keyPrefix));
+            return new CoreIndex3<V2, V3, V4, T>(this.tx, this.kv, this.indexView.asIndex3View(keyPrefix));
         }
     }
 }
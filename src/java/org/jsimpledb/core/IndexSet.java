@@ -9,6 +9,7 @@ package org.jsimpledb.core;
 
 import java.util.NavigableSet;
 
+import org.jsimpledb.kv.KVStore;
 import org.jsimpledb.kv.KeyFilter;
 import org.jsimpledb.kv.KeyRange;
 import org.jsimpledb.util.Bounds;
@@ -22,14 +23,14 @@ import org.jsimpledb.util.ByteUtil;
 class IndexSet<E> extends FieldTypeSet<E> {
 
     // Primary constructor
-    IndexSet(Transaction tx, FieldType<E> entryType, boolean prefixMode, byte[] prefix) {
-        super(tx, entryType, prefixMode, prefix);
+    IndexSet(Transaction tx, KVStore kv, FieldType<E> entryType, boolean prefixMode, byte[] prefix) {
+        this(tx, kv, entryType, prefixMode, false, prefix, KeyRange.forPrefix(prefix), null, new Bounds<E>());
     }
 
     // Internal constructor
-    private IndexSet(Transaction tx, FieldType<E> entryType, boolean prefixMode, boolean reversed,
+    private IndexSet(Transaction tx, KVStore kv, FieldType<E> entryType, boolean prefixMode, boolean reversed,
       byte[] prefix, KeyRange keyRange, KeyFilter keyFilter, Bounds<E> bounds) {
-        super(tx, entryType, prefixMode, reversed, prefix, keyRange, keyFilter, bounds);
+        super(tx, kv, entryType, prefixMode, reversed, prefix, keyRange, keyFilter, bounds);
     }
 
     public String getDescription() {
@@ -47,7 +48,7 @@ class IndexSet<E> extends FieldTypeSet<E> {
 
     @Override
     protected NavigableSet<E> createSubSet(boolean newReversed, KeyRange newKeyRange, KeyFilter newKeyFilter, Bounds<E> newBounds) {
-        return new IndexSet<E>(this.tx, this.fieldType,
+        return new IndexSet<E>(this.tx, this.kv, this.fieldType,
           this.prefixMode, newReversed, this.prefix, newKeyRange, newKeyFilter, newBounds);
     }
 
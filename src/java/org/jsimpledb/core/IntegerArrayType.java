@@ -26,10 +26,20 @@ class IntegerArrayType extends IntegralArrayType<int[], Integer> {
     }
 
     @Override
-    protected Integer getArrayElement(int[] array, int index) {
+    protected int[] newArray(int length) {
+        return new int[length];
+    }
+
+    @Override
+    protected long getLongElement(int[] array, int index) {
         return array[index];
     }
 
+    @Override
+    protected void setLongElement(int[] array, int index, long value) {
+        array[index] = (int)value;
+    }
+
     @Override
     protected int[] createArray(List<Integer> elements) {
         return Ints.toArray(elements);
@@ -9,8 +9,6 @@ package org.jsimpledb.core;
 
 import com.google.common.reflect.TypeToken;
 
-import java.util.ArrayList;
-
 import org.jsimpledb.util.ByteReader;
 import org.jsimpledb.util.ByteWriter;
 import org.jsimpledb.util.LongEncoder;
@@ -23,6 +21,13 @@ import org.jsimpledb.util.LongEncoder;
  * {@link LongEncoder}. Note, we take advantage of the fact that {@link LongEncoder} does not emit values starting
  * with {@code 0x00}.
  * </p>
+ *
+ * <p>
+ * To avoid boxing, elements are decoded directly into a primitive array: the encoded elements are first counted,
+ * which only requires examining the first byte of each, and then decoded into an array of the exact length.
+ * Subclasses access array elements as {@code long} values via {@link #getLongElement getLongElement()} and
+ * {@link #setLongElement setLongElement()}.
+ * </p>
  */
 abstract class IntegralArrayType<T, E extends Number> extends ArrayType<T, E> {
 
@@ -40,16 +45,14 @@ abstract class IntegralArrayType<T, E extends Number> extends ArrayType<T, E> {
 
     @Override
     public T read(ByteReader reader) {
-        final ArrayList<E> list = new ArrayList<>();
-        while (true) {
-            final int first = reader.peek();
-            if (first == END) {
-                reader.skip(1);
-                break;
-            }
-            list.add(this.integralType.downCast(LongEncoder.read(reader)));
-        }
-        return this.createArray(list);
+        final int mark = reader.mark();
+        final int length = this.count(reader);
+        reader.reset(mark);
+        final T array = this.newArray(length);
+        for (int i = 0; i < length; i++)
+            this.setLongElement(array, i, LongEncoder.read(reader));
+        reader.skip(1);
+        return array;
     }
 
     @Override
@@ -58,18 +61,13 @@ abstract class IntegralArrayType<T, E extends Number> extends ArrayType<T, E> {
             throw new IllegalArgumentException("null array");
         final int length = this.getArrayLength(array);
         for (int i = 0; i < length; i++)
-            LongEncoder.write(writer, this.integralType.upCast(this.getArrayElement(array, i)));
+            LongEncoder.write(writer, this.getLongElement(array, i));
         writer.writeByte(END);
     }
 
     @Override
     public void skip(ByteReader reader) {
-        while (true) {
-            final int first = reader.peek();
-            if (first == END)
-                break;
-            reader.skip(LongEncoder.decodeLength(first));
-        }
+        this.count(reader);
     }
 
     @Override
@@ -81,5 +79,57 @@ abstract class IntegralArrayType<T, E extends Number> extends ArrayType<T, E> {
     public boolean hasPrefix0xff() {
         return this.integralType.hasPrefix0xff();
     }
+
+    @Override
+    protected E getArrayElement(T array, int index) {
+        return this.integralType.downCast(this.getLongElement(array, index));
+    }
+
+// Internal methods
+
+    /**
+     * Count the encoded elements and skip over them, including the terminating {@code 0x00}, without decoding them.
+     *
+     * @param reader input
+     * @return number of elements
+     */
+    private int count(ByteReader reader) {
+        int count = 0;
+        while (true) {
+            final int first = reader.readByte();
+            if (first == END)
+                return count;
+            reader.skip(LongEncoder.decodeLength(first) - 1);
+            count++;
+        }
+    }
+
+// Subclass overrides
+
+    /**
+     * Create a new array of the given length.
+     *
+     * @param length array length
+     * @return new array
+     */
+    protected abstract T newArray(int length);
+
+    /**
+     * Get an element from the given array, widened to a {@code long}.
+     *
+     * @param array non-null array
+     * @param index index of target element in {@code array}
+     * @return element value
+     */
+    protected abstract long getLongElement(T array, int index);
+
+    /**
+     * Set an element in the given array, narrowing from a {@code long}.
+     *
+     * @param array non-null array
+     * @param index index of target element in {@code array}
+     * @param value element value
+     */
+    protected abstract void setLongElement(T array, int index, long value);
 }
 
@@ -0,0 +1,338 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.jsimpledb.util.ByteReader;
+import org.jsimpledb.util.ByteWriter;
+import org.jsimpledb.util.LongEncoder;
+import org.jsimpledb.util.UnsignedIntEncoder;
+
+/**
+ * Stores large binary values as a sequence of fixed-size chunks in a {@link ListField} with {@code byte[]} elements.
+ *
+ * <p>
+ * Storing a large value in a {@link SimpleField} results in a single, large key/value pair, which some key/value stores
+ * don't allow (e.g., FoundationDB limits values to 100,000 bytes), and which must be read in its entirety every time
+ * the field is accessed. Instead, values written by this class are split into chunks, each of which is stored as
+ * one element of the list, and therefore under a separate key within the field's key prefix. Values are read back
+ * via an {@link InputStream} that reads chunks on demand, so only the chunks actually needed are read;
+ * in particular, {@link InputStream#skip skip()} does not read any chunks.
+ * </p>
+ *
+ * <p>
+ * The first list element is a header containing a format version, flags, the chunk size, and the total length of the value.
+ * The remaining elements contain the data; each chunk holds exactly the chunk size of (uncompressed) data, except
+ * possibly the last, so the chunk containing any offset can be computed directly. When compression is enabled,
+ * each chunk is compressed independently using {@link Deflater}. An empty list represents an empty value.
+ * </p>
+ *
+ * <p>
+ * Because each chunk is a list element, large values are automatically deleted, copied, and exported along with
+ * their containing objects. The list field should not be indexed.
+ * </p>
+ *
+ * @see Transaction#readLargeValue Transaction.readLargeValue()
+ * @see Transaction#writeLargeValue Transaction.writeLargeValue()
+ */
+public final class LargeValues {
+
+    /**
+     * Default chunk size (32K). Since {@code byte[]} elements are encoded with up to two bytes per byte,
+     * this keeps the encoded size of each chunk below FoundationDB's limit.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 32 * 1024;
+
+    /**
+     * Current format version.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int FLAG_COMPRESSED = 0x01;
+
+    private LargeValues() {
+    }
+
+    /**
+     * Replace the contents of the given list with the chunks of a new value read from the given input.
+     *
+     * <p>
+     * The {@code input} is not closed by this method.
+     * </p>
+     *
+     * @param chunks list field content
+     * @param input value content
+     * @param chunkSize uncompressed chunk size in bytes
+     * @param compress true to compress each chunk
+     * @return the length of the value
+     * @throws IOException if an error occurs reading {@code input}
+     * @throws IllegalArgumentException if {@code chunks} or {@code input} is null
+     * @throws IllegalArgumentException if {@code chunkSize} is not positive
+     */
+    public static long write(List<byte[]> chunks, InputStream input, int chunkSize, boolean compress) throws IOException {
+
+        // Sanity check
+        if (chunks == null)
+            throw new IllegalArgumentException("null chunks");
+        if (input == null)
+            throw new IllegalArgumentException("null input");
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunkSize <= 0");
+
+        // Write placeholder header followed by chunks
+        chunks.clear();
+        chunks.add(new byte[0]);
+        final Deflater deflater = compress ? new Deflater() : null;
+        final byte[] buf = new byte[chunkSize];
+        long length = 0;
+        try {
+            while (true) {
+                final int len = LargeValues.readFully(input, buf);
+                if (len == 0)
+                    break;
+                length += len;
+                chunks.add(deflater != null ? LargeValues.compress(deflater, buf, len) : LargeValues.copy(buf, len));
+                if (len < chunkSize)
+                    break;
+            }
+        } finally {
+            if (deflater != null)
+                deflater.end();
+        }
+
+        // Write header
+        final ByteWriter writer = new ByteWriter();
+        writer.writeByte(FORMAT_VERSION);
+        writer.writeByte(compress ? FLAG_COMPRESSED : 0);
+        UnsignedIntEncoder.write(writer, chunkSize);
+        LongEncoder.write(writer, length);
+        chunks.set(0, writer.getBytes());
+        return length;
+    }
+
+    /**
+     * Get an {@link InputStream} that reads the value stored in the given list.
+     *
+     * <p>
+     * Chunks are read from {@code chunks} on demand, so the returned stream must only be used while {@code chunks} remains
+     * valid (e.g., while the containing transaction is open). If the value is modified while the stream is open,
+     * the stream may fail with an {@link IOException}.
+     * </p>
+     *
+     * @param chunks list field content
+     * @return value content
+     * @throws IllegalArgumentException if {@code chunks} is null
+     * @throws IllegalArgumentException if {@code chunks} does not contain a valid header
+     */
+    public static InputStream read(List<byte[]> chunks) {
+        if (chunks == null)
+            throw new IllegalArgumentException("null chunks");
+        return new ChunkInputStream(chunks, new Header(chunks));
+    }
+
+    /**
+     * Get the length of the value stored in the given list. Only the header is read.
+     *
+     * @param chunks list field content
+     * @return value length in bytes
+     * @throws IllegalArgumentException if {@code chunks} is null
+     * @throws IllegalArgumentException if {@code chunks} does not contain a valid header
+     */
+    public static long getLength(List<byte[]> chunks) {
+        if (chunks == null)
+            throw new IllegalArgumentException("null chunks");
+        return new Header(chunks).length;
+    }
+
+// Internal methods
+
+    private static int readFully(InputStream input, byte[] buf) throws IOException {
+        int total = 0;
+        while (total < buf.length) {
+            final int r = input.read(buf, total, buf.length - total);
+            if (r == -1)
+                break;
+            total += r;
+        }
+        return total;
+    }
+
+    private static byte[] copy(byte[] buf, int len) {
+        final byte[] chunk = new byte[len];
+        System.arraycopy(buf, 0, chunk, 0, len);
+        return chunk;
+    }
+
+    private static byte[] compress(Deflater deflater, byte[] buf, int len) {
+        deflater.reset();
+        deflater.setInput(buf, 0, len);
+        deflater.finish();
+        final ByteWriter writer = new ByteWriter(len / 2 + 16);
+        final byte[] temp = new byte[Math.min(len + 64, 8192)];
+        while (!deflater.finished()) {
+            final int n = deflater.deflate(temp);
+            writer.write(temp, 0, n);
+        }
+        return writer.getBytes();
+    }
+
+// Header
+
+    private static class Header {
+
+        final boolean compressed;
+        final int chunkSize;
+        final long length;
+
+        Header(List<byte[]> chunks) {
+            if (chunks.isEmpty()) {
+                this.compressed = false;
+                this.chunkSize = DEFAULT_CHUNK_SIZE;
+                this.length = 0;
+                return;
+            }
+            final ByteReader reader = new ByteReader(chunks.get(0));
+            try {
+                final int version = reader.readByte();
+                if (version != FORMAT_VERSION)
+                    throw new IllegalArgumentException("invalid large value: unsupported format version " + version);
+                final int flags = reader.readByte();
+                if ((flags & ~FLAG_COMPRESSED) != 0)
+                    throw new IllegalArgumentException("invalid large value: unrecognized flags " + flags);
+                this.compressed = (flags & FLAG_COMPRESSED) != 0;
+                this.chunkSize = UnsignedIntEncoder.read(reader);
+                this.length = LongEncoder.read(reader);
+            } catch (IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("invalid large value: truncated header", e);
+            }
+            if (this.chunkSize <= 0 || this.length < 0)
+                throw new IllegalArgumentException("invalid large value: invalid header");
+        }
+    }
+
+// ChunkInputStream
+
+    private static class ChunkInputStream extends InputStream {
+
+        private final List<byte[]> chunks;
+        private final Header header;
+        private final Inflater inflater;
+
+        private long position;
+        private long mark;
+        private int chunkIndex = -1;
+        private byte[] chunk;
+
+        ChunkInputStream(List<byte[]> chunks, Header header) {
+            this.chunks = chunks;
+            this.header = header;
+            this.inflater = header.compressed ? new Inflater() : null;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] buf = new byte[1];
+            return this.read(buf, 0, 1) == 1 ? buf[0] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || off + len < 0 || off + len > buf.length)
+                throw new IndexOutOfBoundsException();
+            if (this.position >= this.header.length)
+                return -1;
+            if (len == 0)
+                return 0;
+            final int offset = this.load();
+            final int count = Math.min(len, this.chunk.length - offset);
+            System.arraycopy(this.chunk, offset, buf, off, count);
+            this.position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long num) {
+            if (num <= 0)
+                return 0;
+            final long count = Math.min(num, this.header.length - this.position);
+            this.position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            if (this.chunk == null || this.position >= this.header.length)
+                return 0;
+            final long chunkStart = (long)this.chunkIndex * this.header.chunkSize;
+            return (int)Math.max(0, chunkStart + this.chunk.length - this.position);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readlimit) {
+            this.mark = this.position;
+        }
+
+        @Override
+        public void reset() {
+            this.position = this.mark;
+        }
+
+        @Override
+        public void close() {
+            if (this.inflater != null)
+                this.inflater.end();
+            this.chunk = null;
+        }
+
+        // Load the chunk containing the current position and return the position's offset within it
+        private int load() throws IOException {
+            final int index = (int)(this.position / this.header.chunkSize);
+            final int offset = (int)(this.position % this.header.chunkSize);
+            if (index == this.chunkIndex)
+                return offset;
+            final int expectedLength = (int)Math.min(this.header.chunkSize, this.header.length - (long)index * this.header.chunkSize);
+            final byte[] data;
+            try {
+                data = this.chunks.get(index + 1);
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException("invalid large value: missing chunk #" + index, e);
+            }
+            if (data == null)
+                throw new IOException("invalid large value: null chunk #" + index);
+            if (this.inflater != null) {
+                this.chunk = new byte[expectedLength];
+                this.inflater.reset();
+                this.inflater.setInput(data);
+                try {
+                    if (this.inflater.inflate(this.chunk) != expectedLength || !this.inflater.finished())
+                        throw new IOException("invalid large value: chunk #" + index + " has the wrong length");
+                } catch (DataFormatException e) {
+                    throw new IOException("invalid large value: corrupt chunk #" + index, e);
+                }
+            } else {
+                if (data.length != expectedLength)
+                    throw new IOException("invalid large value: chunk #" + index + " has the wrong length");
+                this.chunk = data;
+            }
+            this.chunkIndex = index;
+            return offset;
+        }
+    }
+}
+
@@ -26,10 +26,20 @@ class LongArrayType extends IntegralArrayType<long[], Long> {
     }
 
     @Override
-    protected Long getArrayElement(long[] array, int index) {
+    protected long[] newArray(int length) {
+        return new long[length];
+    }
+
+    @Override
+    protected long getLongElement(long[] array, int index) {
         return array[index];
     }
 
+    @Override
+    protected void setLongElement(long[] array, int index, long value) {
+        array[index] = value;
+    }
+
     @Override
     protected long[] createArray(List<Long> elements) {
         return Longs.toArray(elements);
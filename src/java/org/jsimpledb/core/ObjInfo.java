@@ -29,9 +29,12 @@ class ObjInfo {
     private ObjType objType;
 
     ObjInfo(Transaction tx, ObjId id) {
+        this(tx, id, tx.kvt.get(id.getBytes()));
+    }
+
+    ObjInfo(Transaction tx, ObjId id, byte[] value) {
         this.tx = tx;
         this.id = id;
-        final byte[] value = tx.kvt.get(this.id.getBytes());
         if (value == null)
             throw new DeletedObjectException(this.id);
         final ByteReader reader = new ByteReader(value);
@@ -26,10 +26,20 @@ class ShortArrayType extends IntegralArrayType<short[], Short> {
     }
 
     @Override
-    protected Short getArrayElement(short[] array, int index) {
+    protected short[] newArray(int length) {
+        return new short[length];
+    }
+
+    @Override
+    protected long getLongElement(short[] array, int index) {
         return array[index];
     }
 
+    @Override
+    protected void setLongElement(short[] array, int index, long value) {
+        array[index] = (short)value;
+    }
+
     @Override
     protected short[] createArray(List<Short> elements) {
         return Shorts.toArray(elements);
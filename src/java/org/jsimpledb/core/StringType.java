@@ -22,11 +22,19 @@ import org.jsimpledb.util.UnsignedIntEncoder;
  * are prefixed with a {@code 0x01} byte to avoid writing a {@code 0x00}. We rely on the fact that {@link UnsignedIntEncoder}
  * encodes {@code 0} and {@code 1} as {@code 0x00} and {@code 0x01}, respectively.
  * </p>
+ *
+ * <p>
+ * Because {@link UnsignedIntEncoder} encodes values less than {@link UnsignedIntEncoder#MIN_MULTI_BYTE_VALUE} as a single
+ * byte equal to the value itself, runs of characters in the range {@code 0x0002} through {@code 0x00fa} (which includes
+ * all of printable ASCII) are encoded and decoded in bulk; only the remaining characters are handled one at a time.
+ * </p>
  */
 class StringType extends NonNullFieldType<String> {
 
     private static final int END = 0x00;
     private static final int ESCAPE = 0x01;
+    private static final int MIN_SINGLE_BYTE = 0x02;
+    private static final int MAX_SINGLE_BYTE = UnsignedIntEncoder.MIN_MULTI_BYTE_VALUE - 1;
 
     StringType() {
        super(String.class, 0);
@@ -34,7 +42,16 @@ class StringType extends NonNullFieldType<String> {
 
     @Override
     public String read(ByteReader reader) {
-        final StringBuilder buf = new StringBuilder();
+
+        // Handle the common case where the entire string consists of single byte characters
+        final String prefix = reader.readLatin1(reader.runLength(MIN_SINGLE_BYTE, MAX_SINGLE_BYTE));
+        if (reader.peek() == END) {
+            reader.skip(1);
+            return prefix;
+        }
+
+        // Decode runs of single byte characters in bulk and everything else one character at a time
+        final StringBuilder buf = new StringBuilder(prefix.length() + 16).append(prefix);
         while (true) {
             int ch = UnsignedIntEncoder.read(reader);
             switch (ch) {
@@ -52,14 +69,33 @@ class StringType extends NonNullFieldType<String> {
                 break;
             }
             buf.append((char)ch);
+            final int run = reader.runLength(MIN_SINGLE_BYTE, MAX_SINGLE_BYTE);
+            if (run > 0)
+                buf.append(reader.readLatin1(run));
         }
     }
 
     @Override
     public void write(ByteWriter writer, String value) {
         final int max = value.length();
-        for (int i = 0; i < max; i++) {
-            final int ch = value.charAt(i);
+        int i = 0;
+        while (true) {
+
+            // Write the next run of single byte characters in bulk
+            final int start = i;
+            while (i < max) {
+                final int ch = value.charAt(i);
+                if (ch < MIN_SINGLE_BYTE || ch > MAX_SINGLE_BYTE)
+                    break;
+                i++;
+            }
+            if (i > start)
+                writer.writeLatin1(value, start, i - start);
+            if (i == max)
+                break;
+
+            // Write the following character individually
+            final int ch = value.charAt(i++);
             switch (ch) {
             case END:
             case ESCAPE:
@@ -76,8 +112,9 @@ class StringType extends NonNullFieldType<String> {
 
     @Override
     public void skip(ByteReader reader) {
-        int value = reader.readByte();
         while (true) {
+            reader.skip(reader.runLength(MIN_SINGLE_BYTE, MAX_SINGLE_BYTE));
+            final int value = reader.readByte();
             switch (value) {
             case END:
                 return;
@@ -88,7 +125,6 @@ class StringType extends NonNullFieldType<String> {
                 reader.skip(UnsignedIntEncoder.decodeLength(value) - 1);
                 break;
             }
-            value = reader.readByte();
         }
     }
 
@@ -7,10 +7,18 @@
 
 package org.jsimpledb.core;
 
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -25,11 +33,18 @@ import java.util.NavigableSet;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.jsimpledb.kv.AsyncKVStore;
 import org.jsimpledb.kv.KVPair;
 import org.jsimpledb.kv.KVTransaction;
 import org.jsimpledb.kv.KVTransactionException;
 import org.jsimpledb.kv.KeyRanges;
+import org.jsimpledb.kv.ReadOnlyKVTransaction;
+import org.jsimpledb.kv.RetryTransactionException;
+import org.jsimpledb.kv.util.BlockingAsyncKVStore;
+import org.jsimpledb.kv.util.KeyRangePartitioner;
 import org.jsimpledb.util.ByteReader;
 import org.jsimpledb.util.ByteUtil;
 import org.jsimpledb.util.ByteWriter;
@@ -103,7 +118,10 @@ import org.slf4j.LoggerFactory;
  * <b>Object and Field Access</b>
  * <ul>
  *  <li>{@link #getAll getAll(int)} - Get all objects, or all objects of a specific type</li>
+ *  <li>{@link #partitionAll partitionAll()} - Split all objects of a specific type into sub-sets for parallel scanning</li>
  *  <li>{@link #readSimpleField readSimpleField()} - Read the value of a {@link SimpleField} in an object</li>
+ *  <li>{@link #readSimpleFieldAsync readSimpleFieldAsync()} - Read the value of a {@link SimpleField} in an object
+ *      asynchronously</li>
  *  <li>{@link #writeSimpleField writeSimpleField()} - Write the value of a {@link SimpleField} in an object</li>
  *  <li>{@link #readCounterField readCounterField()} - Read the value of a {@link CounterField} in an object</li>
  *  <li>{@link #writeCounterField writeCounterField()} - Write the value of a {@link CounterField} in an object</li>
@@ -142,6 +160,8 @@ import org.slf4j.LoggerFactory;
  * <ul>
  *  <li>{@link #invertReferencePath invertReferencePath()} - Find all objects that refer to any element in a given set
  *      of objects through a specified reference path</li>
+ *  <li>{@link #followReferencePath followReferencePath()} - Find all objects referred to by any element in a given set
+ *      of objects through a specified reference path</li>
  * </ul>
  *
  * <p>
@@ -153,6 +173,8 @@ import org.slf4j.LoggerFactory;
  *      to identify all list elements, all objects having those elements in the list, and thier corresponding indicies</li>
  *  <li>{@link #queryMapValueIndex queryMapValueIndex()} - Query the index associated with a {@link MapField}
  *      to identify all map values, all objects having those values in the map, and the corresponding keys</li>
+ *  <li>{@link #queryIndexAsync queryIndexAsync()} - Asynchronously find all objects having a specific value
+ *      in an indexed {@link SimpleField}</li>
  *  <li>{@link #queryCompositeIndex queryCompositeIndex()} - Query any composite index</li>
  *  <li>{@link #queryCompositeIndex2 queryCompositeIndex2()} - Query a composite index on two fields</li>
  *  <li>{@link #queryCompositeIndex3 queryCompositeIndex3()} - Query a composite index on three fields</li>
@@ -167,6 +189,25 @@ import org.slf4j.LoggerFactory;
  * {@link NavigableSets#symmetricDifference symmetric difference} of {@link NavigableSet}s containing the same element type,
  * thereby providing the equivalent of traditional database joins.
  * </p>
+ *
+ * <p>
+ * <b>Concurrency</b>
+ * </p>
+ *
+ * <p>
+ * Instances are thread safe. Methods that only read data, such as {@link #readSimpleField readSimpleField()},
+ * {@link #readCounterField readCounterField()}, {@link #exists exists()}, {@link #getSchemaVersion getSchemaVersion()},
+ * the index query methods, and {@link #getAll getAll()}, may be invoked concurrently by multiple threads, provided
+ * the underlying {@link KVTransaction} supports concurrent access. Mutating methods are serialized with respect to each other
+ * and exclude concurrent reads, so readers never observe a partially completed mutation. A read that must first
+ * update an object's schema version is performed as a write.
+ * </p>
+ *
+ * <p>
+ * The asynchronous read methods issue their reads immediately and return {@link ListenableFuture}s; if the underlying
+ * {@link KVTransaction} implements {@link AsyncKVStore}, many such reads may be outstanding at once, so that
+ * the cost of a single round trip is paid for all of them. Otherwise, the reads are performed synchronously.
+ * </p>
  */
 public class Transaction {
 
@@ -179,7 +220,7 @@ public class Transaction {
     final Schemas schemas;
     final Schema schema;
 
-    boolean stale;
+    volatile boolean stale;
     boolean readOnly;
     boolean rollbackOnly;
 
@@ -189,6 +230,7 @@ public class Transaction {
     private final HashSet<DeleteListener> deleteListeners = new HashSet<>();
     private final TreeMap<Integer, HashSet<FieldMonitor>> monitorMap = new TreeMap<>();
     private final LinkedHashSet<Callback> callbacks = new LinkedHashSet<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();  // shared for reads, exclusive for mutations
 
     Transaction(Database db, KVTransaction kvt, Schemas schemas, int versionNumber) {
         this(db, kvt, schemas, schemas.getVersion(versionNumber));
@@ -257,9 +299,14 @@ public class Transaction {
             throw new InvalidSchemaException("one or more version " + version + " objects still exist in database");
 
         // Delete schema version
-        if (!this.schemas.deleteVersion(version))
-            return false;
-        this.db.deleteSchema(this.kvt, version);
+        this.lock.writeLock().lock();
+        try {
+            if (!this.schemas.deleteVersion(version))
+                return false;
+            this.db.deleteSchema(this.kvt, version);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
         return true;
     }
 
@@ -299,7 +346,7 @@ public class Transaction {
             this.rollback();
             throw new RollbackOnlyTransactionException(this);
         }
-        this.stale = true;
+        this.markStale();
 
         // Do before completion callbacks
         if (this.log.isTraceEnabled())
@@ -356,7 +403,7 @@ public class Transaction {
         // Sanity check
         if (this.stale)
             throw new StaleTransactionException(this);
-        this.stale = true;
+        this.markStale();
         if (this.log.isTraceEnabled())
             this.log.trace("rollback() invoked on" + (this.readOnly ? " read-only" : "") + " transaction " + this);
 
@@ -371,6 +418,16 @@ public class Transaction {
         }
     }
 
+    // Mark this transaction stale once any concurrent reads in progress have completed
+    private /*synchronized*/ void markStale() {
+        this.lock.writeLock().lock();
+        try {
+            this.stale = true;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
     private /*synchronized*/ void triggerBeforeCompletion() {
         for (Callback callback : this.callbacks) {
             try {
@@ -417,12 +474,27 @@ public class Transaction {
      * Enable or disaable read-only mode. When in read-only mode, all mutating operations will fail with
      * a {@link ReadOnlyTransactionException}.
      *
+     * <p>
+     * If the underlying key/value transaction implements {@link ReadOnlyKVTransaction} and no changes have been made yet,
+     * enabling read-only mode also puts it into {@linkplain ReadOnlyKVTransaction#setReadOnly read-only mode}, so that
+     * reads are not tracked and commit skips conflict checking. Changes made before read-only mode is enabled are still
+     * committed.
+     * </p>
+     *
+     * <p>
+     * Read-only mode may be disabled again. However, because reads made in the meantime may not have been tracked,
+     * if this transaction then makes any changes, {@link #commit} may throw a {@link RetryTransactionException}
+     * if any other transaction has committed in the meantime.
+     * </p>
+     *
      * @param readOnly read-only setting
      * @throws StaleTransactionException if this transaction is no longer usable
      */
     public synchronized void setReadOnly(boolean readOnly) {
         if (this.stale)
             throw new StaleTransactionException(this);
+        if (this.kvt instanceof ReadOnlyKVTransaction)
+            ((ReadOnlyKVTransaction)this.kvt).setReadOnly(readOnly);
         this.readOnly = readOnly;
     }
 
@@ -646,6 +718,21 @@ public class Transaction {
         if (this.readOnly)
             throw new ReadOnlyTransactionException(this);
 
+        // Initialize object
+        this.lock.writeLock().lock();
+        try {
+            this.doInitialize(id, objType);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+
+        // Notify listeners
+        for (CreateListener listener : this.createListeners.toArray(new CreateListener[this.createListeners.size()]))
+            listener.onCreate(this, id);
+    }
+
+    private synchronized void doInitialize(ObjId id, ObjType objType) {
+
         // Write object meta-data
         ObjInfo.write(this, id, objType.schema.versionNumber, false);
 
@@ -667,10 +754,6 @@ public class Transaction {
         // Write composite index entries
         for (CompositeIndex index : objType.compositeIndexes.values())
             this.kvt.put(Transaction.buildDefaultCompositeIndexEntry(id, index), ByteUtil.EMPTY);
-
-        // Notify listeners
-        for (CreateListener listener : this.createListeners.toArray(new CreateListener[this.createListeners.size()]))
-            listener.onCreate(this, id);
     }
 
     /**
@@ -728,8 +811,13 @@ public class Transaction {
         final ObjIdSet deletables = new ObjIdSet();
         deletables.add(id);
         boolean found = false;
-        while (!deletables.isEmpty())
-            found |= this.doDelete(deletables.iterator().next(), deletables);
+        this.lock.writeLock().lock();
+        try {
+            while (!deletables.isEmpty())
+                found |= this.doDelete(deletables.iterator().next(), deletables);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
 
         // Done
         return found;
@@ -849,12 +937,13 @@ public class Transaction {
      * @throws StaleTransactionException if this transaction is no longer usable
      * @throws IllegalArgumentException if {@code id} is null
      */
-    public synchronized boolean exists(ObjId id) {
+    public boolean exists(ObjId id) {
         try {
-            this.getObjectInfo(id, false);
+            this.lockSharedAndGetObjectInfo(id, false);
         } catch (DeletedObjectException | UnknownTypeException e) {
             return false;
         }
+        this.lock.readLock().unlock();
         return true;
     }
 
@@ -1106,16 +1195,15 @@ public class Transaction {
      * @throws StaleTransactionException if this transaction is no longer usable
      * @throws IllegalArgumentException if {@code id} is null
      */
-    public synchronized int getSchemaVersion(ObjId id) {
-
-        // Sanity check
-        if (this.stale)
-            throw new StaleTransactionException(this);
-        if (id == null)
-            throw new IllegalArgumentException("null id");
+    public int getSchemaVersion(ObjId id) {
 
         // Get object version
-        return this.getObjectInfo(id, false).getVersion();
+        final ObjInfo info = this.lockSharedAndGetObjectInfo(id, false);
+        try {
+            return info.getVersion();
+        } finally {
+            this.lock.readLock().unlock();
+        }
     }
 
     /**
@@ -1171,6 +1259,15 @@ public class Transaction {
      * @param targetVersion version to change to
      */
     private synchronized void updateVersion(final ObjInfo info, final Schema targetVersion) {
+        this.lock.writeLock().lock();
+        try {
+            this.doUpdateVersion(info, targetVersion);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private synchronized void doUpdateVersion(final ObjInfo info, final Schema targetVersion) {
 
         // Get version numbers
         final ObjId id = info.getId();
@@ -1421,7 +1518,7 @@ public class Transaction {
      * @return read-only, real-time view of all database objects indexed by schema version
      * @throws StaleTransactionException if this transaction is no longer usable
      */
-    public synchronized CoreIndex<Integer, ObjId> queryVersion() {
+    public CoreIndex<Integer, ObjId> queryVersion() {
         if (this.stale)
             throw new StaleTransactionException(this);
         return this.db.getVersionIndex(this);
@@ -1511,6 +1608,58 @@ public class Transaction {
         return new ObjTypeSet(this, storageId);
     }
 
+    /**
+     * Partition all objects whose object type has the specified storage ID into disjoint sub-sets suitable
+     * for scanning in parallel.
+     *
+     * <p>
+     * The returned sets are adjacent {@linkplain NavigableSet#subSet(Object, boolean, Object, boolean) sub-set views}
+     * of {@link #getAll(int) getAll(storageId)}; their union is the entire set. Partition boundaries are chosen
+     * by sampling the underlying key/value store via {@link KeyRangePartitioner}; because object IDs are randomly
+     * assigned, partitions typically contain roughly equal numbers of objects. Fewer than {@code maxPartitions}
+     * sets are returned when there are too few objects to warrant more.
+     * </p>
+     *
+     * <p>
+     * Because transactions support concurrent reads, each partition may be iterated by a different thread,
+     * and all of them see the same (transactionally consistent) state.
+     * </p>
+     *
+     * @param storageId object type storage ID
+     * @param maxPartitions maximum number of partitions
+     * @return non-empty list of disjoint sets, in object ID order, whose union contains all objects having {@code storageId}
+     * @throws UnknownTypeException if {@code storageId} does not correspond to any known object type
+     * @throws IllegalArgumentException if {@code maxPartitions} is less than one
+     * @throws StaleTransactionException if this transaction is no longer usable
+     * @see #getAll(int)
+     * @see CoreIndex#partition CoreIndex.partition()
+     */
+    public List<NavigableSet<ObjId>> partitionAll(int storageId, int maxPartitions) {
+
+        // Sanity check
+        if (maxPartitions < 1)
+            throw new IllegalArgumentException("maxPartitions < 1");
+        final NavigableSet<ObjId> all = this.getAll(storageId);
+
+        // Sample boundaries; each key starts with the object ID of the object it belongs to
+        final ArrayList<ObjId> boundaries = new ArrayList<>(maxPartitions - 1);
+        for (byte[] key : KeyRangePartitioner.sampleBoundaries(this.kvt, ObjId.getKeyRange(storageId), maxPartitions)) {
+            final ObjId boundary = new ObjId(new ByteReader(key));
+            if (boundaries.isEmpty() || boundary.compareTo(boundaries.get(boundaries.size() - 1)) > 0)
+                boundaries.add(boundary);
+        }
+
+        // Build partitions
+        final ArrayList<NavigableSet<ObjId>> partitions = new ArrayList<>(boundaries.size() + 1);
+        ObjId min = null;
+        for (ObjId boundary : boundaries) {
+            partitions.add(min == null ? all.headSet(boundary, false) : all.subSet(min, true, boundary, false));
+            min = boundary;
+        }
+        partitions.add(min == null ? all : all.tailSet(min, true));
+        return partitions;
+    }
+
     /**
      * Read the value of a {@link SimpleField} from an object, optionally updating the object's schema version.
      *
@@ -1532,7 +1681,55 @@ public class Transaction {
      * @throws TypeNotInSchemaVersionException {@code updateVersion} is true and the object could not be updated because
      *   the object's type does not exist in the schema version associated with this transaction
      */
-    public synchronized Object readSimpleField(ObjId id, int storageId, boolean updateVersion) {
+    public Object readSimpleField(ObjId id, int storageId, boolean updateVersion) {
+
+        // Get object info
+        final ObjInfo info = this.lockSharedAndGetObjectInfo(id, updateVersion);
+        try {
+
+            // Find field
+            final SimpleField<?> field = this.getSimpleField(info, storageId);
+
+            // Read field
+            final byte[] key = field.buildKey(id);
+            final byte[] value = this.kvt.get(key);
+
+            // Decode value
+            return Transaction.decodeSimpleField(field, value);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Read the value of a {@link SimpleField} from an object asynchronously, optionally updating the object's schema version.
+     *
+     * <p>
+     * This method behaves like {@link #readSimpleField readSimpleField()}, except that the value is returned as a future,
+     * so that the caller may issue many such reads before waiting for any of them. Any exception that would have been
+     * thrown by {@link #readSimpleField readSimpleField()} (other than for a null {@code id} or stale transaction) is
+     * instead reported by the returned future.
+     * </p>
+     *
+     * <p>
+     * If {@code updateVersion} is false, both the object's meta-data and the field value are read asynchronously.
+     * Because a schema version change is a mutation, if {@code updateVersion} is true then the object's meta-data
+     * is read (and the object's schema version updated, if necessary) synchronously, and only the field value is
+     * read asynchronously.
+     * </p>
+     *
+     * @param id object ID of the object
+     * @param storageId storage ID of the {@link SimpleField}
+     * @param updateVersion true to first automatically update the object's schema version, false to not change it
+     * @return future value of the field in the object
+     * @throws StaleTransactionException if this transaction is no longer usable
+     * @throws IllegalArgumentException if {@code id} is null
+     * @see AsyncKVStore
+     */
+    public ListenableFuture<Object> readSimpleFieldAsync(final ObjId id, final int storageId, boolean updateVersion) {
+
+        // Get asynchronous view of key/value transaction
+        final AsyncKVStore kv = BlockingAsyncKVStore.of(this.kvt);
 
         // Sanity check
         if (this.stale)
@@ -1540,19 +1737,67 @@ public class Transaction {
         if (id == null)
             throw new IllegalArgumentException("null id");
 
-        // Get object info
-        final ObjInfo info = this.getObjectInfo(id, updateVersion);
+        // If updating schema version, do that now and then only read the field asynchronously
+        if (updateVersion) {
+            final SimpleField<?> field;
+            final ListenableFuture<byte[]> valueFuture;
+            final ObjInfo info;
+            try {
+                info = this.lockSharedAndGetObjectInfo(id, true);
+            } catch (RuntimeException e) {
+                return Futures.immediateFailedFuture(e);
+            }
+            try {
+                field = this.getSimpleField(info, storageId);
+                valueFuture = kv.getAsync(field.buildKey(id));
+            } catch (UnknownFieldException e) {
+                return Futures.immediateFailedFuture(e);
+            } finally {
+                this.lock.readLock().unlock();
+            }
+            return Futures.transform(valueFuture, new Function<byte[], Object>() {
+                @Override
+                public Object apply(byte[] value) {
+                    return Transaction.decodeSimpleField(field, value);
+                }
+            });
+        }
 
-        // Find field
+        // Issue reads for object meta-data and field value at the same time
+        final ArrayList<ListenableFuture<byte[]>> futures = new ArrayList<>(2);
+        this.lock.readLock().lock();
+        try {
+            if (this.stale)
+                throw new StaleTransactionException(this);
+            try {
+                this.schemas.verifyStorageInfo(id.getStorageId(), ObjTypeStorageInfo.class);
+            } catch (UnknownTypeException e) {
+                return Futures.immediateFailedFuture(e);
+            }
+            futures.add(kv.getAsync(id.getBytes()));
+            futures.add(kv.getAsync(Field.buildKey(id, storageId)));
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        // Decode value once both reads have completed
+        return Futures.transform(Futures.allAsList(futures), new Function<List<byte[]>, Object>() {
+            @Override
+            public Object apply(List<byte[]> values) {
+                final ObjInfo info = new ObjInfo(Transaction.this, id, values.get(0));
+                return Transaction.decodeSimpleField(Transaction.this.getSimpleField(info, storageId), values.get(1));
+            }
+        });
+    }
+
+    private SimpleField<?> getSimpleField(ObjInfo info, int storageId) {
         final SimpleField<?> field = info.getObjType().simpleFields.get(storageId);
         if (field == null)
             throw new UnknownFieldException(info.getObjType(), storageId, "simple field");
+        return field;
+    }
 
-        // Read field
-        final byte[] key = field.buildKey(id);
-        final byte[] value = this.kvt.get(key);
-
-        // Decode value
+    private static Object decodeSimpleField(SimpleField<?> field, byte[] value) {
         return field.fieldType.read(new ByteReader(value != null ? value : field.fieldType.getDefaultValue()));
     }
 
@@ -1719,28 +1964,26 @@ public class Transaction {
      *   the object's type does not exist in the schema version associated with this transaction
      * @throws IllegalArgumentException if {@code id} is null
      */
-    public synchronized long readCounterField(ObjId id, int storageId, boolean updateVersion) {
-
-        // Sanity check
-        if (this.stale)
-            throw new StaleTransactionException(this);
-        if (id == null)
-            throw new IllegalArgumentException("null id");
+    public long readCounterField(ObjId id, int storageId, boolean updateVersion) {
 
         // Get object info
-        final ObjInfo info = this.getObjectInfo(id, updateVersion);
+        final ObjInfo info = this.lockSharedAndGetObjectInfo(id, updateVersion);
+        try {
 
-        // Find field
-        final CounterField field = info.getObjType().counterFields.get(storageId);
-        if (field == null)
-            throw new UnknownFieldException(info.getObjType(), storageId, "counter field");
+            // Find field
+            final CounterField field = info.getObjType().counterFields.get(storageId);
+            if (field == null)
+                throw new UnknownFieldException(info.getObjType(), storageId, "counter field");
 
-        // Read field
-        final byte[] key = field.buildKey(id);
-        final byte[] value = this.kvt.get(key);
+            // Read field
+            final byte[] key = field.buildKey(id);
+            final byte[] value = this.kvt.get(key);
 
-        // Decode value
-        return value != null ? this.kvt.decodeCounter(value) : 0;
+            // Decode value
+            return value != null ? this.kvt.decodeCounter(value) : 0;
+        } finally {
+            this.lock.readLock().unlock();
+        }
     }
 
     /**
@@ -1906,6 +2149,99 @@ public class Transaction {
         return this.readComplexField(id, storageId, updateVersion, MapField.class, NavigableMap.class);
     }
 
+    /**
+     * Read a large value stored in chunks in a {@link ListField} having {@code byte[]} elements via {@link LargeValues}.
+     *
+     * <p>
+     * The returned stream reads chunks on demand, so only the chunks actually needed are read; in particular,
+     * {@link InputStream#skip skip()} does not read any chunks. The stream must only be used while this transaction is open.
+     * An empty list field reads as an empty value.
+     * </p>
+     *
+     * <p>
+     * If {@code updateVersion} is true, the schema version of the object will be automatically changed to match
+     * {@linkplain #getSchema() the schema version associated with this transaction}, if necessary.
+     * </p>
+     *
+     * @param id object ID of the object
+     * @param storageId storage ID of the {@link ListField}
+     * @param updateVersion true to first automatically update the object's schema version, false to not change it
+     * @return large value content
+     * @throws StaleTransactionException if this transaction is no longer usable
+     * @throws DeletedObjectException if no object with ID equal to {@code id} is found
+     * @throws UnknownTypeException if {@code id} specifies an unknown object type
+     * @throws UnknownFieldException if no non-indexed {@link ListField} with {@code byte[]} elements
+     *  corresponding to {@code storageId} exists in the object
+     * @throws TypeNotInSchemaVersionException {@code updateVersion} is true and the object could not be updated because
+     *   the object's type does not exist in the schema version associated with this transaction
+     * @throws IllegalArgumentException if the field does not contain a valid large value
+     * @throws IllegalArgumentException if {@code id} is null
+     * @see #writeLargeValue writeLargeValue()
+     */
+    public InputStream readLargeValue(ObjId id, int storageId, boolean updateVersion) {
+        return LargeValues.read(this.readLargeValueField(id, storageId, updateVersion));
+    }
+
+    /**
+     * Write a large value in chunks to a {@link ListField} having {@code byte[]} elements via {@link LargeValues},
+     * replacing its previous content.
+     *
+     * <p>
+     * The value is split into chunks of {@link LargeValues#DEFAULT_CHUNK_SIZE} bytes, each of which is optionally
+     * compressed and stored as a separate list element. The {@code input} is read to EOF but not closed.
+     * </p>
+     *
+     * <p>
+     * If {@code updateVersion} is true, the schema version of the object will be automatically changed to match
+     * {@linkplain #getSchema() the schema version associated with this transaction}, if necessary.
+     * </p>
+     *
+     * @param id object ID of the object
+     * @param storageId storage ID of the {@link ListField}
+     * @param input large value content
+     * @param compress true to compress each chunk
+     * @param updateVersion true to first automatically update the object's schema version, false to not change it
+     * @return the length of the value
+     * @throws IOException if an error occurs reading {@code input}
+     * @throws StaleTransactionException if this transaction is no longer usable
+     * @throws DeletedObjectException if no object with ID equal to {@code id} is found
+     * @throws UnknownTypeException if {@code id} specifies an unknown object type
+     * @throws UnknownFieldException if no non-indexed {@link ListField} with {@code byte[]} elements
+     *  corresponding to {@code storageId} exists in the object
+     * @throws TypeNotInSchemaVersionException {@code updateVersion} is true and the object could not be updated because
+     *   the object's type does not exist in the schema version associated with this transaction
+     * @throws IllegalArgumentException if {@code id} or {@code input} is null
+     * @see #readLargeValue readLargeValue()
+     */
+    public long writeLargeValue(ObjId id, int storageId, InputStream input, boolean compress, boolean updateVersion)
+      throws IOException {
+        if (input == null)
+            throw new IllegalArgumentException("null input");
+        return LargeValues.write(this.readLargeValueField(id, storageId, updateVersion),
+          input, LargeValues.DEFAULT_CHUNK_SIZE, compress);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<byte[]> readLargeValueField(ObjId id, int storageId, boolean updateVersion) {
+
+        // Get object info
+        final ObjInfo info = this.lockSharedAndGetObjectInfo(id, updateVersion);
+        try {
+
+            // Get field and verify it is a non-indexed list of byte[]
+            final ComplexField<?> field = info.getObjType().complexFields.get(storageId);
+            if (!(field instanceof ListField)
+              || ((ListField<?>)field).elementField.fieldType.getTypeToken().getRawType() != byte[].class
+              || ((ListField<?>)field).elementField.indexed)
+                throw new UnknownFieldException(info.getObjType(), storageId, "non-indexed list field with byte[] elements");
+
+            // Return view
+            return (List<byte[]>)field.getValueInternal(this, id);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
     /**
      * Get the {@code byte[]} key in the underlying key/value store corresponding to the specified object.
      *
@@ -1980,25 +2316,70 @@ public class Transaction {
         return this.kvt.get(field.buildKey(id)) == null;
     }
 
-    private synchronized <F, V> V readComplexField(ObjId id,
+    private <F, V> V readComplexField(ObjId id,
       int storageId, boolean updateVersion, Class<F> fieldClass, Class<V> valueType) {
 
-        // Sanity check
-        if (this.stale)
-            throw new StaleTransactionException(this);
-        if (id == null)
-            throw new IllegalArgumentException("null id");
-
         // Get object info
-        final ObjInfo info = this.getObjectInfo(id, updateVersion);
+        final ObjInfo info = this.lockSharedAndGetObjectInfo(id, updateVersion);
+        try {
 
-        // Get field
-        final ComplexField<?> field = info.getObjType().complexFields.get(storageId);
-        if (!fieldClass.isInstance(field))
-            throw new UnknownFieldException(info.getObjType(), storageId, fieldClass.getSimpleName());
+            // Get field
+            final ComplexField<?> field = info.getObjType().complexFields.get(storageId);
+            if (!fieldClass.isInstance(field))
+                throw new UnknownFieldException(info.getObjType(), storageId, fieldClass.getSimpleName());
 
-        // Return view
-        return valueType.cast(field.getValueInternal(this, id));
+            // Return view
+            return valueType.cast(field.getValueInternal(this, id));
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Acquire the shared (read) lock and read an object's meta-data, first updating its schema version if requested.
+     *
+     * <p>
+     * Because updating an object's schema version is a mutation, and the shared lock cannot be upgraded to an exclusive lock,
+     * any required update is performed without holding the shared lock, after which the meta-data is read again.
+     * </p>
+     *
+     * <p>
+     * On successful return, the caller must release the shared lock; if an exception is thrown, the lock is not held.
+     * </p>
+     *
+     * @param id object ID of the object
+     * @param update true to update object's schema version to match this transaction, false to leave it alone
+     * @return object info
+     * @throws StaleTransactionException if this transaction is no longer usable
+     * @throws UnknownTypeException if object ID specifies an unknown object type
+     * @throws DeletedObjectException if no object with ID equal to {@code id} is found
+     * @throws IllegalArgumentException if {@code id} is null
+     */
+    private ObjInfo lockSharedAndGetObjectInfo(ObjId id, boolean update) {
+        while (true) {
+
+            // Read object meta-data while holding the shared lock
+            this.lock.readLock().lock();
+            boolean success = false;
+            try {
+                if (this.stale)
+                    throw new StaleTransactionException(this);
+                if (id == null)
+                    throw new IllegalArgumentException("null id");
+                final ObjInfo info = this.getObjectInfo(id, false);
+                if (!update || info.getSchema() == this.schema) {
+                    success = true;
+                    return info;
+                }
+            } finally {
+                if (!success)
+                    this.lock.readLock().unlock();
+            }
+
+            // Update schema version, which requires the exclusive lock
+            assert this.lock.getReadHoldCount() == 0 || this.lock.isWriteLockedByCurrentThread();
+            this.getObjectInfo(id, true);
+        }
     }
 
     /**
@@ -2346,6 +2727,17 @@ public class Transaction {
         if (this.readOnly)
             throw new ReadOnlyTransactionException(this);
 
+        // Mutations require exclusive access
+        this.lock.writeLock().lock();
+        try {
+            return this.doMutateAndNotify(mutation);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private synchronized <V> V doMutateAndNotify(Mutation<V> mutation) {
+
         // If re-entrant invocation, we're already set up
         if (this.pendingNotifications.get() != null)
             return mutation.mutate();
@@ -2411,16 +2803,11 @@ public class Transaction {
             final int storageId = entry.getKey();
 
             // Gather all objects that refer to any object in our current "objects" set
-            final ArrayList<NavigableSet<ObjId>> refsList = new ArrayList<>();
-            for (ObjId object : objects) {
-                final NavigableSet<ObjId> refs = this.queryReferences(storageId).get(object);
-                if (refs != null)
-                    refsList.add(refs);
-            }
+            final NavigableSet<ObjId> referrers = this.invertReferences(storageId, objects);
 
-            // Recurse on the union of those objects
-            if (!refsList.isEmpty())
-                this.notifyFieldMonitors(notifier, NavigableSets.union(refsList), entry.getValue(), step + 1);
+            // Recurse on those objects
+            if (!referrers.isEmpty())
+                this.notifyFieldMonitors(notifier, referrers, entry.getValue(), step + 1);
         }
     }
 
@@ -2429,6 +2816,11 @@ public class Transaction {
     /**
      * Find all objects that refer to any object in the given target set through the specified path of references.
      *
+     * <p>
+     * The path is inverted one level at a time; the index lookups for all of the objects at each intermediate level
+     * are issued together as a batch of {@linkplain #queryIndexAsync asynchronous} queries.
+     * </p>
+     *
      * @param path path of one or more reference fields (represented by storage IDs) through which to reach the target objects
      * @param targetObjects target objects
      * @return set of objects that refer to the {@code targetObjects} via {@code path}
@@ -2456,6 +2848,12 @@ public class Transaction {
         for (int i = path.length - 1; i >= 0; i--) {
             final int storageId = path[i];
 
+            // At intermediate levels, gather all referring objects in one batch
+            if (i > 0) {
+                targetObjects = this.invertReferences(storageId, targetObjects);
+                continue;
+            }
+
             // Gather all objects that refer to any object in our current target objects set
             final ArrayList<NavigableSet<ObjId>> refsList = new ArrayList<>();
             for (ObjId id : targetObjects) {
@@ -2466,14 +2864,170 @@ public class Transaction {
             if (refsList.isEmpty())
                 return NavigableSets.empty();
 
-            // Recurse on the union of those objects
-            targetObjects = result = NavigableSets.union(refsList);
+            // Return the union of those objects
+            result = NavigableSets.union(refsList);
+        }
+
+        // Done
+        return result;
+    }
+
+    /**
+     * Find all objects referred to by any object in the given start set through the specified path of references.
+     *
+     * <p>
+     * This method is the forward counterpart of {@link #invertReferencePath invertReferencePath()}. The path is traversed
+     * one level at a time: at each level, the reference field is read from all of the objects at that level as a single
+     * batch of {@linkplain AsyncKVStore asynchronous} reads before moving on to the next level. So if the underlying
+     * {@link KVTransaction} supports asynchronous reads, the number of round trips is proportional to the length of the path
+     * rather than to the number of objects traversed.
+     * </p>
+     *
+     * <p>
+     * Reference fields may be simple fields or sub-fields of complex fields. Objects that do not exist, objects whose types
+     * do not contain the next reference field, and null references are ignored. No object's schema version is changed.
+     * </p>
+     *
+     * @param path path of one or more reference fields (represented by storage IDs) to follow from the start objects
+     * @param startObjects starting objects
+     * @return set of objects referred to by the {@code startObjects} via {@code path}; this is a snapshot, not a view
+     * @throws UnknownFieldException if {@code path} contains a storage ID that does not correspond to a {@link ReferenceField}
+     * @throws IllegalArgumentException if {@code startObjects} or {@code path} is null
+     * @throws IllegalArgumentException if {@code path} is empty
+     * @throws StaleTransactionException if this transaction is no longer usable
+     * @see #invertReferencePath invertReferencePath()
+     */
+    public NavigableSet<ObjId> followReferencePath(int[] path, Iterable<ObjId> startObjects) {
+
+        // Sanity check
+        if (startObjects == null)
+            throw new IllegalArgumentException("null startObjects");
+        if (path == null)
+            throw new IllegalArgumentException("null path");
+        if (path.length == 0)
+            throw new IllegalArgumentException("empty path");
+
+        // Verify all fields in the path are reference fields
+        for (int storageId : path)
+            this.schemas.verifyStorageInfo(storageId, ReferenceFieldStorageInfo.class);
+
+        // Follow references one level at a time
+        NavigableSet<ObjId> result = null;
+        for (int storageId : path) {
+            result = this.readReferences(storageId, startObjects);
+            if (result.isEmpty())
+                break;
+            startObjects = result;
         }
 
         // Done
         return result;
     }
 
+    // Read the references in the given reference field from all of the given objects, issuing all reads as a batch
+    private NavigableSet<ObjId> readReferences(int storageId, Iterable<ObjId> ids) {
+
+        // Get field info
+        final ReferenceFieldStorageInfo fieldInfo = this.schemas.verifyStorageInfo(storageId, ReferenceFieldStorageInfo.class);
+        final int parentStorageId = fieldInfo.superFieldStorageId;
+
+        // Issue reads of meta-data and field content for all objects
+        final AsyncKVStore kv = BlockingAsyncKVStore.of(this.kvt);
+        final ArrayList<ObjId> idList = new ArrayList<>();
+        final ArrayList<ListenableFuture<byte[]>> metaDataFutures = new ArrayList<>();
+        final ArrayList<ListenableFuture<byte[]>> valueFutures = new ArrayList<>();
+        final ArrayList<ListenableFuture<List<KVPair>>> contentFutures = new ArrayList<>();
+        this.lock.readLock().lock();
+        try {
+            if (this.stale)
+                throw new StaleTransactionException(this);
+            for (ObjId id : ids) {
+                try {
+                    this.schemas.verifyStorageInfo(id.getStorageId(), ObjTypeStorageInfo.class);
+                } catch (UnknownTypeException e) {
+                    continue;
+                }
+                idList.add(id);
+                metaDataFutures.add(kv.getAsync(id.getBytes()));
+                if (parentStorageId == 0)
+                    valueFutures.add(kv.getAsync(Field.buildKey(id, storageId)));
+                else {
+                    final byte[] prefix = Field.buildKey(id, parentStorageId);
+                    contentFutures.add(kv.getRangeAsync(prefix, ByteUtil.getKeyAfterPrefix(prefix), false, 0));
+                }
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        // Decode references
+        final TreeSet<ObjId> result = new TreeSet<>();
+        for (int i = 0; i < idList.size(); i++) {
+            final ObjId id = idList.get(i);
+
+            // Get object type, if object exists
+            final byte[] metaData = Transaction.getFutureResult(metaDataFutures.get(i));
+            if (metaData == null)
+                continue;
+            final ObjType objType = new ObjInfo(this, id, metaData).getObjType();
+
+            // Handle simple reference field
+            if (parentStorageId == 0) {
+                final byte[] value = Transaction.getFutureResult(valueFutures.get(i));
+                final SimpleField<?> field = objType.simpleFields.get(storageId);
+                if (!(field instanceof ReferenceField))
+                    continue;
+                final ObjId ref = (ObjId)Transaction.decodeSimpleField(field, value);
+                if (ref != null)
+                    result.add(ref);
+                continue;
+            }
+
+            // Handle reference sub-field of complex field
+            final List<KVPair> pairs = Transaction.getFutureResult(contentFutures.get(i));
+            final ComplexField<?> parentField = objType.complexFields.get(parentStorageId);
+            if (parentField == null)
+                continue;
+            SimpleField<?> subField = null;
+            for (SimpleField<?> candidate : parentField.getSubFields()) {
+                if (candidate.storageId == storageId)
+                    subField = candidate;
+            }
+            if (!(subField instanceof ReferenceField))
+                continue;
+            final int prefixLength = ObjId.NUM_BYTES + UnsignedIntEncoder.encodeLength(parentStorageId);
+            for (KVPair pair : pairs) {
+                final ByteReader reader = new ByteReader(pair.getKey(), prefixLength);
+                final ByteWriter writer = new ByteWriter();
+                parentField.buildIndexEntry(id, subField, reader, pair.getValue(), writer);
+                final ObjId ref = (ObjId)subField.fieldType.read(new ByteReader(writer));
+                if (ref != null)
+                    result.add(ref);
+            }
+        }
+        return result;
+    }
+
+    // Find all objects referring to any of the given objects through the given reference field, querying the index as a batch
+    private NavigableSet<ObjId> invertReferences(int storageId, Iterable<ObjId> targets) {
+        final ArrayList<ListenableFuture<NavigableSet<ObjId>>> futures = new ArrayList<>();
+        for (ObjId id : targets)
+            futures.add(this.queryIndexAsync(storageId, id));
+        final TreeSet<ObjId> result = new TreeSet<>();
+        for (ListenableFuture<NavigableSet<ObjId>> future : futures)
+            result.addAll(Transaction.getFutureResult(future));
+        return Sets.unmodifiableNavigableSet(result);
+    }
+
+    // Wait for a future's result, unwrapping any exception
+    private static <T> T getFutureResult(ListenableFuture<T> future) {
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
 // Index Queries
 
     /**
@@ -2500,7 +3054,7 @@ public class Transaction {
      * @throws UnknownFieldException if no {@link SimpleField} corresponding to {@code storageId} exists
      * @throws StaleTransactionException if this transaction is no longer usable
      */
-    public synchronized CoreIndex<?, ObjId> queryIndex(int storageId) {
+    public CoreIndex<?, ObjId> queryIndex(int storageId) {
         if (this.stale)
             throw new StaleTransactionException(this);
         final SimpleFieldStorageInfo<?> fieldInfo = this.schemas.verifyStorageInfo(storageId, SimpleFieldStorageInfo.class);
@@ -2525,7 +3079,7 @@ public class Transaction {
      * @throws UnknownFieldException if no {@link ListField} corresponding to {@code storageId} exists
      * @throws StaleTransactionException if this transaction is no longer usable
      */
-    public synchronized CoreIndex2<?, ObjId, Integer> queryListElementIndex(int storageId) {
+    public CoreIndex2<?, ObjId, Integer> queryListElementIndex(int storageId) {
         if (this.stale)
             throw new StaleTransactionException(this);
         final ListFieldStorageInfo<?> fieldInfo = this.schemas.verifyStorageInfo(storageId, ListFieldStorageInfo.class);
@@ -2546,13 +3100,71 @@ public class Transaction {
      * @throws UnknownFieldException if no {@link MapField} corresponding to {@code storageId} exists
      * @throws StaleTransactionException if this transaction is no longer usable
      */
-    public synchronized CoreIndex2<?, ObjId, ?> queryMapValueIndex(int storageId) {
+    public CoreIndex2<?, ObjId, ?> queryMapValueIndex(int storageId) {
         if (this.stale)
             throw new StaleTransactionException(this);
         final MapFieldStorageInfo<?, ?> fieldInfo = this.schemas.verifyStorageInfo(storageId, MapFieldStorageInfo.class);
         return fieldInfo.getValueFieldIndex(this);
     }
 
+    /**
+     * Find all objects having the given value in the specified indexed {@link SimpleField}, asynchronously.
+     *
+     * <p>
+     * This is equivalent to {@code queryIndex(storageId).asMap().get(value)}, except that the index entries are read
+     * all at once, in the background, and the result is a snapshot of the matching objects rather than a real-time view;
+     * if there are no matching objects, the result is an empty set rather than null. If the underlying {@link KVTransaction}
+     * implements {@link AsyncKVStore}, many such queries may be outstanding at once.
+     * </p>
+     *
+     * <p>
+     * The field may be a simple field or a sub-field of a complex field.
+     * </p>
+     *
+     * @param storageId {@link SimpleField}'s storage ID
+     * @param value field value to find
+     * @return future set of objects having {@code value} in the field
+     * @throws UnknownFieldException if no {@link SimpleField} corresponding to {@code storageId} exists
+     * @throws IllegalArgumentException if {@code value} is not a valid value for the field
+     * @throws StaleTransactionException if this transaction is no longer usable
+     */
+    public ListenableFuture<NavigableSet<ObjId>> queryIndexAsync(int storageId, Object value) {
+
+        // Build index key prefix for value
+        final ByteWriter writer = new ByteWriter();
+        final ListenableFuture<List<KVPair>> future;
+        this.lock.readLock().lock();
+        try {
+            if (this.stale)
+                throw new StaleTransactionException(this);
+            final SimpleFieldStorageInfo<?> fieldInfo = this.schemas.verifyStorageInfo(storageId, SimpleFieldStorageInfo.class);
+            UnsignedIntEncoder.write(writer, storageId);
+            Transaction.writeValue(writer, fieldInfo.fieldType, value);
+            final byte[] prefix = writer.getBytes();
+
+            // Read index entries
+            future = BlockingAsyncKVStore.of(this.kvt).getRangeAsync(prefix, ByteUtil.getKeyAfterPrefix(prefix), false, 0);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        // Decode object ID's from the index entries
+        final int prefixLength = writer.getLength();
+        return Futures.transform(future, new Function<List<KVPair>, NavigableSet<ObjId>>() {
+            @Override
+            public NavigableSet<ObjId> apply(List<KVPair> pairs) {
+                final TreeSet<ObjId> ids = new TreeSet<>();
+                for (KVPair pair : pairs)
+                    ids.add(new ObjId(new ByteReader(pair.getKey(), prefixLength)));
+                return ids;
+            }
+        });
+    }
+
+    private static <T> void writeValue(ByteWriter writer, FieldType<T> fieldType, Object value) {
+        fieldType.write(writer, fieldType.validate(value));
+    }
+
     /**
      * Access a composite index on two fields.
      *
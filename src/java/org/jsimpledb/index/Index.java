@@ -38,5 +38,25 @@ public interface Index<V, T> {
      * @return {@link NavigableMap} from indexed value to the corresponding set of target objects
      */
     NavigableMap<V, NavigableSet<T>> asMap();
+
+    /**
+     * Get a view of this index whose reads do not cause transaction conflicts.
+     *
+     * <p>
+     * Normally, a transaction that reads an index will fail on commit if another transaction concurrently modifies
+     * the part of the index that was read. Reads through the returned view (and any views derived from it) are exempt
+     * from this check. This is appropriate for large scans whose results need not remain valid for the rest of the
+     * transaction, e.g., when they are only used as hints or are verified separately.
+     * </p>
+     *
+     * <p>
+     * This requires support from the underlying key/value store; if it has none, the returned view
+     * behaves identically to this instance.
+     * </p>
+     *
+     * @return view of this index whose reads do not cause conflicts
+     * @throws org.jsimpledb.core.StaleTransactionException if the associated transaction is no longer usable
+     */
+    Index<V, T> withSnapshotReads();
 }
 
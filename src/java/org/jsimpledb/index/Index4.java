@@ -86,5 +86,14 @@ public interface Index4<V1, V2, V3, V4, T> {
      * @return prefix of this index
      */
     Index<V1, V2> asIndex();
+
+    /**
+     * Get a view of this index whose reads do not cause transaction conflicts.
+     *
+     * @return view of this index whose reads do not cause conflicts
+     * @throws org.jsimpledb.core.StaleTransactionException if the associated transaction is no longer usable
+     * @see Index#withSnapshotReads
+     */
+    Index4<V1, V2, V3, V4, T> withSnapshotReads();
 }
 
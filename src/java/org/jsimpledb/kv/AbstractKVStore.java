@@ -10,6 +10,7 @@ package org.jsimpledb.kv;
 import java.util.Arrays;
 import java.util.Iterator;
 
+import org.jsimpledb.kv.util.KVUtil;
 import org.jsimpledb.util.ByteReader;
 import org.jsimpledb.util.ByteUtil;
 import org.jsimpledb.util.ByteWriter;
@@ -53,7 +54,7 @@ public abstract class AbstractKVStore implements KVStore {
         try {
             return i.hasNext() ? i.next() : null;
         } finally {
-            this.closeIfPossible(i);
+            KVUtil.closeIfPossible(i);
         }
     }
 
@@ -63,7 +64,7 @@ public abstract class AbstractKVStore implements KVStore {
         try {
             return i.hasNext() ? i.next() : null;
         } finally {
-            this.closeIfPossible(i);
+            KVUtil.closeIfPossible(i);
         }
     }
 
@@ -86,7 +87,7 @@ public abstract class AbstractKVStore implements KVStore {
                 i.remove();
             }
         } finally {
-            this.closeIfPossible(i);
+            KVUtil.closeIfPossible(i);
         }
     }
 
@@ -113,15 +114,5 @@ public abstract class AbstractKVStore implements KVStore {
             return;
         this.put(key, this.encodeCounter(this.decodeCounter(previous) + amount));
     }
-
-    private void closeIfPossible(Iterator<KVPair> i) {
-        if (i instanceof AutoCloseable) {
-            try {
-                ((AutoCloseable)i).close();
-            } catch (Exception e) {
-                // ignore
-            }
-        }
-    }
 }
 
@@ -0,0 +1,69 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.List;
+
+/**
+ * Extension of the {@link KVStore} interface for implementations that support asynchronous reads.
+ *
+ * <p>
+ * Asynchronous reads allow a client to issue many reads at once and then wait for all of them to complete,
+ * paying the cost of only one round trip to a remote key/value store instead of one per read.
+ * </p>
+ *
+ * <p>
+ * Any exception that would have been thrown by the corresponding synchronous method (other than argument checks,
+ * which are performed immediately) is instead reported when the returned future is accessed, wrapped in an
+ * {@link java.util.concurrent.ExecutionException}. Callbacks registered on returned futures may be invoked by
+ * an internal thread and so should not block.
+ * </p>
+ *
+ * <p>
+ * Any {@link KVStore} can be adapted to this interface via {@link org.jsimpledb.kv.util.BlockingAsyncKVStore}.
+ * </p>
+ *
+ * @see org.jsimpledb.kv.util.BlockingAsyncKVStore
+ */
+public interface AsyncKVStore extends KVStore {
+
+    /**
+     * Get the value associated with the given key, if any, asynchronously.
+     *
+     * @param key key
+     * @return future value associated with key, or null if not found
+     * @throws IllegalArgumentException if {@code key} starts with {@code 0xff} and such keys are not supported
+     * @throws StaleTransactionException if an underlying transaction is no longer usable
+     * @throws NullPointerException if {@code key} is null
+     * @see KVStore#get KVStore.get()
+     */
+    ListenableFuture<byte[]> getAsync(byte[] key);
+
+    /**
+     * Get all key/value pairs in the given range, up to the given limit, asynchronously.
+     *
+     * <p>
+     * If keys starting with {@code 0xff} are not supported by this instance, and {@code minKey} starts with {@code 0xff},
+     * then the returned list will be empty.
+     * </p>
+     *
+     * @param minKey minimum key (inclusive), or null for no minimum (start at the smallest key)
+     * @param maxKey maximum key (exclusive), or null for no maximum (end at the largest key)
+     * @param reverse true to return key/value pairs in reverse order (i.e., keys descending)
+     * @param limit maximum number of key/value pairs to return, or zero for no limit
+     * @return future list of key/value pairs in the given range, in the order specified by {@code reverse}
+     * @throws IllegalArgumentException if {@code minKey > maxKey}
+     * @throws IllegalArgumentException if {@code limit} is negative
+     * @throws StaleTransactionException if an underlying transaction is no longer usable
+     * @see KVStore#getRange KVStore.getRange()
+     */
+    ListenableFuture<List<KVPair>> getRangeAsync(byte[] minKey, byte[] maxKey, boolean reverse, int limit);
+}
+
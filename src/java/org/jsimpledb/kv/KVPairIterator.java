@@ -11,17 +11,30 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
+import org.jsimpledb.kv.util.KVUtil;
 import org.jsimpledb.util.ByteUtil;
 
 /**
  * An {@link Iterator} that iterates over all key/value pairs in a {@link KVStore} within a range of keys,
- * without using the {@link KVStore#getRange KVStore.getRange()} method. Therefore, it can be used to implement
- * {@link KVStore#getRange KVStore.getRange()} in {@link KVStore} implementations that don't natively support iteration.
+ * with optional {@link KeyFilter} filtering and arbitrary repositioning.
  * Instances support forward or reverse iteration and {@link #remove Iterator.remove()}.
  *
+ * <p><b>Seek Mode vs. Cursor Mode</b></p>
+ *
  * <p>
- * The iteration is instead implemented using {@link KVStore#getAtLeast KVStore.getAtLeast()},
- * {@link KVStore#getAtMost KVStore.getAtMost()}, and {@link KVStore#remove KVStore.remove()}.
+ * By default, instances operate in "seek mode": the iteration is implemented using {@link KVStore#getAtLeast KVStore.getAtLeast()},
+ * {@link KVStore#getAtMost KVStore.getAtMost()}, and {@link KVStore#remove KVStore.remove()}, without using the
+ * {@link KVStore#getRange KVStore.getRange()} method. Therefore, it can be used to implement
+ * {@link KVStore#getRange KVStore.getRange()} in {@link KVStore} implementations that don't natively support iteration.
+ * However, this requires one seek per element, which can be expensive, e.g., when each seek is a network round trip.
+ * </p>
+ *
+ * <p>
+ * Instances may instead be configured to operate in "cursor mode", in which key/value pairs are read from a
+ * {@link KVStore#getRange KVStore.getRange()} cursor, allowing the {@link KVStore} to read ahead in batches.
+ * A new cursor is opened (i.e., a new seek is performed) only when the {@link KeyFilter} skips ahead more than a few keys,
+ * when the iterator is {@linkplain #setNextTarget repositioned}, or after {@link #remove}. Cursor mode must not be used
+ * to implement {@link KVStore#getRange KVStore.getRange()} itself.
  * </p>
  *
  * <p><b>Repositioning</b></p>
@@ -44,17 +57,23 @@ import org.jsimpledb.util.ByteUtil;
  * <p><b>Concurrent Modification</b></p>
  *
  * <p>
- * Instances are thread safe, and always reflect the current state of the underlying {@link KVStore},
- * even if it is mutated concurrently.
+ * Instances are thread safe. In seek mode, instances always reflect the current state of the underlying {@link KVStore},
+ * even if it is mutated concurrently. In cursor mode, whether concurrent mutations are reflected depends on the behavior
+ * of {@link KVStore#getRange KVStore.getRange()}.
  * </p>
  */
 public class KVPairIterator implements Iterator<KVPair> {
 
+    // How many filtered-out keys we will read through in cursor mode before giving up and seeking past them
+    private static final int MAX_CURSOR_SKIP = 8;
+
     private final KVStore kv;
     private final boolean reverse;
     private final KeyRange keyRange;
     private final KeyFilter keyFilter;
+    private final boolean cursorMode;
 
+    private Iterator<KVPair> cursor;    // in cursor mode, open cursor positioned at or before nextKey, or null if none
     private KVPair currPair;            // cached value to return from next()
     private byte[] nextKey;             // next key lower/upper bound to go fetch, or null to start at the beginning
     private byte[] removeKey;           // next key to remove if remove() invoked
@@ -106,7 +125,10 @@ public class KVPairIterator implements Iterator<KVPair> {
     }
 
     /**
-     * Primary constructor.
+     * Constructor for seek mode. Equivalent to:
+     *  <blockquote><code>
+     *  KVPairIterator(kv, keyRange, keyFilter, reverse, false)
+     *  </code></blockquote>
      *
      * @param kv underlying {@link KVStore}
      * @param keyRange range restriction on visible keys, or null for none
@@ -115,12 +137,29 @@ public class KVPairIterator implements Iterator<KVPair> {
      * @throws IllegalArgumentException if {@code kv} is null
      */
     public KVPairIterator(KVStore kv, KeyRange keyRange, KeyFilter keyFilter, boolean reverse) {
+        this(kv, keyRange, keyFilter, reverse, false);
+    }
+
+    /**
+     * Primary constructor.
+     *
+     * @param kv underlying {@link KVStore}
+     * @param keyRange range restriction on visible keys, or null for none
+     * @param keyFilter filter restriction on visible keys, or null for none
+     * @param reverse true to iterate in a reverse direction, false to iterate in a forward direction
+     * @param cursorMode true to read key/value pairs via {@link KVStore#getRange KVStore.getRange()} cursors,
+     *  false to seek to each key/value pair via {@link KVStore#getAtLeast KVStore.getAtLeast()}
+     *  and {@link KVStore#getAtMost KVStore.getAtMost()}
+     * @throws IllegalArgumentException if {@code kv} is null
+     */
+    public KVPairIterator(KVStore kv, KeyRange keyRange, KeyFilter keyFilter, boolean reverse, boolean cursorMode) {
         if (kv == null)
             throw new IllegalArgumentException("null kv");
         this.kv = kv;
         this.keyRange = keyRange;
         this.keyFilter = keyFilter;
         this.reverse = reverse;
+        this.cursorMode = cursorMode;
         this.setNextTarget(null);
     }
 
@@ -162,6 +201,15 @@ public class KVPairIterator implements Iterator<KVPair> {
         return this.reverse;
     }
 
+    /**
+     * Determine if this instance is in cursor mode.
+     *
+     * @return true if this instance reads key/value pairs via {@link KVStore#getRange KVStore.getRange()}
+     */
+    public boolean isCursorMode() {
+        return this.cursorMode;
+    }
+
     /**
      * Determine if the given key would be visible in this instance. Tests the key against
      * the configured {@link KeyRange} and/or {@link KeyFilter}, if any.
@@ -182,7 +230,8 @@ public class KVPairIterator implements Iterator<KVPair> {
      *
      * <p>
      * The target key is the key we will use to find the next element via {@link KVStore#getAtLeast KVStore.getAtLeast()}
-     * or {@link KVStore#getAtMost KVStore.getAtMost()} if this is a reverse iterator. In the forward case, the target key is an
+     * or {@link KVStore#getAtMost KVStore.getAtMost()} if this is a reverse iterator (or, in cursor mode, the key at which
+     * a new {@link KVStore#getRange KVStore.getRange()} cursor will start). In the forward case, the target key is an
      * inclusive lower bound on the next key, while in the reverse case it is an exclusive upper bound on the next key.
      * </p>
      *
@@ -228,6 +277,7 @@ public class KVPairIterator implements Iterator<KVPair> {
             this.nextKey = targetKey;
             this.finished = false;
             this.currPair = null;
+            this.closeCursor();
         }
     }
 
@@ -246,18 +296,32 @@ public class KVPairIterator implements Iterator<KVPair> {
 
         // Find next element that is not filtered out by KeyRange
         KVPair pair;
+        int skipped = -1;                                   // in cursor mode, how many filtered-out keys we've read through
         while (true) {
 
             // Find next key/value pair
-            if ((pair = this.reverse ? this.kv.getAtMost(this.nextKey) : this.kv.getAtLeast(this.nextKey)) == null) {
-                this.finished = true;
+            if ((pair = this.fetch()) == null) {
+                this.finish();
                 return false;
             }
             final byte[] key = pair.getKey();
 
+            // In cursor mode, read through keys the filter told us to skip, unless there are too many
+            if (skipped >= 0) {
+                final int diff = ByteUtil.compare(key, this.nextKey);
+                if (this.reverse ? diff >= 0 : diff < 0) {
+                    if (++skipped > MAX_CURSOR_SKIP) {
+                        this.closeCursor();
+                        skipped = -1;
+                    }
+                    continue;
+                }
+                skipped = -1;
+            }
+
             // Check key range
             if (this.keyRange != null && !this.keyRange.contains(key)) {
-                this.finished = true;
+                this.finish();
                 return false;
             }
 
@@ -277,9 +341,11 @@ public class KVPairIterator implements Iterator<KVPair> {
 
             // We have skipped over the filtered-out key range, so try again if there is any left
             if (this.nextKey == null) {
-                this.finished = true;
+                this.finish();
                 return false;
             }
+            if (this.cursor != null)
+                skipped = 0;
         }
 
         // Save it (pre-fetch)
@@ -314,8 +380,35 @@ public class KVPairIterator implements Iterator<KVPair> {
             if ((removeKeyCopy = this.removeKey) == null)
                 throw new IllegalStateException();
             this.removeKey = null;
+            this.closeCursor();                             // not all cursors tolerate concurrent modification
         }
         this.kv.remove(removeKeyCopy);
     }
+
+// Internal methods
+
+    // Get the next key/value pair at or after (before, if reverse) nextKey, or possibly earlier (later) if using an existing cursor
+    private KVPair fetch() {
+        if (!this.cursorMode)
+            return this.reverse ? this.kv.getAtMost(this.nextKey) : this.kv.getAtLeast(this.nextKey);
+        if (this.cursor == null) {
+            final byte[] minKey = this.reverse ? (this.keyRange != null ? this.keyRange.getMin() : null) : this.nextKey;
+            final byte[] maxKey = this.reverse ? this.nextKey : (this.keyRange != null ? this.keyRange.getMax() : null);
+            if (minKey != null && maxKey != null && ByteUtil.compare(minKey, maxKey) >= 0)
+                return null;
+            this.cursor = this.kv.getRange(minKey, maxKey, this.reverse);
+        }
+        return this.cursor.hasNext() ? this.cursor.next() : null;
+    }
+
+    private void finish() {
+        this.finished = true;
+        this.closeCursor();
+    }
+
+    private void closeCursor() {
+        KVUtil.closeIfPossible(this.cursor);
+        this.cursor = null;
+    }
 }
 
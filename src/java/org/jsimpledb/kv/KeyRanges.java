@@ -9,6 +9,7 @@ package org.jsimpledb.kv;
 
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.UnmodifiableIterator;
 
@@ -35,6 +36,15 @@ import org.jsimpledb.util.UnsignedIntEncoder;
  * Instances are immutable.
  * </p>
  *
+ * <p>
+ * The {@link KeyRange}s are stored in sorted order, along with a separate array of their minimum keys,
+ * so the {@link KeyFilter} methods {@link #contains(byte[]) contains()}, {@link #seekHigher seekHigher()},
+ * and {@link #seekLower seekLower()} perform a binary search that does not allocate any objects.
+ * {@link #add add()} and {@link #remove remove()} only touch the {@link KeyRange}s that overlap the given range,
+ * and {@link #union union()} and {@link #intersection intersection()} merge the already-sorted {@link KeyRange}s
+ * in linear time.
+ * </p>
+ *
  * @see KeyRange
  */
 public class KeyRanges implements Iterable<KeyRange>, KeyFilter, SizeEstimating {
@@ -50,8 +60,7 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, SizeEstimating
     public static final KeyRanges FULL = new KeyRanges(Arrays.asList(KeyRange.FULL));
 
     private final ArrayList<KeyRange> ranges;
-
-    private volatile KeyRange lastContainingKeyRange;           // used for optimization
+    private final byte[][] mins;                                // range minimums, searched directly for locality
 
 // Constructors
 
@@ -70,7 +79,16 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, SizeEstimating
     public KeyRanges(Iterable<? extends KeyRange> ranges) {
         if (ranges == null)
             throw new IllegalArgumentException("null ranges");
-        this.ranges = KeyRanges.minimize(Lists.<KeyRange>newArrayList(ranges));
+        this.ranges = KeyRanges.minimize(ranges);
+        this.mins = KeyRanges.mins(this.ranges);
+    }
+
+    // Internal constructor; caller must provide an already minimal list and the corresponding minimums
+    private KeyRanges(ArrayList<KeyRange> ranges, byte[][] mins) {
+        assert KeyRanges.isMinimal(ranges) && mins.length == ranges.size();
+        ranges.trimToSize();
+        this.ranges = ranges;
+        this.mins = mins;
     }
 
     /**
@@ -232,7 +250,7 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, SizeEstimating
                 break;
             }
         }
-        return new KeyRanges(list);
+        return new KeyRanges(list, KeyRanges.mins(list));
     }
 
     /**
@@ -260,13 +278,11 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, SizeEstimating
     public boolean contains(KeyRange range) {
         if (range == null)
             throw new IllegalArgumentException("null range");
-        final KeyRange[] pair = this.findKey(range.getMin());
-        if (pair[0] != pair[1])
-            return false;
-        final KeyRange container = pair[0];
-        if (container == null)
+        final int i = this.find(range.getMin());
+        if (i < 0)
             return false;
-        return container.contains(range);
+        final KeyRange container = this.ranges.get(i);
+        return container.contains(range.getMin()) && container.contains(range);
     }
 
     /**
@@ -291,31 +307,12 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, SizeEstimating
         if (key == null)
             throw new IllegalArgumentException("null key");
 
-        // Optimization: assume previous success is likely to repeat
-        final KeyRange temp = this.lastContainingKeyRange;
-        if (temp != null) {
-            if (temp.contains(key))
-                return new KeyRange[] { temp, temp };
-            this.lastContainingKeyRange = null;
-        }
-
         // Search for matching range
-        final int i = ~Collections.binarySearch(this.ranges, new KeyRange(key, key), KeyRange.SORT_BY_MIN);
-        assert i >= 0;                                                  // this.ranges should never contain new KeyRange(key, key)
-        KeyRange left = null;
-        if (i > 0) {
-            if ((left = this.ranges.get(i - 1)).contains(key)) {
-                this.lastContainingKeyRange = left;
-                return new KeyRange[] { left, left };
-            }
-        }
-        KeyRange right = null;
-        if (i < this.ranges.size()) {
-            if ((right = this.ranges.get(i)).contains(key)) {
-                this.lastContainingKeyRange = right;
-                return new KeyRange[] { right, right };
-            }
-        }
+        final int i = this.find(key);
+        final KeyRange left = i >= 0 ? this.ranges.get(i) : null;
+        if (left != null && left.contains(key))
+            return new KeyRange[] { left, left };
+        final KeyRange right = i + 1 < this.ranges.size() ? this.ranges.get(i + 1) : null;
 
         // Not contained
         return new KeyRange[] { left, right };
@@ -333,10 +330,19 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, SizeEstimating
             throw new IllegalArgumentException("null range");
         if (range.isEmpty())
             return this;
-        final ArrayList<KeyRange> list = new ArrayList<>(this.ranges.size() + 1);
-        list.addAll(this.ranges);
-        list.add(range);
-        return new KeyRanges(list);
+
+        // Find the ranges that overlap or are adjacent to the new range; they all get merged with it
+        final byte[] min = range.getMin();
+        final byte[] max = range.getMax();
+        final int lo = this.firstMaxNotBelow(min, true);
+        final int hi = this.firstMinAbove(max, false);
+        if (hi - lo == 1 && this.ranges.get(lo).contains(range))
+            return this;
+        final KeyRange merged = lo < hi ?
+          new KeyRange(KeyRange.compare(this.ranges.get(lo).getMin(), min) < 0 ? this.ranges.get(lo).getMin() : min,
+            KeyRange.compare(this.ranges.get(hi - 1).getMax(), max) > 0 ? this.ranges.get(hi - 1).getMax() : max) :
+          range;
+        return this.replace(lo, hi, merged, null);
     }
 
     /**
@@ -351,7 +357,19 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, SizeEstimating
             throw new IllegalArgumentException("null range");
         if (range.isEmpty())
             return this;
-        return this.intersection(new KeyRanges(range).inverse());
+
+        // Find the ranges that overlap the removed range; they get trimmed or discarded
+        final byte[] min = range.getMin();
+        final byte[] max = range.getMax();
+        final int lo = this.firstMaxNotBelow(min, false);
+        final int hi = this.firstMinAbove(max, true);
+        if (lo >= hi)
+            return this;
+        final KeyRange first = this.ranges.get(lo);
+        final KeyRange last = this.ranges.get(hi - 1);
+        return this.replace(lo, hi,
+          KeyRange.compare(first.getMin(), min) < 0 ? new KeyRange(first.getMin(), min) : null,
+          max != null && KeyRange.compare(last.getMax(), max) > 0 ? new KeyRange(max, last.getMax()) : null);
     }
 
     /**
@@ -366,14 +384,15 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, SizeEstimating
             throw new IllegalArgumentException("null others");
         if (others.length == 0)
             return this;
-        final ArrayList<KeyRange> list = new ArrayList<>(this.ranges.size() + others.length);
-        list.addAll(this.ranges);
+        final ArrayList<Iterator<KeyRange>> iterators = new ArrayList<>(others.length + 1);
+        iterators.add(this.ranges.iterator());
         for (KeyRanges other : others) {
             if (other == null)
                 throw new IllegalArgumentException("null other");
-            list.addAll(other.ranges);
+            iterators.add(other.ranges.iterator());
         }
-        return new KeyRanges(list);
+        final ArrayList<KeyRange> list = KeyRanges.consolidate(Iterators.mergeSorted(iterators, KeyRange.SORT_BY_MIN));
+        return new KeyRanges(list, KeyRanges.mins(list));
     }
 
     /**
@@ -388,14 +407,13 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, SizeEstimating
             throw new IllegalArgumentException("null others");
         if (others.length == 0)
             return this;
-        final ArrayList<KeyRange> list = new ArrayList<>(this.ranges.size() + others.length);
-        list.addAll(this.inverse().ranges);
+        KeyRanges result = this;
         for (KeyRanges other : others) {
             if (other == null)
                 throw new IllegalArgumentException("null other");
-            list.addAll(other.inverse().ranges);
+            result = result.intersect(other);
         }
-        return new KeyRanges(list).inverse();
+        return result;
     }
 
 // Iterable<KeyRange>
@@ -412,7 +430,7 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, SizeEstimating
         estimator
           .addObjectOverhead()                              // this object overhead
           .addArrayListField(this.ranges)                   // this.ranges
-          .addReferenceField();                             // this.lastContainingKeyRange (reference only)
+          .addField(this.mins);                             // this.mins (array only; elements are shared with this.ranges)
         for (KeyRange range : this.ranges)
             estimator.add(range);
     }
@@ -540,16 +558,20 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, SizeEstimating
 
     @Override
     public boolean contains(byte[] key) {
-        final KeyRange[] pair = this.findKey(key);
-        return pair[0] == pair[1] && pair[0] != null;
+        if (key == null)
+            throw new IllegalArgumentException("null key");
+        final int i = this.find(key);
+        return i >= 0 && this.ranges.get(i).contains(key);
     }
 
     @Override
     public byte[] seekHigher(byte[] key) {
-        final KeyRange[] pair = this.findKey(key);
-        if (pair[0] == pair[1])
-            return pair[0] != null ? key : null;
-        return pair[1] != null ? pair[1].getMin() : null;
+        if (key == null)
+            throw new IllegalArgumentException("null key");
+        final int i = this.find(key);
+        if (i >= 0 && this.ranges.get(i).contains(key))
+            return key;
+        return i + 1 < this.ranges.size() ? this.ranges.get(i + 1).getMin() : null;
     }
 
     @Override
@@ -562,10 +584,11 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, SizeEstimating
             final byte[] lastMax = this.ranges.get(this.ranges.size() - 1).getMax();
             return lastMax != null ? lastMax : ByteUtil.EMPTY;
         }
-        final KeyRange[] pair = this.findKey(key);
-        if (pair[0] == pair[1])
-            return pair[0] != null ? key : null;
-        return pair[0] != null ? pair[0].getMax() : null;
+        final int i = this.find(key);
+        if (i < 0)
+            return null;
+        final KeyRange range = this.ranges.get(i);
+        return range.contains(key) ? key : range.getMax();
     }
 
 // Object
@@ -603,32 +626,134 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, SizeEstimating
 
 // Internal methods
 
+    // Find the index of the last range whose min is <= key, or -1 if none
+    private int find(byte[] key) {
+        final byte[][] array = this.mins;
+        int lo = 0;
+        int hi = array.length - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (ByteUtil.compare(array[mid], key) <= 0)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        }
+        return hi;
+    }
+
+    // Find the index of the first range whose max is >= key (or > key if not inclusive), or size() if none
+    private int firstMaxNotBelow(byte[] key, boolean inclusive) {
+        int lo = 0;
+        int hi = this.ranges.size();
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int diff = KeyRange.compare(this.ranges.get(mid).getMax(), key);
+            if (diff > 0 || (inclusive && diff == 0))
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+        return lo;
+    }
+
+    // Find the index of the first range whose min is > key (or >= key if inclusive), or size() if none; null key = infinity
+    private int firstMinAbove(byte[] key, boolean inclusive) {
+        int lo = 0;
+        int hi = this.ranges.size();
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int diff = KeyRange.compare(this.mins[mid], key);
+            if (diff > 0 || (inclusive && diff == 0))
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+        return lo;
+    }
+
+    // Create a new instance with ranges [lo, hi) replaced by the given (non-null) ranges
+    private KeyRanges replace(int lo, int hi, KeyRange range1, KeyRange range2) {
+        final int size = this.ranges.size();
+        final int numAdded = (range1 != null ? 1 : 0) + (range2 != null ? 1 : 0);
+        final ArrayList<KeyRange> list = new ArrayList<>(size - (hi - lo) + numAdded);
+        final byte[][] array = new byte[size - (hi - lo) + numAdded][];
+        list.addAll(this.ranges.subList(0, lo));
+        if (range1 != null)
+            list.add(range1);
+        if (range2 != null)
+            list.add(range2);
+        list.addAll(this.ranges.subList(hi, size));
+        System.arraycopy(this.mins, 0, array, 0, lo);
+        if (range1 != null)
+            array[lo] = range1.getMin();
+        if (range2 != null)
+            array[lo + numAdded - 1] = range2.getMin();
+        System.arraycopy(this.mins, hi, array, lo + numAdded, size - hi);
+        return new KeyRanges(list, array);
+    }
+
+    // Intersect two instances by walking both sorted lists in parallel
+    private KeyRanges intersect(KeyRanges that) {
+        if (this.isFull() || that.isEmpty())
+            return that;
+        if (that.isFull() || this.isEmpty())
+            return this;
+        final ArrayList<KeyRange> list = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < this.ranges.size() && j < that.ranges.size()) {
+            final KeyRange range1 = this.ranges.get(i);
+            final KeyRange range2 = that.ranges.get(j);
+            final byte[] min = ByteUtil.compare(range1.getMin(), range2.getMin()) > 0 ? range1.getMin() : range2.getMin();
+            final int diff = KeyRange.compare(range1.getMax(), range2.getMax());
+            final byte[] max = diff < 0 ? range1.getMax() : range2.getMax();
+            if (KeyRange.compare(min, max) < 0)
+                list.add(new KeyRange(min, max));
+            if (diff <= 0)
+                i++;
+            if (diff >= 0)
+                j++;
+        }
+        return new KeyRanges(list, KeyRanges.mins(list));
+    }
+
+    private static byte[][] mins(ArrayList<KeyRange> ranges) {
+        final byte[][] array = new byte[ranges.size()][];
+        for (int i = 0; i < array.length; i++)
+            array[i] = ranges.get(i).getMin();
+        return array;
+    }
+
     // Return a "minimal" list with these properties:
     //  - Sorted according to KeyRange.SORT_BY_MIN
     //  - No overlapping ranges
     //  - Adjacent ranges consolidated into a single range
-    private static ArrayList<KeyRange> minimize(List<KeyRange> ranges) {
-
-        // Create array
-        final ArrayList<KeyRange> sortedRanges = new ArrayList<>(ranges);
+    private static ArrayList<KeyRange> minimize(Iterable<? extends KeyRange> ranges) {
 
-        // Remove empty ranges
-        for (Iterator<KeyRange> i = sortedRanges.iterator(); i.hasNext(); ) {
-            if (i.next().isEmpty())
-                i.remove();
+        // Copy non-empty ranges
+        final ArrayList<KeyRange> sortedRanges = new ArrayList<>();
+        for (KeyRange range : ranges) {
+            if (range == null)
+                throw new IllegalArgumentException("null range");
+            if (!range.isEmpty())
+                sortedRanges.add(range);
         }
 
-        // Sort remaining ranges by min, then max
+        // Sort ranges by min, then max
         Collections.sort(sortedRanges, KeyRange.SORT_BY_MIN);
 
         // Consolidate
-        final ArrayList<KeyRange> list = new ArrayList<>(ranges.size());
-        KeyRange prev = null;
-        for (KeyRange range : sortedRanges) {
+        final ArrayList<KeyRange> list = KeyRanges.consolidate(sortedRanges.iterator());
+        list.trimToSize();
+        return list;
+    }
 
-            // Sanity check range
-            if (range == null)
-                throw new IllegalArgumentException("null range");
+    // Consolidate non-empty ranges already sorted according to KeyRange.SORT_BY_MIN into a "minimal" list
+    private static ArrayList<KeyRange> consolidate(Iterator<KeyRange> sortedRanges) {
+        final ArrayList<KeyRange> list = new ArrayList<>();
+        KeyRange prev = null;
+        while (sortedRanges.hasNext()) {
+            final KeyRange range = sortedRanges.next();
 
             // Handle first in list
             if (prev == null) {
@@ -646,20 +771,31 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, SizeEstimating
             }
             final int diff2 = KeyRange.compare(range.getMin(), prev.getMax());
             if (diff2 <= 0) {                           // prev and range overlap -> take their union
-                final byte[] max = KeyRange.compare(range.getMax(), prev.getMax()) > 0 ? range.getMax() : prev.getMax();
-                prev = new KeyRange(prev.getMin(), max);
+                if (KeyRange.compare(range.getMax(), prev.getMax()) > 0)
+                    prev = new KeyRange(prev.getMin(), range.getMax());
                 continue;
             }
 
             // OK add it
             list.add(prev);                             // prev and range don't overlap -> accept prev
             prev = range;
-            continue;
         }
         if (prev != null)
             list.add(prev);
-        list.trimToSize();
         return list;
     }
+
+    // Verify list is sorted, non-empty, non-overlapping, and non-adjacent
+    private static boolean isMinimal(List<KeyRange> ranges) {
+        KeyRange prev = null;
+        for (KeyRange range : ranges) {
+            if (range.isEmpty())
+                return false;
+            if (prev != null && KeyRange.compare(prev.getMax(), range.getMin()) >= 0)
+                return false;
+            prev = range;
+        }
+        return true;
+    }
 }
 
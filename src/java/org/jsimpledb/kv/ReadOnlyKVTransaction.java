@@ -0,0 +1,53 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv;
+
+/**
+ * Extension of the {@link KVTransaction} interface for implementations that support a <i>read-only mode</i>.
+ *
+ * <p>
+ * A transaction in read-only mode does not track its reads, and {@link #commit commit()} discards any mutations
+ * and never fails due to a read/write conflict. This is appropriate when the caller knows in advance that it will
+ * not modify the database, and can substantially reduce overhead for transactions that read a lot of data.
+ * </p>
+ *
+ * <p>
+ * Read-only mode is a hint: an implementation may be unable to honor it, for example, when the transaction has already
+ * been modified, or when the implementation wraps another transaction that does not support read-only mode. Callers
+ * should use {@link #isReadOnly} to determine whether read-only mode is actually in effect.
+ * </p>
+ */
+public interface ReadOnlyKVTransaction extends KVTransaction {
+
+    /**
+     * Determine whether this transaction is in read-only mode.
+     *
+     * @return true if read-only mode is in effect
+     */
+    boolean isReadOnly();
+
+    /**
+     * Enable or disable read-only mode.
+     *
+     * <p>
+     * Enabling read-only mode has no effect if this transaction has already been modified.
+     * </p>
+     *
+     * <p>
+     * Read-only mode may be disabled again, in which case mutations are once again committed. However, reads made
+     * while in read-only mode were not tracked. If this transaction goes on to modify the database, {@link #commit commit()}
+     * may therefore throw a {@link RetryTransactionException} if any other transaction has committed in the meantime,
+     * even if no actual conflict occurred.
+     * </p>
+     *
+     * @param readOnly true to enable read-only mode, false to disable
+     * @throws StaleTransactionException if this transaction is no longer usable
+     */
+    void setReadOnly(boolean readOnly);
+}
+
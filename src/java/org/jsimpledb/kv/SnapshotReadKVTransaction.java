@@ -0,0 +1,37 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv;
+
+/**
+ * Extension of the {@link KVTransaction} interface for implementations that support <i>snapshot reads</i>,
+ * i.e., reads that do not create read/write conflicts with other transactions.
+ *
+ * <p>
+ * Normally, every key read by a transaction is checked for conflicting modification by other transactions, and the
+ * transaction fails with a {@link RetryTransactionException} if any such conflict occurs. Snapshot reads are exempt
+ * from this check; they see a consistent view of the database (including this transaction's own mutations), but
+ * the transaction does not fail if the data read is concurrently modified. This is appropriate when the result of a read
+ * does not affect the correctness of the transaction, and can substantially reduce conflicts for large range scans.
+ * </p>
+ */
+public interface SnapshotReadKVTransaction extends KVTransaction {
+
+    /**
+     * Get a view of this transaction whose reads are snapshot reads.
+     *
+     * <p>
+     * Mutations made through the returned view are applied to this transaction as usual.
+     * The returned view becomes unusable when this transaction is committed or rolled back.
+     * </p>
+     *
+     * @return view of this transaction that does not create read/write conflicts
+     * @throws StaleTransactionException if this transaction is no longer usable
+     */
+    KVStore getSnapshotReadView();
+}
+
@@ -0,0 +1,73 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv;
+
+import java.util.Map;
+
+/**
+ * Extension of the {@link KVDatabase} interface for implementations that export performance statistics.
+ *
+ * <p>
+ * Statistics are returned as a mapping from name to (cumulative or instantaneous) value. Implementations should
+ * use the standard names defined by this interface where applicable, so that monitoring code can treat different
+ * key/value databases uniformly; implementation-specific statistics should have names starting with a prefix
+ * identifying the implementation, e.g., {@code "bdb."}.
+ * </p>
+ */
+public interface StatisticsKVDatabase extends KVDatabase {
+
+    /**
+     * Standard statistic: number of reads not satisfied by an in-memory cache.
+     */
+    String CACHE_MISSES = "cache.misses";
+
+    /**
+     * Standard statistic: number of reads satisfied by an in-memory cache.
+     */
+    String CACHE_HITS = "cache.hits";
+
+    /**
+     * Standard statistic: size of the in-memory cache in bytes.
+     */
+    String CACHE_BYTES = "cache.bytes";
+
+    /**
+     * Standard statistic: number of lock requests.
+     */
+    String LOCK_REQUESTS = "lock.requests";
+
+    /**
+     * Standard statistic: number of lock requests that had to wait for another transaction.
+     */
+    String LOCK_WAITS = "lock.waits";
+
+    /**
+     * Standard statistic: number of writes to persistent storage.
+     */
+    String LOG_WRITES = "log.writes";
+
+    /**
+     * Standard statistic: number of synchronous flushes to persistent storage.
+     */
+    String LOG_SYNCS = "log.syncs";
+
+    /**
+     * Standard statistic: number of currently open transactions.
+     */
+    String OPEN_TRANSACTIONS = "transactions.open";
+
+    /**
+     * Get a snapshot of this instance's current statistics.
+     *
+     * @return mapping from statistic name to value
+     * @throws IllegalStateException if this instance is not in a state where statistics are available (e.g., not started)
+     * @throws KVDatabaseException if an error occurs gathering statistics
+     */
+    Map<String, Long> getStatistics();
+}
+
@@ -0,0 +1,43 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv;
+
+/**
+ * Extension of the {@link KVTransaction} interface for implementations that support <i>two-phase commit</i>.
+ *
+ * <p>
+ * Committing a transaction in two phases allows a coordinator to commit several transactions, possibly on different
+ * databases, atomically: first, each transaction is {@linkplain #prepare prepared}; if every transaction prepares
+ * successfully, they are all {@linkplain #commit committed}, otherwise they are all {@linkplain #rollback rolled back}.
+ * </p>
+ *
+ * <p>
+ * Once a transaction has been prepared, it holds whatever resources are required to guarantee that {@link #commit}
+ * will not fail due to a conflict with another transaction. Therefore, other transactions may block until the prepared
+ * transaction is committed or rolled back, which the coordinator should do promptly. Coordinators preparing
+ * multiple transactions should always prepare them in a consistent order to avoid deadlock.
+ * </p>
+ */
+public interface TwoPhaseKVTransaction extends KVTransaction {
+
+    /**
+     * Prepare this transaction for commit.
+     *
+     * <p>
+     * If this method returns normally, this transaction may no longer be accessed except to invoke {@link #commit},
+     * which will not fail due to a conflict, or {@link #rollback}. If this method throws an exception, this transaction
+     * has been rolled back.
+     * </p>
+     *
+     * @throws RetryTransactionException if this transaction conflicts with another transaction
+     * @throws StaleTransactionException if this transaction is no longer usable
+     * @throws KVTransactionException if some other error occurs
+     */
+    void prepare();
+}
+
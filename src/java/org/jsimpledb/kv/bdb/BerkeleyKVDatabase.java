@@ -7,23 +7,29 @@
 
 package org.jsimpledb.kv.bdb;
 
+import com.sleepycat.je.CursorConfig;
 import com.sleepycat.je.Database;
 import com.sleepycat.je.DatabaseConfig;
 import com.sleepycat.je.DatabaseException;
 import com.sleepycat.je.Environment;
 import com.sleepycat.je.EnvironmentConfig;
+import com.sleepycat.je.EnvironmentStats;
+import com.sleepycat.je.StatsConfig;
 import com.sleepycat.je.Transaction;
 import com.sleepycat.je.TransactionConfig;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
 import org.jsimpledb.kv.KVDatabase;
 import org.jsimpledb.kv.KVDatabaseException;
+import org.jsimpledb.kv.StatisticsKVDatabase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,10 +42,28 @@ import org.slf4j.LoggerFactory;
  * Instances may be stopped and (re)started multiple times.
  * </p>
  *
+ * <p>
+ * Transactions use serializable isolation by default. Scans that don't need it may avoid holding read locks on every
+ * key visited by using a {@linkplain CursorConfig#READ_COMMITTED read-committed} {@link CursorConfig}, configured either as the
+ * {@linkplain #setCursorConfig default} or {@linkplain BerkeleyKVTransaction#setCursorConfig per transaction};
+ * entire transactions may be configured for weaker isolation via {@link #setNextTransactionConfig setNextTransactionConfig()}.
+ * </p>
+ *
+ * <p>
+ * Berkeley DB deferred-write databases are not transactional, so they can't be used here. Instead, bulk loads
+ * may avoid a synchronous log flush on each commit by using {@link com.sleepycat.je.Durability#COMMIT_NO_SYNC} or
+ * {@link com.sleepycat.je.Durability#COMMIT_WRITE_NO_SYNC} transactions, followed by a final {@link #flushLog flushLog()}.
+ * </p>
+ *
+ * <p>
+ * Cache, locking, and logging {@linkplain #getStatistics statistics} from the {@link EnvironmentStats} are available
+ * through the {@link StatisticsKVDatabase} interface.
+ * </p>
+ *
  * @see <a href="http://www.oracle.com/technetwork/database/database-technologies/berkeleydb/overview/index-093405.html"
  *  >Oracle Berkeley DB Java Edition</a>
  */
-public class BerkeleyKVDatabase implements KVDatabase {
+public class BerkeleyKVDatabase implements StatisticsKVDatabase {
 
 // Locking order: (1) BerkeleyKVTransaction, (2) BerkeleyKVDatabase
 
@@ -62,6 +86,7 @@ public class BerkeleyKVDatabase implements KVDatabase {
       .setTransactional(true)
       .setTxnSerializableIsolation(true);
     private TransactionConfig defaultTransactionConfig = TransactionConfig.DEFAULT;
+    private CursorConfig defaultCursorConfig = new CursorConfig().setNonSticky(true);
     private File directory;
     private String databaseName = DEFAULT_DATABASE_NAME;
 
@@ -198,6 +223,40 @@ public class BerkeleyKVDatabase implements KVDatabase {
         NEXT_TX_CONFIG.set(config);
     }
 
+    /**
+     * Get the default {@link CursorConfig} to be used by transactions created by this instance.
+     *
+     * <p>
+     * This method returns a copy; use {@link #setCursorConfig setCursorConfig()} to change.
+     * </p>
+     *
+     * @return cursor config
+     */
+    public synchronized CursorConfig getCursorConfig() {
+        return this.defaultCursorConfig.clone();
+    }
+
+    /**
+     * Configure the default {@link CursorConfig} used by transactions for {@link BerkeleyKVTransaction#getRange getRange()}.
+     *
+     * <p>
+     * This default can be overridden for individual transactions via
+     * {@link BerkeleyKVTransaction#setCursorConfig BerkeleyKVTransaction.setCursorConfig()}.
+     * </p>
+     *
+     * <p>
+     * The default setting for this property is a {@linkplain CursorConfig#setNonSticky non-sticky} {@link CursorConfig}.
+     * </p>
+     *
+     * @param config cursor config
+     * @throws IllegalArgumentException if {@code config} is null
+     */
+    public synchronized void setCursorConfig(CursorConfig config) {
+        if (config == null)
+            throw new IllegalArgumentException("null config");
+        this.defaultCursorConfig = config.clone();
+    }
+
     /**
      * Get the {@link DatabaseConfig} to be used by this instance.
      *
@@ -259,6 +318,26 @@ public class BerkeleyKVDatabase implements KVDatabase {
         return this.environment;
     }
 
+    /**
+     * Write any buffered log entries to disk.
+     *
+     * <p>
+     * Use this to make durable the commits of transactions that were configured not to synchronously flush the log,
+     * for example, at the end of a bulk load.
+     * </p>
+     *
+     * @param fsync true to also force the data to persistent storage, false to just write it to the operating system
+     * @throws IllegalStateException if this instance is not {@linkplain #start started}
+     * @throws KVDatabaseException if an error occurs
+     */
+    public void flushLog(boolean fsync) {
+        try {
+            this.getEnvironment().flushLog(fsync);
+        } catch (DatabaseException e) {
+            throw new KVDatabaseException(this, e);
+        }
+    }
+
     /**
      * Get the underlying {@link Database} associated with this instance.
      *
@@ -302,7 +381,7 @@ public class BerkeleyKVDatabase implements KVDatabase {
         } catch (DatabaseException e) {
             throw new KVDatabaseException(this, e);
         }
-        final BerkeleyKVTransaction tx = new BerkeleyKVTransaction(this, bdbTx);
+        final BerkeleyKVTransaction tx = new BerkeleyKVTransaction(this, bdbTx, this.defaultCursorConfig.clone());
 
         // Record transaction for possible cleanup on shutdown
         this.openTransactions.add(tx);
@@ -318,6 +397,62 @@ public class BerkeleyKVDatabase implements KVDatabase {
         this.openTransactions.remove(tx);
     }
 
+// StatisticsKVDatabase
+
+    /**
+     * Get statistics from the underlying {@link Environment}.
+     *
+     * <p>
+     * In addition to the {@linkplain StatisticsKVDatabase standard statistics}, the returned map contains these
+     * Berkeley DB specific statistics:
+     * <ul>
+     *  <li>{@code bdb.binsFetchMiss} - see {@link EnvironmentStats#getNBINsFetchMiss}</li>
+     *  <li>{@code bdb.lnsFetchMiss} - see {@link EnvironmentStats#getNLNsFetchMiss}</li>
+     *  <li>{@code bdb.notResident} - see {@link EnvironmentStats#getNNotResident}</li>
+     *  <li>{@code bdb.lockOwners} - see {@link EnvironmentStats#getNOwners}</li>
+     *  <li>{@code bdb.totalLocks} - see {@link EnvironmentStats#getNTotalLocks}</li>
+     *  <li>{@code bdb.writeLocks} - see {@link EnvironmentStats#getNWriteLocks}</li>
+     * </ul>
+     *
+     * @throws IllegalStateException if this instance is not {@linkplain #start started}
+     * @throws KVDatabaseException if an error occurs
+     */
+    @Override
+    public Map<String, Long> getStatistics() {
+
+        // Snapshot state
+        final Environment env = this.getEnvironment();
+        final int numOpenTransactions;
+        synchronized (this) {
+            numOpenTransactions = this.openTransactions.size();
+        }
+
+        // Get environment stats
+        final EnvironmentStats stats;
+        try {
+            stats = env.getStats(StatsConfig.DEFAULT);
+        } catch (DatabaseException e) {
+            throw new KVDatabaseException(this, e);
+        }
+
+        // Build map
+        final TreeMap<String, Long> map = new TreeMap<>();
+        map.put(CACHE_MISSES, stats.getNCacheMiss());
+        map.put(CACHE_BYTES, stats.getCacheTotalBytes());
+        map.put(LOCK_REQUESTS, stats.getNRequests());
+        map.put(LOCK_WAITS, stats.getNWaits());
+        map.put(LOG_WRITES, stats.getNSequentialWrites() + stats.getNRandomWrites());
+        map.put(LOG_SYNCS, stats.getNLogFSyncs());
+        map.put(OPEN_TRANSACTIONS, (long)numOpenTransactions);
+        map.put("bdb.binsFetchMiss", stats.getNBINsFetchMiss());
+        map.put("bdb.lnsFetchMiss", stats.getNLNsFetchMiss());
+        map.put("bdb.notResident", stats.getNNotResident());
+        map.put("bdb.lockOwners", (long)stats.getNOwners());
+        map.put("bdb.totalLocks", (long)stats.getNTotalLocks());
+        map.put("bdb.writeLocks", (long)stats.getNWriteLocks());
+        return map;
+    }
+
 // Lifecycle
 
     /**
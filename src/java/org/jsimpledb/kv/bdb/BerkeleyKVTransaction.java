@@ -12,6 +12,7 @@ import com.sleepycat.je.CursorConfig;
 import com.sleepycat.je.DatabaseEntry;
 import com.sleepycat.je.DatabaseException;
 import com.sleepycat.je.LockConflictException;
+import com.sleepycat.je.LockMode;
 import com.sleepycat.je.OperationStatus;
 import com.sleepycat.je.Transaction;
 
@@ -44,19 +45,22 @@ public class BerkeleyKVTransaction extends AbstractKVStore implements KVTransact
     private final Logger log = LoggerFactory.getLogger(this.getClass());
     private final BerkeleyKVDatabase store;
     private final Transaction tx;
-    private final CursorConfig cursorConfig = new CursorConfig().setNonSticky(true);
     private final CloseableTracker cursorTracker = new CloseableTracker();  // unclosed Cursors are tracked here
 
+    private CursorConfig cursorConfig;
+    private volatile LockMode lockMode;
     private boolean closed;
 
     /**
      * Constructor.
      */
-    BerkeleyKVTransaction(BerkeleyKVDatabase store, Transaction tx) {
+    BerkeleyKVTransaction(BerkeleyKVDatabase store, Transaction tx, CursorConfig cursorConfig) {
         assert store != null;
         assert tx != null;
+        assert cursorConfig != null;
         this.store = store;
         this.tx = tx;
+        this.cursorConfig = cursorConfig;
     }
 
 // KVTransaction
@@ -75,6 +79,73 @@ public class BerkeleyKVTransaction extends AbstractKVStore implements KVTransact
         return this.tx;
     }
 
+    /**
+     * Get the {@link CursorConfig} used by this transaction for {@link #getRange getRange()}.
+     *
+     * <p>
+     * This method returns a copy; use {@link #setCursorConfig setCursorConfig()} to change.
+     * </p>
+     *
+     * @return cursor config
+     */
+    public synchronized CursorConfig getCursorConfig() {
+        return this.cursorConfig.clone();
+    }
+
+    /**
+     * Configure the {@link CursorConfig} used by this transaction for subsequent invocations of {@link #getRange getRange()}.
+     *
+     * <p>
+     * For example, {@link CursorConfig#READ_COMMITTED} allows a large scan to release its read locks as it goes,
+     * at the cost of serializability.
+     * </p>
+     *
+     * <p>
+     * The default is the {@linkplain BerkeleyKVDatabase#setCursorConfig cursor config} of the associated database.
+     * </p>
+     *
+     * @param cursorConfig cursor config
+     * @throws IllegalArgumentException if {@code cursorConfig} is null
+     */
+    public synchronized void setCursorConfig(CursorConfig cursorConfig) {
+        if (cursorConfig == null)
+            throw new IllegalArgumentException("null cursorConfig");
+        this.cursorConfig = cursorConfig.clone();
+    }
+
+    /**
+     * Get the {@link LockMode} used by this transaction for reads.
+     *
+     * @return lock mode, or null for {@link LockMode#DEFAULT}
+     */
+    public LockMode getLockMode() {
+        return this.lockMode;
+    }
+
+    /**
+     * Configure the {@link LockMode} used by this transaction for subsequent reads, including reads
+     * by iterators previously returned by {@link #getRange getRange()}.
+     *
+     * <p>
+     * For example, {@link LockMode#READ_COMMITTED} reads do not retain their read locks, while {@link LockMode#RMW} reads
+     * acquire write locks up front, avoiding deadlocks in read-modify-write patterns.
+     * </p>
+     *
+     * <p>
+     * Because Berkeley DB does not allow {@link LockMode#READ_COMMITTED} with cursors, in that mode {@link #getRange getRange()}
+     * instead opens its cursor with a {@linkplain CursorConfig#setReadCommitted read-committed} {@link CursorConfig}.
+     * </p>
+     *
+     * <p>
+     * The default is null, i.e., {@link LockMode#DEFAULT}.
+     * </p>
+     *
+     * @param lockMode lock mode, or null for {@link LockMode#DEFAULT}
+     */
+    public void setLockMode(LockMode lockMode) {
+        this.lockMode = lockMode;
+    }
+
     @Override
     public void setTimeout(long timeout) {
         if (timeout < 0)
@@ -93,7 +164,7 @@ public class BerkeleyKVTransaction extends AbstractKVStore implements KVTransact
             throw new IllegalArgumentException("key starts with 0xff");
         final DatabaseEntry value = new DatabaseEntry();
         try {
-            final OperationStatus status = this.store.getDatabase().get(this.tx, new DatabaseEntry(key), value, null);
+            final OperationStatus status = this.store.getDatabase().get(this.tx, new DatabaseEntry(key), value, this.lockMode);
             switch (status) {
             case SUCCESS:
                 return value.getData();
@@ -126,9 +197,12 @@ public class BerkeleyKVTransaction extends AbstractKVStore implements KVTransact
         if (this.closed)
             throw new StaleTransactionException(this);
         this.cursorTracker.poll();
+        CursorConfig config = this.cursorConfig;
+        if (this.lockMode == LockMode.READ_COMMITTED && !config.getReadCommitted())
+            config = config.clone().setReadCommitted(true);
         final Cursor cursor;
         try {
-            cursor = this.store.getDatabase().openCursor(this.tx, this.cursorConfig);
+            cursor = this.store.getDatabase().openCursor(this.tx, config);
         } catch (DatabaseException e) {
             throw this.wrapException(e);
         }
@@ -242,6 +316,11 @@ public class BerkeleyKVTransaction extends AbstractKVStore implements KVTransact
         return new KVTransactionException(this, e);
     }
 
+    private LockMode getCursorLockMode() {
+        final LockMode mode = this.lockMode;
+        return mode != LockMode.READ_COMMITTED ? mode : null;
+    }
+
     private KVTransactionException weirdStatus(OperationStatus status, String methodName) {
         return new KVTransactionException(BerkeleyKVTransaction.this, "unexpected status " + status + " from " + methodName + "()");
     }
@@ -352,8 +431,9 @@ public class BerkeleyKVTransaction extends AbstractKVStore implements KVTransact
             final DatabaseEntry value = new DatabaseEntry();
             this.canRemoveWithCursor = false;
             try {
+                final LockMode lockMode = BerkeleyKVTransaction.this.getCursorLockMode();
                 final OperationStatus status = this.reverse ?
-                  this.cursor.getPrev(key, value, null) : this.cursor.getNext(key, value, null);
+                  this.cursor.getPrev(key, value, lockMode) : this.cursor.getNext(key, value, lockMode);
                 switch (status) {
                 case SUCCESS:
                     final byte[] keyData = key.getData();
@@ -386,7 +466,7 @@ public class BerkeleyKVTransaction extends AbstractKVStore implements KVTransact
                 // We don't care whether maxKey is found or not, we are just positioning the cursor.
                 try {
                     final OperationStatus status = this.cursor.getSearchKey(
-                      new DatabaseEntry(this.maxKey), new DatabaseEntry(), null);
+                      new DatabaseEntry(this.maxKey), new DatabaseEntry(), BerkeleyKVTransaction.this.getCursorLockMode());
                     switch (status) {
                     case SUCCESS:
                     case NOTFOUND:
@@ -401,7 +481,7 @@ public class BerkeleyKVTransaction extends AbstractKVStore implements KVTransact
                 final DatabaseEntry key = new DatabaseEntry(this.minKey);
                 final DatabaseEntry value = new DatabaseEntry();
                 try {
-                    final OperationStatus status = this.cursor.getSearchKeyRange(key, value, null);
+                    final OperationStatus status = this.cursor.getSearchKeyRange(key, value, BerkeleyKVTransaction.this.getCursorLockMode());
                     switch (status) {
                     case SUCCESS:
                         final byte[] keyData = key.getData();
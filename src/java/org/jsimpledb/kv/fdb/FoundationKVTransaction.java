@@ -12,18 +12,30 @@ import com.foundationdb.KeyValue;
 import com.foundationdb.MutationType;
 import com.foundationdb.Range;
 import com.foundationdb.ReadTransaction;
+import com.foundationdb.StreamingMode;
 import com.foundationdb.Transaction;
 import com.foundationdb.async.AsyncIterator;
+import com.foundationdb.async.Future;
 import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterators;
 import com.google.common.primitives.Bytes;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
+import org.jsimpledb.kv.AbstractKVStore;
+import org.jsimpledb.kv.AsyncKVStore;
 import org.jsimpledb.kv.KVPair;
-import org.jsimpledb.kv.KVTransaction;
+import org.jsimpledb.kv.KVStore;
 import org.jsimpledb.kv.KVTransactionException;
 import org.jsimpledb.kv.RetryTransactionException;
+import org.jsimpledb.kv.SnapshotReadKVTransaction;
 import org.jsimpledb.kv.StaleTransactionException;
 import org.jsimpledb.kv.TransactionTimeoutException;
 import org.jsimpledb.util.ByteReader;
@@ -32,8 +44,18 @@ import org.jsimpledb.util.ByteWriter;
 
 /**
  * FoundationDB transaction.
+ *
+ * <p>
+ * Instances support {@linkplain AsyncKVStore asynchronous reads} natively.
+ * </p>
+ *
+ * <p>
+ * Instances also support {@linkplain #getSnapshotReadView snapshot reads}, which do not add read conflict ranges
+ * to the transaction. Range iteration uses {@link StreamingMode#ITERATOR}, which starts with small batches and grows
+ * them as iteration proceeds; this suits scans that may be abandoned early.
+ * </p>
  */
-public class FoundationKVTransaction implements KVTransaction {
+public class FoundationKVTransaction implements SnapshotReadKVTransaction, AsyncKVStore {
 
     private static final byte[] MIN_KEY = ByteUtil.EMPTY;                   // minimum possible key (inclusive)
     private static final byte[] MAX_KEY = new byte[] { (byte)0xff };        // maximum possible key (exclusive)
@@ -41,6 +63,7 @@ public class FoundationKVTransaction implements KVTransaction {
     private final FoundationKVDatabase store;
     private final Transaction tx;
     private final byte[] keyPrefix;
+    private final SnapshotReadView snapshotReadView = new SnapshotReadView();
 
     private volatile boolean stale;
     private volatile boolean canceled;
@@ -81,37 +104,25 @@ public class FoundationKVTransaction implements KVTransaction {
 
     @Override
     public byte[] get(byte[] key) {
-        if (this.stale)
-            throw new StaleTransactionException(this);
-        if (key.length > 0 && key[0] == (byte)0xff)
-            throw new IllegalArgumentException("key starts with 0xff");
-        try {
-            return this.tx.get(this.addPrefix(key)).get();
-        } catch (FDBException e) {
-            throw this.wrapException(e);
-        }
+        return this.get(key, false);
     }
 
     @Override
     public KVPair getAtLeast(byte[] minKey) {
-        if (this.stale)
-            throw new StaleTransactionException(this);
-        if (minKey != null && minKey.length > 0 && minKey[0] == (byte)0xff)
-            return null;
-        return this.getFirstInRange(minKey, null, false);
+        return this.getAtLeast(minKey, false);
     }
 
     @Override
     public KVPair getAtMost(byte[] maxKey) {
-        if (this.stale)
-            throw new StaleTransactionException(this);
-        if (maxKey != null && maxKey.length > 0 && maxKey[0] == (byte)0xff)
-            maxKey = null;
-        return this.getFirstInRange(null, maxKey, true);
+        return this.getAtMost(maxKey, false);
     }
 
     @Override
     public Iterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+        return this.getRange(minKey, maxKey, reverse, false);
+    }
+
+    private Iterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse, boolean snapshot) {
         if (this.stale)
             throw new StaleTransactionException(this);
         if (minKey != null && minKey.length > 0 && minKey[0] == (byte)0xff)
@@ -121,8 +132,9 @@ public class FoundationKVTransaction implements KVTransaction {
         if (minKey != null && maxKey != null && ByteUtil.compare(minKey, maxKey) > 0)
             throw new IllegalArgumentException("minKey > maxKey");
         try {
-            return Iterators.transform(this.tx.getRange(this.addPrefix(minKey, maxKey),
-              ReadTransaction.ROW_LIMIT_UNLIMITED, reverse).iterator(), new Function<KeyValue, KVPair>() {
+            return Iterators.transform(this.getReader(snapshot).getRange(this.addPrefix(minKey, maxKey),
+              ReadTransaction.ROW_LIMIT_UNLIMITED, reverse, StreamingMode.ITERATOR).iterator(),
+              new Function<KeyValue, KVPair>() {
                 @Override
                 public KVPair apply(KeyValue kv) {
                     return new KVPair(FoundationKVTransaction.this.removePrefix(kv.getKey()), kv.getValue());
@@ -133,10 +145,39 @@ public class FoundationKVTransaction implements KVTransaction {
         }
     }
 
-    private KVPair getFirstInRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+    private byte[] get(byte[] key, boolean snapshot) {
+        if (this.stale)
+            throw new StaleTransactionException(this);
+        if (key.length > 0 && key[0] == (byte)0xff)
+            throw new IllegalArgumentException("key starts with 0xff");
+        try {
+            return this.getReader(snapshot).get(this.addPrefix(key)).get();
+        } catch (FDBException e) {
+            throw this.wrapException(e);
+        }
+    }
+
+    private KVPair getAtLeast(byte[] minKey, boolean snapshot) {
+        if (this.stale)
+            throw new StaleTransactionException(this);
+        if (minKey != null && minKey.length > 0 && minKey[0] == (byte)0xff)
+            return null;
+        return this.getFirstInRange(minKey, null, false, snapshot);
+    }
+
+    private KVPair getAtMost(byte[] maxKey, boolean snapshot) {
+        if (this.stale)
+            throw new StaleTransactionException(this);
+        if (maxKey != null && maxKey.length > 0 && maxKey[0] == (byte)0xff)
+            maxKey = null;
+        return this.getFirstInRange(null, maxKey, true, snapshot);
+    }
+
+    // We only want one row, so ask for exactly that instead of streaming batches
+    private KVPair getFirstInRange(byte[] minKey, byte[] maxKey, boolean reverse, boolean snapshot) {
         try {
-            final AsyncIterator<KeyValue> i = this.tx.getRange(this.addPrefix(minKey, maxKey),
-              ReadTransaction.ROW_LIMIT_UNLIMITED, reverse).iterator();
+            final AsyncIterator<KeyValue> i = this.getReader(snapshot).getRange(this.addPrefix(minKey, maxKey),
+              1, reverse, StreamingMode.EXACT).iterator();
             if (!i.hasNext())
                 return null;
             final KeyValue kv = i.next();
@@ -146,6 +187,10 @@ public class FoundationKVTransaction implements KVTransaction {
         }
     }
 
+    private ReadTransaction getReader(boolean snapshot) {
+        return snapshot ? this.tx.snapshot() : this.tx;
+    }
+
     @Override
     public void put(byte[] key, byte[] value) {
         if (this.stale)
@@ -261,6 +306,84 @@ public class FoundationKVTransaction implements KVTransaction {
         }
     }
 
+// SnapshotReadKVTransaction
+
+    /**
+     * Get a view of this transaction whose reads are FoundationDB snapshot reads.
+     *
+     * <p>
+     * Snapshot reads see this transaction's own writes, but do not add read conflict ranges.
+     * </p>
+     */
+    @Override
+    public KVStore getSnapshotReadView() {
+        if (this.stale)
+            throw new StaleTransactionException(this);
+        return this.snapshotReadView;
+    }
+
+// AsyncKVStore
+
+    @Override
+    public ListenableFuture<byte[]> getAsync(byte[] key) {
+        if (this.stale)
+            throw new StaleTransactionException(this);
+        if (key.length > 0 && key[0] == (byte)0xff)
+            throw new IllegalArgumentException("key starts with 0xff");
+        try {
+            return this.toListenableFuture(this.tx.get(this.addPrefix(key)));
+        } catch (FDBException e) {
+            throw this.wrapException(e);
+        }
+    }
+
+    @Override
+    public ListenableFuture<List<KVPair>> getRangeAsync(byte[] minKey, byte[] maxKey, boolean reverse, int limit) {
+        if (this.stale)
+            throw new StaleTransactionException(this);
+        Preconditions.checkArgument(limit >= 0, "limit < 0");
+        if (minKey != null && minKey.length > 0 && minKey[0] == (byte)0xff)
+            return Futures.immediateFuture(Collections.<KVPair>emptyList());
+        if (maxKey != null && maxKey.length > 0 && maxKey[0] == (byte)0xff)
+            maxKey = null;
+        if (minKey != null && maxKey != null && ByteUtil.compare(minKey, maxKey) > 0)
+            throw new IllegalArgumentException("minKey > maxKey");
+        try {
+            return this.toListenableFuture(this.tx.getRange(this.addPrefix(minKey, maxKey),
+              limit != 0 ? limit : ReadTransaction.ROW_LIMIT_UNLIMITED, reverse,
+              limit != 0 ? StreamingMode.EXACT : StreamingMode.WANT_ALL).asList()
+              .map(new com.foundationdb.async.Function<List<KeyValue>, List<KVPair>>() {
+                @Override
+                public List<KVPair> apply(List<KeyValue> kvs) {
+                    final ArrayList<KVPair> list = new ArrayList<>(kvs.size());
+                    for (KeyValue kv : kvs)
+                        list.add(new KVPair(FoundationKVTransaction.this.removePrefix(kv.getKey()), kv.getValue()));
+                    return list;
+                }
+            }));
+        } catch (FDBException e) {
+            throw this.wrapException(e);
+        }
+    }
+
+    // Bridge a FoundationDB future to a ListenableFuture, wrapping any FDBException
+    private <T> ListenableFuture<T> toListenableFuture(final Future<T> future) {
+        final SettableFuture<T> result = SettableFuture.create();
+        future.onReady(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    result.set(future.get());
+                } catch (FDBException e) {
+                    result.setException(FoundationKVTransaction.this.wrapException(e));
+                } catch (RuntimeException e) {
+                    result.setException(e);
+                }
+            }
+        });
+        return result;
+    }
+
 // Other methods
 
     /**
@@ -309,5 +432,60 @@ public class FoundationKVTransaction implements KVTransaction {
         System.arraycopy(key, this.keyPrefix.length, stripped, 0, stripped.length);
         return stripped;
     }
+
+// SnapshotReadView
+
+    private class SnapshotReadView extends AbstractKVStore {
+
+        @Override
+        public byte[] get(byte[] key) {
+            return FoundationKVTransaction.this.get(key, true);
+        }
+
+        @Override
+        public KVPair getAtLeast(byte[] minKey) {
+            return FoundationKVTransaction.this.getAtLeast(minKey, true);
+        }
+
+        @Override
+        public KVPair getAtMost(byte[] maxKey) {
+            return FoundationKVTransaction.this.getAtMost(maxKey, true);
+        }
+
+        @Override
+        public Iterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+            return FoundationKVTransaction.this.getRange(minKey, maxKey, reverse, true);
+        }
+
+        @Override
+        public void put(byte[] key, byte[] value) {
+            FoundationKVTransaction.this.put(key, value);
+        }
+
+        @Override
+        public void remove(byte[] key) {
+            FoundationKVTransaction.this.remove(key);
+        }
+
+        @Override
+        public void removeRange(byte[] minKey, byte[] maxKey) {
+            FoundationKVTransaction.this.removeRange(minKey, maxKey);
+        }
+
+        @Override
+        public byte[] encodeCounter(long value) {
+            return FoundationKVTransaction.this.encodeCounter(value);
+        }
+
+        @Override
+        public long decodeCounter(byte[] bytes) {
+            return FoundationKVTransaction.this.decodeCounter(bytes);
+        }
+
+        @Override
+        public void adjustCounter(byte[] key, long amount) {
+            FoundationKVTransaction.this.adjustCounter(key, amount);
+        }
+    }
 }
 
@@ -22,6 +22,9 @@ import org.iq80.leveldb.DBFactory;
 import org.iq80.leveldb.Options;
 import org.iq80.leveldb.ReadOptions;
 import org.jsimpledb.kv.KVTransactionException;
+import org.jsimpledb.kv.mvcc.AtomicKVStore;
+import org.jsimpledb.kv.mvcc.CounterDeltaKVStore;
+import org.jsimpledb.kv.mvcc.RangeTombstoneKVStore;
 import org.jsimpledb.kv.mvcc.SnapshotKVDatabase;
 import org.jsimpledb.kv.mvcc.SnapshotKVTransaction;
 import org.jsimpledb.kv.mvcc.SnapshotVersion;
@@ -41,6 +44,19 @@ import org.slf4j.LoggerFactory;
  * The LevelDB Java implementation is configurable by specifying the {@link DBFactory} implementation.
  * </p>
  *
+ * <p>
+ * LevelDB can only remove a range of keys by removing each key individually. To make the cost of committing
+ * large range removals independent of the number of keys removed, {@linkplain #setRangeTombstones range tombstones}
+ * may be enabled, in which case range removals are recorded by a {@link RangeTombstoneKVStore} and physically
+ * applied in the background.
+ * </p>
+ *
+ * <p>
+ * Similarly, LevelDB applies each counter adjustment by reading the counter's current value while commits are blocked.
+ * To avoid this for heavily adjusted counters, {@linkplain #setCounterDeltas counter deltas} may be enabled, in which case
+ * counter adjustments are recorded as blind writes by a {@link CounterDeltaKVStore} and folded in the background.
+ * </p>
+ *
  * @see <a href="https://github.com/dain/leveldb">leveldb</a>
  * @see <a href="https://github.com/fusesource/leveldbjni">leveldbjni</a>
  */
@@ -74,6 +90,8 @@ public class LevelDBKVDatabase extends SnapshotKVDatabase {
         }
       });
     private File directory;
+    private boolean rangeTombstones;
+    private boolean counterDeltas;
     private DB db;
     private boolean stopping;
 
@@ -161,7 +179,14 @@ public class LevelDBKVDatabase extends SnapshotKVDatabase {
         }
 
         // Configure KVStore
-        this.setKVStore(new LevelDBKVStore(this.db, new ReadOptions().verifyChecksums(this.options.verifyChecksums()), null));
+        final LevelDBKVStore kvstore = new LevelDBKVStore(this.db,
+          new ReadOptions().verifyChecksums(this.options.verifyChecksums()), null);
+        AtomicKVStore wrapper = kvstore;
+        if (this.rangeTombstones)
+            wrapper = new RangeTombstoneKVStore(wrapper);
+        if (this.counterDeltas)
+            wrapper = new CounterDeltaKVStore(wrapper);
+        this.setKVStore(wrapper);
 
         // Add shutdown hook so we don't leak native resources
         if (this.shutdownHookRegistered.compareAndSet(false, true)) {
@@ -196,8 +221,17 @@ public class LevelDBKVDatabase extends SnapshotKVDatabase {
             // Sanity check
             assert this.db != null;
 
-            // Close KVStore
-            ((LevelDBKVStore)this.getKVStore()).close();
+            // Close KVStore(s)
+            AtomicKVStore kvstore = this.getKVStore();
+            if (kvstore instanceof CounterDeltaKVStore) {
+                ((CounterDeltaKVStore)kvstore).close();
+                kvstore = ((CounterDeltaKVStore)kvstore).getKVStore();
+            }
+            if (kvstore instanceof RangeTombstoneKVStore) {
+                ((RangeTombstoneKVStore)kvstore).close();
+                kvstore = ((RangeTombstoneKVStore)kvstore).getKVStore();
+            }
+            ((LevelDBKVStore)kvstore).close();
             this.setKVStore(null);
 
             // Shut down LevelDB database
@@ -235,6 +269,62 @@ public class LevelDBKVDatabase extends SnapshotKVDatabase {
         this.directory = directory;
     }
 
+    /**
+     * Determine whether range removals are recorded as range tombstones.
+     *
+     * @return true if range tombstones are enabled
+     */
+    public synchronized boolean isRangeTombstones() {
+        return this.rangeTombstones;
+    }
+
+    /**
+     * Configure whether range removals are recorded as range tombstones and physically applied in the background.
+     *
+     * <p>
+     * When enabled, keys having the prefix {@link RangeTombstoneKVStore#DEFAULT_META_PREFIX} are reserved.
+     * Once a database has been used with range tombstones enabled, it should not be reopened with them disabled
+     * unless all tombstones have been compacted, otherwise removed keys may reappear.
+     * </p>
+     *
+     * <p>
+     * Default false. Takes effect the next time this instance is {@linkplain #start started}.
+     * </p>
+     *
+     * @param rangeTombstones true to enable range tombstones
+     */
+    public synchronized void setRangeTombstones(boolean rangeTombstones) {
+        this.rangeTombstones = rangeTombstones;
+    }
+
+    /**
+     * Determine whether counter adjustments are recorded as counter deltas.
+     *
+     * @return true if counter deltas are enabled
+     */
+    public synchronized boolean isCounterDeltas() {
+        return this.counterDeltas;
+    }
+
+    /**
+     * Configure whether counter adjustments are recorded as counter deltas and folded into counter values in the background.
+     *
+     * <p>
+     * When enabled, keys having the prefix {@link CounterDeltaKVStore#DEFAULT_META_PREFIX} are reserved.
+     * Once a database has been used with counter deltas enabled, it should not be reopened with them disabled
+     * unless all deltas have been compacted, otherwise counter adjustments may be lost.
+     * </p>
+     *
+     * <p>
+     * Default false. Takes effect the next time this instance is {@linkplain #start started}.
+     * </p>
+     *
+     * @param counterDeltas true to enable counter deltas
+     */
+    public synchronized void setCounterDeltas(boolean counterDeltas) {
+        this.counterDeltas = counterDeltas;
+    }
+
     /**
      * Get the underlying {@link DB} associated with this instance.
      *
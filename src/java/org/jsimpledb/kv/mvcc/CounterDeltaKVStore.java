@@ -0,0 +1,356 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.mvcc;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.jsimpledb.kv.CloseableKVStore;
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVPairIterator;
+import org.jsimpledb.kv.KVStore;
+import org.jsimpledb.kv.KeyRange;
+import org.jsimpledb.kv.KeyRanges;
+import org.jsimpledb.kv.util.AbstractOverlayKVStore;
+import org.jsimpledb.util.ByteUtil;
+
+/**
+ * {@link AtomicKVStore} wrapper that applies counter adjustments as commutative delta records.
+ *
+ * <p>
+ * Many {@link AtomicKVStore} implementations apply a counter adjustment by reading the counter's current value,
+ * adding the adjustment, and writing the result back, all while {@link #mutate mutate()} excludes other mutations.
+ * This class instead records each counter's cumulative pending adjustment as a delta entry stored under a reserved
+ * meta-data key prefix in the underlying {@link AtomicKVStore}, written in the same atomic batch as the other mutations.
+ * Because pending deltas are also kept in memory, recording an adjustment never requires reading from the underlying
+ * {@link AtomicKVStore}. Deltas are folded into counter values lazily on read, and folded into the stored values later
+ * by a background compaction thread, a batch of counters at a time. Multiple adjustments to the same counter made
+ * between compactions are therefore coalesced into a single read-modify-write.
+ * </p>
+ *
+ * <p>
+ * A put or removal of a key discards any pending delta for that key. Consistent with {@link MutableView},
+ * a delta has no effect if the counter has no value or its value is not a valid counter encoding.
+ * </p>
+ *
+ * <p>
+ * Keys having the meta-data key prefix are not visible through this instance, and attempts to write them result in an
+ * {@link IllegalArgumentException}; range removals covering them are silently restricted to the remaining keys.
+ * </p>
+ *
+ * <p>
+ * For consistent reads, use {@link #snapshot}, which returns a snapshot of the underlying {@link AtomicKVStore}
+ * combined with the deltas pending at the same point in time.
+ * </p>
+ *
+ * <p>
+ * Instances must be {@link #close}'d when no longer needed to stop the background compaction thread.
+ * This does not close the underlying {@link AtomicKVStore}.
+ * </p>
+ */
+public class CounterDeltaKVStore extends AbstractOverlayKVStore {
+
+    /**
+     * Default meta-data key prefix under which counter deltas are stored.
+     */
+    public static final byte[] DEFAULT_META_PREFIX = new byte[] { (byte)0xff, (byte)0xfd };
+
+    /**
+     * Default delay in milliseconds between the appearance of pending deltas and their compaction.
+     */
+    public static final int DEFAULT_COMPACTION_DELAY = 1000;
+
+    private final KeyRanges visible;
+
+    private TreeMap<byte[], Long> deltas = new TreeMap<>(ByteUtil.COMPARATOR);       // copy on write; never modified in place
+    private long compactions;
+
+// Constructors
+
+    /**
+     * Convenience constructor. Uses {@link #DEFAULT_META_PREFIX}.
+     *
+     * @param kv underlying {@link AtomicKVStore}
+     * @throws IllegalArgumentException if {@code kv} is null
+     */
+    public CounterDeltaKVStore(AtomicKVStore kv) {
+        this(kv, DEFAULT_META_PREFIX);
+    }
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * Any existing deltas are read from {@code kv}, and the background compaction thread is started.
+     * The {@linkplain #setCompactionDelay compaction delay} is initially {@link #DEFAULT_COMPACTION_DELAY}.
+     * </p>
+     *
+     * @param kv underlying {@link AtomicKVStore}
+     * @param metaPrefix key prefix reserved for counter delta meta-data
+     * @throws IllegalArgumentException if either parameter is null
+     * @throws IllegalArgumentException if {@code metaPrefix} is empty
+     */
+    public CounterDeltaKVStore(AtomicKVStore kv, byte[] metaPrefix) {
+        super(kv, metaPrefix);
+        this.visible = new KeyRanges(this.metaRange).inverse();
+        this.setCompactionDelay(DEFAULT_COMPACTION_DELAY);
+
+        // Load existing deltas
+        for (KVPair pair : this.loadMetaData())
+            this.deltas.put(pair.getKey(), this.kv.decodeCounter(pair.getValue()));
+        if (this.log.isDebugEnabled())
+            this.log.debug("loaded " + this.deltas.size() + " counter delta(s) in " + this);
+
+        // Start compaction thread
+        this.startCompactor();
+    }
+
+// Accessors
+
+    /**
+     * Get the current pending deltas, i.e., the counter adjustments that have been applied
+     * but not yet folded into the values stored in the underlying {@link AtomicKVStore}.
+     *
+     * @return unmodifiable mapping from counter key to pending adjustment
+     */
+    public synchronized SortedMap<byte[], Long> getDeltas() {
+        return Collections.unmodifiableSortedMap(this.deltas);
+    }
+
+// KVStore
+
+    @Override
+    public byte[] get(byte[] key) {
+        key.getClass();
+        if (this.metaRange.contains(key))
+            return null;
+        synchronized (this) {
+            this.checkOpen();
+            final Long delta = this.deltas.get(key);
+            if (delta != null)                                      // read the value atomically with respect to compaction
+                return CounterDeltaKVStore.fold(this.kv, this.kv.get(key), delta);
+        }
+        return this.kv.get(key);
+    }
+
+    @Override
+    public Iterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+        final long compactionCount;
+        synchronized (this) {
+            this.checkOpen();
+            compactionCount = this.compactions;
+        }
+        return new FoldingIterator(AbstractOverlayKVStore.getVisibleRange(this.kv, minKey, maxKey, this.visible, reverse),
+          this, compactionCount);
+    }
+
+// AtomicKVStore
+
+    @Override
+    public synchronized CloseableKVStore snapshot() {
+        this.checkOpen();
+        return new Snapshot(this.kv.snapshot(), this.deltas, this.visible);
+    }
+
+    @Override
+    public synchronized void mutate(Mutations mutations, boolean sync) {
+        Preconditions.checkArgument(mutations != null, "null mutations");
+        this.checkOpen();
+
+        // Build corresponding mutations for the underlying store, converting counter adjustments into delta updates
+        final Writes writes = new Writes();
+        final TreeSet<byte[]> metaRemoves = new TreeSet<>(ByteUtil.COMPARATOR);
+        TreeMap<byte[], Long> newDeltas = this.deltas;
+        KeyRanges removes = KeyRanges.EMPTY;
+        for (KeyRange range : mutations.getRemoveRanges()) {
+            final KeyRanges ranges = new KeyRanges(range).remove(this.metaRange);
+            for (KeyRange remove : ranges.asList()) {
+                if (this.getDeltas(newDeltas, remove).isEmpty())
+                    continue;
+                if (newDeltas == this.deltas)
+                    newDeltas = new TreeMap<>(this.deltas);
+                final NavigableMap<byte[], Long> removed = this.getDeltas(newDeltas, remove);
+                for (byte[] key : removed.keySet())
+                    metaRemoves.add(this.getMetaKey(key));
+                removed.clear();
+            }
+            removes = removes.union(ranges);
+        }
+        for (Map.Entry<byte[], byte[]> entry : mutations.getPutPairs()) {
+            final byte[] key = entry.getKey();
+            this.checkKey(key);
+            writes.getPuts().put(key, entry.getValue());
+            if (newDeltas.containsKey(key)) {
+                if (newDeltas == this.deltas)
+                    newDeltas = new TreeMap<>(this.deltas);
+                newDeltas.remove(key);
+                metaRemoves.add(this.getMetaKey(key));
+            }
+        }
+        for (Map.Entry<byte[], Long> entry : mutations.getAdjustPairs()) {
+            final byte[] key = entry.getKey();
+            this.checkKey(key);
+            final Long oldDelta = newDeltas.get(key);
+            final long delta = (oldDelta != null ? oldDelta : 0) + entry.getValue();
+            final byte[] metaKey = this.getMetaKey(key);
+            if (delta == 0 && oldDelta == null)
+                continue;
+            if (newDeltas == this.deltas)
+                newDeltas = new TreeMap<>(this.deltas);
+            if (delta != 0) {
+                newDeltas.put(key.clone(), delta);
+                writes.getPuts().put(metaKey, this.kv.encodeCounter(delta));
+                metaRemoves.remove(metaKey);
+            } else {
+                newDeltas.remove(key);
+                metaRemoves.add(metaKey);
+            }
+        }
+        for (byte[] metaKey : metaRemoves)
+            removes = removes.add(new KeyRange(metaKey));
+        writes.setRemoves(removes);
+
+        // Apply mutations and delta updates atomically
+        if (!writes.isEmpty())
+            this.kv.mutate(writes, sync);
+        this.deltas = newDeltas;
+        if (!this.deltas.isEmpty())
+            this.notifyAll();
+    }
+
+// AbstractOverlayKVStore
+
+    @Override
+    protected boolean isCompactionNeeded() {
+        return !this.deltas.isEmpty();
+    }
+
+    // Fold up to compactionBatchSize pending deltas into the corresponding stored counter values; returns true if more remain
+    @Override
+    protected boolean compactStep() {
+        assert Thread.holdsLock(this);
+        final int compactionBatchSize = this.getCompactionBatchSize();
+        final Writes writes = new Writes();
+        final ArrayList<KeyRange> metaRemoves = new ArrayList<>();
+        final TreeMap<byte[], Long> newDeltas = new TreeMap<>(this.deltas);
+        for (Iterator<Map.Entry<byte[], Long>> i = newDeltas.entrySet().iterator();
+          metaRemoves.size() < compactionBatchSize && i.hasNext(); ) {
+            final Map.Entry<byte[], Long> entry = i.next();
+            final byte[] key = entry.getKey();
+            final byte[] oldValue = this.kv.get(key);
+            final byte[] newValue = CounterDeltaKVStore.fold(this.kv, oldValue, entry.getValue());
+            if (newValue != oldValue)
+                writes.getPuts().put(key, newValue);
+            metaRemoves.add(new KeyRange(this.getMetaKey(key)));
+            i.remove();
+        }
+        writes.setRemoves(new KeyRanges(metaRemoves));
+        this.kv.mutate(writes, false);
+        this.deltas = newDeltas;
+        this.compactions++;
+        if (this.log.isTraceEnabled())
+            this.log.trace(this + " compacted " + metaRemoves.size() + " counter delta(s)");
+        return !newDeltas.isEmpty();
+    }
+
+// Internal methods
+
+    private NavigableMap<byte[], Long> getDeltas(TreeMap<byte[], Long> map, KeyRange range) {
+        return range.getMax() != null ?
+          map.subMap(range.getMin(), true, range.getMax(), false) : map.tailMap(range.getMin(), true);
+    }
+
+    // Fold the current pending delta (if any) into a value just read from the underlying store by an iterator created
+    // after compactionCount compactions; the value must be re-read if it may have been compacted since it was read
+    private synchronized byte[] fold(byte[] key, byte[] value, long compactionCount) {
+        final Long delta = this.deltas.get(key);
+        if (delta == null && compactionCount == this.compactions)
+            return value;
+        return CounterDeltaKVStore.fold(this.kv, this.kv.get(key), delta);     // re-read atomically with respect to compaction
+    }
+
+    // Apply delta to counter value, if the value exists and is a valid counter encoding
+    private static byte[] fold(KVStore kv, byte[] value, Long delta) {
+        if (value == null || delta == null)
+            return value;
+        try {
+            return kv.encodeCounter(kv.decodeCounter(value) + delta);
+        } catch (IllegalArgumentException e) {
+            return value;
+        }
+    }
+
+// Snapshot
+
+    private static class Snapshot extends OverlaySnapshot {
+
+        private final TreeMap<byte[], Long> deltas;
+
+        Snapshot(CloseableKVStore kv, TreeMap<byte[], Long> deltas, KeyRanges visible) {
+            super(kv, visible);
+            this.deltas = deltas;
+        }
+
+        @Override
+        public byte[] get(byte[] key) {
+            return this.visible.contains(key) ? this.fold(key, this.kv.get(key)) : null;
+        }
+
+        @Override
+        public Iterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+            return new FoldingIterator(
+              AbstractOverlayKVStore.getVisibleRange(this.kv, minKey, maxKey, this.visible, reverse), this);
+        }
+
+        // Fold the snapshot's pending delta (if any) into a value read from this snapshot
+        byte[] fold(byte[] key, byte[] value) {
+            return CounterDeltaKVStore.fold(this.kv, value, this.deltas.get(key));
+        }
+    }
+
+// FoldingIterator
+
+    // Folds pending deltas into values
+    private static class FoldingIterator extends OverlayIterator {
+
+        private final CounterDeltaKVStore target;
+        private final long compactionCount;
+        private final Snapshot snapshot;
+
+        FoldingIterator(KVPairIterator iterator, CounterDeltaKVStore target, long compactionCount) {
+            super(iterator, target);
+            this.target = target;
+            this.compactionCount = compactionCount;
+            this.snapshot = null;
+        }
+
+        FoldingIterator(KVPairIterator iterator, Snapshot snapshot) {
+            super(iterator, null);
+            this.target = null;
+            this.compactionCount = 0;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        protected KVPair convert(KVPair pair) {
+            final byte[] key = pair.getKey();
+            final byte[] value = this.target != null ?
+              this.target.fold(key, pair.getValue(), this.compactionCount) :
+              this.snapshot.fold(key, pair.getValue());
+            return value != pair.getValue() ? new KVPair(key, value) : pair;
+        }
+    }
+}
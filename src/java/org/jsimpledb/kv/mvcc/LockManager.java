@@ -8,14 +8,18 @@
 package org.jsimpledb.kv.mvcc;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.NavigableSet;
-import java.util.TreeSet;
-
-import org.dellroad.stuff.java.Predicate;
-import org.dellroad.stuff.java.TimedWait;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jsimpledb.kv.KeyRange;
 import org.jsimpledb.util.ByteUtil;
 
 /**
@@ -28,8 +32,15 @@ import org.jsimpledb.util.ByteUtil;
  * </p>
  *
  * <p>
- * Instances are configured with a monitor object which is used for all internal locking and inter-thread wait/notify
- * handshaking (by default, this instance). A user-supplied monitor object may be provided via the constructor.
+ * Internally, the key space is divided into sixteen stripes according to the high bits of the first byte
+ * of the key, and each stripe has its own internal lock and its own interval map of disjoint locked segments, each of
+ * which records the owners holding a lock on that segment. Acquiring a lock on a key range only locks the stripes the
+ * range spans (in ascending order) and only examines the segments overlapping that range, so owners locking keys in
+ * different stripes (e.g., objects of different types) do not contend with each other at all. A thread that must wait
+ * is queued on the segment containing the conflicting lock, so it is only woken up when a lock on that segment is
+ * released. Internal locks are held only briefly, and never while waiting. When locks are released, adjacent segments
+ * left with the same holders are merged back together, so the number of segments stays proportional to the number
+ * of locks actually held.
  * </p>
  *
  * <p>
@@ -49,37 +60,34 @@ import org.jsimpledb.util.ByteUtil;
  */
 public class LockManager {
 
-    private static final long TEN_YEARS_MILLIS = 10L * 365L * 24L * 60L * 60L * 1000L;
+    /**
+     * The number of stripes into which the key space is divided.
+     */
+    static final int NUM_STRIPES = 16;
 
-    private final Object lockObject;
+    private static final int STRIPE_SHIFT = 4;                                     // 8 - log2(NUM_STRIPES)
+    private static final long TEN_YEARS_MILLIS = 10L * 365L * 24L * 60L * 60L * 1000L;
+    private static final long EXPIRED = Long.MIN_VALUE;
 
-    // Contains each owner's lock time, or null if hold timeout has expired.
-    // Invariant: if owner has any locks, then owner is a key in this map and value is not null.
-    // In the case owner's hold timeout expired and another owner forced it to release all of its locks, the expired
-    // owner will own no locks but still exist in this map (with a null value), until its next lock() or release().
-    private final HashMap<LockOwner, Long> lockTimes = new HashMap<>();
+    // Contains each owner's lock time, or EXPIRED if hold timeout has expired.
+    // Invariant: if owner has any locks, then owner is a key in this map.
+    // In the case owner's hold timeout expired, other owners ignore its locks, and the expired owner will still exist
+    // in this map (with value EXPIRED) until its next release().
+    private final ConcurrentHashMap<LockOwner, Long> lockTimes = new ConcurrentHashMap<>();
 
-    private final TreeSet<Lock> locksByMin = new TreeSet<>(Lock.MIN_COMPARATOR);            // locks ordered by minimum
-    private final TreeSet<Lock> locksByMax = new TreeSet<>(Lock.MAX_COMPARATOR);            // locks ordered by maximum
+    private final Stripe[] stripes = new Stripe[NUM_STRIPES];
     private final long nanoBasis = System.nanoTime();
 
-    private long holdTimeout;
+    private volatile long holdTimeout;
 
     /**
-     * Convenience constructor. Equivalent to <code>LockManager(null)</code>.
+     * Constructor.
      */
     public LockManager() {
-        this(null);
-    }
-
-    /**
-     * Primary constructor.
-     *
-     * @param lockObject Java object used to synchronize field access and inter-thread wait/notify handshake,
-     *  or null to use this instance
-     */
-    public LockManager(Object lockObject) {
-        this.lockObject = lockObject != null ? lockObject : this;
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            this.stripes[i] = new Stripe(i > 0 ? new byte[] { (byte)(i << STRIPE_SHIFT) } : ByteUtil.EMPTY,
+              i < NUM_STRIPES - 1 ? new byte[] { (byte)((i + 1) << STRIPE_SHIFT) } : null);
+        }
     }
 
     /**
@@ -93,9 +101,7 @@ public class LockManager {
      * @return hold timeout in milliseconds
      */
     public long getHoldTimeout() {
-        synchronized (this.lockObject) {
-            return this.holdTimeout;
-        }
+        return this.holdTimeout;
     }
 
     /**
@@ -106,11 +112,9 @@ public class LockManager {
      * @throws IllegalArgumentException if {@code holdTimeout} is negative
      */
     public void setHoldTimeout(long holdTimeout) {
-        synchronized (this.lockObject) {
-            if (holdTimeout < 0)
-                throw new IllegalArgumentException("holdTimeout < 0");
-            this.holdTimeout = Math.min(holdTimeout, TEN_YEARS_MILLIS);             // limit to 10 years to avoid overflow
-        }
+        if (holdTimeout < 0)
+            throw new IllegalArgumentException("holdTimeout < 0");
+        this.holdTimeout = Math.min(holdTimeout, TEN_YEARS_MILLIS);                 // limit to 10 years to avoid overflow
     }
 
     /**
@@ -119,7 +123,6 @@ public class LockManager {
      * <p>
      * This method will block for up to {@code waitTimeout} milliseconds if the lock is held by
      * another thread, after which point {@link LockResult#WAIT_TIMEOUT_EXPIRED} is returned.
-     * The configured locking object will be used for inter-thread wait/notify handshaking.
      * </p>
      *
      * <p>
@@ -146,66 +149,164 @@ public class LockManager {
      */
     public LockResult lock(LockOwner owner, byte[] minKey, byte[] maxKey, boolean write, long waitTimeout)
       throws InterruptedException {
-        synchronized (this.lockObject) {
-
-            // Sanity check
-            if (owner == null)
-                throw new IllegalArgumentException("null owner");
-            if (waitTimeout < 0)
-                throw new IllegalArgumentException("waitTimeout < 0");
-            waitTimeout = Math.min(waitTimeout, TEN_YEARS_MILLIS);                  // limit to 10 years to avoid overflow
-
-            // Check hold timeout
-            final long lockerRemaining = this.checkHoldTimeout(owner);
-            if (lockerRemaining == -1)
-                return LockResult.HOLD_TIMEOUT_EXPIRED;
-
-            // Create lock
-            Lock lock = new Lock(owner, minKey, maxKey, write);
-
-            // Wait for lockability, until the first one of:
-            //  - Wait timeout
-            //  - Locker's hold timeout
-            //  - Lock owner's hold timeout
-            final LockChecker lockChecker = new LockChecker(lock);
-            if (!lockChecker.test()) {
-                long timeToWait = Math.min(waitTimeout, lockChecker.getTimeRemaining());
-                if (lockerRemaining != 0)
-                    timeToWait = Math.min(timeToWait, lockerRemaining);
-                if (!TimedWait.wait(this.lockObject, timeToWait, lockChecker))
+
+        // Sanity check
+        if (waitTimeout < 0)
+            throw new IllegalArgumentException("waitTimeout < 0");
+        waitTimeout = Math.min(waitTimeout, TEN_YEARS_MILLIS);                      // limit to 10 years to avoid overflow
+        return this.doLock(owner, minKey, maxKey, write, waitTimeout, true, false);
+    }
+
+    /**
+     * Acquire a lock on behalf of the specified owner, releasing all of the owner's locks if the wait timeout expires.
+     *
+     * <p>
+     * This method behaves like {@link #lock lock()}, except that if {@link LockResult#WAIT_TIMEOUT_EXPIRED} is returned,
+     * all locks held by {@code owner} will have already been released, atomically with the expiration. This is appropriate
+     * when the caller is going to release them anyway (e.g., to roll back a transaction): when two owners wait on each other
+     * with the same wait timeout, it guarantees that one of them acquires its lock, instead of both giving up.
+     * </p>
+     *
+     * @param owner lock owner
+     * @param minKey minimum key (inclusive); must not be null
+     * @param maxKey maximum key (exclusive), or null for no maximum
+     * @param write true for a write lock, false for a read lock
+     * @param waitTimeout how long to wait before returning {@link LockResult#WAIT_TIMEOUT_EXPIRED}
+     *  in milliseconds, or zero for unlimited
+     * @return a {@link LockResult}
+     * @throws InterruptedException if the current thread is interrupted while waiting for the lock
+     * @throws IllegalArgumentException if {@code owner}, {@code minKey}, or {@code range} is null
+     * @throws IllegalArgumentException if {@code minKey > maxKey}
+     * @throws IllegalArgumentException if {@code waitTimeout} is negative
+     */
+    public LockResult lockOrRelease(LockOwner owner, byte[] minKey, byte[] maxKey, boolean write, long waitTimeout)
+      throws InterruptedException {
+
+        // Sanity check
+        if (waitTimeout < 0)
+            throw new IllegalArgumentException("waitTimeout < 0");
+        waitTimeout = Math.min(waitTimeout, TEN_YEARS_MILLIS);                      // limit to 10 years to avoid overflow
+        return this.doLock(owner, minKey, maxKey, write, waitTimeout, true, true);
+    }
+
+    /**
+     * Acquire a lock on behalf of the specified owner, but only if it is immediately available.
+     *
+     * <p>
+     * This method behaves like {@link #lock lock()}, except that instead of waiting for a conflicting lock
+     * held by another owner to be released, {@link LockResult#WAIT_TIMEOUT_EXPIRED} is returned immediately.
+     * </p>
+     *
+     * @param owner lock owner
+     * @param minKey minimum key (inclusive); must not be null
+     * @param maxKey maximum key (exclusive), or null for no maximum
+     * @param write true for a write lock, false for a read lock
+     * @return a {@link LockResult}
+     * @throws IllegalArgumentException if {@code owner}, {@code minKey}, or {@code range} is null
+     * @throws IllegalArgumentException if {@code minKey > maxKey}
+     */
+    public LockResult tryLock(LockOwner owner, byte[] minKey, byte[] maxKey, boolean write) {
+        try {
+            return this.doLock(owner, minKey, maxKey, write, 0, false, false);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("internal error", e);
+        }
+    }
+
+    private LockResult doLock(LockOwner owner, byte[] minKey, byte[] maxKey, boolean write,
+      long waitTimeout, boolean wait, boolean releaseOnTimeout) throws InterruptedException {
+
+        // Sanity check
+        if (owner == null)
+            throw new IllegalArgumentException("null owner");
+        if (minKey == null)
+            throw new IllegalArgumentException("null minKey");
+        if (KeyRange.compare(minKey, maxKey) > 0)
+            throw new IllegalArgumentException("minKey > maxKey");
+        if (maxKey != null && KeyRange.compare(minKey, maxKey) == 0)
+            return this.checkHoldTimeout(owner) == -1 ? LockResult.HOLD_TIMEOUT_EXPIRED : LockResult.SUCCESS;
+
+        // Check hold timeout
+        final long lockerRemaining = this.checkHoldTimeout(owner);
+        if (lockerRemaining == -1)
+            return LockResult.HOLD_TIMEOUT_EXPIRED;
+
+        // Wait for lockability, until the first one of:
+        //  - Wait timeout
+        //  - Locker's hold timeout
+        // While waiting, wake up periodically to check the conflicting lock owner's hold timeout
+        long timeToWait = waitTimeout;
+        if (lockerRemaining != 0)
+            timeToWait = timeToWait != 0 ? Math.min(timeToWait, lockerRemaining) : lockerRemaining;
+        final long deadline = timeToWait != 0 ? System.nanoTime() + timeToWait * 1000000L : 0;
+        final int first = this.firstStripe(minKey);
+        final int last = this.lastStripe(maxKey);
+        while (true) {
+
+            // Lock the stripes spanned by the range, in order
+            for (int i = first; i <= last; i++)
+                this.stripes[i].mutex.lock();
+            Stripe waitStripe = null;
+            Waiter waiter = null;
+            boolean releaseAll = false;
+            try {
+
+                // Check for a conflict; if none, add lock (after setting hold timeout, if not already set) and we're done
+                final Conflict conflict = this.findConflict(owner, minKey, maxKey, write, first, last);
+                if (conflict == null) {
+                    this.lockTimes.putIfAbsent(owner, System.nanoTime() - this.nanoBasis);
+                    for (int i = first; i <= last; i++)
+                        this.stripes[i].addLock(owner, minKey, maxKey, write);
+                    break;
+                }
+                if (!wait)
                     return LockResult.WAIT_TIMEOUT_EXPIRED;
-            }
 
-            // Check hold timeout again
-            if (this.checkHoldTimeout(owner) == -1)
-                return LockResult.HOLD_TIMEOUT_EXPIRED;
-
-            // Merge the lock with other locks it can merge with, removing those locks in the process
-            for (Lock that : lockChecker.getMergers()) {
-                final Lock mergedLock = lock.mergeWith(that);
-                if (mergedLock != null) {
-                    this.locksByMin.remove(that);
-                    this.locksByMax.remove(that);
-                    owner.locks.remove(that);
-                    lock = mergedLock;
+                // Determine how long to wait
+                long nanosToWait = Long.MAX_VALUE;
+                if (deadline != 0) {
+                    if ((nanosToWait = deadline - System.nanoTime()) <= 0) {
+                        if (releaseOnTimeout) {
+                            this.expire(owner);                     // other owners ignore our locks from now on
+                            releaseAll = true;
+                        }
+                        return LockResult.WAIT_TIMEOUT_EXPIRED;
+                    }
+                }
+                if (conflict.ownerRemaining != 0)
+                    nanosToWait = Math.min(nanosToWait, conflict.ownerRemaining * 1000000L);
+
+                // Queue up on the conflicting segment, and keep holding (only) its stripe's lock until we wait
+                waiter = new Waiter(conflict.stripe.mutex.newCondition(), nanosToWait);
+                conflict.segment.addWaiter(waiter);
+                waitStripe = conflict.stripe;
+            } finally {
+                for (int i = first; i <= last; i++) {
+                    if (this.stripes[i] != waitStripe)
+                        this.stripes[i].mutex.unlock();
                 }
+                if (releaseAll)
+                    this.release(owner);
             }
 
-            // Add lock
-            this.locksByMin.add(lock);
-            this.locksByMax.add(lock);
-            owner.locks.add(lock);
+            // Wait on the conflicting segment's queue
+            try {
+                if (waiter.nanos == Long.MAX_VALUE)
+                    waiter.condition.await();
+                else
+                    waiter.condition.await(waiter.nanos, TimeUnit.NANOSECONDS);
+            } finally {
+                waiter.done = true;
+                waitStripe.mutex.unlock();
+            }
+        }
 
-            // Set hold timeout (if not already set)
-            if (!this.lockTimes.containsKey(owner)) {
-                final long currentTime = System.nanoTime() - this.nanoBasis;
-                this.lockTimes.put(owner, currentTime);
-            } else
-                assert this.lockTimes.get(owner) != null;
+        // Check hold timeout again
+        if (this.checkHoldTimeout(owner) == -1)
+            return LockResult.HOLD_TIMEOUT_EXPIRED;
 
-            // Done
-            return LockResult.SUCCESS;
-        }
+        // Done
+        return LockResult.SUCCESS;
     }
 
     /**
@@ -225,25 +326,20 @@ public class LockManager {
      * @throws IllegalArgumentException if {@code owner} is null
      */
     public boolean release(LockOwner owner) {
-        synchronized (this.lockObject) {
 
-            // Sanity check
-            if (owner == null)
-                throw new IllegalArgumentException("null owner");
+        // Sanity check
+        if (owner == null)
+            throw new IllegalArgumentException("null owner");
 
-            // Check if hold timeout has alread expired; in any case, remove lock time
-            if (this.lockTimes.containsKey(owner)) {
-                final Long lockTime = this.lockTimes.remove(owner);
-                if (lockTime == null)
-                    return false;
-            }
+        // Release all locks
+        this.doRelease(owner);
 
-            // Release all locks
-            this.doRelease(owner);
+        // Check if hold timeout has alread expired; in any case, remove lock time. This must happen after the locks
+        // are released: other owners treat a lock whose owner has no lock time as live, but ignore an expired owner's locks.
+        final Long lockTime = this.lockTimes.remove(owner);
 
-            // Done
-            return true;
-        }
+        // Done
+        return lockTime == null || lockTime != EXPIRED;
     }
 
     /**
@@ -261,99 +357,113 @@ public class LockManager {
      * @throws IllegalArgumentException if {@code owner} is null
      */
     public long checkHoldTimeout(LockOwner owner) {
-        synchronized (this.lockObject) {
-            if (this.holdTimeout == 0)
-                return 0;
-            if (!this.lockTimes.containsKey(owner))
-                return 0;
-            final Long lockTime = this.lockTimes.get(owner);
-            if (lockTime == null)
-                return -1;
+        if (owner == null)
+            throw new IllegalArgumentException("null owner");
+        final long holdTimeoutMillis = this.holdTimeout;
+        if (holdTimeoutMillis == 0)
+            return 0;
+        final Long lockTime = this.lockTimes.get(owner);
+        if (lockTime == null)
+            return 0;
+        if (lockTime != EXPIRED) {
             final long currentTime = System.nanoTime() - this.nanoBasis;
-            final long holdDeadline = lockTime + this.holdTimeout * 1000000L;
+            final long holdDeadline = lockTime + holdTimeoutMillis * 1000000L;
             final long remaining = holdDeadline - currentTime;
-            if (remaining <= 0) {
-                this.lockTimes.put(owner, null);
-                this.doRelease(owner);
-                return -1;
-            }
-            return (remaining + 999999L) / 1000000L;
+            if (remaining > 0)
+                return (remaining + 999999L) / 1000000L;
+            this.lockTimes.replace(owner, lockTime, EXPIRED);
         }
+
+        // Release the expired owner's locks now, unless we are in the middle of locking stripes (see findConflict())
+        if (!this.holdsAnyStripe())
+            this.doRelease(owner);
+        return -1;
     }
 
-    // Release all locks held by owner. Assumes synchronized already on this.lockObject.
-    private void doRelease(LockOwner owner) {
-        for (Lock lock : owner.locks) {
-            this.locksByMin.remove(lock);
-            this.locksByMax.remove(lock);
+    // Get a snapshot of the current locked segments (for unit testing)
+    List<Segment> getSegments() {
+        final ArrayList<Segment> list = new ArrayList<>();
+        for (Stripe stripe : this.stripes) {
+            stripe.mutex.lock();
+            try {
+                list.addAll(stripe.segments.values());
+            } finally {
+                stripe.mutex.unlock();
+            }
         }
-        owner.locks.clear();
-        this.lockObject.notifyAll();
+        return list;
     }
 
-    // Check whether we can lock, and fill the list of mergers and return zero if so. If not, return time remaining.
-    // Assumes synchronized already on this.lockObject.
-    private long checkLock(Lock lock, List<Lock> mergers) {
+    // Mark owner's hold timeout as expired, so that other owners will ignore its locks
+    private void expire(LockOwner owner) {
+        final Long lockTime = this.lockTimes.get(owner);
+        if (lockTime != null)
+            this.lockTimes.replace(owner, lockTime, EXPIRED);
+    }
 
-        // Get lock's min & max
-        final byte[] lockMin = lock.getMin();
-        final byte[] lockMax = lock.getMax();
+    // Release all locks held by owner, one stripe at a time. Assumes no stripe lock is held.
+    private void doRelease(LockOwner owner) {
+        final BitSet stripeIds = new BitSet(NUM_STRIPES);
+        for (Segment segment : owner.segments)
+            stripeIds.set(segment.stripe.index);
+        for (int i = stripeIds.nextSetBit(0); i >= 0; i = stripeIds.nextSetBit(i + 1)) {
+            final Stripe stripe = this.stripes[i];
+            stripe.mutex.lock();
+            try {
+                stripe.release(owner);
+            } finally {
+                stripe.mutex.unlock();
+            }
+        }
+    }
 
+    // Find a lock held by another owner that conflicts with the given lock, if any. Assumes stripes first..last are locked.
+    private Conflict findConflict(LockOwner owner, byte[] minKey, byte[] maxKey, boolean write, int first, int last) {
     startOver:
         while (true) {
-
-            // Get locks whose min is < lockMax
-            final NavigableSet<Lock> lhs = lockMax == null ? this.locksByMin :
-              this.locksByMin.headSet(Lock.getMinKey(lockMax, false), false);
-
-            // Get locks whose max is > lockMin
-            final NavigableSet<Lock> rhs = lockMin == null ? this.locksByMax : this.locksByMax.tailSet(
-              Lock.getMaxKey(ByteUtil.getNextKey(lockMin), false), true);
-
-            // Find overlapping locks and check for conflicts
-            final HashSet<Lock> overlaps = new HashSet<>();
-            for (Lock other : lhs) {
-
-                // Does this lock overlap?
-                if (!rhs.contains(other))
-                    continue;
-
-                // Do this lock & other lock conflict?
-                if (lock.conflictsWith(other)) {
-
-                    // See if other lock's owner's hold timeout has expired
-                    assert this.lockTimes.containsKey(other.owner);
-                    final long remaining = this.checkHoldTimeout(other.owner);
-                    if (remaining == -1)
-                        continue startOver;
-
-                    // Return time remaining until conflicting owner's hold timeout
-                    return Math.max(remaining, 1);
+            for (int i = first; i <= last; i++) {
+                final Stripe stripe = this.stripes[i];
+                for (Segment segment : stripe.getOverlappingSegments(minKey, maxKey)) {
+                    for (Map.Entry<LockOwner, Boolean> entry : segment.holders.entrySet()) {
+                        final LockOwner other = entry.getKey();
+                        if (other == owner || !(write || entry.getValue()))
+                            continue;
+
+                        // See if other lock's owner's hold timeout has expired; if so, discard its locks in the stripes we hold
+                        final Long lockTime = this.lockTimes.get(other);
+                        final long remaining = lockTime != null && lockTime == EXPIRED ? -1 : this.checkHoldTimeout(other);
+                        if (remaining == -1) {
+                            for (int j = first; j <= last; j++)
+                                this.stripes[j].release(other);
+                            continue startOver;
+                        }
+                        return new Conflict(stripe, segment, remaining);
+                    }
                 }
-
-                // Add overlap
-                overlaps.add(other);
             }
+            return null;
+        }
+    }
 
-            //System.out.println(Thread.currentThread().getName() + ": LockChecker: BEFORE: lock = " + lock + "\n"
-            //+ "  lockByMin = " + this.locksByMin + "\n"
-            //+ "  lockByMax = " + this.locksByMax + "\n"
-            //+ "   overlaps = " + overlaps + "\n");
-
-            // Find overlaps we can merge with
-            for (Lock other : overlaps) {
-                if (lock.mergeWith(other) != null)
-                    mergers.add(other);
-            }
+    // Get the index of the stripe containing the given key
+    private int firstStripe(byte[] minKey) {
+        return minKey.length > 0 ? (minKey[0] & 0xff) >>> STRIPE_SHIFT : 0;
+    }
 
-            //System.out.println(Thread.currentThread().getName() + ": LockChecker: AFTER: lock = " + lock + "\n"
-            //+ "  lockByMin = " + this.locksByMin + "\n"
-            //+ "  lockByMax = " + this.locksByMax + "\n"
-            //+ "    mergers = " + mergers + "\n");
+    // Get the index of the stripe containing the last key prior to the given key
+    private int lastStripe(byte[] maxKey) {
+        if (maxKey == null)
+            return NUM_STRIPES - 1;
+        final int index = this.firstStripe(maxKey);
+        return index > 0 && ByteUtil.compare(maxKey, this.stripes[index].min) == 0 ? index - 1 : index;
+    }
 
-            // Done
-            return 0;
+    private boolean holdsAnyStripe() {
+        for (Stripe stripe : this.stripes) {
+            if (stripe.mutex.isHeldByCurrentThread())
+                return true;
         }
+        return false;
     }
 
 // LockResult
@@ -379,37 +489,254 @@ public class LockManager {
         HOLD_TIMEOUT_EXPIRED;
     }
 
-// LockChecker predicate
+// Stripe
+
+    /**
+     * A portion of the key space with its own internal lock, which guards all of its {@link Segment}s.
+     */
+    private static final class Stripe {
+
+        final ReentrantLock mutex = new ReentrantLock();
+        final TreeMap<byte[], Segment> segments = new TreeMap<>(ByteUtil.COMPARATOR);   // disjoint locked segments by min
+        final byte[] min;
+        final byte[] max;
+        final int index;
+
+        Stripe(byte[] min, byte[] max) {
+            this.min = min;
+            this.max = max;
+            this.index = min.length > 0 ? (min[0] & 0xff) >>> STRIPE_SHIFT : 0;
+        }
+
+        // Add a non-conflicting lock, clipped to this stripe. Assumes this.mutex is held.
+        void addLock(LockOwner owner, byte[] minKey, byte[] maxKey, boolean write) {
+
+            // Clip range to this stripe
+            if (ByteUtil.compare(minKey, this.min) < 0)
+                minKey = this.min;
+            if (KeyRange.compare(maxKey, this.max) > 0)
+                maxKey = this.max;
+
+            // Check whether owner already holds a sufficient lock on the entire range (common when re-reading keys)
+            byte[] covered = minKey;
+            for (Segment segment : this.getOverlappingSegments(minKey, maxKey)) {
+                final Boolean held = segment.holders.get(owner);
+                if (KeyRange.compare(segment.min, covered) > 0 || held == null || (write && !held))
+                    break;
+                if ((covered = segment.max) == null)
+                    break;
+            }
+            if (KeyRange.compare(covered, maxKey) >= 0)
+                return;
+
+            // Split any segments that straddle the lock boundaries
+            this.splitAt(minKey);
+            if (maxKey != null)
+                this.splitAt(maxKey);
+
+            // Add owner to all existing segments in the range, and create new segments to fill any gaps
+            final ArrayList<Segment> gaps = new ArrayList<>();
+            byte[] next = minKey;
+            for (Segment segment : this.getOverlappingSegments(minKey, maxKey)) {
+                if (KeyRange.compare(next, segment.min) < 0)
+                    gaps.add(new Segment(this, next, segment.min));
+                segment.addHolder(owner, write);
+                next = segment.max;
+            }
+            if (next != null && KeyRange.compare(next, maxKey) < 0)
+                gaps.add(new Segment(this, next, maxKey));
+            for (Segment segment : gaps) {
+                segment.addHolder(owner, write);
+                this.segments.put(segment.min, segment);
+            }
+
+            // Merge adjacent segments having identical holders to avoid fragmentation
+            final Map.Entry<byte[], Segment> floor = this.segments.lowerEntry(minKey);
+            Segment prev = floor != null ? floor.getValue() : null;
+            final Iterator<Segment> i = (prev != null ?
+              this.segments.tailMap(prev.min, false) : this.segments).values().iterator();
+            while (i.hasNext()) {
+                final Segment segment = i.next();
+                if (prev != null && KeyRange.compare(prev.max, segment.min) == 0 && prev.holders.equals(segment.holders)) {
+                    prev.absorb(segment);
+                    i.remove();
+                    continue;
+                }
+                if (maxKey != null && KeyRange.compare(segment.min, maxKey) > 0)
+                    break;
+                prev = segment;
+            }
+        }
+
+        // Release all of owner's locks in this stripe. Assumes this.mutex is held.
+        void release(LockOwner owner) {
+            for (Iterator<Segment> i = owner.segments.iterator(); i.hasNext(); ) {
+                final Segment segment = i.next();
+                if (segment.stripe != this)
+                    continue;
+                i.remove();
+                segment.holders.remove(owner);
+                segment.wakeWaiters();
+                this.coalesce(segment);
+            }
+        }
+
+        // Remove the given segment if it is now unlocked, otherwise merge it with neighbors having the same holders.
+        // Assumes this.mutex is held.
+        private void coalesce(Segment segment) {
+            if (this.segments.get(segment.min) != segment)                  // already merged into a neighbor
+                return;
+            if (segment.holders.isEmpty()) {
+                this.segments.remove(segment.min);
+                return;
+            }
+            final Map.Entry<byte[], Segment> lower = this.segments.lowerEntry(segment.min);
+            if (lower != null) {
+                final Segment prev = lower.getValue();
+                if (KeyRange.compare(prev.max, segment.min) == 0 && prev.holders.equals(segment.holders)) {
+                    prev.absorb(segment);
+                    this.segments.remove(segment.min);
+                    segment = prev;
+                }
+            }
+            if (segment.max != null) {
+                final Segment next = this.segments.get(segment.max);
+                if (next != null && next.holders.equals(segment.holders)) {
+                    segment.absorb(next);
+                    this.segments.remove(next.min);
+                }
+            }
+        }
+
+        // Ensure no segment straddles the given key. Assumes this.mutex is held.
+        private void splitAt(byte[] key) {
+            final Map.Entry<byte[], Segment> entry = this.segments.lowerEntry(key);
+            if (entry == null)
+                return;
+            final Segment segment = entry.getValue();
+            if (KeyRange.compare(key, segment.max) >= 0)
+                return;
+            final Segment upper = segment.split(key);
+            this.segments.put(upper.min, upper);
+        }
+
+        // Get all segments overlapping the given range, in order. Assumes this.mutex is held.
+        Iterable<Segment> getOverlappingSegments(byte[] minKey, byte[] maxKey) {
+            final Map.Entry<byte[], Segment> floor = this.segments.lowerEntry(minKey);
+            byte[] start = minKey;
+            if (floor != null && KeyRange.compare(minKey, floor.getValue().max) < 0)
+                start = floor.getKey();
+            return (maxKey != null ?
+              this.segments.subMap(start, true, maxKey, false) : this.segments.tailMap(start, true)).values();
+        }
+    }
+
+// Segment
+
+    /**
+     * A contiguous range of keys locked by the same set of owners, with a queue of threads waiting for it.
+     * All access must be guarded by the owning {@link Stripe}'s internal lock.
+     */
+    static final class Segment {
+
+        final HashMap<LockOwner, Boolean> holders = new HashMap<>();            // owner -> whether write lock
+        final Stripe stripe;
+
+        byte[] min;
+        byte[] max;
 
-    private class LockChecker implements Predicate {
+        private ArrayList<Waiter> waiters;
 
-        private final Lock lock;
-        private final ArrayList<Lock> mergers = new ArrayList<>();
+        Segment(Stripe stripe, byte[] min, byte[] max) {
+            this.stripe = stripe;
+            this.min = min;
+            this.max = max;
+        }
 
-        private long timeRemaining;
+        void addHolder(LockOwner owner, boolean write) {
+            if (!write && this.holders.containsKey(owner))
+                return;
+            if (this.holders.put(owner, write) == null)
+                owner.segments.add(this);
+        }
 
-        LockChecker(Lock lock) {
-            this.lock = lock;
+        // Split this segment at the given key and return the upper portion
+        Segment split(byte[] key) {
+            final Segment upper = new Segment(this.stripe, key, this.max);
+            this.max = key;
+            for (Map.Entry<LockOwner, Boolean> entry : this.holders.entrySet())
+                upper.addHolder(entry.getKey(), entry.getValue());
+            if (this.waiters != null)
+                upper.waiters = new ArrayList<>(this.waiters);
+            return upper;
         }
 
-        public List<Lock> getMergers() {
-            return this.mergers;
+        // Merge the adjacent segment following this one into this one
+        void absorb(Segment next) {
+            this.max = next.max;
+            for (LockOwner owner : next.holders.keySet())
+                owner.segments.remove(next);
+            if (next.waiters != null) {
+                for (Waiter waiter : next.waiters)
+                    this.addWaiter(waiter);
+            }
         }
 
-        public long getTimeRemaining() {
-            return this.timeRemaining;
+        void addWaiter(Waiter waiter) {
+            if (this.waiters == null)
+                this.waiters = new ArrayList<>(1);
+            for (Iterator<Waiter> i = this.waiters.iterator(); i.hasNext(); ) {
+                final Waiter other = i.next();
+                if (other == waiter)
+                    return;
+                if (other.done)
+                    i.remove();
+            }
+            this.waiters.add(waiter);
+        }
+
+        void wakeWaiters() {
+            if (this.waiters == null)
+                return;
+            for (Waiter waiter : this.waiters)
+                waiter.condition.signal();
+            this.waiters = null;
         }
 
         @Override
-        public boolean test() {
+        public String toString() {
+            return "Segment[min=" + ByteUtil.toString(this.min) + ",max=" + ByteUtil.toString(this.max)
+              + ",holders=" + this.holders.size() + "]";
+        }
+    }
+
+// Waiter
 
-            // Reset state
-            this.mergers.clear();
+    private static final class Waiter {
 
-            // See if we can lock
-            this.timeRemaining = LockManager.this.checkLock(this.lock, this.mergers);
-            return this.timeRemaining == 0;
+        final Condition condition;
+        final long nanos;
+
+        boolean done;
+
+        Waiter(Condition condition, long nanos) {
+            this.condition = condition;
+            this.nanos = nanos;
         }
     }
-}
 
+// Conflict
+
+    private static final class Conflict {
+
+        final Stripe stripe;
+        final Segment segment;
+        final long ownerRemaining;
+
+        Conflict(Stripe stripe, Segment segment, long ownerRemaining) {
+            this.stripe = stripe;
+            this.segment = segment;
+            this.ownerRemaining = ownerRemaining;
+        }
+    }
+}
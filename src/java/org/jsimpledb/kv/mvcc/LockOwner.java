@@ -7,10 +7,12 @@
 
 package org.jsimpledb.kv.mvcc;
 
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Represents the owner of a {@link Lock} managed by a {@link LockManager}.
+ * Represents the owner of a lock managed by a {@link LockManager}.
  *
  * <p>
  * Each instance of this class represents a separate lock owner.
@@ -20,7 +22,8 @@ import java.util.HashSet;
  */
 public final class LockOwner {
 
-    final HashSet<Lock> locks = new HashSet<>();
+    // Each segment in this set is guarded by its LockManager stripe's internal lock; the set itself is thread safe
+    final Set<LockManager.Segment> segments = Collections.newSetFromMap(new ConcurrentHashMap<LockManager.Segment, Boolean>());
 
     /**
      * Constructor.
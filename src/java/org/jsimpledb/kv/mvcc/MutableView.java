@@ -13,6 +13,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.jsimpledb.kv.AbstractKVStore;
 import org.jsimpledb.kv.KVPair;
@@ -48,13 +49,15 @@ import org.jsimpledb.util.SizeEstimator;
  *
  * <p>
  * Instances are thread safe; however, directly accessing the associated {@link Reads} or {@link Writes} is not thread safe.
+ * Read operations (including iteration) may proceed concurrently with each other; only mutations require exclusive access.
  * </p>
  */
 public class MutableView extends AbstractKVStore implements SizeEstimating {
 
     private final KVStore kv;
     private final Writes writes;
-    private Reads reads;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();  // guards this.writes
+    private Reads reads;                                                        // guarded by monitor
 
 // Constructors
 
@@ -120,46 +123,88 @@ public class MutableView extends AbstractKVStore implements SizeEstimating {
         this.reads = null;
     }
 
+    /**
+     * Get a view of this instance whose reads are not recorded.
+     *
+     * <p>
+     * The returned view sees the same data as this instance, including all mutations made so far, and mutations made
+     * through the returned view are applied to this instance. However, reads made through the returned view are not
+     * added to this instance's {@link Reads}, and so do not create read/write conflicts. This is useful for reads whose
+     * results do not affect the correctness of the transaction, e.g., scans that only serve as hints.
+     * </p>
+     *
+     * @return view of this instance that does not record reads
+     */
+    public KVStore getUntrackedView() {
+        return new UntrackedView();
+    }
+
 // KVStore
 
     @Override
-    public synchronized byte[] get(byte[] key) {
+    public byte[] get(byte[] key) {
+        return this.get(key, true);
+    }
 
-        // Sanity check
-        assert this.check();
+    @Override
+    public Iterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+        return new RangeIterator(minKey, maxKey, reverse, true);
+    }
+
+    private byte[] get(byte[] key, boolean track) {
+
+        // Read value while holding the shared lock
+        final byte[] value;
+        boolean bogusAdjust = false;
+        this.lock.readLock().lock();
+        try {
 
-        // Check puts
-        final byte[] putValue = this.writes.getPuts().get(key);
-        if (putValue != null)
-            return putValue;
+            // Sanity check
+            assert this.check();
 
-        // Check removes
-        if (this.writes.getRemoves().contains(key))
-            return null;
+            // Check puts and removes
+            if (this.isWritten(key))
+                return this.writes.getPuts().get(key);
 
-        // Read from k/v store
-        byte[] value = this.kv.get(key);
+            // Read from k/v store
+            final byte[] readValue = this.kv.get(key);
 
-        // Record the read
-        this.recordReads(key, ByteUtil.getNextKey(key));
+            // Record the read
+            if (track)
+                this.recordReads(key, ByteUtil.getNextKey(key));
 
-        // Check counter adjustments
-        if (value == null)                      // we can ignore adjustments of missing values
-            return null;
-        final Long adjust = this.writes.getAdjusts().get(key);
-        if (adjust != null) {
+            // Check counter adjustments
+            if (readValue == null)                          // we can ignore adjustments of missing values
+                return null;
+            final Long adjust = this.writes.getAdjusts().get(key);
+            if (adjust == null)
+                return readValue;
 
-            // Decode value we just read as a counter
-            final long counterValue;
+            // Decode value we just read as a counter, adjust counter value by adjustment, and re-encode
+            byte[] adjustedValue;
             try {
-                counterValue = this.kv.decodeCounter(value);
+                adjustedValue = this.kv.encodeCounter(this.kv.decodeCounter(readValue) + adjust);
             } catch (IllegalArgumentException e) {
-                this.writes.getAdjusts().remove(key);       // previous adjustment was bogus because value was not decodable
-                return value;
+                adjustedValue = readValue;
+                bogusAdjust = true;
             }
+            value = adjustedValue;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        // Discard previous adjustment if it was bogus because value was not decodable; the underlying value can't change
+        if (bogusAdjust) {
+            this.lock.writeLock().lock();
+            try {
 
-            // Adjust counter value by adjustment and re-encode
-            value = this.kv.encodeCounter(counterValue + adjust);
+                // Re-check puts and removes, which may have changed while we held no lock
+                if (this.isWritten(key))
+                    return this.writes.getPuts().get(key);
+                this.writes.getAdjusts().remove(key);
+            } finally {
+                this.lock.writeLock().unlock();
+            }
         }
 
         // Done
@@ -167,72 +212,84 @@ public class MutableView extends AbstractKVStore implements SizeEstimating {
     }
 
     @Override
-    public Iterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
-
-        // Sanity check
-        assert this.check();
-
-        // Build iterator
-        return new RangeIterator(minKey, maxKey, reverse);
-    }
-
-    @Override
-    public synchronized void put(byte[] key, byte[] value) {
+    public void put(byte[] key, byte[] value) {
 
         // Sanity check
-        assert this.check();
         Preconditions.checkArgument(key != null, "null key");
         Preconditions.checkArgument(value != null, "null value");
 
-        // Overwrite any counter adjustment
-        this.writes.getAdjusts().remove(key);
+        this.lock.writeLock().lock();
+        try {
+
+            // Sanity check
+            assert this.check();
 
-        // Overwrite any removal
-        if (this.writes.getRemoves().contains(key))
-            this.writes.setRemoves(this.writes.getRemoves().remove(new KeyRange(key)));
+            // Overwrite any counter adjustment
+            this.writes.getAdjusts().remove(key);
 
-        // Record the put
-        this.writes.getPuts().put(key.clone(), value.clone());
+            // Overwrite any removal
+            if (this.writes.getRemoves().contains(key))
+                this.writes.setRemoves(this.writes.getRemoves().remove(new KeyRange(key)));
+
+            // Record the put
+            this.writes.getPuts().put(key.clone(), value.clone());
+        } finally {
+            this.lock.writeLock().unlock();
+        }
     }
 
     @Override
-    public synchronized void remove(byte[] key) {
+    public void remove(byte[] key) {
 
         // Sanity check
-        assert this.check();
         Preconditions.checkArgument(key != null, "null key");
 
-        // Overwrite any counter adjustment
-        this.writes.getAdjusts().remove(key);
+        this.lock.writeLock().lock();
+        try {
+
+            // Sanity check
+            assert this.check();
+
+            // Overwrite any counter adjustment
+            this.writes.getAdjusts().remove(key);
 
-        // Overwrite any put
-        this.writes.getPuts().remove(key);
+            // Overwrite any put
+            this.writes.getPuts().remove(key);
 
-        // Record the remove
-        this.writes.setRemoves(this.writes.getRemoves().add(new KeyRange(key)));
+            // Record the remove
+            this.writes.setRemoves(this.writes.getRemoves().add(new KeyRange(key)));
+        } finally {
+            this.lock.writeLock().unlock();
+        }
     }
 
     @Override
-    public synchronized void removeRange(byte[] minKey, byte[] maxKey) {
-
-        // Sanity check
-        assert this.check();
+    public void removeRange(byte[] minKey, byte[] maxKey) {
 
         // Realize minKey
         if (minKey == null)
             minKey = ByteUtil.EMPTY;
 
-        // Overwrite any puts and counter adjustments
-        if (maxKey != null) {
-            this.writes.getPuts().subMap(minKey, maxKey).clear();
-            this.writes.getAdjusts().subMap(minKey, maxKey).clear();
-        } else {
-            this.writes.getPuts().tailMap(minKey).clear();
-            this.writes.getAdjusts().tailMap(minKey).clear();
-        }
+        this.lock.writeLock().lock();
+        try {
+
+            // Sanity check
+            assert this.check();
 
-        // Record the remove
-        this.writes.setRemoves(this.writes.getRemoves().add(new KeyRange(minKey, maxKey)));
+            // Overwrite any puts and counter adjustments
+            if (maxKey != null) {
+                this.writes.getPuts().subMap(minKey, maxKey).clear();
+                this.writes.getAdjusts().subMap(minKey, maxKey).clear();
+            } else {
+                this.writes.getPuts().tailMap(minKey).clear();
+                this.writes.getAdjusts().tailMap(minKey).clear();
+            }
+
+            // Record the remove
+            this.writes.setRemoves(this.writes.getRemoves().add(new KeyRange(minKey, maxKey)));
+        } finally {
+            this.lock.writeLock().unlock();
+        }
     }
 
     @Override
@@ -246,37 +303,42 @@ public class MutableView extends AbstractKVStore implements SizeEstimating {
     }
 
     @Override
-    public synchronized void adjustCounter(byte[] key, long amount) {
-
-        // Sanity check
-        assert this.check();
-
-        // Check puts
-        final byte[] putValue = this.writes.getPuts().get(key);
-        if (putValue != null) {
-            final long value;
-            try {
-                value = this.kv.decodeCounter(putValue);
-            } catch (IllegalArgumentException e) {
-                return;                                 // previously put value was not decodable, so ignore this adjustment
+    public void adjustCounter(byte[] key, long amount) {
+        this.lock.writeLock().lock();
+        try {
+
+            // Sanity check
+            assert this.check();
+
+            // Check puts
+            final byte[] putValue = this.writes.getPuts().get(key);
+            if (putValue != null) {
+                final long value;
+                try {
+                    value = this.kv.decodeCounter(putValue);
+                } catch (IllegalArgumentException e) {
+                    return;                             // previously put value was not decodable, so ignore this adjustment
+                }
+                this.writes.getPuts().put(key, this.kv.encodeCounter(value + amount));
+                return;
             }
-            this.writes.getPuts().put(key, this.kv.encodeCounter(value + amount));
-            return;
-        }
 
-        // Check removes
-        if (this.writes.getRemoves().contains(key))
-            return;
-
-        // Calculate new, cumulative adjustment
-        final Long oldAdjust = this.writes.getAdjusts().get(key);
-        final long adjust = (oldAdjust != null ? oldAdjust : 0) + amount;
-
-        // Record/update adjustment
-        if (adjust != 0)
-            this.writes.getAdjusts().put(key, adjust);
-        else
-            this.writes.getAdjusts().remove(key);
+            // Check removes
+            if (this.writes.getRemoves().contains(key))
+                return;
+
+            // Calculate new, cumulative adjustment
+            final Long oldAdjust = this.writes.getAdjusts().get(key);
+            final long adjust = (oldAdjust != null ? oldAdjust : 0) + amount;
+
+            // Record/update adjustment
+            if (adjust != 0)
+                this.writes.getAdjusts().put(key, adjust);
+            else
+                this.writes.getAdjusts().remove(key);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
     }
 
 // SizeEstimating
@@ -310,7 +372,12 @@ public class MutableView extends AbstractKVStore implements SizeEstimating {
 
 // Internal methods
 
-    // Record that keys were read in the range [minKey, maxKey)
+    // Determine whether key has been put or removed; caller must hold (at least) the shared lock
+    private boolean isWritten(byte[] key) {
+        return this.writes.getPuts().containsKey(key) || this.writes.getRemoves().contains(key);
+    }
+
+    // Record that keys were read in the range [minKey, maxKey); caller must hold (at least) the shared lock
     private synchronized void recordReads(byte[] minKey, byte[] maxKey) {
 
         // Not tracking reads?
@@ -341,8 +408,8 @@ public class MutableView extends AbstractKVStore implements SizeEstimating {
 
 // Debugging
 
-    // Verify puts, removes, and adjusts are all mutually disjoint
-    private synchronized boolean check() {
+    // Verify puts, removes, and adjusts are all mutually disjoint; caller must hold (at least) the shared lock
+    private boolean check() {
         MutableView.verifyDisjoint(
           this.writes.getRemoves(),
           MutableView.buildKeyRanges(this.writes.getPuts().keySet()),
@@ -371,13 +438,14 @@ public class MutableView extends AbstractKVStore implements SizeEstimating {
         private final KVPairIterator pi;
         private final byte[] limit;
         private final boolean reverse;
+        private final boolean track;
 
         private byte[] cursor;                  // current position; inclusive if forward, exclusive if reverse
         private KVPair next;                    // the next k/v pair queued up, or null if not found yet
         private byte[] removeKey;               // key to remove if remove() is invoked
         private boolean finished;
 
-        RangeIterator(byte[] minKey, byte[] maxKey, boolean reverse) {
+        RangeIterator(byte[] minKey, byte[] maxKey, boolean reverse, boolean track) {
 
             // Realize minKey
             if (minKey == null)
@@ -385,16 +453,22 @@ public class MutableView extends AbstractKVStore implements SizeEstimating {
 
             // Build KVPairIterator that omits keys we've put or removed so far; this is safe even if more keys are put and/or
             // removed after creation, because the set "keys we've put or removed so far" can only increase over time.
-            synchronized (MutableView.this) {
+            MutableView.this.lock.readLock().lock();
+            try {
+                assert MutableView.this.check();
                 final KeyRanges putsAndRemoves = MutableView.buildKeyRanges(MutableView.this.writes.getPuts().keySet())
                   .union(MutableView.this.writes.getRemoves());
-                this.pi = new KVPairIterator(MutableView.this.kv, new KeyRange(minKey, maxKey), putsAndRemoves.inverse(), reverse);
+                this.pi = new KVPairIterator(MutableView.this.kv,
+                  new KeyRange(minKey, maxKey), putsAndRemoves.inverse(), reverse, true);
+            } finally {
+                MutableView.this.lock.readLock().unlock();
             }
 
             // Initialize cursor
             this.cursor = reverse ? maxKey : minKey;
             this.limit = reverse ? minKey : maxKey;
             this.reverse = reverse;
+            this.track = track;
         }
 
         @Override
@@ -431,7 +505,8 @@ public class MutableView extends AbstractKVStore implements SizeEstimating {
                 return false;
 
             // Compare against most current MutableView puts and removes
-            synchronized (MutableView.this) {
+            MutableView.this.lock.readLock().lock();
+            try {
 
                 // Find the next k/v pair not filtered out by (newly added) removes, if any
                 KVPair readPair = null;
@@ -445,10 +520,14 @@ public class MutableView extends AbstractKVStore implements SizeEstimating {
                 }
 
                 // Find the next put, if any
-                final Map.Entry<byte[], byte[]> putEntry = this.reverse ?
+                Map.Entry<byte[], byte[]> putEntry = this.reverse ?
                   (this.cursor != null ?
                    MutableView.this.writes.getPuts().lowerEntry(this.cursor) : MutableView.this.writes.getPuts().lastEntry()) :
                   MutableView.this.writes.getPuts().ceilingEntry(this.cursor);
+                if (putEntry != null && this.limit != null
+                  && (this.reverse ? ByteUtil.compare(putEntry.getKey(), this.limit) < 0 :
+                   ByteUtil.compare(putEntry.getKey(), this.limit) >= 0))
+                    putEntry = null;                                        // put is outside of our range
                 final KVPair putPair = putEntry != null ? new KVPair(putEntry) : null;
 
                 // Figure out which pair wins (read or put)
@@ -471,13 +550,13 @@ public class MutableView extends AbstractKVStore implements SizeEstimating {
                 final byte[] skipMin;
                 final byte[] skipMax;
                 if (this.reverse) {
-                    skipMin = pair != null ? pair.getKey() : ByteUtil.EMPTY;
+                    skipMin = pair != null ? pair.getKey() : this.limit;
                     skipMax = this.cursor;
                 } else {
                     skipMin = this.cursor;
-                    skipMax = pair != null ? ByteUtil.getNextKey(pair.getKey()) : null;
+                    skipMax = pair != null ? ByteUtil.getNextKey(pair.getKey()) : this.limit;
                 }
-                if (skipMax == null || ByteUtil.compare(skipMin, skipMax) < 0)
+                if (this.track && (skipMax == null || ByteUtil.compare(skipMin, skipMax) < 0))
                     MutableView.this.recordReads(skipMin, skipMax);
 
                 // Finished?
@@ -496,8 +575,55 @@ public class MutableView extends AbstractKVStore implements SizeEstimating {
 
                 // Done
                 return this.next != null;
+            } finally {
+                MutableView.this.lock.readLock().unlock();
             }
         }
     }
+
+// UntrackedView
+
+    private class UntrackedView extends AbstractKVStore {
+
+        @Override
+        public byte[] get(byte[] key) {
+            return MutableView.this.get(key, false);
+        }
+
+        @Override
+        public Iterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+            return new RangeIterator(minKey, maxKey, reverse, false);
+        }
+
+        @Override
+        public void put(byte[] key, byte[] value) {
+            MutableView.this.put(key, value);
+        }
+
+        @Override
+        public void remove(byte[] key) {
+            MutableView.this.remove(key);
+        }
+
+        @Override
+        public void removeRange(byte[] minKey, byte[] maxKey) {
+            MutableView.this.removeRange(minKey, maxKey);
+        }
+
+        @Override
+        public byte[] encodeCounter(long value) {
+            return MutableView.this.encodeCounter(value);
+        }
+
+        @Override
+        public long decodeCounter(byte[] bytes) {
+            return MutableView.this.decodeCounter(bytes);
+        }
+
+        @Override
+        public void adjustCounter(byte[] key, long amount) {
+            MutableView.this.adjustCounter(key, amount);
+        }
+    }
 }
 
@@ -0,0 +1,268 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.mvcc;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.jsimpledb.kv.CloseableKVStore;
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KeyRange;
+import org.jsimpledb.kv.KeyRanges;
+import org.jsimpledb.kv.util.AbstractOverlayKVStore;
+import org.jsimpledb.kv.util.KVUtil;
+import org.jsimpledb.util.ByteUtil;
+
+/**
+ * {@link AtomicKVStore} wrapper that implements key range removals using range "tombstones".
+ *
+ * <p>
+ * Many {@link AtomicKVStore} implementations can only remove a range of keys by removing each key individually,
+ * so the cost of {@link #mutate mutate()} is proportional to the number of keys removed. This class instead records
+ * each multi-key range removal as a single tombstone entry stored under a reserved meta-data key prefix in the
+ * underlying {@link AtomicKVStore}, written in the same atomic batch as the other mutations. All reads are filtered
+ * through the current tombstones, and the covered keys are physically removed later by a background compaction thread,
+ * a few keys at a time. Therefore, the cost of committing a range removal is independent of the number of keys removed.
+ * </p>
+ *
+ * <p>
+ * A put or counter adjustment to a key covered by a tombstone simply splits the tombstone around that key.
+ * Single key removals are applied directly to the underlying {@link AtomicKVStore}.
+ * </p>
+ *
+ * <p>
+ * Keys having the meta-data key prefix are not visible through this instance, and attempts to write them result in an
+ * {@link IllegalArgumentException}; range removals covering them are silently restricted to the remaining keys.
+ * </p>
+ *
+ * <p>
+ * Iterators returned by {@link #getRange getRange()} filter out tombstoned keys as of the time of creation.
+ * For consistent reads, use {@link #snapshot}, which returns a snapshot of the underlying {@link AtomicKVStore}
+ * combined with the tombstones in effect at the same point in time.
+ * </p>
+ *
+ * <p>
+ * Instances must be {@link #close}'d when no longer needed to stop the background compaction thread.
+ * This does not close the underlying {@link AtomicKVStore}.
+ * </p>
+ */
+public class RangeTombstoneKVStore extends AbstractOverlayKVStore {
+
+    /**
+     * Default meta-data key prefix under which tombstones are stored.
+     */
+    public static final byte[] DEFAULT_META_PREFIX = new byte[] { (byte)0xff, (byte)0xfe };
+
+    private KeyRanges tombstones;
+    private KeyRanges visible;
+
+// Constructors
+
+    /**
+     * Convenience constructor. Uses {@link #DEFAULT_META_PREFIX}.
+     *
+     * @param kv underlying {@link AtomicKVStore}
+     * @throws IllegalArgumentException if {@code kv} is null
+     */
+    public RangeTombstoneKVStore(AtomicKVStore kv) {
+        this(kv, DEFAULT_META_PREFIX);
+    }
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * Any existing tombstones are read from {@code kv}, and the background compaction thread is started.
+     * </p>
+     *
+     * @param kv underlying {@link AtomicKVStore}
+     * @param metaPrefix key prefix reserved for tombstone meta-data
+     * @throws IllegalArgumentException if either parameter is null
+     * @throws IllegalArgumentException if {@code metaPrefix} is empty
+     */
+    public RangeTombstoneKVStore(AtomicKVStore kv, byte[] metaPrefix) {
+        super(kv, metaPrefix);
+
+        // Load existing tombstones
+        final ArrayList<KeyRange> ranges = new ArrayList<>();
+        for (KVPair pair : this.loadMetaData()) {
+            final byte[] value = pair.getValue();
+            ranges.add(new KeyRange(pair.getKey(), value.length > 0 ? value : null));
+        }
+        this.setTombstones(new KeyRanges(ranges));
+        if (this.log.isDebugEnabled())
+            this.log.debug("loaded " + ranges.size() + " range tombstone(s) in " + this);
+
+        // Start compaction thread
+        this.startCompactor();
+    }
+
+// Accessors
+
+    /**
+     * Get the current tombstones, i.e., the key ranges that have been removed but possibly not yet physically
+     * removed from the underlying {@link AtomicKVStore}.
+     *
+     * @return current tombstones
+     */
+    public synchronized KeyRanges getTombstones() {
+        return this.tombstones;
+    }
+
+// KVStore
+
+    @Override
+    public byte[] get(byte[] key) {
+        key.getClass();
+        synchronized (this) {
+            this.checkOpen();
+            if (!this.visible.contains(key))
+                return null;
+        }
+        return this.kv.get(key);
+    }
+
+    @Override
+    public Iterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+        final KeyRanges filter;
+        synchronized (this) {
+            this.checkOpen();
+            filter = this.visible;
+        }
+        return new OverlayIterator(AbstractOverlayKVStore.getVisibleRange(this.kv, minKey, maxKey, filter, reverse), this);
+    }
+
+// AtomicKVStore
+
+    @Override
+    public synchronized CloseableKVStore snapshot() {
+        this.checkOpen();
+        return new Snapshot(this.kv.snapshot(), this.visible);
+    }
+
+    @Override
+    public synchronized void mutate(Mutations mutations, boolean sync) {
+        Preconditions.checkArgument(mutations != null, "null mutations");
+        this.checkOpen();
+
+        // Build corresponding mutations for the underlying store, converting multi-key removes into tombstones
+        final Writes writes = new Writes();
+        final ArrayList<KeyRange> removes = new ArrayList<>();
+        final ArrayList<KeyRange> rangeRemoves = new ArrayList<>();
+        for (KeyRange range : mutations.getRemoveRanges()) {
+            if (!range.isSingleKey())
+                rangeRemoves.add(range);
+            else if (!this.metaRange.contains(range.getMin()))
+                removes.add(range);
+        }
+        KeyRanges newTombstones = this.tombstones;
+        if (!rangeRemoves.isEmpty())
+            newTombstones = newTombstones.union(new KeyRanges(rangeRemoves).remove(this.metaRange));
+        for (Map.Entry<byte[], byte[]> entry : mutations.getPutPairs()) {
+            final byte[] key = entry.getKey();
+            this.checkKey(key);
+            writes.getPuts().put(key, entry.getValue());
+            if (newTombstones.contains(key))
+                newTombstones = newTombstones.remove(new KeyRange(key));
+        }
+        for (Map.Entry<byte[], Long> entry : mutations.getAdjustPairs()) {
+            final byte[] key = entry.getKey();
+            this.checkKey(key);
+            if (newTombstones.contains(key)) {                  // remove the tombstoned value before adjusting it
+                removes.add(new KeyRange(key));
+                newTombstones = newTombstones.remove(new KeyRange(key));
+            }
+            writes.getAdjusts().put(key, entry.getValue());
+        }
+
+        // Apply mutations and tombstone updates atomically
+        this.applyTombstones(writes, removes, newTombstones, sync);
+        if (!newTombstones.isEmpty())
+            this.notifyAll();
+    }
+
+// AbstractOverlayKVStore
+
+    @Override
+    protected boolean isCompactionNeeded() {
+        return !this.tombstones.isEmpty();
+    }
+
+    // Physically remove up to compactionBatchSize keys from the first tombstone, shrinking it accordingly
+    @Override
+    protected boolean compactStep() {
+        assert Thread.holdsLock(this);
+        final int compactionBatchSize = this.getCompactionBatchSize();
+        final KeyRange range = this.tombstones.asList().get(0);
+        final ArrayList<KeyRange> removes = new ArrayList<>();
+        final Iterator<KVPair> i = this.kv.getRange(range.getMin(), range.getMax(), false);
+        try {
+            while (removes.size() < compactionBatchSize && i.hasNext())
+                removes.add(new KeyRange(i.next().getKey()));
+        } finally {
+            KVUtil.closeIfPossible(i);
+        }
+        final KeyRanges newTombstones = removes.size() < compactionBatchSize ?
+          this.tombstones.remove(range) :
+          this.tombstones.remove(new KeyRange(range.getMin(), removes.get(removes.size() - 1).getMax()));
+        this.applyTombstones(new Writes(), removes, newTombstones, false);
+        if (this.log.isTraceEnabled())
+            this.log.trace(this + " compacted " + removes.size() + " key(s) in " + range);
+        return !this.tombstones.isEmpty();
+    }
+
+// Internal methods
+
+    // Apply the given writes and removes, along with the changes needed to update the stored tombstones to newTombstones
+    private void applyTombstones(Writes writes, ArrayList<KeyRange> removes, KeyRanges newTombstones, boolean sync) {
+        assert Thread.holdsLock(this);
+        final HashSet<KeyRange> oldRanges = new HashSet<>(this.tombstones.asList());
+        final HashSet<KeyRange> newRanges = new HashSet<>(newTombstones.asList());
+        for (KeyRange range : oldRanges) {
+            if (!newRanges.contains(range))
+                removes.add(new KeyRange(this.getMetaKey(range.getMin())));
+        }
+        for (KeyRange range : newRanges) {
+            if (!oldRanges.contains(range))
+                writes.getPuts().put(this.getMetaKey(range.getMin()), range.getMax() != null ? range.getMax() : ByteUtil.EMPTY);
+        }
+        writes.setRemoves(new KeyRanges(removes));
+        if (!writes.isEmpty())
+            this.kv.mutate(writes, sync);
+        this.setTombstones(newTombstones);
+    }
+
+    private void setTombstones(KeyRanges tombstones) {
+        this.tombstones = tombstones;
+        this.visible = tombstones.add(this.metaRange).inverse();
+    }
+
+// Snapshot
+
+    private static class Snapshot extends OverlaySnapshot {
+
+        Snapshot(CloseableKVStore kv, KeyRanges visible) {
+            super(kv, visible);
+        }
+
+        @Override
+        public byte[] get(byte[] key) {
+            return this.visible.contains(key) ? this.kv.get(key) : null;
+        }
+
+        @Override
+        public Iterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+            return new OverlayIterator(
+              AbstractOverlayKVStore.getVisibleRange(this.kv, minKey, maxKey, this.visible, reverse), null);
+        }
+    }
+}
@@ -17,6 +17,7 @@ import org.jsimpledb.kv.KVStore;
 import org.jsimpledb.kv.KVTransaction;
 import org.jsimpledb.kv.KVTransactionException;
 import org.jsimpledb.kv.RetryTransactionException;
+import org.jsimpledb.kv.util.KVUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +39,23 @@ import org.slf4j.LoggerFactory;
  * </p>
  *
  * <p>
+ * {@linkplain KVStore#adjustCounter Counter adjustments} do not count as reads, so concurrent transactions that only adjust
+ * the same counter never conflict. Wrapping the underlying store in a {@link CounterDeltaKVStore} also avoids reading
+ * each adjusted counter's value while commits are blocked.
+ * </p>
+ *
+ * <p>
+ * {@linkplain SnapshotKVTransaction#setReadOnly Read-only} transactions read directly from their snapshot without
+ * tracking reads, and are never checked for conflicts, because they always see a consistent point-in-time view.
+ * </p>
+ *
+ * <p>
+ * Transactions support {@linkplain SnapshotKVTransaction#prepare two-phase commit}. Preparing a transaction checks for
+ * conflicts, and then blocks the commit of all other transactions that could modify the database until the prepared
+ * transaction is committed or rolled back.
+ * </p>
+ *
+ * <p>
  * Each outstanding transaction's mutations are batched up in memory using a {@link Writes} instance. Therefore, the
  * transaction load supported by this class is limited to what can fit in memory.
  * </p>
@@ -52,6 +70,7 @@ public class SnapshotKVDatabase implements KVDatabase {
 
     private AtomicKVStore kvstore;
     private long currentVersion;
+    private SnapshotKVTransaction preparedTransaction;
 
 // Constructors
 
@@ -200,12 +219,28 @@ public class SnapshotKVDatabase implements KVDatabase {
 
 // Package methods
 
+    /**
+     * Prepare a transaction for commit.
+     */
+    synchronized void prepare(SnapshotKVTransaction tx) {
+        boolean success = false;
+        try {
+            this.checkConflicts(tx, true);
+            this.preparedTransaction = tx;
+            success = true;
+        } finally {
+            if (!success)
+                this.cleanupTransaction(tx);
+        }
+    }
+
     /**
      * Commit a transaction.
      */
     synchronized void commit(SnapshotKVTransaction tx) {
         try {
-            this.doCommit(tx);
+            if (tx == this.preparedTransaction || this.checkConflicts(tx, false))
+                this.applyMutations(tx);
         } finally {
             this.cleanupTransaction(tx);
         }
@@ -222,19 +257,19 @@ public class SnapshotKVDatabase implements KVDatabase {
 
 // Internal methods
 
-    private synchronized void doCommit(SnapshotKVTransaction tx) {
+    // Returns true if the transaction's mutations need to be applied, throws RetryTransactionException if there's a conflict
+    private boolean checkConflicts(SnapshotKVTransaction tx, boolean prepare) {
 
-        // Get current and transaction's version info
-        final SnapshotVersion currentSnapshotVersion = this.getCurrentSnapshotVersion();
+        // Get transaction's version info
+        assert Thread.holdsLock(this);
         final SnapshotVersion transactionSnapshotVersion = tx.getSnapshotVersion();
         final long transactionVersion = transactionSnapshotVersion.getVersion();
         assert this.currentVersion - transactionVersion >= 0;
-        assert transactionSnapshotVersion.getOpenTransactions().contains(tx);
 
         // Debug
         if (this.log.isDebugEnabled()) {
-            this.log.debug("committing transaction " + tx + " based on version "
-              + transactionVersion + " (current version is " + this.currentVersion + ")");
+            this.log.debug((prepare ? "preparing " : "committing ") + (tx.isReadOnly() ? "read-only " : "") + "transaction " + tx
+              + " based on version " + transactionVersion + " (current version is " + this.currentVersion + ")");
         }
 
         // Check whether transaction has been forcibly killed somehow
@@ -245,6 +280,34 @@ public class SnapshotKVDatabase implements KVDatabase {
         final Reads transactionReads = tx.getMutableView().getReads();
         final Writes transactionWrites = tx.getMutableView().getWrites();
 
+        // Read-only transactions read from a consistent snapshot, so they can't conflict; just discard any mutations.
+        // The same is true if reads were not tracked (transaction was read-only for a while) but nothing was written.
+        // This does not apply when preparing, because then the reads must remain valid until the transaction commits.
+        if (!prepare && (tx.isReadOnly() || (transactionReads == null && transactionWrites.isEmpty())))
+            return false;
+
+        // Wait for any prepared transaction to complete
+        while (this.preparedTransaction != null) {
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw this.logException(new KVTransactionException(tx, "interrupted while waiting for prepared transaction"));
+            }
+        }
+        if (!transactionSnapshotVersion.getOpenTransactions().contains(tx))
+            throw this.logException(new RetryTransactionException(tx, "transaction has been forcibly invalidated"));
+
+        // If reads were not tracked, any intervening commit is a potential conflict
+        if (transactionReads == null) {
+            if (transactionVersion != this.currentVersion) {
+                throw this.logException(new RetryTransactionException(tx, "transaction is based on MVCC version "
+                  + transactionVersion + " and did not track all of its reads, but the current MVCC version is "
+                  + this.currentVersion));
+            }
+            return true;
+        }
+
         // If the current version has advanced past the transaction's version, check for conflicts from intervening commits
         for (long version = transactionVersion; version != this.currentVersion; version++) {
             final SnapshotVersion committedSnapshotVersion = this.versionInfoMap.get(version);
@@ -262,6 +325,19 @@ public class SnapshotKVDatabase implements KVDatabase {
                   + version + " contains conflicting writes"));
             }
         }
+        return true;
+    }
+
+    private void applyMutations(SnapshotKVTransaction tx) {
+
+        // Read-only transactions discard their mutations
+        assert Thread.holdsLock(this);
+        if (tx.isReadOnly())
+            return;
+
+        // Get current version info
+        final SnapshotVersion currentSnapshotVersion = this.getCurrentSnapshotVersion();
+        final Writes transactionWrites = tx.getMutableView().getWrites();
 
         // Atomically apply the transaction's mutations
         if (this.log.isDebugEnabled())
@@ -284,6 +360,12 @@ public class SnapshotKVDatabase implements KVDatabase {
         if (this.log.isTraceEnabled())
             this.log.trace("cleaning up transaction " + tx);
 
+        // Wake up any transactions waiting on a prepared transaction
+        if (tx == this.preparedTransaction) {
+            this.preparedTransaction = null;
+            this.notifyAll();
+        }
+
         // Remove open transaction from version
         tx.getSnapshotVersion().removeOpenTransaction(tx);
 
@@ -295,13 +377,7 @@ public class SnapshotKVDatabase implements KVDatabase {
             if (this.log.isDebugEnabled())
                 this.log.debug("discarding obsolete version " + versionInfo);
             final KVStore snapshot = versionInfo.getSnapshot();
-            if (snapshot instanceof AutoCloseable) {
-                try {
-                    ((AutoCloseable)snapshot).close();
-                } catch (Exception e) {
-                    // ignore
-                }
-            }
+            KVUtil.closeIfPossible(snapshot);
             i.remove();
         }
     }
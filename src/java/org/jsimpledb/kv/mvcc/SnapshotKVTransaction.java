@@ -11,17 +11,31 @@ import java.io.Closeable;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.jsimpledb.kv.KVStore;
-import org.jsimpledb.kv.KVTransaction;
+import org.jsimpledb.kv.ReadOnlyKVTransaction;
+import org.jsimpledb.kv.RetryTransactionException;
+import org.jsimpledb.kv.SnapshotReadKVTransaction;
 import org.jsimpledb.kv.StaleTransactionException;
 import org.jsimpledb.kv.TransactionTimeoutException;
+import org.jsimpledb.kv.TwoPhaseKVTransaction;
 import org.jsimpledb.kv.util.ForwardingKVStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * {@link SnapshotKVDatabase} transaction.
+ *
+ * <p>
+ * {@linkplain #setReadOnly Read-only} transactions do not track reads and are not checked for conflicts on commit.
+ * Until a mutation is made, reads go directly to the underlying snapshot, bypassing the {@link MutableView}.
+ * </p>
+ *
+ * <p>
+ * Reads made through the {@linkplain #getSnapshotReadView snapshot read view} are not tracked and so cannot
+ * cause a conflict on commit.
+ * </p>
  */
-public class SnapshotKVTransaction extends ForwardingKVStore implements KVTransaction, Closeable {
+public class SnapshotKVTransaction extends ForwardingKVStore
+  implements SnapshotReadKVTransaction, ReadOnlyKVTransaction, TwoPhaseKVTransaction, Closeable {
 
 // Note: locking order: (1) SnapshotKVTransaction, (2) SnapshotKVDatabase
 
@@ -33,7 +47,10 @@ public class SnapshotKVTransaction extends ForwardingKVStore implements KVTransa
     private final SnapshotKVDatabase kvdb;
     private final SnapshotVersion versionInfo;
     private final MutableView mutableView;
+    private final KVStore snapshotReadView;
 
+    private volatile boolean readOnly;
+    private boolean prepared;
     private boolean closed;
     private long timeout;
 
@@ -48,6 +65,14 @@ public class SnapshotKVTransaction extends ForwardingKVStore implements KVTransa
         this.versionInfo = versionInfo;
         this.startTime = System.nanoTime();
         this.mutableView = new MutableView(versionInfo.getSnapshot());
+        final KVStore untrackedView = this.mutableView.getUntrackedView();
+        this.snapshotReadView = new ForwardingKVStore() {
+            @Override
+            protected KVStore delegate() {
+                SnapshotKVTransaction.this.checkState();
+                return untrackedView;
+            }
+        };
     }
 
 // Accessors
@@ -83,7 +108,33 @@ public class SnapshotKVTransaction extends ForwardingKVStore implements KVTransa
     @Override
     protected KVStore delegate() {
         this.checkState();
-        return this.mutableView;
+        return this.readOnly && this.mutableView.getWrites().isEmpty() ? this.versionInfo.getSnapshot() : this.mutableView;
+    }
+
+    // Mutations always go to the MutableView, even when read-only
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        this.checkState();
+        this.mutableView.put(key, value);
+    }
+
+    @Override
+    public void remove(byte[] key) {
+        this.checkState();
+        this.mutableView.remove(key);
+    }
+
+    @Override
+    public void removeRange(byte[] minKey, byte[] maxKey) {
+        this.checkState();
+        this.mutableView.removeRange(minKey, maxKey);
+    }
+
+    @Override
+    public void adjustCounter(byte[] key, long amount) {
+        this.checkState();
+        this.mutableView.adjustCounter(key, amount);
     }
 
 // KVTransaction
@@ -113,8 +164,73 @@ public class SnapshotKVTransaction extends ForwardingKVStore implements KVTransa
     }
 
     @Override
-    public synchronized void commit() {
+    public boolean isReadOnly() {
+        return this.readOnly;
+    }
+
+    /**
+     * Enable or disable read-only mode.
+     *
+     * <p>
+     * While in read-only mode, this transaction does not track reads, and {@link #commit} discards all mutations
+     * without checking for conflicts. Enabling read-only mode has no effect if this transaction has already been modified.
+     * </p>
+     *
+     * <p>
+     * Read-only mode may be disabled again. However, because the reads made in the meantime were not tracked, if this
+     * transaction then makes any mutations, {@link #commit} will throw a {@link RetryTransactionException}
+     * if any other transaction has committed since this transaction was created.
+     * </p>
+     *
+     * @param readOnly true to enable read-only mode, false to disable
+     * @throws StaleTransactionException if this transaction is no longer usable
+     */
+    @Override
+    public synchronized void setReadOnly(boolean readOnly) {
+        this.checkState();
+        if (readOnly == this.readOnly)
+            return;
+        if (readOnly) {
+            if (!this.mutableView.getWrites().isEmpty())
+                return;
+            this.mutableView.disableReadTracking();
+        }
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Prepare this transaction for commit.
+     *
+     * <p>
+     * If there is no conflict, this transaction becomes the {@link SnapshotKVDatabase}'s prepared transaction: until this
+     * transaction is committed or rolled back, the commit or prepare of any other transaction that needs to be checked for
+     * conflicts will block. Because reads are not tracked in {@linkplain #setReadOnly read-only} mode, a read-only
+     * transaction can only be prepared if no other transaction has committed since it was created.
+     * </p>
+     *
+     * @throws RetryTransactionException if this transaction conflicts with another transaction
+     * @throws StaleTransactionException if this transaction is no longer usable
+     */
+    @Override
+    public synchronized void prepare() {
         this.checkState();
+        this.prepared = true;
+        boolean success = false;
+        try {
+            this.kvdb.prepare(this);
+            success = true;
+        } finally {
+            if (!success)
+                this.closed = true;
+        }
+    }
+
+    @Override
+    public synchronized void commit() {
+        if (!this.prepared)
+            this.checkState();
+        else if (this.closed)
+            throw this.kvdb.logException(new StaleTransactionException(this));
         this.closed = true;
         this.kvdb.commit(this);
     }
@@ -127,6 +243,14 @@ public class SnapshotKVTransaction extends ForwardingKVStore implements KVTransa
         this.kvdb.rollback(this);
     }
 
+// SnapshotReadKVTransaction
+
+    @Override
+    public KVStore getSnapshotReadView() {
+        this.checkState();
+        return this.snapshotReadView;
+    }
+
 // Closeable
 
     /**
@@ -147,7 +271,7 @@ public class SnapshotKVTransaction extends ForwardingKVStore implements KVTransa
         return this.getClass().getSimpleName()
           + "[id=" + this.uniqueId
           + ",vers=" + this.versionInfo.getVersion()
-          + (this.closed ? ",closed" : "")
+          + (this.closed ? ",closed" : this.prepared ? ",prepared" : "")
           + "]";
     }
 
@@ -165,7 +289,7 @@ public class SnapshotKVTransaction extends ForwardingKVStore implements KVTransa
 // Internal methods
 
     private void checkState() {
-        if (this.closed)
+        if (this.closed || this.prepared)
             throw this.kvdb.logException(new StaleTransactionException(this));
         if (this.timeout == 0)
             return;
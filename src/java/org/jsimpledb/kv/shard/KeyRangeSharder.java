@@ -0,0 +1,126 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.shard;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jsimpledb.util.ByteUtil;
+
+/**
+ * {@link KeySharder} that assigns contiguous ranges of keys to shards.
+ *
+ * <p>
+ * Initially, all keys are assigned to the default shard; ranges of keys may then be reassigned via {@link #assign assign()}
+ * and {@link #assignPrefix assignPrefix()}. Later assignments override earlier ones where they overlap. Ranges need not
+ * be assigned to shards in key order, so the keys in any one shard need not be contiguous.
+ * </p>
+ *
+ * <p>
+ * For example, to place all objects of a given JSimpleDB object type on a specific shard, assign the object type's
+ * storage ID prefix: {@code sharder.assignPrefix(UnsignedIntEncoder.encode(storageId), shard)}. The same technique
+ * works for index and other storage IDs; keys under storage IDs that are not explicitly assigned (including
+ * database meta-data) remain on the default shard.
+ * </p>
+ *
+ * <p>
+ * Instances should be fully configured before use and not modified thereafter.
+ * </p>
+ */
+public class KeyRangeSharder implements KeySharder {
+
+    private final TreeMap<byte[], Integer> starts = new TreeMap<>(ByteUtil.COMPARATOR);     // range start -> shard
+
+    /**
+     * Constructor.
+     *
+     * @param defaultShard the shard initially assigned to all keys
+     * @throws IllegalArgumentException if {@code defaultShard} is negative
+     */
+    public KeyRangeSharder(int defaultShard) {
+        if (defaultShard < 0)
+            throw new IllegalArgumentException("defaultShard < 0");
+        this.starts.put(ByteUtil.EMPTY, defaultShard);
+    }
+
+    /**
+     * Assign a range of keys to the specified shard.
+     *
+     * @param minKey minimum key (inclusive), or null for no minimum
+     * @param maxKey maximum key (exclusive), or null for no maximum
+     * @param shard zero-based shard index
+     * @throws IllegalArgumentException if {@code shard} is negative
+     * @throws IllegalArgumentException if {@code minKey > maxKey}
+     */
+    public synchronized void assign(byte[] minKey, byte[] maxKey, int shard) {
+
+        // Sanity check
+        if (shard < 0)
+            throw new IllegalArgumentException("shard < 0");
+        if (minKey == null)
+            minKey = ByteUtil.EMPTY;
+        if (maxKey != null && ByteUtil.compare(minKey, maxKey) > 0)
+            throw new IllegalArgumentException("minKey > maxKey");
+        if (maxKey != null && ByteUtil.compare(minKey, maxKey) == 0)
+            return;
+
+        // Preserve the assignment of keys at and after maxKey
+        if (maxKey != null && !this.starts.containsKey(maxKey))
+            this.starts.put(maxKey, this.getShard(maxKey));
+
+        // Replace all assignments within the range
+        (maxKey != null ? this.starts.subMap(minKey, maxKey) : this.starts.tailMap(minKey)).clear();
+        this.starts.put(minKey, shard);
+    }
+
+    /**
+     * Assign all keys having the given prefix to the specified shard.
+     *
+     * @param prefix key prefix
+     * @param shard zero-based shard index
+     * @throws IllegalArgumentException if {@code prefix} is null
+     * @throws IllegalArgumentException if {@code shard} is negative
+     */
+    public void assignPrefix(byte[] prefix, int shard) {
+        if (prefix == null)
+            throw new IllegalArgumentException("null prefix");
+        this.assign(prefix, prefix.length > 0 ? ByteUtil.getKeyAfterPrefix(prefix) : null, shard);
+    }
+
+// KeySharder
+
+    @Override
+    public synchronized int getShard(byte[] key) {
+        return this.starts.floorEntry(key).getValue();
+    }
+
+    @Override
+    public synchronized BitSet getShards(byte[] minKey, byte[] maxKey) {
+        final BitSet shards = new BitSet();
+        shards.set(this.getShard(minKey));
+        final Map<byte[], Integer> interior = maxKey != null ?
+          this.starts.subMap(minKey, false, maxKey, false) : this.starts.tailMap(minKey, false);
+        for (int shard : interior.values())
+            shards.set(shard);
+        return shards;
+    }
+
+// Object
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder buf = new StringBuilder();
+        for (Map.Entry<byte[], Integer> entry : this.starts.entrySet()) {
+            buf.append(buf.length() == 0 ? "[" : ",");
+            buf.append(ByteUtil.toString(entry.getKey())).append("->").append(entry.getValue());
+        }
+        return this.getClass().getSimpleName() + buf.append("]");
+    }
+}
+
@@ -0,0 +1,46 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.shard;
+
+import java.util.BitSet;
+
+/**
+ * Determines which shard of a {@link ShardedKVDatabase} each key belongs to.
+ *
+ * <p>
+ * Implementations must be deterministic and must not change their mapping once the associated {@link ShardedKVDatabase}
+ * contains data; otherwise, previously written keys will no longer be found.
+ * </p>
+ *
+ * @see KeyRangeSharder
+ */
+public interface KeySharder {
+
+    /**
+     * Get the shard containing the given key.
+     *
+     * @param key key
+     * @return zero-based shard index
+     */
+    int getShard(byte[] key);
+
+    /**
+     * Get all shards that may contain keys in the given range.
+     *
+     * <p>
+     * Range operations are only sent to the shards returned by this method. The returned set may contain shards
+     * that don't actually contain any keys in the range (at the cost of efficiency), but it must not omit any that do.
+     * </p>
+     *
+     * @param minKey minimum key (inclusive); must not be null
+     * @param maxKey maximum key (exclusive), or null for no maximum
+     * @return set of zero-based shard indexes; must not be empty
+     */
+    BitSet getShards(byte[] minKey, byte[] maxKey);
+}
+
@@ -0,0 +1,95 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.shard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jsimpledb.kv.KVDatabase;
+
+/**
+ * {@link KVDatabase} that partitions the key space across multiple underlying {@link KVDatabase}s ("shards").
+ *
+ * <p>
+ * Each key is stored in exactly one shard, as determined by the configured {@link KeySharder}. Single-key operations
+ * are routed to the corresponding shard; range operations are sent to every shard that may contain keys in the range,
+ * and range iterations are merged so that keys are returned in the usual sorted order.
+ * Transactions on the underlying shards are only opened when first needed.
+ * </p>
+ *
+ * <p>
+ * Transactions that access a single shard, or that do not write to any shard, are committed by simply committing each
+ * shard transaction, and have the same semantics as the shards' transactions. Transactions that write to some shard and
+ * access more than one shard must be committed atomically, which requires every shard transaction involved to support
+ * {@linkplain org.jsimpledb.kv.TwoPhaseKVTransaction two-phase commit} (for example, {@link
+ * org.jsimpledb.kv.mvcc.SnapshotKVDatabase} does): first, each shard transaction is prepared in shard order; if any
+ * fails, all are rolled back and nothing is written; otherwise, all are committed. Committing such a transaction on shards
+ * that do not support two-phase commit fails with a {@link org.jsimpledb.kv.KVTransactionException} without writing
+ * anything, so applications using such shards must arrange for any transaction that writes to access only one shard,
+ * e.g., by sharding on object type storage ID so that related data is co-located; see {@link KeyRangeSharder}.
+ * </p>
+ *
+ * <p>
+ * All shards must use the same {@linkplain org.jsimpledb.kv.KVStore#encodeCounter counter encoding}.
+ * </p>
+ */
+public class ShardedKVDatabase implements KVDatabase {
+
+    private final List<KVDatabase> shards;
+    private final KeySharder sharder;
+
+    /**
+     * Constructor.
+     *
+     * @param shards underlying databases, indexed by shard number
+     * @param sharder determines which shard each key belongs to
+     * @throws IllegalArgumentException if {@code shards} is null, empty, or contains a null element
+     * @throws IllegalArgumentException if {@code sharder} is null
+     */
+    public ShardedKVDatabase(List<? extends KVDatabase> shards, KeySharder sharder) {
+        if (shards == null)
+            throw new IllegalArgumentException("null shards");
+        if (shards.isEmpty())
+            throw new IllegalArgumentException("empty shards");
+        if (sharder == null)
+            throw new IllegalArgumentException("null sharder");
+        for (KVDatabase shard : shards) {
+            if (shard == null)
+                throw new IllegalArgumentException("null shard");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<KVDatabase>(shards));
+        this.sharder = sharder;
+    }
+
+    /**
+     * Get the underlying shard databases.
+     *
+     * @return unmodifiable list of shards
+     */
+    public List<KVDatabase> getShards() {
+        return this.shards;
+    }
+
+    /**
+     * Get the {@link KeySharder} that determines which shard each key belongs to.
+     *
+     * @return key sharder
+     */
+    public KeySharder getKeySharder() {
+        return this.sharder;
+    }
+
+// KVDatabase
+
+    @Override
+    public ShardedKVTransaction createTransaction() {
+        return new ShardedKVTransaction(this);
+    }
+}
+
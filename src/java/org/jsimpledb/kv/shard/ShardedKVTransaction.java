@@ -0,0 +1,504 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.shard;
+
+import com.google.common.collect.Iterators;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.jsimpledb.kv.AbstractKVStore;
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVTransaction;
+import org.jsimpledb.kv.KVTransactionException;
+import org.jsimpledb.kv.ReadOnlyKVTransaction;
+import org.jsimpledb.kv.RetryTransactionException;
+import org.jsimpledb.kv.StaleTransactionException;
+import org.jsimpledb.kv.TransactionTimeoutException;
+import org.jsimpledb.kv.TwoPhaseKVTransaction;
+import org.jsimpledb.kv.util.KVUtil;
+import org.jsimpledb.util.ByteUtil;
+
+/**
+ * {@link ShardedKVDatabase} transaction.
+ *
+ * <p>
+ * Transactions on the underlying shards are opened on demand. Exceptions thrown by shard transactions
+ * are re-thrown with this instance as the {@linkplain KVTransactionException#getTransaction associated transaction}.
+ * See {@link ShardedKVDatabase} for commit semantics.
+ * </p>
+ */
+public class ShardedKVTransaction extends AbstractKVStore implements ReadOnlyKVTransaction {
+
+    private static final Comparator<KVPair> KEY_COMPARATOR = new Comparator<KVPair>() {
+        @Override
+        public int compare(KVPair pair1, KVPair pair2) {
+            return ByteUtil.compare(pair1.getKey(), pair2.getKey());
+        }
+    };
+
+    private final ShardedKVDatabase db;
+    private final KVTransaction[] txs;
+    private final BitSet written = new BitSet();
+
+    private long timeout = -1;
+    private boolean readOnly;
+    private volatile boolean stale;
+
+    /**
+     * Constructor.
+     *
+     * @param db associated database
+     */
+    ShardedKVTransaction(ShardedKVDatabase db) {
+        this.db = db;
+        this.txs = new KVTransaction[db.getShards().size()];
+    }
+
+    /**
+     * Get the shard transaction for the given shard, if it has been opened.
+     *
+     * @param shard zero-based shard index
+     * @return shard transaction, or null if this transaction has not yet accessed {@code shard}
+     * @throws IndexOutOfBoundsException if {@code shard} is out of range
+     */
+    public synchronized KVTransaction getShardTransaction(int shard) {
+        return this.txs[shard];
+    }
+
+// KVStore
+
+    @Override
+    public byte[] get(byte[] key) {
+        try {
+            return this.getTx(this.getShard(key)).get(key);
+        } catch (KVTransactionException e) {
+            throw this.wrapException(e);
+        }
+    }
+
+    @Override
+    public KVPair getAtLeast(byte[] minKey) {
+        if (minKey == null)
+            minKey = ByteUtil.EMPTY;
+        final BitSet shards = this.getShards(minKey, null);
+        KVPair best = null;
+        try {
+            for (int shard = shards.nextSetBit(0); shard >= 0; shard = shards.nextSetBit(shard + 1)) {
+                final KVPair pair = this.getTx(shard).getAtLeast(minKey);
+                if (pair != null && (best == null || KEY_COMPARATOR.compare(pair, best) < 0))
+                    best = pair;
+            }
+        } catch (KVTransactionException e) {
+            throw this.wrapException(e);
+        }
+        return best;
+    }
+
+    @Override
+    public KVPair getAtMost(byte[] maxKey) {
+        final BitSet shards = this.getShards(ByteUtil.EMPTY, maxKey);
+        KVPair best = null;
+        try {
+            for (int shard = shards.nextSetBit(0); shard >= 0; shard = shards.nextSetBit(shard + 1)) {
+                final KVPair pair = this.getTx(shard).getAtMost(maxKey);
+                if (pair != null && (best == null || KEY_COMPARATOR.compare(pair, best) > 0))
+                    best = pair;
+            }
+        } catch (KVTransactionException e) {
+            throw this.wrapException(e);
+        }
+        return best;
+    }
+
+    @Override
+    public Iterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+        if (minKey == null)
+            minKey = ByteUtil.EMPTY;
+        if (maxKey != null && ByteUtil.compare(minKey, maxKey) > 0)
+            throw new IllegalArgumentException("minKey > maxKey");
+        final BitSet shards = this.getShards(minKey, maxKey);
+        final ArrayList<Iterator<KVPair>> iterators = new ArrayList<>(shards.cardinality());
+        try {
+            for (int shard = shards.nextSetBit(0); shard >= 0; shard = shards.nextSetBit(shard + 1))
+                iterators.add(this.getTx(shard).getRange(minKey, maxKey, reverse));
+        } catch (KVTransactionException e) {
+            throw this.wrapException(e);
+        }
+        return new RangeIterator(iterators, reverse);
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        final int shard = this.getShard(key);
+        try {
+            this.getTx(shard).put(key, value);
+        } catch (KVTransactionException e) {
+            throw this.wrapException(e);
+        }
+        this.setWritten(shard);
+    }
+
+    @Override
+    public void remove(byte[] key) {
+        final int shard = this.getShard(key);
+        try {
+            this.getTx(shard).remove(key);
+        } catch (KVTransactionException e) {
+            throw this.wrapException(e);
+        }
+        this.setWritten(shard);
+    }
+
+    @Override
+    public void removeRange(byte[] minKey, byte[] maxKey) {
+        if (minKey == null)
+            minKey = ByteUtil.EMPTY;
+        final BitSet shards = this.getShards(minKey, maxKey);
+        try {
+            for (int shard = shards.nextSetBit(0); shard >= 0; shard = shards.nextSetBit(shard + 1)) {
+                this.getTx(shard).removeRange(minKey, maxKey);
+                this.setWritten(shard);
+            }
+        } catch (KVTransactionException e) {
+            throw this.wrapException(e);
+        }
+    }
+
+    /**
+     * Encode a counter value.
+     *
+     * <p>
+     * The implementation in {@link ShardedKVTransaction} delegates to an arbitrary shard;
+     * therefore, all shards must use the same counter encoding.
+     * </p>
+     *
+     * @param value desired counter value
+     * @return encoded counter value
+     */
+    @Override
+    public byte[] encodeCounter(long value) {
+        try {
+            return this.getAnyTx().encodeCounter(value);
+        } catch (KVTransactionException e) {
+            throw this.wrapException(e);
+        }
+    }
+
+    /**
+     * Decode a counter value.
+     *
+     * <p>
+     * The implementation in {@link ShardedKVTransaction} delegates to an arbitrary shard;
+     * therefore, all shards must use the same counter encoding.
+     * </p>
+     *
+     * @param value encoded counter value
+     * @return decoded counter value
+     */
+    @Override
+    public long decodeCounter(byte[] value) {
+        try {
+            return this.getAnyTx().decodeCounter(value);
+        } catch (KVTransactionException e) {
+            throw this.wrapException(e);
+        }
+    }
+
+    @Override
+    public void adjustCounter(byte[] key, long amount) {
+        final int shard = this.getShard(key);
+        try {
+            this.getTx(shard).adjustCounter(key, amount);
+        } catch (KVTransactionException e) {
+            throw this.wrapException(e);
+        }
+        this.setWritten(shard);
+    }
+
+// KVTransaction
+
+    @Override
+    public ShardedKVDatabase getKVDatabase() {
+        return this.db;
+    }
+
+    /**
+     * Change the timeout for this transaction from its default value.
+     *
+     * <p>
+     * The timeout is applied to each shard transaction, including those opened later.
+     * </p>
+     *
+     * @param timeout transaction timeout in milliseconds, or zero for unlimited
+     * @throws UnsupportedOperationException if some shard does not support timeouts
+     */
+    @Override
+    public synchronized void setTimeout(long timeout) {
+        if (timeout < 0)
+            throw new IllegalArgumentException("timeout < 0");
+        this.checkState();
+        this.timeout = timeout;
+        try {
+            for (KVTransaction tx : this.txs) {
+                if (tx != null)
+                    tx.setTimeout(timeout);
+            }
+        } catch (KVTransactionException e) {
+            throw this.wrapException(e);
+        }
+    }
+
+    @Override
+    public synchronized boolean isReadOnly() {
+        return this.readOnly;
+    }
+
+    /**
+     * Enable or disable read-only mode.
+     *
+     * <p>
+     * The setting is forwarded to each shard transaction that implements {@link ReadOnlyKVTransaction}, including those
+     * opened later. While in read-only mode, {@link #commit} rolls back all shard transactions.
+     * </p>
+     *
+     * @param readOnly true to enable read-only mode, false to disable
+     * @throws StaleTransactionException if this transaction is no longer usable
+     */
+    @Override
+    public synchronized void setReadOnly(boolean readOnly) {
+        this.checkState();
+        if (readOnly == this.readOnly || (readOnly && !this.written.isEmpty()))
+            return;
+        this.readOnly = readOnly;
+        try {
+            for (KVTransaction tx : this.txs) {
+                if (tx instanceof ReadOnlyKVTransaction)
+                    ((ReadOnlyKVTransaction)tx).setReadOnly(readOnly);
+            }
+        } catch (KVTransactionException e) {
+            throw this.wrapException(e);
+        }
+    }
+
+    /**
+     * Commit this transaction.
+     *
+     * <p>
+     * See {@link ShardedKVDatabase} for commit semantics.
+     * </p>
+     *
+     * @throws KVTransactionException if this transaction wrote to some shard and accessed more than one shard,
+     *  but not every shard transaction supports {@linkplain TwoPhaseKVTransaction two-phase commit}
+     */
+    @Override
+    public synchronized void commit() {
+        this.checkState();
+
+        // In read-only mode, there's nothing to commit
+        if (this.readOnly) {
+            this.rollback();
+            return;
+        }
+        this.stale = true;
+
+        // Get shard transactions in shard order
+        final ArrayList<KVTransaction> shardTxs = new ArrayList<>(this.txs.length);
+        for (KVTransaction tx : this.txs) {
+            if (tx != null)
+                shardTxs.add(tx);
+        }
+
+        // If only one shard was accessed, or nothing was written, commit each shard transaction directly. In the latter case,
+        // the reads in every shard remain valid from before the first shard commits until after the last shard commits.
+        if (shardTxs.size() <= 1 || this.written.isEmpty()) {
+            for (int i = 0; i < shardTxs.size(); i++) {
+                try {
+                    shardTxs.get(i).commit();
+                } catch (RuntimeException e) {
+                    for (int j = i + 1; j < shardTxs.size(); j++)
+                        shardTxs.get(j).rollback();
+                    throw this.wrapRuntimeException(e);
+                }
+            }
+            return;
+        }
+
+        // Otherwise, the shard transactions must be committed atomically, which requires two-phase commit
+        for (KVTransaction tx : shardTxs) {
+            if (!(tx instanceof TwoPhaseKVTransaction)) {
+                for (KVTransaction tx2 : shardTxs)
+                    tx2.rollback();
+                throw new KVTransactionException(this, "transaction wrote to shard(s) " + this.written + " and accessed "
+                  + shardTxs.size() + " shards, but shard transaction " + tx + " does not support two-phase commit");
+            }
+        }
+
+        // Phase one: prepare shard transactions in shard order; if any fails, nothing has been written
+        for (int i = 0; i < shardTxs.size(); i++) {
+            try {
+                ((TwoPhaseKVTransaction)shardTxs.get(i)).prepare();
+            } catch (RuntimeException e) {
+                for (int j = 0; j < shardTxs.size(); j++) {
+                    if (j != i)
+                        shardTxs.get(j).rollback();
+                }
+                throw this.wrapRuntimeException(e);
+            }
+        }
+
+        // Phase two: commit shard transactions; having been prepared, they can't fail due to a conflict
+        RuntimeException failure = null;
+        for (KVTransaction tx : shardTxs) {
+            try {
+                tx.commit();
+            } catch (RuntimeException e) {
+                if (failure == null)
+                    failure = e;
+            }
+        }
+        if (failure != null)
+            throw new KVTransactionException(this, "prepared shard transaction failed to commit: " + failure, failure);
+    }
+
+    @Override
+    public synchronized void rollback() {
+        this.stale = true;
+        for (KVTransaction tx : this.txs) {
+            if (tx != null)
+                tx.rollback();
+        }
+    }
+
+// Internal methods
+
+    private int getShard(byte[] key) {
+        if (key == null)
+            throw new NullPointerException("null key");
+        return this.db.getKeySharder().getShard(key);
+    }
+
+    private BitSet getShards(byte[] minKey, byte[] maxKey) {
+        final BitSet shards = this.db.getKeySharder().getShards(minKey, maxKey);
+        if (shards.isEmpty())
+            throw new IllegalStateException("key sharder returned no shards for range " + ByteUtil.toString(minKey) + "-"
+              + (maxKey != null ? ByteUtil.toString(maxKey) : "MAX"));
+        return shards;
+    }
+
+    private synchronized KVTransaction getTx(int shard) {
+        this.checkState();
+        if (shard < 0 || shard >= this.txs.length)
+            throw new IllegalStateException("key sharder returned invalid shard " + shard + " (" + this.txs.length + " shards)");
+        KVTransaction tx = this.txs[shard];
+        if (tx == null) {
+            tx = this.db.getShards().get(shard).createTransaction();
+            try {
+                if (this.timeout != -1)
+                    tx.setTimeout(this.timeout);
+                if (this.readOnly && tx instanceof ReadOnlyKVTransaction)
+                    ((ReadOnlyKVTransaction)tx).setReadOnly(true);
+            } catch (RuntimeException e) {
+                tx.rollback();
+                throw e;
+            }
+            this.txs[shard] = tx;
+        }
+        return tx;
+    }
+
+    private synchronized KVTransaction getAnyTx() {
+        for (KVTransaction tx : this.txs) {
+            if (tx != null)
+                return tx;
+        }
+        return this.getTx(0);
+    }
+
+    private synchronized void setWritten(int shard) {
+        this.written.set(shard);
+    }
+
+    private void checkState() {
+        if (this.stale)
+            throw new StaleTransactionException(this);
+    }
+
+    private RuntimeException wrapRuntimeException(RuntimeException e) {
+        return e instanceof KVTransactionException ? this.wrapException((KVTransactionException)e) : e;
+    }
+
+    private KVTransactionException wrapException(KVTransactionException e) {
+        if (e.getTransaction() == this)
+            return e;
+        if (e instanceof RetryTransactionException)
+            return new RetryTransactionException(this, e.getMessage(), e);
+        if (e instanceof TransactionTimeoutException)
+            return new TransactionTimeoutException(this, e.getMessage(), e);
+        if (e instanceof StaleTransactionException)
+            return new StaleTransactionException(this, e.getMessage(), e);
+        return new KVTransactionException(this, e.getMessage(), e);
+    }
+
+// RangeIterator
+
+    private class RangeIterator implements Iterator<KVPair>, AutoCloseable {
+
+        private final List<Iterator<KVPair>> iterators;
+        private final Iterator<KVPair> iterator;
+
+        private byte[] removeKey;
+
+        RangeIterator(List<Iterator<KVPair>> iterators, boolean reverse) {
+            this.iterators = iterators;
+            this.iterator = iterators.size() == 1 ? iterators.get(0) :
+              Iterators.mergeSorted(iterators, reverse ? Collections.reverseOrder(KEY_COMPARATOR) : KEY_COMPARATOR);
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                return this.iterator.hasNext();
+            } catch (KVTransactionException e) {
+                throw ShardedKVTransaction.this.wrapException(e);
+            }
+        }
+
+        @Override
+        public KVPair next() {
+            final KVPair pair;
+            try {
+                pair = this.iterator.next();
+            } catch (KVTransactionException e) {
+                throw ShardedKVTransaction.this.wrapException(e);
+            }
+            this.removeKey = pair.getKey();
+            return pair;
+        }
+
+        @Override
+        public void remove() {
+            if (this.removeKey == null)
+                throw new IllegalStateException();
+            ShardedKVTransaction.this.remove(this.removeKey);
+            this.removeKey = null;
+        }
+
+        @Override
+        public void close() {
+            for (Iterator<KVPair> i : this.iterators) {
+                KVUtil.closeIfPossible(i);
+            }
+        }
+    }
+}
+
@@ -0,0 +1,15 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+/**
+ * A {@link org.jsimpledb.kv.KVDatabase} implementation that spreads keys across multiple underlying
+ * {@link org.jsimpledb.kv.KVDatabase}s.
+ *
+ * @see org.jsimpledb.kv.shard.ShardedKVDatabase
+ */
+package org.jsimpledb.kv.shard;
+
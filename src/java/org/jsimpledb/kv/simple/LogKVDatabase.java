@@ -0,0 +1,757 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.simple;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.jsimpledb.kv.KVDatabaseException;
+import org.jsimpledb.kv.util.BinarySerializer;
+import org.jsimpledb.kv.util.NavigableMapKVStore;
+import org.jsimpledb.util.ByteReader;
+import org.jsimpledb.util.ByteWriter;
+import org.jsimpledb.util.UnsignedIntEncoder;
+
+/**
+ * Persistent {@link SimpleKVDatabase} that records committed transactions in an append-only write-ahead log
+ * and periodically takes snapshots of its in-memory data in the background.
+ *
+ * <p>
+ * All data is kept in memory in a {@link NavigableMapKVStore}. When a transaction commits, its mutations are appended
+ * to the current log file as a single, checksummed record before being applied to memory. Whether and when the log
+ * is synced to disk is determined by the {@linkplain #setSyncPolicy sync policy}: with {@link SyncPolicy#COMMIT}
+ * (the default), {@link LogKVTransaction#commit commit()} does not return until the transaction's log record is on disk;
+ * commits from concurrent threads share a single sync ("group commit"), because the sync is performed after the
+ * database lock is released.
+ * </p>
+ *
+ * <p>
+ * Once the current log file grows beyond the {@linkplain #setSnapshotThreshold snapshot threshold}, a new log file
+ * is started and a snapshot of the in-memory data is written by a background thread using {@link BinarySerializer}.
+ * Transactions are not blocked while the snapshot is written: the snapshot is "fuzzy", i.e., it may include some changes
+ * committed after the new log file was started, but since replaying log records is idempotent, this does not matter.
+ * Once the snapshot is safely on disk, older snapshots and log files are deleted.
+ * </p>
+ *
+ * <p>
+ * On {@linkplain #start startup}, the most recent snapshot is loaded and all subsequent log files are replayed.
+ * A partially written record at the end of the most recent log file (e.g., due to a crash) is discarded. A damaged record
+ * in any earlier log file causes {@link #start} to fail, because later log files depend on it.
+ * </p>
+ *
+ * <p>
+ * With {@link SyncPolicy#COMMIT}, the changes made by a transaction become visible to other transactions slightly before
+ * the transaction's log record is synced. Another transaction that reads those changes and commits is unaffected, because
+ * its own log record follows and therefore cannot be synced first; however, read-only transactions may observe changes
+ * that are subsequently lost in a crash.
+ * </p>
+ *
+ * <p>
+ * A {@linkplain #setDirectory directory} is the only required configuration property.
+ * Instances may be stopped and (re)started multiple times.
+ * </p>
+ *
+ * @see BinarySerializer
+ */
+public class LogKVDatabase extends SimpleKVDatabase {
+
+    /**
+     * Default {@linkplain #setSnapshotThreshold snapshot threshold} in bytes ({@value #DEFAULT_SNAPSHOT_THRESHOLD}).
+     */
+    public static final long DEFAULT_SNAPSHOT_THRESHOLD = 16 * 1024 * 1024;
+
+    /**
+     * Default {@linkplain #setSyncInterval sync interval} in milliseconds ({@value #DEFAULT_SYNC_INTERVAL}).
+     */
+    public static final long DEFAULT_SYNC_INTERVAL = 1000;
+
+    private static final String LOG_PREFIX = "log.";
+    private static final String SNAPSHOT_PREFIX = "snapshot.";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Pattern FILE_PATTERN = Pattern.compile("(log|snapshot)\\.([0-9a-f]{16})");
+
+    private static final int RECORD_HEADER_LENGTH = 8;
+    private static final int PUT = 1;
+    private static final int DEL = 2;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+// Locking order: (1) snapshotLock, (2) LogKVDatabase, (3) syncLock
+
+    private final Object snapshotLock = new Object();
+    private final Object syncLock = new Object();
+
+    private File directory;
+    private volatile SyncPolicy syncPolicy = SyncPolicy.COMMIT;
+    private long syncInterval = DEFAULT_SYNC_INTERVAL;
+    private long snapshotThreshold = DEFAULT_SNAPSHOT_THRESHOLD;
+
+    private ScheduledExecutorService executor;
+    private FileChannel logChannel;                 // current log file; modified only while holding both locks
+    private long logSequence;                       // sequence number of the current log file
+    private long logSize;                           // length of the current log file
+    private volatile long logPosition;              // total number of log bytes written since startup
+    private long syncedPosition;                    // total number of log bytes synced since startup; guarded by syncLock
+    private boolean snapshotPending;
+    private IOException logFailure;
+
+    /**
+     * Constructor. A {@linkplain #setDirectory directory} must be configured prior to {@linkplain #start startup}.
+     */
+    public LogKVDatabase() {
+        super(new NavigableMapKVStore(), DEFAULT_WAIT_TIMEOUT, DEFAULT_HOLD_TIMEOUT);
+    }
+
+    /**
+     * Convenience constructor.
+     *
+     * @param directory database directory
+     */
+    public LogKVDatabase(File directory) {
+        this();
+        this.directory = directory;
+    }
+
+// Properties
+
+    /**
+     * Get the filesystem directory containing the database.
+     *
+     * @return database directory
+     */
+    public synchronized File getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Configure the filesystem directory containing the database. Required property.
+     *
+     * <p>
+     * The directory will be created if it does not exist. It must not be used by more than one instance at a time.
+     * </p>
+     *
+     * @param directory database directory
+     */
+    public synchronized void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the configured {@link SyncPolicy}.
+     *
+     * @return log sync policy
+     */
+    public SyncPolicy getSyncPolicy() {
+        return this.syncPolicy;
+    }
+
+    /**
+     * Configure when the log is synced to disk. Default is {@link SyncPolicy#COMMIT}.
+     *
+     * <p>
+     * Changes take effect for {@link SyncPolicy#INTERVAL} on the next {@linkplain #start startup}.
+     * </p>
+     *
+     * @param syncPolicy log sync policy
+     * @throws IllegalArgumentException if {@code syncPolicy} is null
+     */
+    public void setSyncPolicy(SyncPolicy syncPolicy) {
+        if (syncPolicy == null)
+            throw new IllegalArgumentException("null syncPolicy");
+        this.syncPolicy = syncPolicy;
+    }
+
+    /**
+     * Get the interval between background log syncs when the sync policy is {@link SyncPolicy#INTERVAL}.
+     *
+     * @return sync interval in milliseconds
+     */
+    public synchronized long getSyncInterval() {
+        return this.syncInterval;
+    }
+
+    /**
+     * Configure the interval between background log syncs when the sync policy is {@link SyncPolicy#INTERVAL}.
+     * Default is {@link #DEFAULT_SYNC_INTERVAL}. Changes take effect on the next {@linkplain #start startup}.
+     *
+     * @param syncInterval sync interval in milliseconds
+     * @throws IllegalArgumentException if {@code syncInterval} is not positive
+     */
+    public synchronized void setSyncInterval(long syncInterval) {
+        if (syncInterval <= 0)
+            throw new IllegalArgumentException("syncInterval <= 0");
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * Get the log file size beyond which a new log file is started and a background snapshot is taken.
+     *
+     * @return snapshot threshold in bytes
+     */
+    public synchronized long getSnapshotThreshold() {
+        return this.snapshotThreshold;
+    }
+
+    /**
+     * Configure the log file size beyond which a new log file is started and a background snapshot is taken.
+     * Default is {@link #DEFAULT_SNAPSHOT_THRESHOLD}.
+     *
+     * @param snapshotThreshold snapshot threshold in bytes
+     * @throws IllegalArgumentException if {@code snapshotThreshold} is not positive
+     */
+    public synchronized void setSnapshotThreshold(long snapshotThreshold) {
+        if (snapshotThreshold <= 0)
+            throw new IllegalArgumentException("snapshotThreshold <= 0");
+        this.snapshotThreshold = snapshotThreshold;
+    }
+
+// Lifecycle
+
+    /**
+     * Start this instance. This loads the most recent snapshot, if any, and replays the log.
+     *
+     * <p>
+     * This method is idempotent.
+     * </p>
+     *
+     * @throws IllegalStateException if this instance is not properly configured
+     * @throws KVDatabaseException if an error occurs reading or writing the database files
+     */
+    @PostConstruct
+    public void start() {
+        synchronized (this.snapshotLock) {
+            synchronized (this) {
+                if (this.logChannel != null)
+                    return;
+                if (this.directory == null)
+                    throw new IllegalStateException("no directory configured");
+                if (!this.directory.isDirectory() && !this.directory.mkdirs())
+                    throw new KVDatabaseException(this, "can't create directory `" + this.directory + "'");
+
+                // Recover data
+                final long lastSequence;
+                this.kvLock.writeLock().lock();
+                try {
+                    lastSequence = this.recover();
+                } catch (IOException e) {
+                    throw new KVDatabaseException(this, "error recovering database from `" + this.directory + "'", e);
+                } finally {
+                    this.kvLock.writeLock().unlock();
+                }
+
+                // Start a new log file
+                synchronized (this.syncLock) {
+                    try {
+                        this.openLog(lastSequence + 1);
+                    } catch (IOException e) {
+                        throw new KVDatabaseException(this, "error creating log file in `" + this.directory + "'", e);
+                    }
+                    this.logPosition = 0;
+                    this.syncedPosition = 0;
+                }
+                this.logFailure = null;
+                this.snapshotPending = false;
+
+                // Start background thread(s)
+                this.executor = Executors.newScheduledThreadPool(2, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable action) {
+                        final Thread thread = new Thread(action, "LogKVDatabase-" + THREAD_COUNTER.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                if (this.syncPolicy == SyncPolicy.INTERVAL) {
+                    this.executor.scheduleWithFixedDelay(new Runnable() {
+                        @Override
+                        public void run() {
+                            LogKVDatabase.this.backgroundSync();
+                        }
+                    }, this.syncInterval, this.syncInterval, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop this instance. Waits for any background snapshot to complete, then syncs and closes the log.
+     * Does nothing if not {@linkplain #start started}.
+     *
+     * <p>
+     * Transactions that are open when this method is invoked will fail to commit.
+     * </p>
+     */
+    @PreDestroy
+    public void stop() {
+
+        // Stop background threads
+        final ScheduledExecutorService oldExecutor;
+        synchronized (this) {
+            oldExecutor = this.executor;
+            this.executor = null;
+        }
+        if (oldExecutor == null)
+            return;
+        oldExecutor.shutdown();
+        try {
+            while (!oldExecutor.awaitTermination(1, TimeUnit.SECONDS))
+                this.log.info("waiting for background snapshot to complete");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Close log
+        synchronized (this.snapshotLock) {
+            synchronized (this) {
+                synchronized (this.syncLock) {
+                    if (this.logChannel == null)
+                        return;
+                    try {
+                        this.logChannel.force(false);
+                        this.syncedPosition = this.logPosition;
+                    } catch (IOException e) {
+                        this.log.error("error syncing log file during shutdown", e);
+                    }
+                    try {
+                        this.logChannel.close();
+                    } catch (IOException e) {
+                        this.log.error("error closing log file during shutdown", e);
+                    }
+                    this.logChannel = null;
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized LogKVTransaction createTransaction() {
+        if (this.logChannel == null)
+            throw new IllegalStateException("not started");
+        return new LogKVTransaction(this, this.getWaitTimeout());
+    }
+
+// Snapshots
+
+    /**
+     * Start a new log file and write a snapshot of the current data, then delete obsolete snapshot and log files.
+     *
+     * <p>
+     * Snapshots are normally taken automatically in the background based on the {@linkplain #setSnapshotThreshold
+     * snapshot threshold}; this method allows taking a snapshot explicitly. Transactions are not blocked while the snapshot
+     * is being written. This method blocks until the snapshot is complete.
+     * </p>
+     *
+     * @throws IllegalStateException if this instance is not {@linkplain #start started}
+     * @throws KVDatabaseException if an error occurs writing the snapshot
+     */
+    public void snapshot() {
+        synchronized (this.snapshotLock) {
+
+            // Start a new log file; the snapshot will include everything in previous log files
+            final long sequence;
+            synchronized (this) {
+                if (this.logChannel == null)
+                    throw new IllegalStateException("not started");
+                try {
+                    synchronized (this.syncLock) {
+                        this.logChannel.force(false);
+                        this.syncedPosition = this.logPosition;
+                        this.logChannel.close();
+                        this.logChannel = null;
+                        this.openLog(this.logSequence + 1);
+                    }
+                } catch (IOException e) {
+                    this.logFailure = e;
+                    throw new KVDatabaseException(this, "error starting new log file", e);
+                }
+                sequence = this.logSequence;
+            }
+
+            // Write snapshot (without locking) and delete obsolete files
+            try {
+                this.writeSnapshot(sequence);
+                this.deleteObsoleteFiles(sequence);
+            } catch (IOException e) {
+                throw new KVDatabaseException(this, "error writing snapshot", e);
+            } finally {
+                synchronized (this) {
+                    this.snapshotPending = false;
+                }
+            }
+        }
+    }
+
+// Subclass hooks
+
+    /**
+     * Append the transaction's mutations to the log.
+     */
+    @Override
+    protected void preCommit(SimpleKVTransaction tx) {
+        super.preCommit(tx);
+        if (this.logFailure != null)
+            throw new KVDatabaseException(this, "log is unusable due to a previous error", this.logFailure);
+        if (this.logChannel == null)
+            throw new KVDatabaseException(this, "database is not started");
+
+        // Encode record
+        final ByteBuffer record = LogKVDatabase.encodeRecord(tx.mutations);
+
+        // Write record; if we fail, try to remove whatever portion of it was written
+        try {
+            while (record.hasRemaining())
+                this.logChannel.write(record);
+        } catch (IOException e) {
+            try {
+                this.logChannel.truncate(this.logSize);
+                this.logChannel.position(this.logSize);
+            } catch (IOException e2) {
+                this.logFailure = e2;
+            }
+            throw new KVDatabaseException(this, "error writing to log file", e);
+        }
+        this.logSize += record.limit();
+        this.logPosition += record.limit();
+        ((LogKVTransaction)tx).logPosition = this.logPosition;
+    }
+
+    /**
+     * Start a background snapshot if the current log file has grown beyond the snapshot threshold.
+     */
+    @Override
+    protected void postCommit(SimpleKVTransaction tx, boolean successful) {
+        super.postCommit(tx, successful);
+        if (!successful)
+            this.log.error("error applying committed mutations to memory; restart required to resynchronize with the log");
+        if (this.logSize < this.snapshotThreshold || this.snapshotPending || this.executor == null)
+            return;
+        this.snapshotPending = true;
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    LogKVDatabase.this.snapshot();
+                } catch (RuntimeException e) {
+                    LogKVDatabase.this.log.error("error taking background snapshot", e);
+                }
+            }
+        });
+    }
+
+    // Invoked by LogKVTransaction.commit() after the database lock has been released
+    void postCommitSync(LogKVTransaction tx) {
+        if (this.syncPolicy == SyncPolicy.COMMIT && tx.logPosition > 0)
+            this.sync(tx.logPosition);
+    }
+
+// Log syncing
+
+    private void sync(long position) {
+        synchronized (this.syncLock) {
+            if (this.syncedPosition >= position)                    // another thread's sync already covered us
+                return;
+            if (this.logChannel == null)                            // we've been stopped; log was synced at that time
+                return;
+            final long target = this.logPosition;
+            try {
+                this.logChannel.force(false);
+            } catch (IOException e) {
+                throw new KVDatabaseException(this, "error syncing log file", e);
+            }
+            this.syncedPosition = target;
+        }
+    }
+
+    private void backgroundSync() {
+        try {
+            this.sync(this.logPosition);
+        } catch (RuntimeException e) {
+            this.log.error("error syncing log file in the background", e);
+        }
+    }
+
+// Internal methods
+
+    // Assumes we hold the instance lock and syncLock
+    private void openLog(long sequence) throws IOException {
+        assert this.logChannel == null;
+        this.logChannel = FileChannel.open(this.getFile(LOG_PREFIX, sequence).toPath(),
+          StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.logSequence = sequence;
+        this.logSize = 0;
+    }
+
+    private File getFile(String prefix, long sequence) {
+        return new File(this.directory, String.format("%s%016x", prefix, sequence));
+    }
+
+    // Load latest snapshot and replay subsequent logs; returns highest sequence number found. Assumes kvLock write lock held.
+    private long recover() throws IOException {
+
+        // Clear existing data
+        this.kv.removeRange(null, null);
+
+        // Find snapshot and log files
+        final TreeMap<Long, File> snapshots = new TreeMap<>();
+        final TreeMap<Long, File> logs = new TreeMap<>();
+        final File[] files = this.directory.listFiles();
+        if (files == null)
+            throw new IOException("error listing directory `" + this.directory + "'");
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                this.log.info("deleting incomplete file `" + file + "'");
+                Files.delete(file.toPath());
+                continue;
+            }
+            final Matcher matcher = FILE_PATTERN.matcher(file.getName());
+            if (!matcher.matches())
+                continue;
+            final long sequence = Long.parseLong(matcher.group(2), 16);
+            ("log".equals(matcher.group(1)) ? logs : snapshots).put(sequence, file);
+        }
+
+        // Load the most recent snapshot
+        long lastSequence = 0;
+        long snapshotSequence = 0;
+        if (!snapshots.isEmpty()) {
+            snapshotSequence = snapshots.lastKey();
+            lastSequence = snapshotSequence;
+            final File file = snapshots.lastEntry().getValue();
+            try (BufferedInputStream input = new BufferedInputStream(new FileInputStream(file))) {
+                final long count = new BinarySerializer(this.kv).read(input);
+                this.log.info("loaded " + count + " key/value pairs from snapshot `" + file + "'");
+            }
+        }
+
+        // Replay subsequent log files; only the last one can legitimately end with a partially written record
+        for (Map.Entry<Long, File> entry : logs.tailMap(snapshotSequence, true).entrySet()) {
+            this.replay(entry.getValue(), entry.getKey().equals(logs.lastKey()));
+            lastSequence = Math.max(lastSequence, entry.getKey());
+        }
+
+        // Clean up obsolete files left over from an interrupted cleanup
+        this.deleteObsoleteFiles(snapshotSequence);
+        return lastSequence;
+    }
+
+    private void replay(File file, boolean last) throws IOException {
+        final long fileLength = file.length();
+        long position = 0;
+        long count = 0;
+        String error = null;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (position < fileLength) {
+
+                // Read record
+                if (fileLength - position < RECORD_HEADER_LENGTH) {
+                    error = "truncated record header";
+                    break;
+                }
+                final int length = input.readInt();
+                final int checksum = input.readInt();
+                if (length < 0 || length > fileLength - position - RECORD_HEADER_LENGTH) {
+                    error = "truncated record";
+                    break;
+                }
+                final byte[] payload = new byte[length];
+                input.readFully(payload);
+                final CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int)crc.getValue() != checksum) {
+                    error = "checksum mismatch";
+                    break;
+                }
+
+                // Decode and apply mutations
+                final ArrayList<Mutation> mutations;
+                try {
+                    mutations = LogKVDatabase.decodeRecord(payload);
+                } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                    error = "invalid record: " + e;
+                    break;
+                }
+                for (Mutation mutation : mutations)
+                    mutation.apply(this.kv);
+                position += RECORD_HEADER_LENGTH + length;
+                count++;
+            }
+        } catch (EOFException e) {
+            error = "unexpected EOF";
+        }
+        this.log.info("replayed " + count + " transaction(s) from log file `" + file + "'");
+
+        // Earlier log files were complete when the next one was started, so any error there means committed data is lost
+        if (error != null && !last) {
+            throw new IOException("log file `" + file + "' is corrupt at offset " + position + " (" + error
+              + "); it is not the most recent log file, so transactions committed after offset " + position + " would be lost");
+        }
+
+        // Discard partially written record, if any
+        if (error != null) {
+            this.log.warn("discarding " + (fileLength - position) + " trailing byte(s) of log file `" + file + "': " + error);
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(position);
+                channel.force(false);
+            }
+        }
+    }
+
+    private void writeSnapshot(long sequence) throws IOException {
+        final File file = this.getFile(SNAPSHOT_PREFIX, sequence);
+        final File temp = new File(file.getPath() + TEMP_SUFFIX);
+        boolean success = false;
+        try {
+            final long count;
+            try (FileOutputStream output = new FileOutputStream(temp)) {
+                final BufferedOutputStream buf = new BufferedOutputStream(output);
+                count = new BinarySerializer(this.kv).write(buf, false);
+                buf.flush();
+                output.getFD().sync();
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            success = true;
+            this.log.info("wrote " + count + " key/value pairs to snapshot `" + file + "'");
+        } finally {
+            if (!success)
+                Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    // Delete snapshots and log files made obsolete by the snapshot with the given sequence number
+    private void deleteObsoleteFiles(long sequence) throws IOException {
+        final File[] files = this.directory.listFiles();
+        if (files == null)
+            throw new IOException("error listing directory `" + this.directory + "'");
+        for (File file : files) {
+            final Matcher matcher = FILE_PATTERN.matcher(file.getName());
+            if (matcher.matches() && Long.parseLong(matcher.group(2), 16) < sequence)
+                Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    // Record format: length, CRC-32 of payload, payload (mutation count followed by mutations)
+    private static ByteBuffer encodeRecord(Iterable<Mutation> mutations) {
+        final ByteWriter writer = new ByteWriter();
+        int count = 0;
+        for (Mutation mutation : mutations) {
+            if (mutation instanceof Put) {
+                final Put put = (Put)mutation;
+                writer.writeByte(PUT);
+                LogKVDatabase.writeBytes(writer, put.getKey());
+                LogKVDatabase.writeBytes(writer, put.getValue());
+            } else {
+                writer.writeByte(DEL);
+                LogKVDatabase.writeBytes(writer, mutation.getMin());
+                final byte[] max = mutation.getMax();
+                UnsignedIntEncoder.write(writer, max != null ? max.length + 1 : 0);
+                if (max != null)
+                    writer.write(max);
+            }
+            count++;
+        }
+        final byte[] body = writer.getBytes();
+        final byte[] countBytes = UnsignedIntEncoder.encode(count);
+        final CRC32 crc = new CRC32();
+        crc.update(countBytes);
+        crc.update(body);
+        final ByteBuffer buf = ByteBuffer.allocate(RECORD_HEADER_LENGTH + countBytes.length + body.length);
+        buf.putInt(countBytes.length + body.length);
+        buf.putInt((int)crc.getValue());
+        buf.put(countBytes);
+        buf.put(body);
+        buf.flip();
+        return buf;
+    }
+
+    private static ArrayList<Mutation> decodeRecord(byte[] payload) {
+        final ByteReader reader = new ByteReader(payload);
+        final int count = UnsignedIntEncoder.read(reader);
+        final ArrayList<Mutation> mutations = new ArrayList<>(Math.min(count, payload.length));
+        for (int i = 0; i < count; i++) {
+            switch (reader.readByte()) {
+            case PUT:
+                final byte[] key = LogKVDatabase.readBytes(reader);
+                mutations.add(new Put(key, LogKVDatabase.readBytes(reader)));
+                break;
+            case DEL:
+                final byte[] min = LogKVDatabase.readBytes(reader);
+                final int maxLength = UnsignedIntEncoder.read(reader);
+                mutations.add(maxLength == 0 ? new Del(min, null) : new Del(min, reader.readBytes(maxLength - 1)));
+                break;
+            default:
+                throw new IllegalArgumentException("invalid mutation type");
+            }
+        }
+        if (reader.remain() != 0)
+            throw new IllegalArgumentException("trailing garbage");
+        return mutations;
+    }
+
+    private static void writeBytes(ByteWriter writer, byte[] data) {
+        UnsignedIntEncoder.write(writer, data.length);
+        writer.write(data);
+    }
+
+    private static byte[] readBytes(ByteReader reader) {
+        return reader.readBytes(UnsignedIntEncoder.read(reader));
+    }
+
+// SyncPolicy
+
+    /**
+     * Log sync policies for {@link LogKVDatabase}.
+     *
+     * @see LogKVDatabase#setSyncPolicy LogKVDatabase.setSyncPolicy()
+     */
+    public enum SyncPolicy {
+
+        /**
+         * Never explicitly sync the log; the operating system writes it to disk eventually.
+         * A crash of the process does not lose data, but a crash of the operating system may.
+         */
+        NONE,
+
+        /**
+         * Sync the log periodically in the background at the configured
+         * {@linkplain LogKVDatabase#setSyncInterval sync interval}. An operating system crash may lose
+         * transactions committed within the most recent interval.
+         */
+        INTERVAL,
+
+        /**
+         * Sync the log before {@link LogKVTransaction#commit commit()} returns. Concurrent commits share a single sync.
+         */
+        COMMIT;
+    }
+}
+
@@ -0,0 +1,33 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.simple;
+
+/**
+ * Transaction associated with a {@link LogKVDatabase}.
+ *
+ * <p>
+ * When the database's {@linkplain LogKVDatabase#getSyncPolicy sync policy} is {@link LogKVDatabase.SyncPolicy#COMMIT},
+ * {@link #commit commit()} does not return until the transaction's log record has been synced to disk.
+ * </p>
+ */
+public class LogKVTransaction extends SimpleKVTransaction {
+
+    // Log position just after this transaction's log record, or zero if none was written; set by LogKVDatabase.preCommit()
+    long logPosition;
+
+    LogKVTransaction(LogKVDatabase database, long waitTimeout) {
+        super(database, waitTimeout);
+    }
+
+    @Override
+    public void commit() {
+        super.commit();
+        ((LogKVDatabase)this.kvdb).postCommitSync(this);
+    }
+}
+
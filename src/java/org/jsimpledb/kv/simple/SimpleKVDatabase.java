@@ -10,6 +10,7 @@ package org.jsimpledb.kv.simple;
 import java.util.Arrays;
 import java.util.NoSuchElementException;
 import java.util.SortedSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.jsimpledb.kv.KVDatabase;
 import org.jsimpledb.kv.KVPair;
@@ -41,6 +42,13 @@ import org.slf4j.LoggerFactory;
  * {@link #preCommit preCommit()} and {@link #postCommit postCommit()}.
  * </p>
  *
+ * <p>
+ * Transactions do not contend on any database-wide monitor when reading or writing: key ranges are locked via the
+ * {@link LockManager}, and the underlying {@link KVStore} is guarded by a read/write lock that is held exclusively
+ * only while a commit is being applied to it. Commits are serialized via this instance's monitor. As a result, the
+ * underlying {@link KVStore} must tolerate concurrent reads, but need not tolerate concurrent reads and writes.
+ * </p>
+ *
  * @see LockManager
  */
 public class SimpleKVDatabase implements KVDatabase {
@@ -61,9 +69,15 @@ public class SimpleKVDatabase implements KVDatabase {
      */
     protected final KVStore kv;
 
+    /**
+     * Guards {@link #kv}: transactions hold the read lock while reading {@link #kv}; subclasses that modify
+     * {@link #kv} outside of a commit must hold the write lock while doing so.
+     */
+    protected final ReentrantReadWriteLock kvLock = new ReentrantReadWriteLock();
+
     protected final Logger log = LoggerFactory.getLogger(this.getClass());
 
-    private final LockManager lockManager = new LockManager(this);
+    private final LockManager lockManager = new LockManager();
 
     private long waitTimeout;
 
@@ -219,8 +233,13 @@ public class SimpleKVDatabase implements KVDatabase {
      * <p>
      * This method is invoked at the start of the {@link KVStore} data access and {@link SimpleKVTransaction#commit commit()}
      * methods of the {@link SimpleKVTransaction} associated with this instance. This allows for any checks which depend on
-     * a consistent view of the transaction and database together. This instance's lock will be held when this method is invoked.
-     * Note: transaction state is also protected by this instance's lock.
+     * a consistent view of the transaction and database together.
+     * </p>
+     *
+     * <p>
+     * This instance's lock will be held when this method is invoked from {@link SimpleKVTransaction#commit commit()},
+     * but not otherwise; in particular, this method may be invoked by multiple threads concurrently, so implementations
+     * must perform their own synchronization.
      * </p>
      *
      * <p>
@@ -247,36 +266,97 @@ public class SimpleKVDatabase implements KVDatabase {
 
 // SimpleKVTransaction hooks
 
-    synchronized byte[] get(SimpleKVTransaction tx, byte[] key) {
+    byte[] get(SimpleKVTransaction tx, byte[] key) {
 
         // Sanity check
         if (key.length > 0 && key[0] == (byte)0xff)
             throw new IllegalArgumentException("key starts with 0xff");
-        this.checkUsable(tx);
-        this.checkState(tx);
-
-        // Check transaction mutations
-        final Mutation mutation = tx.findMutation(key);
-        if (mutation != null)
-            return mutation instanceof Put ? ((Put)mutation).getValue() : null;
+        final byte[] keyNext = ByteUtil.getNextKey(key);
 
-        // Read from underlying store
-        this.getLock(tx, key, ByteUtil.getNextKey(key), false);
-        return this.kv.get(key);
+        // Read the key, first waiting for the read lock if necessary; we don't hold the transaction's lock while waiting
+        while (true) {
+            tx.lock.readLock().lock();
+            try {
+                this.checkUsable(tx);
+                this.checkState(tx);
+
+                // Check transaction mutations
+                final Mutation mutation = tx.findMutation(key);
+                if (mutation != null)
+                    return mutation instanceof Put ? ((Put)mutation).getValue() : null;
+
+                // Read from underlying store
+                if (this.tryLock(tx, key, keyNext, false)) {
+                    this.kvLock.readLock().lock();
+                    try {
+                        return this.kv.get(key);
+                    } finally {
+                        this.kvLock.readLock().unlock();
+                    }
+                }
+            } finally {
+                tx.lock.readLock().unlock();
+            }
+            this.getLock(tx, key, keyNext, false);
+        }
     }
 
-    synchronized KVPair getAtLeast(SimpleKVTransaction tx, byte[] minKey) {
+    KVPair getAtLeast(SimpleKVTransaction tx, byte[] minKey) {
 
         // Realize minKey
         if (minKey == null)
             minKey = ByteUtil.EMPTY;
 
-        // Sanity check
-        this.checkUsable(tx);
-        this.checkState(tx);
+        // Find the answer, then lock the key range it depends on; if we have to wait for that lock, the answer may change
+        while (true) {
+            final byte[] lockMax;
+            tx.lock.readLock().lock();
+            try {
+                this.checkUsable(tx);
+                this.checkState(tx);
+                this.kvLock.readLock().lock();
+                try {
+                    final KVPair pair = this.findAtLeast(tx, minKey);
+                    lockMax = pair != null ? ByteUtil.getNextKey(pair.getKey()) : null;
+                    if (this.tryLock(tx, minKey, lockMax, false))
+                        return pair;
+                } finally {
+                    this.kvLock.readLock().unlock();
+                }
+            } finally {
+                tx.lock.readLock().unlock();
+            }
+            this.getLock(tx, minKey, lockMax, false);
+        }
+    }
 
-        // Save original min key for locking purposes
-        final byte[] originalMinKey = minKey;
+    KVPair getAtMost(SimpleKVTransaction tx, byte[] maxKey) {
+
+        // Find the answer, then lock the key range it depends on; if we have to wait for that lock, the answer may change
+        while (true) {
+            final byte[] lockMin;
+            tx.lock.readLock().lock();
+            try {
+                this.checkUsable(tx);
+                this.checkState(tx);
+                this.kvLock.readLock().lock();
+                try {
+                    final KVPair pair = this.findAtMost(tx, maxKey);
+                    lockMin = pair != null ? pair.getKey() : ByteUtil.EMPTY;
+                    if (this.tryLock(tx, lockMin, maxKey, false))
+                        return pair;
+                } finally {
+                    this.kvLock.readLock().unlock();
+                }
+            } finally {
+                tx.lock.readLock().unlock();
+            }
+            this.getLock(tx, lockMin, maxKey, false);
+        }
+    }
+
+    // Find the first key/value pair >= minKey visible to the transaction. Assumes kvLock and tx.lock are held.
+    private KVPair findAtLeast(SimpleKVTransaction tx, byte[] minKey) {
 
         // Look for a mutation starting before minKey but containing it
         if (minKey.length > 0) {
@@ -306,38 +386,25 @@ public class SimpleKVDatabase implements KVDatabase {
             final KVPair entry = this.kv.getAtLeast(minKey);
 
             // Handle the case where neither is found
-            if (mutation == null && entry == null) {
-                this.getLock(tx, originalMinKey, null, false);
+            if (mutation == null && entry == null)
                 return null;
-            }
 
             // Check for whether mutation or kvstore wins (i.e., which is first)
             if (mutation != null && (entry == null || mutation.compareTo(entry.getKey()) <= 0)) {
                 if (mutation instanceof Del) {
-                    if ((minKey = mutation.getMax()) == null) {
-                        this.getLock(tx, originalMinKey, null, false);
+                    if ((minKey = mutation.getMax()) == null)
                         return null;
-                    }
                     continue;
                 }
                 final Put put = (Put)mutation;
-                this.getLock(tx, originalMinKey, ByteUtil.getNextKey(put.getKey()), false);
                 return new KVPair(put.getKey(), put.getValue());
-            } else {
-                this.getLock(tx, originalMinKey, ByteUtil.getNextKey(entry.getKey()), false);
-                return entry;
             }
+            return entry;
         }
     }
 
-    synchronized KVPair getAtMost(SimpleKVTransaction tx, byte[] maxKey) {
-
-        // Sanity check
-        this.checkUsable(tx);
-        this.checkState(tx);
-
-        // Save original max key for locking purposes
-        final byte[] originalMaxKey = maxKey;
+    // Find the last key/value pair < maxKey visible to the transaction. Assumes kvLock and tx.lock are held.
+    private KVPair findAtMost(SimpleKVTransaction tx, byte[] maxKey) {
 
         // Find whichever is first: a transaction addition, or an underlying store entry not covered by a transaction deletion
         SortedSet<Mutation> mutations = tx.mutations;
@@ -350,95 +417,114 @@ public class SimpleKVDatabase implements KVDatabase {
             final KVPair entry = this.kv.getAtMost(maxKey);
 
             // Handle the case where neither is found
-            if (mutation == null && entry == null) {
-                this.getLock(tx, ByteUtil.EMPTY, originalMaxKey, false);
+            if (mutation == null && entry == null)
                 return null;
-            }
 
             // Check for whether mutation or kvstore wins (i.e., which is first)
             if (mutation != null && (entry == null || mutation.compareTo(entry.getKey()) >= 0)) {
                 if (mutation instanceof Del) {
-                    if ((maxKey = mutation.getMin()) == null) {
-                        this.getLock(tx, ByteUtil.EMPTY, originalMaxKey, false);
+                    if ((maxKey = mutation.getMin()) == null)
                         return null;
-                    }
                     continue;
                 }
                 final Put put = (Put)mutation;
-                this.getLock(tx, put.getKey(), originalMaxKey, false);
                 return new KVPair(put.getKey(), put.getValue());
-            } else {
-                this.getLock(tx, entry.getKey(), originalMaxKey, false);
-                return entry;
             }
+            return entry;
         }
     }
 
-    synchronized void put(SimpleKVTransaction tx, byte[] key, byte[] value) {
+    void put(SimpleKVTransaction tx, byte[] key, byte[] value) {
 
         // Sanity check
         if (value == null)
             throw new NullPointerException();
         if (key.length > 0 && key[0] == (byte)0xff)
             throw new IllegalArgumentException("key starts with 0xff");
-        this.checkUsable(tx);
-        this.checkState(tx);
         final byte[] keyNext = ByteUtil.getNextKey(key);
 
-        // Check transaction mutations
-        final Mutation mutation = tx.findMutation(key);
-        if (mutation instanceof Put) {
-            assert Arrays.equals(((Put)mutation).getKey(), key);
-
-            // Replace Put with new Put
-            tx.mutations.remove(mutation);
-            tx.mutations.add(new Put(key, value));
-        } else if (mutation instanceof Del) {
-
-            // Split [Del] -> [Del*, Put, Del*]  *if needed
-            final Del del = (Del)mutation;
-            final byte[] delMin = del.getMin();
-            final byte[] delMax = del.getMax();
-            tx.mutations.remove(del);
-            if (KeyRange.compare(delMin, key) < 0)
-                tx.mutations.add(new Del(delMin, key));
-            if (KeyRange.compare(keyNext, delMax) < 0)
-                tx.mutations.add(new Del(keyNext, delMax));
-            tx.mutations.add(new Put(key, value));
-        } else {
-
-            // Add write lock and new tx mutation
+        // Update mutations, first waiting for the write lock if necessary
+        while (true) {
+            tx.lock.writeLock().lock();
+            try {
+                this.checkUsable(tx);
+                this.checkState(tx);
+
+                // Check transaction mutations
+                final Mutation mutation = tx.findMutation(key);
+                if (mutation instanceof Put) {
+                    assert Arrays.equals(((Put)mutation).getKey(), key);
+
+                    // Replace Put with new Put
+                    tx.mutations.remove(mutation);
+                    tx.mutations.add(new Put(key, value));
+                    return;
+                } else if (mutation instanceof Del) {
+
+                    // Split [Del] -> [Del*, Put, Del*]  *if needed
+                    final Del del = (Del)mutation;
+                    final byte[] delMin = del.getMin();
+                    final byte[] delMax = del.getMax();
+                    tx.mutations.remove(del);
+                    if (KeyRange.compare(delMin, key) < 0)
+                        tx.mutations.add(new Del(delMin, key));
+                    if (KeyRange.compare(keyNext, delMax) < 0)
+                        tx.mutations.add(new Del(keyNext, delMax));
+                    tx.mutations.add(new Put(key, value));
+                    return;
+                }
+
+                // Add write lock and new tx mutation
+                if (this.tryLock(tx, key, keyNext, true)) {
+                    tx.mutations.add(new Put(key, value));
+                    return;
+                }
+            } finally {
+                tx.lock.writeLock().unlock();
+            }
             this.getLock(tx, key, keyNext, true);
-            tx.mutations.add(new Put(key, value));
         }
     }
 
-    synchronized void remove(SimpleKVTransaction tx, byte[] key) {
+    void remove(SimpleKVTransaction tx, byte[] key) {
 
         // Sanity check
         if (key.length > 0 && key[0] == (byte)0xff)
             throw new IllegalArgumentException("key starts with 0xff");
-        this.checkUsable(tx);
-        this.checkState(tx);
         final byte[] keyNext = ByteUtil.getNextKey(key);
 
-        // Check transaction mutations
-        final Mutation mutation = tx.findMutation(key);
-        if (mutation instanceof Put) {
-            assert Arrays.equals(((Put)mutation).getKey(), key);
-
-            // Replace Put with Del
-            tx.mutations.remove(mutation);
-            tx.mutations.add(new Del(key));
-        } else if (mutation == null) {
-
-            // Add write lock and new tx mutation
+        // Update mutations, first waiting for the write lock if necessary
+        while (true) {
+            tx.lock.writeLock().lock();
+            try {
+                this.checkUsable(tx);
+                this.checkState(tx);
+
+                // Check transaction mutations
+                final Mutation mutation = tx.findMutation(key);
+                if (mutation instanceof Put) {
+                    assert Arrays.equals(((Put)mutation).getKey(), key);
+
+                    // Replace Put with Del
+                    tx.mutations.remove(mutation);
+                    tx.mutations.add(new Del(key));
+                    return;
+                } else if (mutation instanceof Del)
+                    return;
+
+                // Add write lock and new tx mutation
+                if (this.tryLock(tx, key, keyNext, true)) {
+                    tx.mutations.add(new Del(key));
+                    return;
+                }
+            } finally {
+                tx.lock.writeLock().unlock();
+            }
             this.getLock(tx, key, keyNext, true);
-            tx.mutations.add(new Del(key));
         }
     }
 
-    synchronized void removeRange(SimpleKVTransaction tx, byte[] minKey, byte[] maxKey) {
+    void removeRange(SimpleKVTransaction tx, byte[] minKey, byte[] maxKey) {
 
         // Realize minKey
         if (minKey == null)
@@ -448,102 +534,126 @@ public class SimpleKVDatabase implements KVDatabase {
         int diff = KeyRange.compare(minKey, maxKey);
         if (diff > 0)
             throw new IllegalArgumentException("minKey > maxKey");
-        this.checkUsable(tx);
-        this.checkState(tx);
-        if (diff == 0)                                                          // range is empty
-            return;
-        final byte[] originalMinKey = minKey;
-        final byte[] originalMaxKey = maxKey;
-
-        // Deal with partial overlap at the left end of the range
-        if (minKey.length > 0) {
-            final Mutation leftMutation = tx.findMutation(minKey);
-            if (leftMutation instanceof Put) {
-                assert Arrays.equals(((Put)leftMutation).getKey(), minKey);
-                tx.mutations.remove(leftMutation);                                          // overwritten by this change
-            } else if (leftMutation instanceof Del) {
-                final Del del = (Del)leftMutation;
-                tx.mutations.remove(del);                                                   // will merge into this change
-                minKey = del.getMin();                                                      // guaranteed to be <= minKey
-                if (KeyRange.compare(del.getMax(), maxKey) > 0)                             // get higher of the two maxKeys
-                    maxKey = del.getMax();
-            }
-        }
 
-        // Deal with partial overlap at the right end of the range
-        if (maxKey != null) {
-            Mutation rightMutation = null;
+        // Update mutations, first waiting for the write lock if necessary
+        while (true) {
+            final byte[] lockMin;
+            final byte[] lockMax;
+            tx.lock.writeLock().lock();
             try {
-                rightMutation = minKey != null ?
-                  tx.mutations.subSet(Mutation.key(minKey), Mutation.key(maxKey)).last() :
-                  tx.mutations.headSet(Mutation.key(maxKey)).last();
-            } catch (NoSuchElementException e) {
-                // ignore
-            }
-            if (rightMutation instanceof Put)
-                tx.mutations.remove(rightMutation);                                         // overwritten by this change
-            else if (rightMutation instanceof Del) {
-                final Del del = (Del)rightMutation;
-                tx.mutations.remove(del);                                                   // will merge into this change
-                if (KeyRange.compare(del.getMax(), maxKey) > 0)                             // get higher of the two maxKeys
-                    maxKey = del.getMax();
-            }
-        }
-
-        // Remove all mutations in the middle
-        if (originalMinKey == null && originalMaxKey == null)
-            tx.mutations.clear();
-        else if (originalMinKey == null)
-            tx.mutations.headSet(Mutation.key(originalMaxKey)).clear();
-        else if (originalMaxKey == null)
-            tx.mutations.tailSet(Mutation.key(originalMinKey)).clear();
-        else
-            tx.mutations.subSet(Mutation.key(originalMinKey), Mutation.key(originalMaxKey)).clear();
-
-        // Add write lock and new tx mutation
-        this.getLock(tx, minKey, maxKey, true);
-        tx.mutations.add(new Del(minKey, maxKey));
-    }
-
-    synchronized void commit(SimpleKVTransaction tx) {
+                this.checkUsable(tx);
+                this.checkState(tx);
+                if (diff == 0)                                                      // range is empty
+                    return;
+
+                // Find partial overlap at the left end of the range
+                Mutation leftMutation = null;
+                byte[] newMinKey = minKey;
+                byte[] newMaxKey = maxKey;
+                if (minKey.length > 0) {
+                    leftMutation = tx.findMutation(minKey);
+                    if (leftMutation instanceof Put)
+                        assert Arrays.equals(((Put)leftMutation).getKey(), minKey);         // will be overwritten by this change
+                    else if (leftMutation instanceof Del) {
+                        final Del del = (Del)leftMutation;                                  // will merge into this change
+                        newMinKey = del.getMin();                                           // guaranteed to be <= minKey
+                        if (KeyRange.compare(del.getMax(), newMaxKey) > 0)                  // get higher of the two maxKeys
+                            newMaxKey = del.getMax();
+                    }
+                }
 
-        // Prevent use after commit() or rollback() invoked
-        if (tx.stale)
-            throw new StaleTransactionException(tx);
-        tx.stale = true;
+                // Find partial overlap at the right end of the range
+                Mutation rightMutation = null;
+                if (newMaxKey != null) {
+                    try {
+                        rightMutation = tx.mutations.subSet(Mutation.key(newMinKey), Mutation.key(newMaxKey)).last();
+                    } catch (NoSuchElementException e) {
+                        // ignore
+                    }
+                    if (rightMutation == leftMutation)
+                        rightMutation = null;
+                    else if (rightMutation instanceof Del) {
+                        final Del del = (Del)rightMutation;                                 // will merge into this change
+                        if (KeyRange.compare(del.getMax(), newMaxKey) > 0)                  // get higher of the two maxKeys
+                            newMaxKey = del.getMax();
+                    }
+                }
 
-        // Release all locks
-        if (!this.lockManager.release(tx.lockOwner)) {
-            throw new TransactionTimeoutException(tx,
-              "transaction taking too long: hold timeout of " + this.lockManager.getHoldTimeout() + "ms has expired");
+                // Add write lock and new tx mutation
+                lockMin = newMinKey;
+                lockMax = newMaxKey;
+                if (this.tryLock(tx, lockMin, lockMax, true)) {
+                    if (leftMutation != null)
+                        tx.mutations.remove(leftMutation);
+                    if (rightMutation != null)
+                        tx.mutations.remove(rightMutation);
+                    if (maxKey == null)
+                        tx.mutations.tailSet(Mutation.key(minKey)).clear();
+                    else
+                        tx.mutations.subSet(Mutation.key(minKey), Mutation.key(maxKey)).clear();
+                    tx.mutations.add(new Del(lockMin, lockMax));
+                    return;
+                }
+            } finally {
+                tx.lock.writeLock().unlock();
+            }
+            this.getLock(tx, lockMin, lockMax, true);
         }
+    }
 
-        // Check subclass state
-        this.checkState(tx);
+    void commit(SimpleKVTransaction tx) {
+        tx.lock.writeLock().lock();
+        try {
 
-        // If there are no mutations, there's no need to write anything
-        if (tx.mutations.isEmpty())
-            return;
+            // Prevent use after commit() or rollback() invoked
+            if (!tx.markStale())
+                throw new StaleTransactionException(tx);
+
+            // Commits are serialized; readers are excluded only while mutations are being applied
+            synchronized (this) {
+                this.kvLock.writeLock().lock();
+                boolean committing = false;
+                boolean successful = false;
+                try {
+
+                    // Release all locks (we hold the write lock, so no reader can observe a partially applied commit)
+                    if (!this.lockManager.release(tx.lockOwner)) {
+                        throw new TransactionTimeoutException(tx,
+                          "transaction taking too long: hold timeout of " + this.lockManager.getHoldTimeout() + "ms has expired");
+                    }
 
-        // Commit mutations
-        this.preCommit(tx);
-        boolean successful = false;
-        try {
-            for (Mutation mutation : tx.mutations)
-                mutation.apply(this.kv);
-            successful = true;
+                    // Check subclass state
+                    this.checkState(tx);
+
+                    // If there are no mutations, there's no need to write anything
+                    if (tx.mutations.isEmpty())
+                        return;
+
+                    // Commit mutations
+                    this.preCommit(tx);
+                    committing = true;
+                    for (Mutation mutation : tx.mutations)
+                        mutation.apply(this.kv);
+                    successful = true;
+                } finally {
+                    this.kvLock.writeLock().unlock();
+                    if (committing) {
+                        tx.mutations.clear();
+                        this.postCommit(tx, successful);
+                    }
+                }
+            }
         } finally {
-            tx.mutations.clear();
-            this.postCommit(tx, successful);
+            tx.lock.writeLock().unlock();
         }
     }
 
-    synchronized void rollback(SimpleKVTransaction tx) {
+    // Note: may be invoked while the transaction's read lock is held
+    void rollback(SimpleKVTransaction tx) {
 
         // Prevent use after commit() or rollback() invoked
-        if (tx.stale)
+        if (!tx.markStale())
             return;
-        tx.stale = true;
 
         // Release all locks
         this.lockManager.release(tx.lockOwner);
@@ -551,12 +661,28 @@ public class SimpleKVDatabase implements KVDatabase {
 
 // Internal methods
 
-    private /*synchronized*/ void getLock(SimpleKVTransaction tx, byte[] minKey, byte[] maxKey, boolean write) {
+    // Attempt to get a lock without waiting; returns false if there is a conflict
+    private boolean tryLock(SimpleKVTransaction tx, byte[] minKey, byte[] maxKey, boolean write) {
+        switch (this.lockManager.tryLock(tx.lockOwner, minKey, maxKey, write)) {
+        case SUCCESS:
+            return true;
+        case WAIT_TIMEOUT_EXPIRED:
+            return false;
+        case HOLD_TIMEOUT_EXPIRED:
+            this.rollback(tx);
+            throw new TransactionTimeoutException(tx,
+              "transaction taking too long: hold timeout of " + this.lockManager.getHoldTimeout() + "ms has expired");
+        default:
+            throw new RuntimeException("internal error");
+        }
+    }
+
+    private void getLock(SimpleKVTransaction tx, byte[] minKey, byte[] maxKey, boolean write) {
 
         // Attempt to get the lock
         LockManager.LockResult lockResult;
         try {
-            lockResult = this.lockManager.lock(tx.lockOwner, minKey, maxKey, write, tx.waitTimeout);
+            lockResult = this.lockManager.lockOrRelease(tx.lockOwner, minKey, maxKey, write, tx.waitTimeout);
         } catch (InterruptedException e) {
             this.rollback(tx);
             Thread.currentThread().interrupt();
@@ -11,6 +11,7 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.jsimpledb.kv.AbstractKVStore;
 import org.jsimpledb.kv.KVPair;
@@ -25,8 +26,9 @@ import org.slf4j.LoggerFactory;
  * {@link KVTransaction} implementation for {@link SimpleKVDatabase}.
  *
  * <p>
- * Locking note: all fields in this class are protected by the Java monitor of the associated {@link SimpleKVDatabase},
- * not the Java monitor of this instance.
+ * Locking note: {@link #mutations} is protected by {@link #lock}, which is acquired in shared mode by reads and in
+ * exclusive mode by writes, {@link #commit commit()}, and {@link #rollback rollback()}. This allows multiple threads to
+ * read concurrently within the same transaction.
  * </p>
  */
 public class SimpleKVTransaction extends AbstractKVStore implements KVTransaction {
@@ -34,9 +36,10 @@ public class SimpleKVTransaction extends AbstractKVStore implements KVTransactio
     final SimpleKVDatabase kvdb;
     final TreeSet<Mutation> mutations = new TreeSet<>(KeyRange.SORT_BY_MIN);
     final LockOwner lockOwner = new LockOwner();
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
-    boolean stale;
-    long waitTimeout;
+    volatile boolean stale;
+    volatile long waitTimeout;
 
     /**
      * Constructor.
@@ -112,8 +115,16 @@ public class SimpleKVTransaction extends AbstractKVStore implements KVTransactio
         this.kvdb.rollback(this);
     }
 
+    // Mark this transaction stale; returns false if it was already stale.
+    synchronized boolean markStale() {
+        if (this.stale)
+            return false;
+        this.stale = true;
+        return true;
+    }
+
     // Find the mutation that overlaps with the given key, if any.
-    // This method assumes we are already synchronized on the associated database.
+    // This method assumes the caller holds this transaction's lock.
     Mutation findMutation(byte[] key) {
 
         // Sanity check during unit testing
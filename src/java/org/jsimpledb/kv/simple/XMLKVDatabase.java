@@ -169,7 +169,7 @@ public class XMLKVDatabase extends SimpleKVDatabase {
     }
 
     @Override
-    protected void checkState(SimpleKVTransaction tx) {
+    protected synchronized void checkState(SimpleKVTransaction tx) {
         this.checkForOutOfBandUpdate();
         final int txGeneration = ((XMLKVTransaction)tx).getGeneration();
         if (txGeneration != this.generation) {
@@ -192,6 +192,15 @@ public class XMLKVDatabase extends SimpleKVDatabase {
     }
 
     protected synchronized void readXML() {
+        this.kvLock.writeLock().lock();
+        try {
+            this.doReadXML();
+        } finally {
+            this.kvLock.writeLock().unlock();
+        }
+    }
+
+    private void doReadXML() {
 
         // Clear all existing keys
         this.kv.removeRange(null, null);
@@ -141,7 +141,7 @@ public abstract class AbstractKVIterator<E> implements java.util.Iterator<E> {
             final byte[] maxKey = keyRange != null ? keyRange.getMax() : null;
             this.pairIterator = this.kv.getRange(minKey, maxKey, this.reversed);
         } else
-            this.pairIterator = new KVPairIterator(this.kv, keyRange, keyFilter, this.reversed);
+            this.pairIterator = new KVPairIterator(this.kv, keyRange, keyFilter, this.reversed, true);
     }
 
 // Iterator
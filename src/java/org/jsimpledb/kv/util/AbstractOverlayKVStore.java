@@ -0,0 +1,517 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.util;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jsimpledb.kv.AbstractKVStore;
+import org.jsimpledb.kv.CloseableKVStore;
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVPairIterator;
+import org.jsimpledb.kv.KVStore;
+import org.jsimpledb.kv.KeyRange;
+import org.jsimpledb.kv.KeyRanges;
+import org.jsimpledb.kv.mvcc.AtomicKVStore;
+import org.jsimpledb.kv.mvcc.Writes;
+import org.jsimpledb.util.ByteUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Support superclass for {@link AtomicKVStore} wrappers that overlay meta-data on the data in an underlying
+ * {@link AtomicKVStore}, and fold that meta-data into the underlying data later using a background compaction thread.
+ *
+ * <p>
+ * The meta-data is stored under a reserved meta-data key prefix in the underlying {@link AtomicKVStore}, so that it can be
+ * written in the same atomic batch as the mutations that create it. Keys having the meta-data key prefix are not visible
+ * through this instance, and attempts to write them result in an {@link IllegalArgumentException}. All mutations are
+ * applied via {@link #mutate mutate()}.
+ * </p>
+ *
+ * <p>
+ * Subclass constructors should load any existing meta-data via {@link #loadMetaData}, and then invoke
+ * {@link #startCompactor}. The compaction thread repeatedly invokes {@link #compactStep} while {@link #isCompactionNeeded}
+ * returns true, subject to the {@linkplain #setCompactionDelay compaction delay}. Both methods are invoked while this
+ * instance is locked, and subclasses must invoke {@link Object#notifyAll notifyAll()} when compaction becomes needed.
+ * </p>
+ *
+ * <p>
+ * Instances must be {@link #close}'d when no longer needed to stop the background compaction thread.
+ * This does not close the underlying {@link AtomicKVStore}.
+ * </p>
+ */
+public abstract class AbstractOverlayKVStore extends AbstractKVStore implements AtomicKVStore, CloseableKVStore {
+
+    /**
+     * Default maximum number of entries processed by a single compaction step.
+     */
+    public static final int DEFAULT_COMPACTION_BATCH_SIZE = 1000;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    protected final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * The underlying {@link AtomicKVStore}.
+     */
+    protected final AtomicKVStore kv;
+
+    /**
+     * The key range reserved for meta-data.
+     */
+    protected final KeyRange metaRange;
+
+    private final byte[] metaPrefix;
+    private final Thread compactor;
+
+    private int compactionBatchSize = DEFAULT_COMPACTION_BATCH_SIZE;
+    private int compactionDelay;
+    private boolean closed;
+
+// Constructors
+
+    /**
+     * Constructor.
+     *
+     * @param kv underlying {@link AtomicKVStore}
+     * @param metaPrefix key prefix reserved for meta-data
+     * @throws IllegalArgumentException if either parameter is null
+     * @throws IllegalArgumentException if {@code metaPrefix} is empty
+     */
+    protected AbstractOverlayKVStore(AtomicKVStore kv, byte[] metaPrefix) {
+        Preconditions.checkArgument(kv != null, "null kv");
+        Preconditions.checkArgument(metaPrefix != null, "null metaPrefix");
+        Preconditions.checkArgument(metaPrefix.length > 0, "empty metaPrefix");
+        this.kv = kv;
+        this.metaPrefix = metaPrefix.clone();
+        this.metaRange = KeyRange.forPrefix(this.metaPrefix);
+        this.compactor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                AbstractOverlayKVStore.this.compact();
+            }
+        }, this.getClass().getSimpleName() + "-" + THREAD_COUNTER.incrementAndGet());
+        this.compactor.setDaemon(true);
+    }
+
+// Accessors
+
+    /**
+     * Get the underlying {@link AtomicKVStore}.
+     *
+     * @return underlying store
+     */
+    public AtomicKVStore getKVStore() {
+        return this.kv;
+    }
+
+    /**
+     * Get the maximum number of entries processed by a single compaction step.
+     *
+     * @return compaction batch size
+     */
+    public synchronized int getCompactionBatchSize() {
+        return this.compactionBatchSize;
+    }
+
+    /**
+     * Set the maximum number of entries processed by a single compaction step.
+     *
+     * <p>
+     * Each compaction step excludes all other mutations, so smaller values reduce the maximum delay
+     * that compaction can impose on commits.
+     * </p>
+     *
+     * <p>
+     * Default is {@link #DEFAULT_COMPACTION_BATCH_SIZE}.
+     * </p>
+     *
+     * @param compactionBatchSize compaction batch size
+     * @throws IllegalArgumentException if {@code compactionBatchSize} is not positive
+     */
+    public synchronized void setCompactionBatchSize(int compactionBatchSize) {
+        Preconditions.checkArgument(compactionBatchSize > 0, "compactionBatchSize <= 0");
+        this.compactionBatchSize = compactionBatchSize;
+    }
+
+    /**
+     * Get the delay between compaction becoming needed and compaction starting.
+     *
+     * @return compaction delay in milliseconds
+     */
+    public synchronized int getCompactionDelay() {
+        return this.compactionDelay;
+    }
+
+    /**
+     * Set the delay between compaction becoming needed and compaction starting.
+     *
+     * <p>
+     * Larger values allow more meta-data to accumulate, and possibly be coalesced, before compaction.
+     * </p>
+     *
+     * <p>
+     * Default is zero, unless the subclass specifies otherwise.
+     * </p>
+     *
+     * @param compactionDelay compaction delay in milliseconds
+     * @throws IllegalArgumentException if {@code compactionDelay} is negative
+     */
+    public synchronized void setCompactionDelay(int compactionDelay) {
+        Preconditions.checkArgument(compactionDelay >= 0, "compactionDelay < 0");
+        this.compactionDelay = compactionDelay;
+        this.notifyAll();
+    }
+
+// KVStore
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        final Writes writes = new Writes();
+        writes.getPuts().put(key, value);
+        this.mutate(writes, false);
+    }
+
+    @Override
+    public void remove(byte[] key) {
+        final Writes writes = new Writes();
+        writes.setRemoves(new KeyRanges(key));
+        this.mutate(writes, false);
+    }
+
+    @Override
+    public void removeRange(byte[] minKey, byte[] maxKey) {
+        final Writes writes = new Writes();
+        writes.setRemoves(new KeyRanges(minKey != null ? minKey : ByteUtil.EMPTY, maxKey));
+        this.mutate(writes, false);
+    }
+
+    @Override
+    public void adjustCounter(byte[] key, long amount) {
+        final Writes writes = new Writes();
+        writes.getAdjusts().put(key, amount);
+        this.mutate(writes, false);
+    }
+
+    @Override
+    public byte[] encodeCounter(long value) {
+        return this.kv.encodeCounter(value);
+    }
+
+    @Override
+    public long decodeCounter(byte[] value) {
+        return this.kv.decodeCounter(value);
+    }
+
+// Closeable
+
+    /**
+     * Close this instance.
+     *
+     * <p>
+     * This stops the background compaction thread; any remaining meta-data will be compacted by the next instance.
+     * This does not close the underlying {@link AtomicKVStore}.
+     * </p>
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (this.closed)
+                return;
+            this.closed = true;
+            this.notifyAll();
+        }
+        if (Thread.currentThread() == this.compactor)
+            return;
+        try {
+            this.compactor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+// Object
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName()
+          + "[kv=" + this.kv
+          + ",metaPrefix=" + ByteUtil.toString(this.metaPrefix)
+          + "]";
+    }
+
+// Subclass methods
+
+    /**
+     * Read all existing meta-data from the underlying {@link AtomicKVStore}.
+     *
+     * @return meta-data key/value pairs, with the meta-data key prefix removed from each key
+     */
+    protected List<KVPair> loadMetaData() {
+        final ArrayList<KVPair> list = new ArrayList<>();
+        final Iterator<KVPair> i = this.kv.getRange(this.metaRange.getMin(), this.metaRange.getMax(), false);
+        try {
+            while (i.hasNext()) {
+                final KVPair pair = i.next();
+                final byte[] key = pair.getKey();
+                final byte[] suffix = new byte[key.length - this.metaPrefix.length];
+                System.arraycopy(key, this.metaPrefix.length, suffix, 0, suffix.length);
+                list.add(new KVPair(suffix, pair.getValue()));
+            }
+        } finally {
+            KVUtil.closeIfPossible(i);
+        }
+        return list;
+    }
+
+    /**
+     * Start the background compaction thread.
+     */
+    protected void startCompactor() {
+        this.compactor.start();
+    }
+
+    /**
+     * Get the meta-data key corresponding to the given key.
+     *
+     * @param key key suffix
+     * @return {@code key} prefixed by the meta-data key prefix
+     */
+    protected byte[] getMetaKey(byte[] key) {
+        final byte[] metaKey = new byte[this.metaPrefix.length + key.length];
+        System.arraycopy(this.metaPrefix, 0, metaKey, 0, this.metaPrefix.length);
+        System.arraycopy(key, 0, metaKey, this.metaPrefix.length, key.length);
+        return metaKey;
+    }
+
+    /**
+     * Verify that this instance is not closed.
+     *
+     * @throws IllegalStateException if this instance is closed
+     */
+    protected void checkOpen() {
+        if (this.closed)
+            throw new IllegalStateException("the store is closed");
+    }
+
+    /**
+     * Verify that the given key may be written.
+     *
+     * @param key key to be written
+     * @throws IllegalArgumentException if {@code key} has the meta-data key prefix
+     */
+    protected void checkKey(byte[] key) {
+        if (this.metaRange.contains(key))
+            throw new IllegalArgumentException("key " + ByteUtil.toString(key) + " is within the reserved meta-data key range");
+    }
+
+    /**
+     * Iterate the keys in the given range of the given store that are also contained in {@code visible}.
+     *
+     * @param kv key/value store
+     * @param minKey minimum key (inclusive), or null for no minimum
+     * @param maxKey maximum key (exclusive), or null for no maximum
+     * @param visible visible keys
+     * @param reverse true to iterate in reverse order
+     * @return filtered iteration
+     */
+    protected static KVPairIterator getVisibleRange(KVStore kv,
+      byte[] minKey, byte[] maxKey, KeyRanges visible, boolean reverse) {
+        return new KVPairIterator(kv, new KeyRange(minKey != null ? minKey : ByteUtil.EMPTY, maxKey), visible, reverse, true);
+    }
+
+    /**
+     * Determine whether there is any compaction work to do.
+     *
+     * <p>
+     * This method is invoked while this instance is locked.
+     * </p>
+     *
+     * @return true if compaction is needed
+     */
+    protected abstract boolean isCompactionNeeded();
+
+    /**
+     * Perform one step of compaction, processing at most {@link #getCompactionBatchSize} entries.
+     *
+     * <p>
+     * This method is invoked while this instance is locked.
+     * </p>
+     *
+     * @return true if more compaction work remains
+     */
+    protected abstract boolean compactStep();
+
+// Internal methods
+
+    // Background compaction loop
+    private void compact() {
+        boolean scheduled = false;
+        long scheduleTime = 0;
+        while (true) {
+            try {
+                synchronized (this) {
+                    while (!this.closed && !this.isCompactionNeeded()) {
+                        scheduled = false;
+                        this.wait();
+                    }
+                    if (this.closed)
+                        return;
+
+                    // Wait for the compaction delay to expire
+                    if (!scheduled) {
+                        scheduleTime = System.nanoTime();
+                        scheduled = true;
+                    }
+                    final long remaining = this.compactionDelay - (System.nanoTime() - scheduleTime) / 1000000L;
+                    if (remaining > 0) {
+                        this.wait(remaining);
+                        continue;
+                    }
+                    if (!this.compactStep())
+                        scheduled = false;                      // caught up; let new meta-data accumulate again
+                }
+                Thread.yield();                                 // give other threads a chance to grab the lock
+            } catch (InterruptedException e) {
+                this.log.warn(this + " compaction thread interrupted, exiting");
+                return;
+            } catch (RuntimeException e) {
+                this.log.error(this + " compaction failed (will retry)", e);
+                try {
+                    synchronized (this) {
+                        if (!this.closed)
+                            this.wait(1000);
+                    }
+                } catch (InterruptedException e2) {
+                    return;
+                }
+            }
+        }
+    }
+
+// OverlaySnapshot
+
+    /**
+     * Support superclass for read-only snapshots of {@link AbstractOverlayKVStore}s.
+     */
+    protected abstract static class OverlaySnapshot extends AbstractKVStore implements CloseableKVStore {
+
+        /**
+         * Snapshot of the underlying {@link AtomicKVStore}.
+         */
+        protected final CloseableKVStore kv;
+
+        /**
+         * Keys visible in this snapshot.
+         */
+        protected final KeyRanges visible;
+
+        /**
+         * Constructor.
+         *
+         * @param kv snapshot of the underlying {@link AtomicKVStore}
+         * @param visible keys visible in this snapshot
+         */
+        protected OverlaySnapshot(CloseableKVStore kv, KeyRanges visible) {
+            this.kv = kv;
+            this.visible = visible;
+        }
+
+        @Override
+        public void removeRange(byte[] minKey, byte[] maxKey) {
+            throw new UnsupportedOperationException("KVStore is read-only");
+        }
+
+        @Override
+        public void adjustCounter(byte[] key, long amount) {
+            throw new UnsupportedOperationException("KVStore is read-only");
+        }
+
+        @Override
+        public byte[] encodeCounter(long value) {
+            return this.kv.encodeCounter(value);
+        }
+
+        @Override
+        public long decodeCounter(byte[] value) {
+            return this.kv.decodeCounter(value);
+        }
+
+        @Override
+        public void close() {
+            this.kv.close();
+        }
+    }
+
+// OverlayIterator
+
+    /**
+     * Iterator over an {@link AbstractOverlayKVStore} or {@link OverlaySnapshot} that routes {@link #remove}
+     * through the store (if any) rather than directly to the underlying {@link AtomicKVStore}.
+     */
+    protected static class OverlayIterator implements Iterator<KVPair> {
+
+        private final KVPairIterator iterator;
+        private final KVStore target;
+
+        private byte[] removeKey;
+
+        /**
+         * Constructor.
+         *
+         * @param iterator underlying iteration
+         * @param target the store to which {@link #remove} is applied, or null for a read-only iteration
+         */
+        public OverlayIterator(KVPairIterator iterator, KVStore target) {
+            this.iterator = iterator;
+            this.target = target;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.iterator.hasNext();
+        }
+
+        @Override
+        public KVPair next() {
+            final KVPair pair = this.iterator.next();
+            this.removeKey = pair.getKey();
+            return this.convert(pair);
+        }
+
+        @Override
+        public void remove() {
+            if (this.target == null)
+                throw new UnsupportedOperationException("KVStore is read-only");
+            if (this.removeKey == null)
+                throw new IllegalStateException();
+            this.target.remove(this.removeKey);
+            this.removeKey = null;
+        }
+
+        /**
+         * Convert a key/value pair from the underlying iteration before returning it.
+         *
+         * <p>
+         * The implementation in {@link OverlayIterator} returns {@code pair} unchanged.
+         * </p>
+         *
+         * @param pair key/value pair from the underlying iteration
+         * @return key/value pair to return
+         */
+        protected KVPair convert(KVPair pair) {
+            return pair;
+        }
+    }
+}
+
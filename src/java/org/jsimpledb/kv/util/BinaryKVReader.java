@@ -0,0 +1,243 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.util;
+
+import com.google.common.base.Preconditions;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KeyRange;
+import org.jsimpledb.util.ByteUtil;
+import org.jsimpledb.util.LongEncoder;
+import org.jsimpledb.util.UnsignedIntEncoder;
+
+/**
+ * Reads key/value pairs written by a {@link BinaryKVWriter}.
+ *
+ * <p>
+ * Each block's checksum is verified before any of its pairs are returned, and the total number of pairs
+ * is verified when the trailer is reached. Corrupt or truncated input results in an {@link IOException}.
+ * </p>
+ *
+ * <p>
+ * Instances are not thread safe.
+ * </p>
+ *
+ * @see BinaryKVWriter
+ * @see BinarySerializer
+ */
+public class BinaryKVReader implements Closeable {
+
+    private static final int MAX_BLOCK_LENGTH = 1 << 30;
+
+    private final DataInputStream input;
+    private final KeyRange range;
+    private final Inflater inflater;
+
+    private ByteArrayInputStream block;
+    private int blockPairsRemaining;
+    private byte[] blockPrevKey;
+    private byte[] prevKey;
+    private long pairCount;
+    private boolean finished;
+
+    /**
+     * Constructor. Reads the header.
+     *
+     * @param input input stream
+     * @throws IOException if an I/O error occurs
+     * @throws IOException if the header is invalid
+     * @throws IllegalArgumentException if {@code input} is null
+     */
+    public BinaryKVReader(InputStream input) throws IOException {
+        Preconditions.checkArgument(input != null, "null input");
+        this.input = new DataInputStream(input);
+
+        // Read header
+        final byte[] magic = new byte[BinaryKVWriter.MAGIC.length];
+        this.input.readFully(magic);
+        if (!Arrays.equals(magic, BinaryKVWriter.MAGIC))
+            throw new IOException("invalid key/value dump: incorrect magic bytes");
+        final int version = this.input.readUnsignedByte();
+        if (version != BinaryKVWriter.FORMAT_VERSION)
+            throw new IOException("unsupported key/value dump format version " + version);
+        final int flags = this.input.readUnsignedByte();
+        if ((flags & ~BinaryKVWriter.FLAG_COMPRESSED) != 0)
+            throw new IOException("invalid key/value dump: unrecognized flags 0x" + Integer.toHexString(flags));
+        this.inflater = (flags & BinaryKVWriter.FLAG_COMPRESSED) != 0 ? new Inflater() : null;
+        final byte[] min = this.readBytes(this.readUnsignedInt());
+        final int maxLength = this.readUnsignedInt();
+        final byte[] max = maxLength > 0 ? this.readBytes(maxLength - 1) : null;
+        try {
+            this.range = new KeyRange(min, max);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("invalid key/value dump: invalid key range", e);
+        }
+    }
+
+    /**
+     * Get the key range that contains all of the keys in the input.
+     *
+     * @return key range
+     */
+    public KeyRange getRange() {
+        return this.range;
+    }
+
+    /**
+     * Determine whether the input is compressed.
+     *
+     * @return true if blocks are compressed
+     */
+    public boolean isCompressed() {
+        return this.inflater != null;
+    }
+
+    /**
+     * Get the number of key/value pairs read so far.
+     *
+     * @return number of pairs read
+     */
+    public long getPairCount() {
+        return this.pairCount;
+    }
+
+    /**
+     * Read the next key/value pair.
+     *
+     * @return next pair, or null if there are no more pairs
+     * @throws IOException if an I/O error occurs
+     * @throws IOException if the input is corrupt or truncated
+     */
+    public KVPair read() throws IOException {
+        while (this.blockPairsRemaining == 0) {
+            if (this.finished || !this.readBlock())
+                return null;
+        }
+        final byte[] key;
+        final byte[] value;
+        try {
+            key = KeyListEncoder.read(this.block, this.blockPrevKey);
+            value = this.readBytes(this.block, UnsignedIntEncoder.read(this.block));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("invalid key/value dump: corrupt block", e);
+        }
+        if (this.prevKey != null && ByteUtil.compare(key, this.prevKey) <= 0)
+            throw new IOException("invalid key/value dump: keys out of order");
+        if (!this.range.contains(key))
+            throw new IOException("invalid key/value dump: key " + ByteUtil.toString(key) + " is not in range " + this.range);
+        this.blockPrevKey = key;
+        this.prevKey = key;
+        if (--this.blockPairsRemaining == 0 && this.block.available() > 0)
+            throw new IOException("invalid key/value dump: extra data at the end of block");
+        this.pairCount++;
+        return new KVPair(key, value);
+    }
+
+    /**
+     * Close the underlying input stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.inflater != null)
+            this.inflater.end();
+        this.input.close();
+    }
+
+// Internal methods
+
+    // Returns false when the trailer is read
+    private boolean readBlock() throws IOException {
+        final int storedLength = this.readUnsignedInt();
+        if (storedLength == 0) {
+            final long totalPairs;
+            try {
+                totalPairs = LongEncoder.read(this.input);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("invalid key/value dump: corrupt trailer", e);
+            }
+            if (totalPairs != this.pairCount)
+                throw new IOException("invalid key/value dump: expected " + totalPairs + " pairs but read " + this.pairCount);
+            this.finished = true;
+            return false;
+        }
+        final int rawLength = this.readUnsignedInt();
+        final int blockPairs = this.readUnsignedInt();
+        if (storedLength > MAX_BLOCK_LENGTH || rawLength > MAX_BLOCK_LENGTH || blockPairs == 0)
+            throw new IOException("invalid key/value dump: invalid block header");
+        final byte[] stored = this.readBytes(storedLength);
+        final int checksum = this.input.readInt();
+
+        // Decompress
+        final byte[] raw;
+        if (this.inflater != null) {
+            raw = new byte[rawLength];
+            this.inflater.reset();
+            this.inflater.setInput(stored);
+            try {
+                if (this.inflater.inflate(raw) != rawLength || !this.inflater.finished())
+                    throw new IOException("invalid key/value dump: incorrect uncompressed block length");
+            } catch (DataFormatException e) {
+                throw new IOException("invalid key/value dump: corrupt compressed block", e);
+            }
+        } else {
+            if (storedLength != rawLength)
+                throw new IOException("invalid key/value dump: invalid block header");
+            raw = stored;
+        }
+
+        // Verify checksum
+        final CRC32 crc = new CRC32();
+        crc.update(raw);
+        if ((int)crc.getValue() != checksum)
+            throw new IOException("invalid key/value dump: block checksum mismatch");
+
+        // Start reading block
+        this.block = new ByteArrayInputStream(raw);
+        this.blockPairsRemaining = blockPairs;
+        this.blockPrevKey = null;
+        return true;
+    }
+
+    private int readUnsignedInt() throws IOException {
+        try {
+            return UnsignedIntEncoder.read(this.input);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("invalid key/value dump: invalid length encoding", e);
+        }
+    }
+
+    private byte[] readBytes(int length) throws IOException {
+        if (length < 0 || length > MAX_BLOCK_LENGTH)
+            throw new IOException("invalid key/value dump: invalid length " + length);
+        final byte[] data = new byte[length];
+        this.input.readFully(data);
+        return data;
+    }
+
+    private byte[] readBytes(ByteArrayInputStream in, int length) throws IOException {
+        if (length < 0 || length > in.available())
+            throw new EOFException("invalid key/value dump: truncated block");
+        final byte[] data = new byte[length];
+        in.read(data, 0, length);
+        return data;
+    }
+}
+
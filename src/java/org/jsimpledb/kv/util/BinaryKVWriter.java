@@ -0,0 +1,260 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.util;
+
+import com.google.common.base.Preconditions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.jsimpledb.kv.KeyRange;
+import org.jsimpledb.util.ByteUtil;
+import org.jsimpledb.util.LongEncoder;
+import org.jsimpledb.util.UnsignedIntEncoder;
+
+/**
+ * Writes key/value pairs in a compact binary format that can be read back by a {@link BinaryKVReader}.
+ *
+ * <p>
+ * The format consists of a header followed by a sequence of blocks and a trailer:
+ *  <ul>
+ *  <li>The header contains the {@link #MAGIC} bytes, a {@link #FORMAT_VERSION} byte, a flags byte,
+ *      and the {@link KeyRange} from which the keys were taken.</li>
+ *  <li>Each block contains the stored (i.e., possibly compressed) length, the uncompressed length, the number of pairs,
+ *      the stored data, and a CRC-32 checksum of the uncompressed data. Within a block, keys are encoded via
+ *      {@link KeyListEncoder}, so common key prefixes are compressed, and each value is encoded as its length
+ *      followed by its bytes. Each block is compressed independently.</li>
+ *  <li>The trailer consists of a zero stored length followed by the total number of pairs.</li>
+ *  </ul>
+ * All lengths are encoded via {@link UnsignedIntEncoder}; the total is encoded via {@link LongEncoder}.
+ * </p>
+ *
+ * <p>
+ * Keys must be written in strictly increasing order and must lie within the key range given to the constructor.
+ * Output written by instances having disjoint key ranges may be read back in any order, e.g., concurrently.
+ * </p>
+ *
+ * <p>
+ * Instances are not thread safe.
+ * </p>
+ *
+ * @see BinaryKVReader
+ * @see BinarySerializer
+ */
+public class BinaryKVWriter implements Closeable, Flushable {
+
+    /**
+     * The magic bytes that begin every dump.
+     */
+    public static final byte[] MAGIC = new byte[] { (byte)'J', (byte)'S', (byte)'K', (byte)'V' };
+
+    /**
+     * Current format version.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * Header flag indicating blocks are compressed using {@link Deflater}.
+     */
+    public static final int FLAG_COMPRESSED = 0x01;
+
+    /**
+     * Default uncompressed block size target.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private final DataOutputStream output;
+    private final KeyRange range;
+    private final int blockSize;
+    private final Deflater deflater;
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream();
+    private final byte[] buf = new byte[8192];
+
+    private byte[] prevKey;
+    private byte[] blockPrevKey;
+    private int blockPairCount;
+    private long pairCount;
+    private boolean finished;
+
+    /**
+     * Convenience constructor. Uses the full key range and {@link #DEFAULT_BLOCK_SIZE}.
+     *
+     * @param output output stream
+     * @param compress true to compress blocks
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if {@code output} is null
+     */
+    public BinaryKVWriter(OutputStream output, boolean compress) throws IOException {
+        this(output, KeyRange.FULL, compress, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Constructor. Writes the header.
+     *
+     * @param output output stream
+     * @param range key range containing all keys to be written
+     * @param compress true to compress blocks
+     * @param blockSize target uncompressed block size in bytes
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if {@code output} or {@code range} is null
+     * @throws IllegalArgumentException if {@code blockSize} is not positive
+     */
+    public BinaryKVWriter(OutputStream output, KeyRange range, boolean compress, int blockSize) throws IOException {
+        Preconditions.checkArgument(output != null, "null output");
+        Preconditions.checkArgument(range != null, "null range");
+        Preconditions.checkArgument(blockSize > 0, "blockSize <= 0");
+        this.output = new DataOutputStream(output);
+        this.range = range;
+        this.blockSize = blockSize;
+        this.deflater = compress ? new Deflater() : null;
+
+        // Write header
+        this.output.write(MAGIC);
+        this.output.write(FORMAT_VERSION);
+        this.output.write(compress ? FLAG_COMPRESSED : 0);
+        final byte[] min = range.getMin();
+        final byte[] max = range.getMax();
+        UnsignedIntEncoder.write(this.output, min.length);
+        this.output.write(min);
+        UnsignedIntEncoder.write(this.output, max != null ? max.length + 1 : 0);
+        if (max != null)
+            this.output.write(max);
+    }
+
+    /**
+     * Get the key range given to the constructor.
+     *
+     * @return key range
+     */
+    public KeyRange getRange() {
+        return this.range;
+    }
+
+    /**
+     * Get the number of key/value pairs written so far.
+     *
+     * @return number of pairs written
+     */
+    public long getPairCount() {
+        return this.pairCount;
+    }
+
+    /**
+     * Write a key/value pair.
+     *
+     * @param key key
+     * @param value value
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if {@code key} or {@code value} is null
+     * @throws IllegalArgumentException if {@code key} is not greater than the previously written key
+     * @throws IllegalArgumentException if {@code key} is not within this instance's key range
+     * @throws IllegalStateException if {@link #finish} has been invoked
+     */
+    public void write(byte[] key, byte[] value) throws IOException {
+        Preconditions.checkArgument(key != null, "null key");
+        Preconditions.checkArgument(value != null, "null value");
+        Preconditions.checkState(!this.finished, "writer is finished");
+        if (this.prevKey != null && ByteUtil.compare(key, this.prevKey) <= 0)
+            throw new IllegalArgumentException("key " + ByteUtil.toString(key) + " is not greater than previous key "
+              + ByteUtil.toString(this.prevKey));
+        if (!this.range.contains(key))
+            throw new IllegalArgumentException("key " + ByteUtil.toString(key) + " is not in range " + this.range);
+        KeyListEncoder.write(this.block, key, this.blockPrevKey);
+        UnsignedIntEncoder.write(this.block, value.length);
+        this.block.write(value);
+        this.prevKey = key;
+        this.blockPrevKey = key;
+        this.blockPairCount++;
+        this.pairCount++;
+        if (this.block.size() >= this.blockSize)
+            this.writeBlock();
+    }
+
+    /**
+     * Write out any buffered pairs and the trailer. The underlying output stream is flushed but not closed.
+     *
+     * <p>
+     * Does nothing if this instance is already finished.
+     * </p>
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void finish() throws IOException {
+        if (this.finished)
+            return;
+        this.writeBlock();
+        UnsignedIntEncoder.write(this.output, 0);
+        LongEncoder.write(this.output, this.pairCount);
+        this.output.flush();
+        this.finished = true;
+        if (this.deflater != null)
+            this.deflater.end();
+    }
+
+    /**
+     * Flush the underlying output stream. Pairs in the current, incomplete block are not written.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void flush() throws IOException {
+        this.output.flush();
+    }
+
+    /**
+     * {@linkplain #finish Finish} the output and close the underlying output stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.finish();
+        } finally {
+            this.output.close();
+        }
+    }
+
+// Internal methods
+
+    private void writeBlock() throws IOException {
+        if (this.blockPairCount == 0)
+            return;
+        final byte[] raw = this.block.toByteArray();
+        final byte[] stored = this.deflater != null ? this.compress(raw) : raw;
+        final CRC32 crc = new CRC32();
+        crc.update(raw);
+        UnsignedIntEncoder.write(this.output, stored.length);
+        UnsignedIntEncoder.write(this.output, raw.length);
+        UnsignedIntEncoder.write(this.output, this.blockPairCount);
+        this.output.write(stored);
+        this.output.writeInt((int)crc.getValue());
+        this.block.reset();
+        this.blockPrevKey = null;
+        this.blockPairCount = 0;
+    }
+
+    private byte[] compress(byte[] raw) {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 16);
+        this.deflater.reset();
+        this.deflater.setInput(raw);
+        this.deflater.finish();
+        while (!this.deflater.finished()) {
+            final int len = this.deflater.deflate(this.buf);
+            compressed.write(this.buf, 0, len);
+        }
+        return compressed.toByteArray();
+    }
+}
+
@@ -0,0 +1,127 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVStore;
+import org.jsimpledb.kv.KeyRange;
+
+/**
+ * Utility methods for serializing and deserializing the contents of a {@link KVStore} to/from the compact
+ * binary format implemented by {@link BinaryKVWriter} and {@link BinaryKVReader}.
+ *
+ * <p>
+ * For large stores, the key space may be split into {@linkplain #partition partitions}, each of which is
+ * written to a separate output. Since partitions are disjoint, they may be written and read back concurrently,
+ * provided the underlying {@link KVStore}(s) support concurrent access.
+ * </p>
+ *
+ * @see XMLSerializer
+ */
+public class BinarySerializer {
+
+    private final KVStore kv;
+
+    /**
+     * Constructor.
+     *
+     * @param kv key/value store on which to operate
+     * @throws IllegalArgumentException if {@code kv} is null
+     */
+    public BinarySerializer(KVStore kv) {
+        if (kv == null)
+            throw new IllegalArgumentException("null kv");
+        this.kv = kv;
+    }
+
+    /**
+     * Import key/value pairs into the {@link KVStore} associated with this instance from the given binary input.
+     *
+     * <p>
+     * The {@code input} is not closed by this method.
+     * </p>
+     *
+     * @param input binary input
+     * @return the number of key/value pairs read
+     * @throws IOException if an I/O error occurs or the input is invalid
+     * @throws IllegalArgumentException if {@code input} is null
+     */
+    public long read(InputStream input) throws IOException {
+        if (input == null)
+            throw new IllegalArgumentException("null input");
+        final BinaryKVReader reader = new BinaryKVReader(input);
+        for (KVPair pair; (pair = reader.read()) != null; )
+            this.kv.put(pair.getKey(), pair.getValue());
+        return reader.getPairCount();
+    }
+
+    /**
+     * Export all key/value pairs from the {@link KVStore} associated with this instance to the given output.
+     *
+     * <p>
+     * The {@code output} is not closed by this method.
+     * </p>
+     *
+     * @param output binary output
+     * @param compress true to compress the output
+     * @return the number of key/value pairs written
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if {@code output} is null
+     */
+    public long write(OutputStream output, boolean compress) throws IOException {
+        return this.write(output, KeyRange.FULL, compress);
+    }
+
+    /**
+     * Export a range of key/value pairs from the {@link KVStore} associated with this instance to the given output.
+     *
+     * <p>
+     * The {@code output} is not closed by this method.
+     * </p>
+     *
+     * @param output binary output
+     * @param range range of keys to export
+     * @param compress true to compress the output
+     * @return the number of key/value pairs written
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if {@code output} or {@code range} is null
+     */
+    public long write(OutputStream output, KeyRange range, boolean compress) throws IOException {
+        if (output == null)
+            throw new IllegalArgumentException("null output");
+        if (range == null)
+            throw new IllegalArgumentException("null range");
+        final BinaryKVWriter writer = new BinaryKVWriter(output, range, compress, BinaryKVWriter.DEFAULT_BLOCK_SIZE);
+        for (Iterator<KVPair> i = this.kv.getRange(range.getMin(), range.getMax(), false); i.hasNext(); ) {
+            final KVPair pair = i.next();
+            writer.write(pair.getKey(), pair.getValue());
+        }
+        writer.finish();
+        return writer.getPairCount();
+    }
+
+    /**
+     * Split the key space of the {@link KVStore} associated with this instance into contiguous, disjoint partitions
+     * suitable for exporting in parallel.
+     *
+     * @param maxPartitions maximum number of partitions
+     * @return partitions, in key order, covering the entire key space
+     * @throws IllegalArgumentException if {@code maxPartitions} is less than one
+     * @see KeyRangePartitioner
+     */
+    public List<KeyRange> partition(int maxPartitions) {
+        return KeyRangePartitioner.partition(this.kv, KeyRange.FULL, maxPartitions);
+    }
+}
+
@@ -0,0 +1,132 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.jsimpledb.kv.AsyncKVStore;
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVStore;
+
+/**
+ * Adapts any {@link KVStore} to the {@link AsyncKVStore} interface.
+ *
+ * <p>
+ * If no {@link ListeningExecutorService} is configured, reads are performed synchronously by the calling thread
+ * and already-completed futures are returned. Otherwise, reads are performed by the executor, which allows
+ * reads to overlap if the underlying {@link KVStore} supports concurrent access.
+ * </p>
+ *
+ * <p>
+ * All other {@link KVStore} methods are forwarded to the underlying {@link KVStore}.
+ * </p>
+ */
+public class BlockingAsyncKVStore extends ForwardingKVStore implements AsyncKVStore {
+
+    private final KVStore kvstore;
+    private final ListeningExecutorService executor;
+
+    /**
+     * Constructor for an instance that reads synchronously.
+     *
+     * @param kvstore the underlying {@link KVStore}
+     * @throws IllegalArgumentException if {@code kvstore} is null
+     */
+    public BlockingAsyncKVStore(KVStore kvstore) {
+        this(kvstore, null);
+    }
+
+    /**
+     * Constructor for an instance that reads using the given executor.
+     *
+     * @param kvstore the underlying {@link KVStore}
+     * @param executor executor for reads, or null to read synchronously in the calling thread
+     * @throws IllegalArgumentException if {@code kvstore} is null
+     */
+    public BlockingAsyncKVStore(KVStore kvstore, ListeningExecutorService executor) {
+        Preconditions.checkArgument(kvstore != null, "null kvstore");
+        this.kvstore = kvstore;
+        this.executor = executor;
+    }
+
+    /**
+     * Get an {@link AsyncKVStore} view of the given {@link KVStore}.
+     *
+     * <p>
+     * If {@code kvstore} already implements {@link AsyncKVStore}, it is returned; otherwise,
+     * a synchronous {@link BlockingAsyncKVStore} wrapping {@code kvstore} is returned.
+     * </p>
+     *
+     * @param kvstore key/value store
+     * @return asynchronous view of {@code kvstore}
+     * @throws IllegalArgumentException if {@code kvstore} is null
+     */
+    public static AsyncKVStore of(KVStore kvstore) {
+        Preconditions.checkArgument(kvstore != null, "null kvstore");
+        return kvstore instanceof AsyncKVStore ? (AsyncKVStore)kvstore : new BlockingAsyncKVStore(kvstore);
+    }
+
+    @Override
+    protected KVStore delegate() {
+        return this.kvstore;
+    }
+
+// AsyncKVStore
+
+    @Override
+    public ListenableFuture<byte[]> getAsync(final byte[] key) {
+        if (key == null)
+            throw new NullPointerException("null key");
+        return this.read(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return BlockingAsyncKVStore.this.kvstore.get(key);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<List<KVPair>> getRangeAsync(final byte[] minKey,
+      final byte[] maxKey, final boolean reverse, final int limit) {
+        Preconditions.checkArgument(limit >= 0, "limit < 0");
+        return this.read(new Callable<List<KVPair>>() {
+            @Override
+            public List<KVPair> call() {
+                final Iterator<KVPair> i = BlockingAsyncKVStore.this.kvstore.getRange(minKey, maxKey, reverse);
+                if (limit == 0)
+                    return Lists.newArrayList(i);
+                final ArrayList<KVPair> list = new ArrayList<>(Math.min(limit, 16));
+                while (list.size() < limit && i.hasNext())
+                    list.add(i.next());
+                return list;
+            }
+        });
+    }
+
+// Internal methods
+
+    private <T> ListenableFuture<T> read(Callable<T> reader) {
+        if (this.executor != null)
+            return this.executor.submit(reader);
+        try {
+            return Futures.immediateFuture(reader.call());
+        } catch (Exception e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+}
+
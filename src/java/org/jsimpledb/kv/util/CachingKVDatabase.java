@@ -0,0 +1,337 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.util;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jsimpledb.kv.KVDatabase;
+import org.jsimpledb.kv.KVTransaction;
+import org.jsimpledb.kv.KeyRange;
+import org.jsimpledb.kv.KeyRanges;
+import org.jsimpledb.kv.StatisticsKVDatabase;
+import org.jsimpledb.util.ByteUtil;
+
+/**
+ * {@link KVDatabase} wrapper that caches the results of point reads (i.e., {@link KVTransaction#get get()})
+ * for a configured set of key ranges in memory, across transactions.
+ *
+ * <p>
+ * This is intended for databases accessed over the network, where hot, rarely changing data (such as schema meta-data
+ * or reference data) would otherwise require a round trip for every read. Both present and absent keys are cached.
+ * The cache is bounded by the total size of the cached keys and values; least recently used entries are evicted first.
+ * Only keys within the configured key ranges are cached; all other operations, including range queries, are passed
+ * through to the containing {@link KVDatabase}.
+ * </p>
+ *
+ * <p>
+ * When a transaction that modified any cached key range is committed, the affected keys are invalidated. Within a
+ * transaction, once a cached key range has been modified, all further reads bypass the cache so that the
+ * transaction sees its own writes.
+ * </p>
+ *
+ * <p>
+ * Reads satisfied from the cache are not visible to the containing database's conflict detection. To make caching safe
+ * when other clients (e.g., {@link CachingKVDatabase}s on other nodes) may modify the cached key ranges, configure an
+ * <i>epoch key</i> outside the cached key ranges. Every transaction that modifies a cached key range also increments
+ * the epoch key, and every transaction that uses the cache first reads the epoch key (through the containing database,
+ * so the read is subject to the usual conflict detection) and discards the entire cache if the epoch has changed.
+ * Transactions that read cached data therefore conflict with concurrent transactions that modify it, as if
+ * they had read the data directly. For this to work, all clients that modify the cached key ranges must do so
+ * through a {@link CachingKVDatabase} configured with the same epoch key.
+ * </p>
+ *
+ * <p>
+ * Without an epoch key, cached reads behave like {@linkplain org.jsimpledb.kv.SnapshotReadKVTransaction snapshot reads},
+ * and the cache is only kept up to date with respect to transactions committed through this instance.
+ * </p>
+ *
+ * <p>
+ * Cache hit and miss counts are available through the {@link StatisticsKVDatabase} interface.
+ * </p>
+ */
+public class CachingKVDatabase implements StatisticsKVDatabase {
+
+    private static final int ENTRY_OVERHEAD = 64;                   // approximate per-entry overhead in bytes
+
+    private final KVDatabase db;
+    private final KeyRanges cachedRanges;
+    private final byte[] epochKey;
+    private final Cache<ByteBuffer, Optional<byte[]>> cache;
+
+    private volatile long generation;                               // incremented on every invalidation
+    private byte[] epoch;                                           // last observed epoch, EMPTY if none, or null if unknown
+    private long invalidations;
+
+    /**
+     * Constructor for an instance with no epoch key.
+     *
+     * @param db the containing {@link KVDatabase}
+     * @param cachedRanges the key ranges to cache
+     * @param maximumSize maximum total size of cached keys and values, in bytes
+     * @throws IllegalArgumentException if {@code db} or {@code cachedRanges} is null
+     * @throws IllegalArgumentException if {@code maximumSize} is negative
+     */
+    public CachingKVDatabase(KVDatabase db, KeyRanges cachedRanges, long maximumSize) {
+        this(db, cachedRanges, maximumSize, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param db the containing {@link KVDatabase}
+     * @param cachedRanges the key ranges to cache
+     * @param maximumSize maximum total size of cached keys and values, in bytes
+     * @param epochKey key used to detect modifications by other clients, or null for none
+     * @throws IllegalArgumentException if {@code db} or {@code cachedRanges} is null
+     * @throws IllegalArgumentException if {@code maximumSize} is negative
+     * @throws IllegalArgumentException if {@code epochKey} is contained in {@code cachedRanges}
+     */
+    public CachingKVDatabase(KVDatabase db, KeyRanges cachedRanges, long maximumSize, byte[] epochKey) {
+        if (db == null)
+            throw new IllegalArgumentException("null db");
+        if (cachedRanges == null)
+            throw new IllegalArgumentException("null cachedRanges");
+        if (maximumSize < 0)
+            throw new IllegalArgumentException("maximumSize < 0");
+        if (epochKey != null && cachedRanges.contains(epochKey))
+            throw new IllegalArgumentException("epochKey is contained in cachedRanges");
+        this.db = db;
+        this.cachedRanges = cachedRanges;
+        this.epochKey = epochKey != null ? epochKey.clone() : null;
+        this.cache = CacheBuilder.newBuilder()
+          .maximumWeight(maximumSize)
+          .weigher(new Weigher<ByteBuffer, Optional<byte[]>>() {
+            @Override
+            public int weigh(ByteBuffer key, Optional<byte[]> value) {
+                return ENTRY_OVERHEAD + key.remaining() + (value.isPresent() ? value.get().length : 0);
+            }
+          })
+          .recordStats()
+          .build();
+    }
+
+    /**
+     * Get the containing {@link KVDatabase} associated with this instance.
+     *
+     * @return the containing {@link KVDatabase}
+     */
+    public KVDatabase getContainingKVDatabase() {
+        return this.db;
+    }
+
+    /**
+     * Get the key ranges cached by this instance.
+     *
+     * @return cached key ranges
+     */
+    public KeyRanges getCachedRanges() {
+        return this.cachedRanges;
+    }
+
+    /**
+     * Get the epoch key associated with this instance.
+     *
+     * @return (a copy of) the epoch key, or null if there is none
+     */
+    public byte[] getEpochKey() {
+        return this.epochKey != null ? this.epochKey.clone() : null;
+    }
+
+    /**
+     * Discard all cached data.
+     */
+    public synchronized void invalidateAll() {
+        this.generation++;
+        this.invalidations++;
+        this.cache.invalidateAll();
+    }
+
+// KVDatabase
+
+    @Override
+    public CachingKVTransaction createTransaction() {
+
+        // Capture the generation first: the containing transaction's snapshot may be fixed at creation time,
+        // so it must not be allowed to populate the cache after any subsequent invalidation
+        final long txGeneration = this.generation;
+        return new CachingKVTransaction(this, this.db.createTransaction(), txGeneration);
+    }
+
+// StatisticsKVDatabase
+
+    /**
+     * Get cache statistics.
+     *
+     * <p>
+     * In addition to the {@linkplain StatisticsKVDatabase#CACHE_HITS cache hits},
+     * {@linkplain StatisticsKVDatabase#CACHE_MISSES cache misses}, and (approximate)
+     * {@linkplain StatisticsKVDatabase#CACHE_BYTES cache size} standard statistics, the returned map contains:
+     * <ul>
+     *  <li>{@code caching.entries} - number of cached keys, including keys cached as absent</li>
+     *  <li>{@code caching.evictions} - number of entries evicted due to the size limit</li>
+     *  <li>{@code caching.invalidations} - number of times cached data has been invalidated by a commit
+     *      or an epoch change</li>
+     * </ul>
+     */
+    @Override
+    public Map<String, Long> getStatistics() {
+        final CacheStats stats = this.cache.stats();
+        long bytes = 0;
+        for (Map.Entry<ByteBuffer, Optional<byte[]>> entry : this.cache.asMap().entrySet()) {
+            final Optional<byte[]> value = entry.getValue();
+            bytes += ENTRY_OVERHEAD + entry.getKey().remaining() + (value.isPresent() ? value.get().length : 0);
+        }
+        final TreeMap<String, Long> map = new TreeMap<>();
+        map.put(CACHE_HITS, stats.hitCount());
+        map.put(CACHE_MISSES, stats.missCount());
+        map.put(CACHE_BYTES, bytes);
+        map.put("caching.entries", this.cache.size());
+        map.put("caching.evictions", stats.evictionCount());
+        synchronized (this) {
+            map.put("caching.invalidations", this.invalidations);
+        }
+        return map;
+    }
+
+// Package methods
+
+    /**
+     * Determine whether the given key is cached.
+     */
+    boolean isCached(byte[] key) {
+        return this.cachedRanges.contains(key);
+    }
+
+    /**
+     * Determine whether the given key range overlaps any cached key range.
+     */
+    boolean isCached(byte[] minKey, byte[] maxKey) {
+        return !this.cachedRanges.intersection(new KeyRanges(minKey != null ? minKey : ByteUtil.EMPTY, maxKey)).isEmpty();
+    }
+
+    /**
+     * Prepare the cache for use by the given transaction, validating the epoch key if any.
+     *
+     * <p>
+     * If the cache has been invalidated since the transaction was created, the returned generation will not match
+     * and the transaction will bypass the cache.
+     * </p>
+     *
+     * @param tx containing database transaction
+     * @param txGeneration cache generation at the time the transaction was created
+     * @return cache generation to be passed to {@link #get get()}
+     */
+    long start(KVTransaction tx, long txGeneration) {
+        final byte[] txEpoch = this.readEpoch(tx);
+        if (txEpoch == null)
+            return txGeneration;
+        synchronized (this) {
+            if (!Arrays.equals(txEpoch, this.epoch) && this.generation == txGeneration) {
+                this.invalidateAll();
+                this.epoch = txEpoch;
+                return this.generation;
+            }
+            return txGeneration;
+        }
+    }
+
+    /**
+     * Read the epoch key in the given transaction.
+     *
+     * @return the epoch value, {@link ByteUtil#EMPTY} if the epoch key is not present, or null if there is no epoch key
+     */
+    byte[] readEpoch(KVTransaction tx) {
+        if (this.epochKey == null)
+            return null;
+        final byte[] value = tx.get(this.epochKey);
+        return value != null ? value : ByteUtil.EMPTY;
+    }
+
+    /**
+     * Read a cached key, loading it from the containing transaction on a cache miss.
+     *
+     * @param tx containing database transaction
+     * @param key key to read
+     * @param txGeneration generation returned by {@link #start start()}
+     */
+    byte[] get(KVTransaction tx, byte[] key, long txGeneration) {
+
+        // If the cache has been invalidated since the transaction started, it may contain newer data than the transaction sees
+        if (this.generation != txGeneration)
+            return tx.get(key);
+
+        // Check cache
+        final Optional<byte[]> cached = this.cache.getIfPresent(ByteBuffer.wrap(key));
+        if (cached != null && this.generation == txGeneration)
+            return cached.isPresent() ? cached.get().clone() : null;
+
+        // Read key, then cache it unless invalidated in the meantime
+        final byte[] value = tx.get(key);
+        synchronized (this) {
+            if (this.generation == txGeneration)
+                this.cache.put(ByteBuffer.wrap(key.clone()), Optional.fromNullable(value != null ? value.clone() : null));
+        }
+        return value;
+    }
+
+    /**
+     * Increment the epoch key within the given transaction, which has modified cached data and is about to commit.
+     *
+     * @param epoch the current epoch value as returned by {@link #readEpoch readEpoch()}
+     * @return the new epoch value
+     */
+    byte[] incrementEpoch(KVTransaction tx, byte[] epoch) {
+        final byte[] value = tx.encodeCounter((epoch.length > 0 ? tx.decodeCounter(epoch) : 0) + 1);
+        tx.put(this.epochKey, value);
+        return value;
+    }
+
+    /**
+     * Invalidate keys modified by a transaction that has been committed, or whose commit has failed.
+     *
+     * @param keys modified keys
+     * @param ranges modified key ranges
+     * @param previousEpoch the epoch value replaced by the transaction if known to be committed, otherwise null
+     * @param newEpoch the epoch value written by the transaction if known to be committed, otherwise null
+     */
+    synchronized void invalidate(List<byte[]> keys, List<KeyRange> ranges, byte[] previousEpoch, byte[] newEpoch) {
+        this.generation++;
+        this.invalidations++;
+        for (byte[] key : keys)
+            this.cache.invalidate(ByteBuffer.wrap(key));
+        if (!ranges.isEmpty()) {
+            for (Iterator<ByteBuffer> i = this.cache.asMap().keySet().iterator(); i.hasNext(); ) {
+                final ByteBuffer buf = i.next();
+                final byte[] key = new byte[buf.remaining()];
+                buf.duplicate().get(key);
+                for (KeyRange range : ranges) {
+                    if (range.contains(key)) {
+                        i.remove();
+                        break;
+                    }
+                }
+            }
+        }
+
+        // If we know our commit was the only change since the epoch we last saw, we can keep the rest of the cache
+        if (newEpoch != null)
+            this.epoch = Arrays.equals(previousEpoch, this.epoch) ? newEpoch : null;
+    }
+}
+
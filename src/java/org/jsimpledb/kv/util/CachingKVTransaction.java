@@ -0,0 +1,181 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.util;
+
+import java.util.ArrayList;
+
+import org.jsimpledb.kv.KVTransaction;
+import org.jsimpledb.kv.KeyRange;
+import org.jsimpledb.kv.ReadOnlyKVTransaction;
+import org.jsimpledb.kv.StaleTransactionException;
+import org.jsimpledb.util.ByteUtil;
+
+/**
+ * {@link CachingKVDatabase} transaction.
+ *
+ * <p>
+ * Point reads of cached keys are satisfied from the {@link CachingKVDatabase} cache when possible; all other operations
+ * are forwarded to the containing transaction. See {@link CachingKVDatabase} for details.
+ * </p>
+ */
+public class CachingKVTransaction extends ForwardingKVStore implements ReadOnlyKVTransaction {
+
+    private final CachingKVDatabase db;
+    private final KVTransaction tx;
+    private final ArrayList<byte[]> writtenKeys = new ArrayList<>();
+    private final ArrayList<KeyRange> writtenRanges = new ArrayList<>();
+
+    private long generation;
+    private boolean started;
+    private boolean bypass;
+    private volatile boolean stale;
+
+    /**
+     * Constructor.
+     *
+     * @param db associated database
+     * @param tx containing transaction
+     * @param generation cache generation captured before {@code tx} was created
+     */
+    CachingKVTransaction(CachingKVDatabase db, KVTransaction tx, long generation) {
+        this.db = db;
+        this.tx = tx;
+        this.generation = generation;
+    }
+
+// ForwardingKVStore
+
+    @Override
+    protected KVTransaction delegate() {
+        return this.tx;
+    }
+
+// KVStore
+
+    @Override
+    public byte[] get(byte[] key) {
+        if (this.stale)
+            throw new StaleTransactionException(this);
+        if (!this.db.isCached(key))
+            return this.tx.get(key);
+        final long txGeneration;
+        synchronized (this) {
+            if (this.bypass)
+                return this.tx.get(key);
+            if (!this.started) {
+                this.generation = this.db.start(this.tx, this.generation);
+                this.started = true;
+            }
+            txGeneration = this.generation;
+        }
+        return this.db.get(this.tx, key, txGeneration);
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        this.tx.put(key, value);
+        this.recordWrite(key);
+    }
+
+    @Override
+    public void remove(byte[] key) {
+        this.tx.remove(key);
+        this.recordWrite(key);
+    }
+
+    @Override
+    public void removeRange(byte[] minKey, byte[] maxKey) {
+        this.tx.removeRange(minKey, maxKey);
+        if (this.db.isCached(minKey, maxKey)) {
+            synchronized (this) {
+                this.writtenRanges.add(new KeyRange(minKey != null ? minKey : ByteUtil.EMPTY, maxKey));
+                this.bypass = true;
+            }
+        }
+    }
+
+    @Override
+    public void adjustCounter(byte[] key, long amount) {
+        this.tx.adjustCounter(key, amount);
+        this.recordWrite(key);
+    }
+
+// KVTransaction
+
+    @Override
+    public CachingKVDatabase getKVDatabase() {
+        return this.db;
+    }
+
+    @Override
+    public void setTimeout(long timeout) {
+        this.tx.setTimeout(timeout);
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return this.tx instanceof ReadOnlyKVTransaction && ((ReadOnlyKVTransaction)this.tx).isReadOnly();
+    }
+
+    /**
+     * Enable or disable read-only mode.
+     *
+     * <p>
+     * The implementation in {@link CachingKVTransaction} forwards to the containing transaction if it implements
+     * {@link ReadOnlyKVTransaction}, otherwise this method has no effect.
+     * </p>
+     *
+     * @param readOnly true to enable read-only mode, false to disable
+     */
+    @Override
+    public void setReadOnly(boolean readOnly) {
+        if (this.tx instanceof ReadOnlyKVTransaction)
+            ((ReadOnlyKVTransaction)this.tx).setReadOnly(readOnly);
+    }
+
+    @Override
+    public synchronized void commit() {
+        this.stale = true;
+        if (!this.bypass) {
+            this.tx.commit();
+            return;
+        }
+
+        // Invalidate modified keys after commit; also if commit fails, because it may have succeeded anyway
+        final byte[] previousEpoch = this.db.readEpoch(this.tx);
+        final byte[] newEpoch = previousEpoch != null ? this.db.incrementEpoch(this.tx, previousEpoch) : null;
+        boolean committed = false;
+        try {
+            this.tx.commit();
+            committed = true;
+        } finally {
+            if (committed)
+                this.db.invalidate(this.writtenKeys, this.writtenRanges, previousEpoch, newEpoch);
+            else
+                this.db.invalidate(this.writtenKeys, this.writtenRanges, null, null);
+        }
+    }
+
+    @Override
+    public void rollback() {
+        this.stale = true;
+        this.tx.rollback();
+    }
+
+// Internal methods
+
+    private void recordWrite(byte[] key) {
+        if (this.db.isCached(key)) {
+            synchronized (this) {
+                this.writtenKeys.add(key.clone());
+                this.bypass = true;
+            }
+        }
+    }
+}
+
@@ -0,0 +1,701 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.util;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.jsimpledb.util.AbstractIterationSet;
+import org.jsimpledb.util.AbstractNavigableMap;
+import org.jsimpledb.util.AbstractNavigableSet;
+import org.jsimpledb.util.BoundType;
+import org.jsimpledb.util.Bounds;
+import org.jsimpledb.util.ByteReader;
+import org.jsimpledb.util.ByteUtil;
+import org.jsimpledb.util.ByteWriter;
+import org.jsimpledb.util.UnsignedIntEncoder;
+
+/**
+ * Memory-compact {@link NavigableMap NavigableMap&lt;byte[], byte[]&gt;} that sorts keys lexicographically as unsigned bytes.
+ *
+ * <p>
+ * Entries are stored in sorted blocks of up to {@linkplain #getBlockSize a fixed number} of entries. Within each block,
+ * keys are <i>front coded</i>: each key is stored as the length of the prefix it shares with the previous key, followed by
+ * the remaining suffix; keys and values are packed together into a single {@code byte[]} array. Because JSimpleDB keys
+ * typically share long prefixes (e.g., object ID plus storage ID), this uses a small fraction of the memory required
+ * by a {@link java.util.TreeMap} or {@link ConcurrentSkipListMap}, which store every key and value as a separate
+ * object plus a per-entry node. Lookups search the block index, then scan a single block without decoding any keys.
+ * </p>
+ *
+ * <p>
+ * Blocks are immutable and are replaced on modification, so iterators never throw
+ * {@link java.util.ConcurrentModificationException}; like those of {@link ConcurrentSkipListMap}, they are weakly consistent.
+ * Therefore, instances are suitable as the underlying map of a {@link NavigableMapKVStore}, for example
+ * {@code new SimpleKVDatabase(new NavigableMapKVStore(new FrontCodedNavigableMap()))}.
+ * Reads are thread safe and non-blocking; modifications are serialized.
+ * </p>
+ *
+ * <p>
+ * Keys and values are copied on the way in and on the way out, and null values are not supported.
+ * {@link Map.Entry#setValue Map.Entry.setValue()} is not supported.
+ * </p>
+ */
+public class FrontCodedNavigableMap extends AbstractNavigableMap<byte[], byte[]> {
+
+    /**
+     * Default maximum number of entries per block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 32;
+
+    private final Store store;
+    private final boolean reversed;
+
+    /**
+     * Default constructor. Uses a block size of {@link #DEFAULT_BLOCK_SIZE}.
+     */
+    public FrontCodedNavigableMap() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * Larger blocks use less memory but make lookups and modifications slower.
+     * </p>
+     *
+     * @param blockSize maximum number of entries per block
+     * @throws IllegalArgumentException if {@code blockSize} is less than two
+     */
+    public FrontCodedNavigableMap(int blockSize) {
+        if (blockSize < 2)
+            throw new IllegalArgumentException("blockSize < 2");
+        this.store = new Store(blockSize);
+        this.reversed = false;
+    }
+
+    private FrontCodedNavigableMap(Store store, boolean reversed, Bounds<byte[]> bounds) {
+        super(bounds);
+        this.store = store;
+        this.reversed = reversed;
+    }
+
+    /**
+     * Get the maximum number of entries per block.
+     *
+     * @return block size
+     */
+    public int getBlockSize() {
+        return this.store.blockSize;
+    }
+
+// Map
+
+    @Override
+    public Comparator<byte[]> comparator() {
+        return this.reversed ? Collections.reverseOrder(ByteUtil.COMPARATOR) : ByteUtil.COMPARATOR;
+    }
+
+    @Override
+    public byte[] get(Object obj) {
+        if (!(obj instanceof byte[]))
+            return null;
+        final byte[] key = (byte[])obj;
+        if (!this.bounds.isWithinBounds(this.comparator(), key))
+            return null;
+        return this.store.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object obj) {
+        return this.get(obj) != null;
+    }
+
+    @Override
+    public byte[] put(byte[] key, byte[] value) {
+        if (key == null)
+            throw new NullPointerException("null key");
+        if (value == null)
+            throw new NullPointerException("null value");
+        if (!this.bounds.isWithinBounds(this.comparator(), key))
+            throw new IllegalArgumentException("key out of range");
+        return this.store.put(key, value);
+    }
+
+    @Override
+    public byte[] remove(Object obj) {
+        if (!(obj instanceof byte[]))
+            return null;
+        final byte[] key = (byte[])obj;
+        if (!this.bounds.isWithinBounds(this.comparator(), key))
+            return null;
+        return this.store.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        if (this.isUnbounded())
+            this.store.clear();
+        else
+            this.store.removeRange(this.reversed ? this.bounds.reverse() : this.bounds);
+    }
+
+    @Override
+    public int size() {
+        if (this.isUnbounded())
+            return this.store.size;
+        int count = 0;
+        for (Iterator<?> i = this.entryIterator(); i.hasNext(); i.next())
+            count++;
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.isUnbounded() ? this.store.size == 0 : !this.entrySet().iterator().hasNext();
+    }
+
+    @Override
+    public Set<Map.Entry<byte[], byte[]>> entrySet() {
+        return new EntrySet();
+    }
+
+    @Override
+    public NavigableSet<byte[]> navigableKeySet() {
+        return new KeySet(this.bounds);
+    }
+
+// AbstractNavigableMap
+
+    @Override
+    protected NavigableMap<byte[], byte[]> createSubMap(boolean reverse, Bounds<byte[]> newBounds) {
+        return new FrontCodedNavigableMap(this.store, this.reversed ^ reverse, newBounds);
+    }
+
+// Internal methods
+
+    private boolean isUnbounded() {
+        return this.bounds.getLowerBoundType() == BoundType.NONE && this.bounds.getUpperBoundType() == BoundType.NONE;
+    }
+
+    private EntryIterator entryIterator() {
+        final Bounds<byte[]> naturalBounds = this.reversed ? this.bounds.reverse() : this.bounds;
+        return new EntryIterator(this.store, naturalBounds, this.reversed);
+    }
+
+// EntrySet
+
+    private class EntrySet extends AbstractIterationSet<Map.Entry<byte[], byte[]>> {
+
+        @Override
+        public Iterator<Map.Entry<byte[], byte[]>> iterator() {
+            return FrontCodedNavigableMap.this.entryIterator();
+        }
+
+        @Override
+        public int size() {
+            return FrontCodedNavigableMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return FrontCodedNavigableMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object obj) {
+            if (!(obj instanceof Map.Entry))
+                return false;
+            final Map.Entry<?, ?> entry = (Map.Entry<?, ?>)obj;
+            final byte[] value = FrontCodedNavigableMap.this.get(entry.getKey());
+            return value != null && entry.getValue() instanceof byte[] && ByteUtil.compare(value, (byte[])entry.getValue()) == 0;
+        }
+
+        @Override
+        public boolean remove(Object obj) {
+            if (!this.contains(obj))
+                return false;
+            FrontCodedNavigableMap.this.remove(((Map.Entry<?, ?>)obj).getKey());
+            return true;
+        }
+    }
+
+// KeySet
+
+    private class KeySet extends AbstractNavigableSet<byte[]> {
+
+        KeySet(Bounds<byte[]> bounds) {
+            super(bounds);
+        }
+
+        @Override
+        public Comparator<byte[]> comparator() {
+            return FrontCodedNavigableMap.this.comparator();
+        }
+
+        @Override
+        public Iterator<byte[]> iterator() {
+            final EntryIterator i = FrontCodedNavigableMap.this.entryIterator();
+            return new Iterator<byte[]>() {
+                @Override
+                public boolean hasNext() {
+                    return i.hasNext();
+                }
+
+                @Override
+                public byte[] next() {
+                    return i.next().getKey();
+                }
+
+                @Override
+                public void remove() {
+                    i.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return FrontCodedNavigableMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return FrontCodedNavigableMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object obj) {
+            return FrontCodedNavigableMap.this.containsKey(obj);
+        }
+
+        @Override
+        public boolean remove(Object obj) {
+            return FrontCodedNavigableMap.this.remove(obj) != null;
+        }
+
+        @Override
+        public void clear() {
+            FrontCodedNavigableMap.this.clear();
+        }
+
+        @Override
+        protected NavigableSet<byte[]> createSubSet(boolean reverse, Bounds<byte[]> newBounds) {
+            return FrontCodedNavigableMap.this.createSubMap(reverse, newBounds).navigableKeySet();
+        }
+    }
+
+// EntryIterator
+
+    private static class EntryIterator implements Iterator<Map.Entry<byte[], byte[]>> {
+
+        private final Store store;
+        private final Bounds<byte[]> bounds;                    // always in natural order
+        private final boolean reverse;
+
+        private byte[][] keys;                                  // current decoded block
+        private byte[][] values;
+        private int pos;                                        // position in current block of last entry returned
+        private byte[] lastKey;                                 // key of last entry returned
+        private Map.Entry<byte[], byte[]> next;
+        private boolean finished;
+        private boolean removable;
+
+        EntryIterator(Store store, Bounds<byte[]> bounds, boolean reverse) {
+            this.store = store;
+            this.bounds = bounds;
+            this.reverse = reverse;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.next != null)
+                return true;
+            if (this.finished)
+                return false;
+            this.advance();
+            return this.next != null;
+        }
+
+        @Override
+        public Map.Entry<byte[], byte[]> next() {
+            if (!this.hasNext())
+                throw new NoSuchElementException();
+            final Map.Entry<byte[], byte[]> entry = this.next;
+            this.next = null;
+            this.lastKey = entry.getKey();
+            this.removable = true;
+            return new AbstractMap.SimpleImmutableEntry<>(entry.getKey().clone(), entry.getValue());
+        }
+
+        @Override
+        public void remove() {
+            if (!this.removable)
+                throw new IllegalStateException();
+            this.store.remove(this.lastKey);
+            this.removable = false;
+        }
+
+        private void advance() {
+
+            // Try next entry in the current block snapshot
+            if (this.keys != null) {
+                this.pos += this.reverse ? -1 : 1;
+                if (this.pos >= 0 && this.pos < this.keys.length) {
+                    this.setNext(this.keys[this.pos], this.values[this.pos]);
+                    return;
+                }
+            }
+
+            // Seek from the last key returned, or the starting bound
+            final byte[] seekKey;
+            final boolean inclusive;
+            if (this.lastKey != null) {
+                seekKey = this.lastKey;
+                inclusive = false;
+            } else if (this.reverse) {
+                seekKey = this.bounds.getUpperBound();
+                inclusive = this.bounds.getUpperBoundType() == BoundType.INCLUSIVE;
+            } else {
+                seekKey = this.bounds.getLowerBound();
+                inclusive = this.bounds.getLowerBoundType() == BoundType.INCLUSIVE;
+            }
+            if (!(this.reverse ? this.seekBelow(seekKey, inclusive) : this.seekAbove(seekKey, inclusive))) {
+                this.finished = true;
+                return;
+            }
+            this.setNext(this.keys[this.pos], this.values[this.pos]);
+        }
+
+        private void setNext(byte[] key, byte[] value) {
+            if (!(this.reverse ? this.bounds.isWithinLowerBound(ByteUtil.COMPARATOR, key) :
+              this.bounds.isWithinUpperBound(ByteUtil.COMPARATOR, key))) {
+                this.finished = true;
+                return;
+            }
+            this.next = new AbstractMap.SimpleImmutableEntry<>(key, value);
+        }
+
+        // Position at the first entry above (or at) minKey (null means no minimum)
+        private boolean seekAbove(byte[] minKey, boolean inclusive) {
+            Map.Entry<byte[], Block> entry = minKey != null ?
+              this.store.index.floorEntry(minKey) : this.store.index.firstEntry();
+            if (entry == null)
+                entry = this.store.index.firstEntry();
+            while (entry != null) {
+                this.load(entry.getValue());
+                for (this.pos = 0; this.pos < this.keys.length; this.pos++) {
+                    if (minKey == null)
+                        return true;
+                    final int diff = ByteUtil.compare(this.keys[this.pos], minKey);
+                    if (diff > 0 || (diff == 0 && inclusive))
+                        return true;
+                }
+                entry = this.store.index.higherEntry(entry.getKey());
+            }
+            return false;
+        }
+
+        // Position at the last entry below (or at) maxKey (null means no maximum)
+        private boolean seekBelow(byte[] maxKey, boolean inclusive) {
+            Map.Entry<byte[], Block> entry = maxKey != null ?
+              this.store.index.floorEntry(maxKey) : this.store.index.lastEntry();
+            while (entry != null) {
+                this.load(entry.getValue());
+                for (this.pos = this.keys.length - 1; this.pos >= 0; this.pos--) {
+                    if (maxKey == null)
+                        return true;
+                    final int diff = ByteUtil.compare(this.keys[this.pos], maxKey);
+                    if (diff < 0 || (diff == 0 && inclusive))
+                        return true;
+                }
+                entry = this.store.index.lowerEntry(entry.getKey());
+            }
+            return false;
+        }
+
+        private void load(Block block) {
+            this.keys = new byte[block.count][];
+            this.values = new byte[block.count][];
+            block.decode(this.keys, this.values);
+        }
+    }
+
+// Store
+
+    // The actual data, shared by all views. Each block's index key is less than or equal to all of the keys in that block
+    // and greater than all of the keys in previous blocks; the first block's index key is always the empty key.
+    private static final class Store {
+
+        final int blockSize;
+        final ConcurrentSkipListMap<byte[], Block> index = new ConcurrentSkipListMap<>(ByteUtil.COMPARATOR);
+
+        volatile int size;
+
+        Store(int blockSize) {
+            this.blockSize = blockSize;
+        }
+
+        byte[] get(byte[] key) {
+            final Map.Entry<byte[], Block> entry = this.index.floorEntry(key);
+            return entry != null ? entry.getValue().get(key) : null;
+        }
+
+        synchronized byte[] put(byte[] key, byte[] value) {
+
+            // Find block
+            final Map.Entry<byte[], Block> entry = this.index.floorEntry(key);
+            if (entry == null) {
+                this.index.put(ByteUtil.EMPTY, Block.encode(Collections.singletonList(key), Collections.singletonList(value)));
+                this.size++;
+                return null;
+            }
+
+            // Decode block and insert or replace entry
+            final Block block = entry.getValue();
+            final ArrayList<byte[]> keys = new ArrayList<>(block.count + 1);
+            final ArrayList<byte[]> values = new ArrayList<>(block.count + 1);
+            block.decode(keys, values);
+            final int pos = Collections.binarySearch(keys, key, ByteUtil.COMPARATOR);
+            if (pos >= 0) {
+                final byte[] previous = values.get(pos);
+                if (ByteUtil.compare(previous, value) == 0)
+                    return previous;
+                values.set(pos, value);
+                this.index.put(entry.getKey(), Block.encode(keys, values));
+                return previous;
+            }
+            keys.add(~pos, key);
+            values.add(~pos, value);
+            this.size++;
+
+            // Replace block, splitting if necessary; add the new upper half first so readers never miss entries
+            if (keys.size() <= this.blockSize) {
+                this.index.put(entry.getKey(), Block.encode(keys, values));
+                return null;
+            }
+            final int split = keys.size() / 2;
+            this.index.put(keys.get(split), Block.encode(keys.subList(split, keys.size()), values.subList(split, values.size())));
+            this.index.put(entry.getKey(), Block.encode(keys.subList(0, split), values.subList(0, split)));
+            return null;
+        }
+
+        synchronized byte[] remove(byte[] key) {
+
+            // Find block and entry
+            final Map.Entry<byte[], Block> entry = this.index.floorEntry(key);
+            if (entry == null)
+                return null;
+            final Block block = entry.getValue();
+            final ArrayList<byte[]> keys = new ArrayList<>(block.count);
+            final ArrayList<byte[]> values = new ArrayList<>(block.count);
+            block.decode(keys, values);
+            final int pos = Collections.binarySearch(keys, key, ByteUtil.COMPARATOR);
+            if (pos < 0)
+                return null;
+            final byte[] previous = values.get(pos);
+            keys.remove(pos);
+            values.remove(pos);
+            this.size--;
+
+            // Merge with the next block if small enough, otherwise replace; add merged block first so readers never miss entries
+            final Map.Entry<byte[], Block> nextEntry = this.index.higherEntry(entry.getKey());
+            if (nextEntry != null && keys.size() + nextEntry.getValue().count <= this.blockSize / 2) {
+                nextEntry.getValue().decode(keys, values);
+                this.index.put(entry.getKey(), Block.encode(keys, values));
+                this.index.remove(nextEntry.getKey());
+            } else if (!keys.isEmpty())
+                this.index.put(entry.getKey(), Block.encode(keys, values));
+            else if (nextEntry != null) {                                   // move the next block down to take this block's place
+                this.index.put(entry.getKey(), nextEntry.getValue());
+                this.index.remove(nextEntry.getKey());
+            } else
+                this.index.remove(entry.getKey());
+            return previous;
+        }
+
+        // Remove all entries within the given bounds (in natural order). Blocks lying entirely within the range are dropped
+        // without being decoded; the surviving entries of the (at most two) boundary blocks are re-encoded once.
+        synchronized void removeRange(Bounds<byte[]> bounds) {
+
+            // Find the first block that could contain keys in the range
+            Map.Entry<byte[], Block> entry = bounds.getLowerBoundType() != BoundType.NONE ?
+              this.index.floorEntry(bounds.getLowerBound()) : null;
+            if (entry == null)
+                entry = this.index.firstEntry();
+            final Map.Entry<byte[], Block> first = entry;
+
+            // Scan affected blocks; keys below the range can only occur in the first block and keys above only in the last
+            final ArrayList<byte[]> blockKeys = new ArrayList<>();
+            final ArrayList<byte[]> keys = new ArrayList<>();
+            final ArrayList<byte[]> values = new ArrayList<>();
+            int removed = 0;
+            while (entry != null) {
+                final Map.Entry<byte[], Block> next = this.index.higherEntry(entry.getKey());
+                final boolean nextInRange = next != null && bounds.isWithinUpperBound(ByteUtil.COMPARATOR, next.getKey());
+                final Block block = entry.getValue();
+                blockKeys.add(entry.getKey());
+                if (entry != first && nextInRange)                         // block lies entirely within the range
+                    removed += block.count;
+                else {
+                    final byte[][] blockKeyArray = new byte[block.count][];
+                    final byte[][] blockValueArray = new byte[block.count][];
+                    block.decode(blockKeyArray, blockValueArray);
+                    for (int i = 0; i < block.count; i++) {
+                        if (bounds.isWithinBounds(ByteUtil.COMPARATOR, blockKeyArray[i]))
+                            removed++;
+                        else {
+                            keys.add(blockKeyArray[i]);
+                            values.add(blockValueArray[i]);
+                        }
+                    }
+                }
+                if (!nextInRange)
+                    break;
+                entry = next;
+            }
+            if (removed == 0)
+                return;
+            this.size -= removed;
+
+            // Replace the affected blocks with the survivors; add new blocks first so readers never miss entries
+            final byte[] firstKey = blockKeys.get(0);
+            final byte[] lastKey = blockKeys.get(blockKeys.size() - 1);
+            int split = 0;
+            while (split < keys.size() && ByteUtil.compare(keys.get(split), lastKey) < 0)
+                split++;
+            if (blockKeys.size() == 1 || keys.size() <= this.blockSize / 2)
+                split = keys.size();
+            if (split > 0)
+                this.index.put(firstKey, Block.encode(keys.subList(0, split), values.subList(0, split)));
+            if (split < keys.size())
+                this.index.put(lastKey, Block.encode(keys.subList(split, keys.size()), values.subList(split, values.size())));
+            for (int i = split > 0 ? 1 : 0; i < blockKeys.size(); i++) {
+                if (i < blockKeys.size() - 1 || split == keys.size())
+                    this.index.remove(blockKeys.get(i));
+            }
+
+            // Restore the first block's empty index key, if necessary
+            final Map.Entry<byte[], Block> firstEntry = this.index.firstEntry();
+            if (firstEntry != null && firstEntry.getKey().length > 0) {
+                this.index.put(ByteUtil.EMPTY, firstEntry.getValue());
+                this.index.remove(firstEntry.getKey());
+            }
+        }
+
+        synchronized void clear() {
+            this.index.clear();
+            this.size = 0;
+        }
+    }
+
+// Block
+
+    // Immutable sorted block of entries. Each entry is encoded as: shared prefix length, suffix length, suffix bytes,
+    // value length, value bytes; lengths are encoded via UnsignedIntEncoder.
+    private static final class Block {
+
+        final int count;
+        final byte[] data;
+
+        private Block(int count, byte[] data) {
+            this.count = count;
+            this.data = data;
+        }
+
+        static Block encode(List<byte[]> keys, List<byte[]> values) {
+            final ByteWriter writer = new ByteWriter();
+            byte[] prev = ByteUtil.EMPTY;
+            for (int i = 0; i < keys.size(); i++) {
+                final byte[] key = keys.get(i);
+                final byte[] value = values.get(i);
+                final int limit = Math.min(prev.length, key.length);
+                int shared = 0;
+                while (shared < limit && prev[shared] == key[shared])
+                    shared++;
+                UnsignedIntEncoder.write(writer, shared);
+                UnsignedIntEncoder.write(writer, key.length - shared);
+                writer.write(key, shared, key.length - shared);
+                UnsignedIntEncoder.write(writer, value.length);
+                writer.write(value);
+                prev = key;
+            }
+            return new Block(keys.size(), writer.getBytes());
+        }
+
+        void decode(byte[][] keys, byte[][] values) {
+            final ByteReader reader = new ByteReader(this.data);
+            byte[] prev = ByteUtil.EMPTY;
+            for (int i = 0; i < this.count; i++) {
+                prev = this.readKey(reader, prev);
+                keys[i] = prev;
+                values[i] = reader.readBytes(UnsignedIntEncoder.read(reader));
+            }
+        }
+
+        void decode(List<byte[]> keys, List<byte[]> values) {
+            final ByteReader reader = new ByteReader(this.data);
+            byte[] prev = ByteUtil.EMPTY;
+            for (int i = 0; i < this.count; i++) {
+                prev = this.readKey(reader, prev);
+                keys.add(prev);
+                values.add(reader.readBytes(UnsignedIntEncoder.read(reader)));
+            }
+        }
+
+        // Search without decoding keys: track the length of the common prefix of the search key and the previous key,
+        // which is always less than the search key
+        byte[] get(byte[] key) {
+            final ByteReader reader = new ByteReader(this.data);
+            int match = 0;
+            for (int i = 0; i < this.count; i++) {
+                final int shared = UnsignedIntEncoder.read(reader);
+                final int suffixLength = UnsignedIntEncoder.read(reader);
+                final int suffixOffset = reader.getOffset();
+                reader.skip(suffixLength);
+                final int valueLength = UnsignedIntEncoder.read(reader);
+                if (shared < match)                                         // this key is greater than the search key
+                    return null;
+                if (shared == match) {
+                    int j = 0;
+                    while (j < suffixLength && match + j < key.length && this.data[suffixOffset + j] == key[match + j])
+                        j++;
+                    if (j == suffixLength) {
+                        if (match + j == key.length)
+                            return reader.readBytes(valueLength);
+                    } else if (match + j == key.length || (this.data[suffixOffset + j] & 0xff) > (key[match + j] & 0xff))
+                        return null;
+                    match += j;
+                }
+                reader.skip(valueLength);
+            }
+            return null;
+        }
+
+        private byte[] readKey(ByteReader reader, byte[] prev) {
+            final int shared = UnsignedIntEncoder.read(reader);
+            final int suffixLength = UnsignedIntEncoder.read(reader);
+            final byte[] key = new byte[shared + suffixLength];
+            System.arraycopy(prev, 0, key, 0, shared);
+            System.arraycopy(this.data, reader.getOffset(), key, shared, suffixLength);
+            reader.skip(suffixLength);
+            return key;
+        }
+    }
+}
+
@@ -0,0 +1,38 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.util;
+
+/**
+ * Miscellaneous utility methods relating to key/value stores.
+ */
+public final class KVUtil {
+
+    private KVUtil() {
+    }
+
+    /**
+     * Close the given object, if it is {@link AutoCloseable}, ignoring any exception thrown.
+     *
+     * <p>
+     * This is typically used to release the resources associated with an iterator returned by
+     * {@link org.jsimpledb.kv.KVStore#getRange KVStore.getRange()} when the iteration ends early.
+     * </p>
+     *
+     * @param obj object to close, possibly null
+     */
+    public static void closeIfPossible(Object obj) {
+        if (obj instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable)obj).close();
+            } catch (Exception e) {
+                // ignore
+            }
+        }
+    }
+}
+
@@ -0,0 +1,172 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.util;
+
+import com.google.common.base.Preconditions;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVStore;
+import org.jsimpledb.kv.KeyRange;
+
+/**
+ * Splits a range of keys in a {@link KVStore} into contiguous sub-ranges containing roughly equal numbers of keys,
+ * so that the sub-ranges may be scanned in parallel.
+ *
+ * <p>
+ * Boundary keys are sampled without scanning the range: the first and last keys in the range are located, evenly
+ * spaced points are interpolated between them (treating keys as fractions in {@code [0, 1)}), and each point is
+ * then snapped to the next actual key. This requires only one {@link KVStore#getAtLeast getAtLeast()} per partition.
+ * Partitions are exactly balanced when keys are uniformly distributed (e.g., randomly assigned object IDs), and
+ * still correct, though possibly unbalanced, otherwise.
+ * </p>
+ */
+public final class KeyRangePartitioner {
+
+    // Number of bytes beyond the common prefix of the first and last keys used when interpolating
+    private static final int INTERPOLATION_BYTES = 8;
+
+    private KeyRangePartitioner() {
+    }
+
+    /**
+     * Sample boundary keys that partition the keys in {@code range} into at most {@code maxPartitions} sub-ranges.
+     *
+     * <p>
+     * The returned keys are actual keys in {@code kvstore}, in strictly increasing order, and all strictly
+     * greater than the first key in {@code range}. Fewer than {@code maxPartitions - 1} keys are returned if
+     * {@code range} contains too few keys to support that many partitions.
+     * </p>
+     *
+     * @param kvstore key/value store
+     * @param range range of keys to partition
+     * @param maxPartitions maximum number of partitions
+     * @return sorted list of boundary keys, each of which is the first key of a partition other than the first
+     * @throws IllegalArgumentException if {@code kvstore} or {@code range} is null
+     * @throws IllegalArgumentException if {@code maxPartitions} is less than one
+     */
+    public static List<byte[]> sampleBoundaries(KVStore kvstore, KeyRange range, int maxPartitions) {
+
+        // Sanity check
+        Preconditions.checkArgument(kvstore != null, "null kvstore");
+        Preconditions.checkArgument(range != null, "null range");
+        Preconditions.checkArgument(maxPartitions > 0, "maxPartitions < 1");
+
+        // Find first and last keys in the range
+        final ArrayList<byte[]> boundaries = new ArrayList<>(maxPartitions - 1);
+        if (maxPartitions == 1)
+            return boundaries;
+        final KVPair first = kvstore.getAtLeast(range.getMin());
+        if (first == null || !range.contains(first.getKey()))
+            return boundaries;
+        final KVPair last = kvstore.getAtMost(range.getMax());
+        if (last == null || KeyRange.compare(last.getKey(), first.getKey()) <= 0)
+            return boundaries;
+
+        // Interpolate between them, snapping each point to the next actual key
+        byte[] prev = first.getKey();
+        for (int i = 1; i < maxPartitions; i++) {
+            final byte[] point = KeyRangePartitioner.interpolate(first.getKey(), last.getKey(), i, maxPartitions);
+            if (KeyRange.compare(point, prev) <= 0)
+                continue;
+            final KVPair next = kvstore.getAtLeast(point);
+            if (next == null || !range.contains(next.getKey()))
+                break;
+            final byte[] key = next.getKey();
+            if (KeyRange.compare(key, prev) <= 0)
+                continue;
+            boundaries.add(key);
+            prev = key;
+        }
+
+        // Done
+        return boundaries;
+    }
+
+    /**
+     * Partition the keys in {@code range} into at most {@code maxPartitions} contiguous sub-ranges.
+     *
+     * <p>
+     * Equivalent to {@link #partition(KeyRange, List) partition(range, sampleBoundaries(kvstore, range, maxPartitions))}.
+     * </p>
+     *
+     * @param kvstore key/value store
+     * @param range range of keys to partition
+     * @param maxPartitions maximum number of partitions
+     * @return non-empty list of adjacent sub-ranges whose union is {@code range}, in increasing order
+     * @throws IllegalArgumentException if {@code kvstore} or {@code range} is null
+     * @throws IllegalArgumentException if {@code maxPartitions} is less than one
+     */
+    public static List<KeyRange> partition(KVStore kvstore, KeyRange range, int maxPartitions) {
+        return KeyRangePartitioner.partition(range, KeyRangePartitioner.sampleBoundaries(kvstore, range, maxPartitions));
+    }
+
+    /**
+     * Partition {@code range} into contiguous sub-ranges at the given boundary keys.
+     *
+     * <p>
+     * Boundary keys not strictly inside {@code range}, and boundary keys not strictly greater than the previous
+     * boundary key, are ignored.
+     * </p>
+     *
+     * @param range range of keys to partition
+     * @param boundaries sorted boundary keys
+     * @return non-empty list of adjacent sub-ranges whose union is {@code range}, in increasing order
+     * @throws IllegalArgumentException if {@code range} or {@code boundaries} is null
+     */
+    public static List<KeyRange> partition(KeyRange range, List<byte[]> boundaries) {
+        Preconditions.checkArgument(range != null, "null range");
+        Preconditions.checkArgument(boundaries != null, "null boundaries");
+        final ArrayList<KeyRange> ranges = new ArrayList<>(boundaries.size() + 1);
+        byte[] min = range.getMin();
+        for (byte[] boundary : boundaries) {
+            if (KeyRange.compare(boundary, min) <= 0 || KeyRange.compare(boundary, range.getMax()) >= 0)
+                continue;
+            ranges.add(new KeyRange(min, boundary));
+            min = boundary;
+        }
+        ranges.add(new KeyRange(min, range.getMax()));
+        return ranges;
+    }
+
+// Internal methods
+
+    // Compute lo + (hi - lo) * num / denom, treating keys as big-endian fractions
+    private static byte[] interpolate(byte[] lo, byte[] hi, int num, int denom) {
+
+        // Find common prefix
+        int prefixLen = 0;
+        while (prefixLen < lo.length && prefixLen < hi.length && lo[prefixLen] == hi[prefixLen])
+            prefixLen++;
+
+        // Interpolate the bytes that follow
+        final BigInteger loValue = new BigInteger(1, KeyRangePartitioner.getDigits(lo, prefixLen));
+        final BigInteger hiValue = new BigInteger(1, KeyRangePartitioner.getDigits(hi, prefixLen));
+        final BigInteger value = hiValue.subtract(loValue)
+          .multiply(BigInteger.valueOf(num)).divide(BigInteger.valueOf(denom)).add(loValue);
+
+        // Convert back into a key
+        final byte[] digits = value.toByteArray();
+        final byte[] key = Arrays.copyOf(lo, prefixLen + INTERPOLATION_BYTES);
+        final int length = Math.min(digits.length, INTERPOLATION_BYTES);
+        System.arraycopy(digits, digits.length - length, key, key.length - length, length);
+        Arrays.fill(key, prefixLen, key.length - length, (byte)0);
+        return key;
+    }
+
+    private static byte[] getDigits(byte[] key, int offset) {
+        final byte[] digits = new byte[INTERPOLATION_BYTES];
+        System.arraycopy(key, offset, digits, 0, Math.min(key.length - offset, INTERPOLATION_BYTES));
+        return digits;
+    }
+}
+
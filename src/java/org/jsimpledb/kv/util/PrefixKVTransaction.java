@@ -8,6 +8,7 @@
 package org.jsimpledb.kv.util;
 
 import org.jsimpledb.kv.KVTransaction;
+import org.jsimpledb.kv.ReadOnlyKVTransaction;
 
 /**
  * {@link KVTransaction} view of all keys having a common {@code byte[]} prefix in a containing {@link KVTransaction}.
@@ -19,7 +20,7 @@ import org.jsimpledb.kv.KVTransaction;
  * while {@link #getKVDatabase} throws {@link UnsupportedOperationException}.
  * </p>
  */
-public class PrefixKVTransaction extends PrefixKVStore implements KVTransaction {
+public class PrefixKVTransaction extends PrefixKVStore implements ReadOnlyKVTransaction {
 
     private final KVTransaction tx;
     private final PrefixKVDatabase db;
@@ -81,6 +82,27 @@ public class PrefixKVTransaction extends PrefixKVStore implements KVTransaction
         this.delegate().setTimeout(timeout);
     }
 
+    @Override
+    public boolean isReadOnly() {
+        return this.tx instanceof ReadOnlyKVTransaction && ((ReadOnlyKVTransaction)this.tx).isReadOnly();
+    }
+
+    /**
+     * Enable or disable read-only mode.
+     *
+     * <p>
+     * The implementation in {@link PrefixKVTransaction} forwards to the containing transaction if it implements
+     * {@link ReadOnlyKVTransaction}, otherwise this method has no effect.
+     * </p>
+     *
+     * @param readOnly true to enable read-only mode, false to disable
+     */
+    @Override
+    public void setReadOnly(boolean readOnly) {
+        if (this.tx instanceof ReadOnlyKVTransaction)
+            ((ReadOnlyKVTransaction)this.tx).setReadOnly(readOnly);
+    }
+
     @Override
     public void commit() {
         this.delegate().commit();
@@ -21,19 +21,25 @@ import org.jsimpledb.core.Transaction;
 import org.jsimpledb.parse.expr.Value;
 import org.jsimpledb.parse.func.AbstractFunction;
 import org.jsimpledb.parse.func.AllFunction;
+import org.jsimpledb.parse.func.AvgFunction;
 import org.jsimpledb.parse.func.ConcatFunction;
+import org.jsimpledb.parse.func.CountDistinctFunction;
 import org.jsimpledb.parse.func.CountFunction;
 import org.jsimpledb.parse.func.CreateFunction;
 import org.jsimpledb.parse.func.FilterFunction;
 import org.jsimpledb.parse.func.ForEachFunction;
+import org.jsimpledb.parse.func.GroupByFunction;
 import org.jsimpledb.parse.func.InvertFunction;
 import org.jsimpledb.parse.func.LimitFunction;
 import org.jsimpledb.parse.func.ListFunction;
+import org.jsimpledb.parse.func.MaxFunction;
+import org.jsimpledb.parse.func.MinFunction;
 import org.jsimpledb.parse.func.QueryCompositeIndexFunction;
 import org.jsimpledb.parse.func.QueryIndexFunction;
 import org.jsimpledb.parse.func.QueryListElementIndexFunction;
 import org.jsimpledb.parse.func.QueryMapValueIndexFunction;
 import org.jsimpledb.parse.func.QueryVersionFunction;
+import org.jsimpledb.parse.func.SumFunction;
 import org.jsimpledb.parse.func.TransformFunction;
 import org.jsimpledb.parse.func.UpgradeFunction;
 import org.jsimpledb.parse.func.VersionFunction;
@@ -113,20 +119,26 @@ public class ParseSession extends Session {
 
         // We don't use AnnotatedClassScanner here to avoid having a dependency on the spring classes
         this.registerFunction(AllFunction.class);
+        this.registerFunction(AvgFunction.class);
         this.registerFunction(ConcatFunction.class);
+        this.registerFunction(CountDistinctFunction.class);
         this.registerFunction(CountFunction.class);
         this.registerFunction(CreateFunction.class);
         this.registerFunction(FilterFunction.class);
         this.registerFunction(ForEachFunction.class);
+        this.registerFunction(GroupByFunction.class);
         if (this.hasJSimpleDB())
             this.registerFunction(InvertFunction.class);
         this.registerFunction(LimitFunction.class);
         this.registerFunction(ListFunction.class);
+        this.registerFunction(MaxFunction.class);
+        this.registerFunction(MinFunction.class);
         this.registerFunction(QueryCompositeIndexFunction.class);
         this.registerFunction(QueryIndexFunction.class);
         this.registerFunction(QueryListElementIndexFunction.class);
         this.registerFunction(QueryMapValueIndexFunction.class);
         this.registerFunction(QueryVersionFunction.class);
+        this.registerFunction(SumFunction.class);
         this.registerFunction(TransformFunction.class);
         this.registerFunction(UpgradeFunction.class);
         this.registerFunction(VersionFunction.class);
@@ -0,0 +1,109 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.parse;
+
+import com.google.common.base.Converter;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Sets;
+
+import java.util.NavigableSet;
+import java.util.Set;
+
+import org.jsimpledb.JObject;
+import org.jsimpledb.JTransaction;
+import org.jsimpledb.core.ObjId;
+import org.jsimpledb.core.Transaction;
+import org.jsimpledb.util.ConvertedNavigableSet;
+
+/**
+ * An index-based strategy, chosen by the {@link QueryPlanner}, for finding the candidate objects of a {@code filter()}
+ * operation over {@code all()} objects of some type.
+ *
+ * <p>
+ * The candidates are a superset of the objects that satisfy the filter expression; the filter expression
+ * is still applied to each candidate.
+ * </p>
+ */
+public abstract class QueryPlan {
+
+    private final String description;
+    private final Set<Integer> storageIds;
+
+    /**
+     * Constructor.
+     *
+     * @param description human-readable description of this plan
+     * @param storageIds storage IDs of the object types in the scope of the original {@code all()}
+     */
+    QueryPlan(String description, Set<Integer> storageIds) {
+        this.description = description;
+        this.storageIds = storageIds;
+    }
+
+    /**
+     * Get a human-readable description of this plan.
+     *
+     * @return plan description
+     */
+    public String getDescription() {
+        return this.description;
+    }
+
+    /**
+     * Find the candidate objects. There will be a transaction open.
+     *
+     * <p>
+     * In JSimpleDB mode the returned set contains {@link JObject}s, otherwise it contains {@link ObjId}s.
+     * </p>
+     *
+     * @param session parse session
+     * @return candidate objects, sorted by object ID
+     */
+    public NavigableSet<?> getCandidates(ParseSession session) {
+
+        // Look up index entries and restrict to the object types in scope
+        final NavigableSet<ObjId> ids = Sets.filter(this.lookup(session.getTransaction()), new Predicate<ObjId>() {
+            @Override
+            public boolean apply(ObjId id) {
+                return QueryPlan.this.storageIds.contains(id.getStorageId());
+            }
+        });
+        if (!session.hasJSimpleDB())
+            return ids;
+
+        // Convert to JObjects
+        final JTransaction jtx = JTransaction.getCurrent();
+        return new ConvertedNavigableSet<JObject, ObjId>(ids, new Converter<JObject, ObjId>() {
+            @Override
+            protected ObjId doForward(JObject jobj) {
+                return jobj.getObjId();
+            }
+
+            @Override
+            protected JObject doBackward(ObjId id) {
+                return jtx.getJObject(id);
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return this.description;
+    }
+
+// Internal methods
+
+    /**
+     * Find the IDs of all objects in the index range(s) selected by this plan.
+     *
+     * @param tx transaction
+     * @return object IDs, possibly including objects of types outside of the original scope
+     */
+    abstract NavigableSet<ObjId> lookup(Transaction tx);
+}
+
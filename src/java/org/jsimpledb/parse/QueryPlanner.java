@@ -0,0 +1,615 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.parse;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Primitives;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jsimpledb.JClass;
+import org.jsimpledb.JField;
+import org.jsimpledb.JSimpleDB;
+import org.jsimpledb.JSimpleField;
+import org.jsimpledb.core.CompositeIndex;
+import org.jsimpledb.core.Field;
+import org.jsimpledb.core.ObjId;
+import org.jsimpledb.core.ObjType;
+import org.jsimpledb.core.Schema;
+import org.jsimpledb.core.SimpleField;
+import org.jsimpledb.core.Transaction;
+import org.jsimpledb.parse.expr.BaseExprParser;
+import org.jsimpledb.parse.expr.BinaryOpNode;
+import org.jsimpledb.parse.expr.FunctionCallNode;
+import org.jsimpledb.parse.expr.LiteralNode;
+import org.jsimpledb.parse.expr.Node;
+import org.jsimpledb.parse.expr.Op;
+import org.jsimpledb.parse.expr.VarNode;
+import org.jsimpledb.parse.func.AllFunction;
+import org.jsimpledb.parse.func.ApplyExprFunction;
+import org.jsimpledb.parse.func.FilterFunction;
+import org.jsimpledb.parse.func.MaxFunction;
+import org.jsimpledb.parse.func.MinFunction;
+import org.jsimpledb.tuple.Tuple2;
+import org.jsimpledb.tuple.Tuple3;
+import org.jsimpledb.tuple.Tuple4;
+import org.jsimpledb.util.NavigableSets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rewrites {@code filter()} operations over {@code all()} objects of a type into index lookups.
+ *
+ * <p>
+ * An expression like {@code filter(all(Person), $x, $x.lastName == "Smith")} would normally visit every {@code Person}.
+ * When the filter expression is a conjunction that contains comparisons between a property of the filter variable
+ * and a literal constant, and that property is an indexed simple field, the objects can instead be found via the
+ * index. The following patterns are recognized, in order of preference:
+ * <ul>
+ *  <li>Equality comparisons on all of the fields of a composite index</li>
+ *  <li>Equality comparison on an indexed simple field</li>
+ *  <li>Range comparisons ({@code <}, {@code <=}, {@code >}, {@code >=}) on an indexed simple field</li>
+ * </ul>
+ *
+ * <p>
+ * An index is only used if the field is indexed, with the same storage ID, in every recorded schema version of every
+ * object type in scope, and if the constant can be represented exactly in the field's type. Only {@code String},
+ * {@code boolean}, {@code char}, and integral fields are supported, because for these types the index ordering agrees
+ * with the comparison operators. The entire filter expression is still applied to each candidate object, so the result
+ * is the same as without the index.
+ * </p>
+ *
+ * <p>
+ * Similarly, {@code min()} and {@code max()} of an indexed field over {@code all()} objects of a type can be read from
+ * the ends of the index; see {@link #getIndexedValues getIndexedValues()}.
+ * </p>
+ */
+public final class QueryPlanner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueryPlanner.class);
+
+    private QueryPlanner() {
+    }
+
+    /**
+     * Choose an index-based plan for the {@code filter()} operation with the given parameters, if possible.
+     * There will be a transaction open.
+     *
+     * @param session parse session
+     * @param items the parsed items expression
+     * @param variable the filter variable name
+     * @param expr the parsed filter expression
+     * @return index-based plan, or null if {@code items} must be scanned
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public static QueryPlan plan(ParseSession session, Node items, String variable, Node expr) {
+
+        // Sanity check
+        if (session == null)
+            throw new IllegalArgumentException("null session");
+        if (items == null)
+            throw new IllegalArgumentException("null items");
+        if (variable == null)
+            throw new IllegalArgumentException("null variable");
+        if (expr == null)
+            throw new IllegalArgumentException("null expr");
+
+        // Gather comparisons with constants
+        final ArrayList<Comparison> comparisons = new ArrayList<>();
+        QueryPlanner.findComparisons(expr, variable, comparisons);
+        if (comparisons.isEmpty())
+            return null;
+
+        // Items must be all() objects of a named type
+        final Scope scope = QueryPlanner.getScope(session, items);
+        if (scope == null)
+            return null;
+        final ObjType objType = scope.objType;
+        final Set<Integer> storageIds = scope.storageIds;
+
+        // Try composite indexes, preferring those with more fields
+        CompositeIndex bestIndex = null;
+        Object[] bestValues = null;
+        for (CompositeIndex index : objType.getCompositeIndexes().values()) {
+            if (bestIndex != null && index.getFields().size() <= bestIndex.getFields().size())
+                continue;
+            final Object[] values = scope.getCompositeIndexValues(index, comparisons);
+            if (values != null) {
+                bestIndex = index;
+                bestValues = values;
+            }
+        }
+        if (bestIndex != null)
+            return QueryPlanner.compositeEqualityPlan(objType, bestIndex, bestValues, storageIds);
+
+        // Try simple field equality
+        for (Comparison comparison : comparisons) {
+            if (comparison.op != Op.EQUAL)
+                continue;
+            final SimpleField<?> field = scope.getField(comparison.name, true);
+            if (field == null)
+                continue;
+            final Object value = QueryPlanner.convert(comparison.value, field);
+            if (value != null)
+                return QueryPlanner.equalityPlan(objType, field, value, storageIds);
+        }
+
+        // Try simple field range
+        for (Comparison comparison : comparisons) {
+            if (comparison.op == Op.EQUAL)
+                continue;
+            final SimpleField<?> field = scope.getField(comparison.name, true);
+            if (field == null)
+                continue;
+            final Range range = new Range();
+            for (Comparison comparison2 : comparisons) {
+                if (comparison2.op == Op.EQUAL || !comparison2.name.equals(comparison.name))
+                    continue;
+                final Object value = QueryPlanner.convert(comparison2.value, field);
+                if (value != null)
+                    range.add(comparison2.op, value);
+            }
+            if (!range.isUnbounded())
+                return QueryPlanner.rangePlan(objType, field, range, storageIds);
+        }
+
+        // No usable index
+        return null;
+    }
+
+    /**
+     * Get the distinct values of an indexed field, in index order, for a {@code min()} or {@code max()} operation
+     * over {@code all()} objects of some type. There will be a transaction open.
+     *
+     * <p>
+     * This applies when {@code items} is {@code all()} objects of some type and {@code expr} accesses an indexed simple field
+     * of the variable, subject to the same restrictions on field type and schema consistency as {@link #plan plan()}.
+     * The first and last elements of the returned set are then the minimum and maximum values, which can be found
+     * without visiting every object.
+     * </p>
+     *
+     * @param session parse session
+     * @param items the parsed items expression
+     * @param variable the variable name
+     * @param expr the parsed expression applied to each item
+     * @return view of the distinct non-null field values of objects in scope, or null if no index applies
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public static NavigableSet<?> getIndexedValues(ParseSession session, Node items, String variable, Node expr) {
+
+        // Sanity check
+        if (session == null)
+            throw new IllegalArgumentException("null session");
+        if (items == null)
+            throw new IllegalArgumentException("null items");
+        if (variable == null)
+            throw new IllegalArgumentException("null variable");
+        if (expr == null)
+            throw new IllegalArgumentException("null expr");
+
+        // Find field
+        final String name = QueryPlanner.getPropertyName(expr, variable);
+        if (name == null)
+            return null;
+        final Scope scope = QueryPlanner.getScope(session, items);
+        if (scope == null)
+            return null;
+        final SimpleField<?> field = scope.getField(name, true);
+        if (field == null || !QueryPlanner.isSupported(field))
+            return null;
+
+        // Return view of the index keys having at least one object in scope
+        final Set<Integer> storageIds = scope.storageIds;
+        final NavigableMap<?, NavigableSet<ObjId>> map = session.getTransaction().queryIndex(field.getStorageId()).asMap();
+        return Maps.filterEntries(map, new Predicate<Map.Entry<?, NavigableSet<ObjId>>>() {
+            @Override
+            public boolean apply(Map.Entry<?, NavigableSet<ObjId>> entry) {
+                if (entry.getKey() == null)
+                    return false;
+                for (ObjId id : entry.getValue()) {
+                    if (storageIds.contains(id.getStorageId()))
+                        return true;
+                }
+                return false;
+            }
+        }).navigableKeySet();
+    }
+
+    /**
+     * Describe how each {@code filter()}, {@code min()}, and {@code max()} operation in the given parsed expression
+     * would be evaluated.
+     * There will be a transaction open.
+     *
+     * @param session parse session
+     * @param node parsed expression
+     * @return one description for each such operation found, in the order they are found
+     * @throws IllegalArgumentException if either parameter is null
+     */
+    public static List<String> explain(ParseSession session, Node node) {
+        if (session == null)
+            throw new IllegalArgumentException("null session");
+        if (node == null)
+            throw new IllegalArgumentException("null node");
+        final ArrayList<String> list = new ArrayList<>();
+        QueryPlanner.explain(session, node, list);
+        return list;
+    }
+
+// Internal methods
+
+    private static void explain(ParseSession session, Node node, List<String> list) {
+        if (node instanceof BinaryOpNode) {
+            QueryPlanner.explain(session, ((BinaryOpNode)node).getLhs(), list);
+            QueryPlanner.explain(session, ((BinaryOpNode)node).getRhs(), list);
+        } else if (node instanceof BaseExprParser.PropertyNode)
+            QueryPlanner.explain(session, ((BaseExprParser.PropertyNode)node).getTarget(), list);
+        else if (node instanceof FunctionCallNode) {
+            final FunctionCallNode call = (FunctionCallNode)node;
+            final Object params = call.getParams();
+            if (params instanceof ApplyExprFunction.ParamInfo) {
+                final ApplyExprFunction.ParamInfo info = (ApplyExprFunction.ParamInfo)params;
+                if (call.getFunction() instanceof FilterFunction) {
+                    final QueryPlan plan = QueryPlanner.plan(session, info.getItems(), info.getVariable(), info.getExpr());
+                    list.add("filter($" + info.getVariable() + "): "
+                      + (plan != null ? plan.getDescription() : "scan all items (no usable index)"));
+                } else if ((call.getFunction() instanceof MinFunction || call.getFunction() instanceof MaxFunction)
+                  && info.getExpr() != null) {
+                    final String function = call.getFunction().getName();
+                    final String description;
+                    if (QueryPlanner.getIndexedValues(session, info.getItems(), info.getVariable(), info.getExpr()) != null) {
+                        description = (function.equals("min") ? "first" : "last") + " value in index "
+                          + QueryPlanner.getScope(session, info.getItems()).objType.getName() + "."
+                          + QueryPlanner.getPropertyName(info.getExpr(), info.getVariable());
+                    } else
+                        description = "scan all items (no usable index)";
+                    list.add(function + "($" + info.getVariable() + "): " + description);
+                }
+                QueryPlanner.explain(session, info.getItems(), list);
+                QueryPlanner.explain(session, info.getExpr(), list);
+            } else if (params instanceof Node)
+                QueryPlanner.explain(session, (Node)params, list);
+            else if (params instanceof Node[]) {
+                for (Node param : (Node[])params)
+                    QueryPlanner.explain(session, param, list);
+            }
+        }
+    }
+
+    // Find comparisons between a property of the variable and a constant within a conjunction
+    private static void findComparisons(Node node, String variable, List<Comparison> list) {
+        if (!(node instanceof BinaryOpNode))
+            return;
+        final BinaryOpNode binaryNode = (BinaryOpNode)node;
+        Op op = binaryNode.getOp();
+        if (op == Op.LOGICAL_AND) {
+            QueryPlanner.findComparisons(binaryNode.getLhs(), variable, list);
+            QueryPlanner.findComparisons(binaryNode.getRhs(), variable, list);
+            return;
+        }
+        if (op != Op.EQUAL && op != Op.LT && op != Op.LTEQ && op != Op.GT && op != Op.GTEQ)
+            return;
+        Node lhs = binaryNode.getLhs();
+        Node rhs = binaryNode.getRhs();
+        if (lhs instanceof LiteralNode) {
+            final Node temp = lhs;
+            lhs = rhs;
+            rhs = temp;
+            op = op == Op.LT ? Op.GT : op == Op.LTEQ ? Op.GTEQ : op == Op.GT ? Op.LT : op == Op.GTEQ ? Op.LTEQ : op;
+        }
+        final String name = QueryPlanner.getPropertyName(lhs, variable);
+        if (name == null || !(rhs instanceof LiteralNode))
+            return;
+        final Object value = ((LiteralNode)rhs).getLiteralValue();
+        if (value == null)
+            return;
+        list.add(new Comparison(name, op, value));
+    }
+
+    // Get the property name if node is "$variable.name", otherwise null
+    private static String getPropertyName(Node node, String variable) {
+        if (!(node instanceof BaseExprParser.PropertyNode))
+            return null;
+        final BaseExprParser.PropertyNode propertyNode = (BaseExprParser.PropertyNode)node;
+        if (!(propertyNode.getTarget() instanceof VarNode) || !((VarNode)propertyNode.getTarget()).getName().equals(variable))
+            return null;
+        return propertyNode.getName();
+    }
+
+    // Get the object types in scope if items is all() objects of a named type, otherwise null
+    private static Scope getScope(ParseSession session, Node items) {
+        if (!(items instanceof FunctionCallNode))
+            return null;
+        final FunctionCallNode call = (FunctionCallNode)items;
+        if (!(call.getFunction() instanceof AllFunction) || !(call.getParams() instanceof Integer))
+            return null;
+        final int typeStorageId = (Integer)call.getParams();
+        final Transaction tx = session.getTransaction();
+        final ObjType objType = tx.getSchema().getObjTypes().get(typeStorageId);
+        if (objType == null)
+            return null;
+        final TreeSet<Integer> storageIds = new TreeSet<>();
+        final ArrayList<JClass<?>> jclasses = new ArrayList<>();
+        if (session.hasJSimpleDB()) {
+            final JSimpleDB jdb = session.getJSimpleDB();
+            final JClass<?> jclass = jdb.getJClasses().get(typeStorageId);
+            if (jclass == null)
+                return null;
+            for (JClass<?> subclass : jdb.getJClasses(jclass.getType())) {
+                storageIds.add(subclass.getStorageId());
+                jclasses.add(subclass);
+            }
+        } else
+            storageIds.add(typeStorageId);
+        return new Scope(objType, tx.getSchemas().getVersions().values(), storageIds, jclasses);
+    }
+
+    // Determine whether the field's index ordering agrees with the comparison operators
+    private static boolean isSupported(SimpleField<?> field) {
+        final Class<?> type = Primitives.wrap(field.getFieldType().getTypeToken().getRawType());
+        return type == String.class || type == Boolean.class || type == Character.class
+          || type == Byte.class || type == Short.class || type == Integer.class || type == Long.class;
+    }
+
+    // Convert constant to the field's type, if it can be represented exactly and compares the same way
+    private static Object convert(Object value, SimpleField<?> field) {
+        final Class<?> type = Primitives.wrap(field.getFieldType().getTypeToken().getRawType());
+        if (type == String.class || type == Boolean.class || type == Character.class)
+            return type.isInstance(value) ? value : null;
+        if (!(value instanceof Byte || value instanceof Short || value instanceof Integer || value instanceof Long))
+            return null;
+        final long lval = ((Number)value).longValue();
+        if (type == Long.class)
+            return lval;
+        if (type == Integer.class)
+            return lval == (int)lval ? (Object)(int)lval : null;
+        if (type == Short.class)
+            return lval == (short)lval ? (Object)(short)lval : null;
+        if (type == Byte.class)
+            return lval == (byte)lval ? (Object)(byte)lval : null;
+        return null;
+    }
+
+    private static List<Integer> getFieldStorageIds(CompositeIndex index) {
+        final ArrayList<Integer> list = new ArrayList<>(index.getFields().size());
+        for (SimpleField<?> field : index.getFields())
+            list.add(field.getStorageId());
+        return list;
+    }
+
+    private static String format(Object value) {
+        if (value instanceof String)
+            return "\"" + value + "\"";
+        if (value instanceof Character)
+            return "'" + value + "'";
+        return String.valueOf(value);
+    }
+
+    private static QueryPlan equalityPlan(ObjType objType, final SimpleField<?> field, final Object value, Set<Integer> storageIds) {
+        final String description = "index lookup " + objType.getName() + "." + field.getName() + " == " + QueryPlanner.format(value);
+        if (LOG.isDebugEnabled())
+            LOG.debug("query plan: " + description);
+        return new QueryPlan(description, storageIds) {
+            @Override
+            NavigableSet<ObjId> lookup(Transaction tx) {
+                final NavigableSet<ObjId> ids = tx.queryIndex(field.getStorageId()).asMap().get(value);
+                return ids != null ? ids : NavigableSets.<ObjId>empty();
+            }
+        };
+    }
+
+    private static QueryPlan compositeEqualityPlan(ObjType objType,
+      final CompositeIndex index, final Object[] values, Set<Integer> storageIds) {
+        final StringBuilder names = new StringBuilder();
+        final StringBuilder consts = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            names.append(i > 0 ? ", " : "").append(index.getFields().get(i).getName());
+            consts.append(i > 0 ? ", " : "").append(QueryPlanner.format(values[i]));
+        }
+        final String description = "composite index lookup " + objType.getName() + "." + index.getName()
+          + " (" + names + ") == (" + consts + ")";
+        if (LOG.isDebugEnabled())
+            LOG.debug("query plan: " + description);
+        return new QueryPlan(description, storageIds) {
+            @Override
+            NavigableSet<ObjId> lookup(Transaction tx) {
+                final int storageId = index.getStorageId();
+                final NavigableSet<ObjId> ids;
+                switch (values.length) {
+                case 2:
+                    ids = tx.queryCompositeIndex2(storageId).asMap().get(new Tuple2<Object, Object>(values[0], values[1]));
+                    break;
+                case 3:
+                    ids = tx.queryCompositeIndex3(storageId).asMap().get(
+                      new Tuple3<Object, Object, Object>(values[0], values[1], values[2]));
+                    break;
+                case 4:
+                    ids = tx.queryCompositeIndex4(storageId).asMap().get(
+                      new Tuple4<Object, Object, Object, Object>(values[0], values[1], values[2], values[3]));
+                    break;
+                default:
+                    throw new RuntimeException("internal error");
+                }
+                return ids != null ? ids : NavigableSets.<ObjId>empty();
+            }
+        };
+    }
+
+    private static QueryPlan rangePlan(ObjType objType, final SimpleField<?> field, final Range range, Set<Integer> storageIds) {
+        final String description = "index range scan " + objType.getName() + "." + field.getName() + " in "
+          + (range.lower != null ? (range.lowerInclusive ? "[" : "(") + QueryPlanner.format(range.lower) : "(-inf")
+          + ", " + (range.upper != null ? QueryPlanner.format(range.upper) + (range.upperInclusive ? "]" : ")") : "+inf)");
+        if (LOG.isDebugEnabled())
+            LOG.debug("query plan: " + description);
+        return new QueryPlan(description, storageIds) {
+            @Override
+            @SuppressWarnings("unchecked")
+            NavigableSet<ObjId> lookup(Transaction tx) {
+                if (range.isEmpty())
+                    return NavigableSets.<ObjId>empty();
+                NavigableMap<Object, NavigableSet<ObjId>> map
+                  = (NavigableMap<Object, NavigableSet<ObjId>>)tx.queryIndex(field.getStorageId()).asMap();
+                if (range.lower != null)
+                    map = map.tailMap(range.lower, range.lowerInclusive);
+                if (range.upper != null)
+                    map = map.headMap(range.upper, range.upperInclusive);
+                final TreeSet<ObjId> ids = new TreeSet<>();
+                for (NavigableSet<ObjId> set : map.values())
+                    ids.addAll(set);
+                return ids;
+            }
+        };
+    }
+
+// Comparison
+
+    // A comparison "$var.name OP value"
+    private static class Comparison {
+
+        final String name;
+        final Op op;
+        final Object value;
+
+        Comparison(String name, Op op, Object value) {
+            this.name = name;
+            this.op = op;
+            this.value = value;
+        }
+    }
+
+// Range
+
+    // Intersection of range comparisons on one field
+    private static class Range {
+
+        Comparable<Object> lower;
+        boolean lowerInclusive;
+        Comparable<Object> upper;
+        boolean upperInclusive;
+
+        @SuppressWarnings("unchecked")
+        void add(Op op, Object value0) {
+            final Comparable<Object> value = (Comparable<Object>)value0;
+            if (op == Op.GT || op == Op.GTEQ) {
+                final boolean inclusive = op == Op.GTEQ;
+                final int diff = this.lower != null ? value.compareTo(this.lower) : 1;
+                if (diff > 0 || (diff == 0 && !inclusive)) {
+                    this.lower = value;
+                    this.lowerInclusive = inclusive;
+                }
+            } else {
+                final boolean inclusive = op == Op.LTEQ;
+                final int diff = this.upper != null ? value.compareTo(this.upper) : -1;
+                if (diff < 0 || (diff == 0 && !inclusive)) {
+                    this.upper = value;
+                    this.upperInclusive = inclusive;
+                }
+            }
+        }
+
+        boolean isUnbounded() {
+            return this.lower == null && this.upper == null;
+        }
+
+        boolean isEmpty() {
+            if (this.lower == null || this.upper == null)
+                return false;
+            final int diff = this.lower.compareTo(this.upper);
+            return diff > 0 || (diff == 0 && !(this.lowerInclusive && this.upperInclusive));
+        }
+    }
+
+// Scope
+
+    // The object types in scope, across all recorded schema versions
+    private static class Scope {
+
+        final ObjType objType;
+        final Collection<Schema> schemas;
+        final Set<Integer> storageIds;
+        final List<JClass<?>> jclasses;
+
+        Scope(ObjType objType, Collection<Schema> schemas, Set<Integer> storageIds, List<JClass<?>> jclasses) {
+            this.objType = objType;
+            this.schemas = schemas;
+            this.storageIds = storageIds;
+            this.jclasses = jclasses;
+        }
+
+        // Find the named field, which must be the same (optionally indexed) simple field everywhere
+        SimpleField<?> getField(String name, boolean indexed) {
+            SimpleField<?> result = null;
+            for (Schema schema : this.schemas) {
+                for (int storageId : this.storageIds) {
+                    final ObjType objType = schema.getObjTypes().get(storageId);
+                    if (objType == null)
+                        continue;
+                    final Field<?> field = objType.getFieldsByName().get(name);
+                    if (!(field instanceof SimpleField) || (indexed && !((SimpleField<?>)field).isIndexed()))
+                        return null;
+                    if (result != null && field.getStorageId() != result.getStorageId())
+                        return null;
+                    result = (SimpleField<?>)field;
+                }
+            }
+            if (result == null)
+                return null;
+
+            // In JSimpleDB mode, the property must also resolve to the same database field
+            for (JClass<?> jclass : this.jclasses) {
+                final JField jfield = jclass.getJFieldsByName().get(name);
+                if (!(jfield instanceof JSimpleField) || jfield.getStorageId() != result.getStorageId())
+                    return null;
+            }
+            return result;
+        }
+
+        // Get constants for each field in the composite index, which must be the same index everywhere
+        Object[] getCompositeIndexValues(CompositeIndex index, List<Comparison> comparisons) {
+
+            // Verify index is the same everywhere
+            final List<Integer> fieldStorageIds = QueryPlanner.getFieldStorageIds(index);
+            for (Schema schema : this.schemas) {
+                for (int storageId : this.storageIds) {
+                    final ObjType objType = schema.getObjTypes().get(storageId);
+                    if (objType == null)
+                        continue;
+                    final CompositeIndex other = objType.getCompositeIndexes().get(index.getStorageId());
+                    if (other == null || !QueryPlanner.getFieldStorageIds(other).equals(fieldStorageIds))
+                        return null;
+                }
+            }
+
+            // Find an equality constant for each field
+            final Object[] values = new Object[fieldStorageIds.size()];
+        fieldLoop:
+            for (int i = 0; i < values.length; i++) {
+                final SimpleField<?> field = index.getFields().get(i);
+                for (Comparison comparison : comparisons) {
+                    if (comparison.op != Op.EQUAL || !comparison.name.equals(field.getName()))
+                        continue;
+                    final SimpleField<?> field2 = this.getField(comparison.name, false);
+                    if (field2 == null || field2.getStorageId() != field.getStorageId())
+                        return null;
+                    if ((values[i] = QueryPlanner.convert(comparison.value, field)) != null)
+                        continue fieldLoop;
+                }
+                return null;
+            }
+            return values;
+        }
+    }
+}
+
@@ -22,9 +22,11 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 
 import org.dellroad.stuff.java.Primitive;
@@ -236,12 +238,7 @@ public class BaseExprParser implements Parser<Node> {
                 final Object params = function.parseParams(session, ctx, complete);
 
                 // Return node that applies the function to the parameters
-                node = new Node() {
-                    @Override
-                    public Value evaluate(ParseSession session) {
-                        return function.apply(session, params);
-                    }
-                };
+                node = new FunctionCallNode(function, params);
                 break;
             }
             case ".":
@@ -316,12 +313,7 @@ public class BaseExprParser implements Parser<Node> {
                     }
 
                     // Must be object property access
-                    node = new Node() {
-                        @Override
-                        public Value evaluate(ParseSession session) {
-                            return BaseExprParser.this.evaluateProperty(session, target.evaluate(session), propertyName);
-                        }
-                    };
+                    node = new PropertyNode(target, propertyName);
                     break;
                 }
 
@@ -419,7 +411,7 @@ public class BaseExprParser implements Parser<Node> {
         return params;
     }
 
-    private Value evaluateProperty(ParseSession session, Value value, final String name) {
+    private Value evaluateProperty(ParseSession session, Value value, final String name, PropertyNode node) {
 
         // Evaluate target
         final Object target = value.checkNotNull(session, "property `" + name + "' access");
@@ -465,6 +457,17 @@ public class BaseExprParser implements Parser<Node> {
                 return new FieldValue(id, field);
         }
 
+        // Try bean property, instance field, or array length, reusing any previous lookup for the same class
+        PropertyLookup lookup = node.lookups.get(cl);
+        if (lookup == null) {
+            lookup = this.lookupProperty(cl, name);
+            node.lookups.put(cl, lookup);
+        }
+        return lookup.getValue(target);
+    }
+
+    private PropertyLookup lookupProperty(Class<?> cl, String name) {
+
         // Try bean property accessed via bean methods
         final BeanInfo beanInfo;
         try {
@@ -479,10 +482,8 @@ public class BaseExprParser implements Parser<Node> {
                 continue;
             final Method getter = this.makeAccessible(propertyDescriptor.getReadMethod());
             final Method setter = this.makeAccessible(propertyDescriptor.getWriteMethod());
-            if (getter != null && setter != null)
-                return new MutableBeanPropertyValue(target, propertyDescriptor.getName(), getter, setter);
-            else if (getter != null)
-                return new BeanPropertyValue(target, propertyDescriptor.getName(), getter);
+            if (getter != null)
+                return new PropertyLookup(cl, name, getter, setter, null);
         }
 
         // Try instance field
@@ -492,15 +493,7 @@ public class BaseExprParser implements Parser<Node> {
         } catch (NoSuchFieldException e) {
             javaField = null;
         }
-        if (javaField != null)
-            return new ObjectFieldValue(target, javaField);
-
-        // Try array.length
-        if (target.getClass().isArray() && name.equals("length"))
-            return new ConstValue(Array.getLength(target));
-
-        // Not found
-        throw new EvalException("property `" + name + "' not found in " + cl);
+        return new PropertyLookup(cl, name, null, null, javaField);
     }
 
     // Workaround the problem where non-public class C implements public method M of interface I.
@@ -531,5 +524,131 @@ public class BaseExprParser implements Parser<Node> {
             }
         };
     }
+
+// PropertyNode
+
+    /**
+     * {@link Node} that accesses a property of the object to which its target node evaluates.
+     */
+    public class PropertyNode implements Node {
+
+        private final Node target;
+        private final String name;
+
+        // Property lookups for previously accessed classes
+        final ConcurrentHashMap<Class<?>, PropertyLookup> lookups = new ConcurrentHashMap<>();
+
+        PropertyNode(Node target, String name) {
+            this.target = target;
+            this.name = name;
+        }
+
+        /**
+         * Get the node whose value is the object being accessed.
+         *
+         * @return target node
+         */
+        public Node getTarget() {
+            return this.target;
+        }
+
+        /**
+         * Get the name of the accessed property.
+         *
+         * @return property name
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        @Override
+        public Value evaluate(ParseSession session) {
+            return BaseExprParser.this.evaluateProperty(session, this.target.evaluate(session), this.name, this);
+        }
+    }
+
+// PropertyLookup
+
+    // How a non-database property is accessed in some class
+    private static final class PropertyLookup {
+
+        final Class<?> cl;
+        final String name;
+        final Method getter;
+        final Method setter;
+        final Field field;
+
+        // Compiled getter invocation or field read, once this lookup has been used often enough
+        volatile ExprCompiler.Invoker reader;
+        int lookups;                                    // not synchronized; only used to decide when to compile
+
+        PropertyLookup(Class<?> cl, String name, Method getter, Method setter, Field field) {
+            this.cl = cl;
+            this.name = name;
+            this.getter = getter;
+            this.setter = setter;
+            this.field = field;
+        }
+
+        Value getValue(final Object target) {
+            final ExprCompiler.Invoker reader = this.getReader();
+            if (this.getter != null && this.setter != null) {
+                if (reader != null) {
+                    return new MutableBeanPropertyValue(target, this.name, this.getter, this.setter) {
+                        @Override
+                        public Object get(ParseSession session) {
+                            return PropertyLookup.this.read(reader, target);
+                        }
+                    };
+                }
+                return new MutableBeanPropertyValue(target, this.name, this.getter, this.setter);
+            }
+            if (this.getter != null) {
+                if (reader != null) {
+                    return new BeanPropertyValue(target, this.name, this.getter) {
+                        @Override
+                        public Object get(ParseSession session) {
+                            return PropertyLookup.this.read(reader, target);
+                        }
+                    };
+                }
+                return new BeanPropertyValue(target, this.name, this.getter);
+            }
+            if (this.field != null) {
+                if (reader != null) {
+                    return new ObjectFieldValue(target, this.field) {
+                        @Override
+                        public Object get(ParseSession session) {
+                            return PropertyLookup.this.read(reader, target);
+                        }
+                    };
+                }
+                return new ObjectFieldValue(target, this.field);
+            }
+            if (this.cl.isArray() && this.name.equals("length"))
+                return new ConstValue(Array.getLength(target));
+            throw new EvalException("property `" + this.name + "' not found in " + this.cl);
+        }
+
+        private ExprCompiler.Invoker getReader() {
+            final ExprCompiler.Invoker invoker = this.reader;
+            if (invoker != null || ++this.lookups != ExprCompiler.COMPILE_THRESHOLD || !ExprCompiler.isEnabled())
+                return invoker;
+            if (this.getter != null)
+                this.reader = ExprCompiler.compileMethod(this.getter, this.cl, Collections.<Class<?>>emptyList());
+            else if (this.field != null)
+                this.reader = ExprCompiler.compileFieldRead(this.field, this.cl);
+            return this.reader;
+        }
+
+        private Object read(ExprCompiler.Invoker reader, Object target) {
+            try {
+                return reader.invoke(target, null);
+            } catch (Throwable t) {
+                throw new EvalException("error reading property `" + this.name + "' from object of type "
+                  + target.getClass().getName() + ": " + t, t);
+            }
+        }
+    }
 }
 
@@ -109,13 +109,8 @@ public abstract class BinaryExprParser implements Parser<Node> {
         return node;
     }
 
-    protected Node createNode(final Op op, final Node lhs, final Node rhs) {
-        return new Node() {
-            @Override
-            public Value evaluate(ParseSession session) {
-                return op.apply(session, lhs.evaluate(session), rhs.evaluate(session));
-            }
-        };
+    protected Node createNode(Op op, Node lhs, Node rhs) {
+        return new BinaryOpNode(op, lhs, rhs);
     }
 }
 
@@ -0,0 +1,78 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.parse.expr;
+
+import org.jsimpledb.parse.ParseSession;
+
+/**
+ * {@link Node} that applies a binary {@link Op} to two sub-nodes.
+ *
+ * <p>
+ * The operator and operands are exposed so that expressions can be analyzed after parsing,
+ * e.g., by the {@link org.jsimpledb.parse.QueryPlanner}.
+ * </p>
+ */
+public class BinaryOpNode implements Node {
+
+    private final Op op;
+    private final Node lhs;
+    private final Node rhs;
+
+    /**
+     * Constructor.
+     *
+     * @param op binary operation
+     * @param lhs left-hand operand
+     * @param rhs right-hand operand
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public BinaryOpNode(Op op, Node lhs, Node rhs) {
+        if (op == null)
+            throw new IllegalArgumentException("null op");
+        if (lhs == null)
+            throw new IllegalArgumentException("null lhs");
+        if (rhs == null)
+            throw new IllegalArgumentException("null rhs");
+        this.op = op;
+        this.lhs = lhs;
+        this.rhs = rhs;
+    }
+
+    /**
+     * Get the operation.
+     *
+     * @return binary operation
+     */
+    public Op getOp() {
+        return this.op;
+    }
+
+    /**
+     * Get the left-hand operand.
+     *
+     * @return left-hand node
+     */
+    public Node getLhs() {
+        return this.lhs;
+    }
+
+    /**
+     * Get the right-hand operand.
+     *
+     * @return right-hand node
+     */
+    public Node getRhs() {
+        return this.rhs;
+    }
+
+    @Override
+    public Value evaluate(ParseSession session) {
+        return this.op.apply(session, this.lhs.evaluate(session), this.rhs.evaluate(session));
+    }
+}
+
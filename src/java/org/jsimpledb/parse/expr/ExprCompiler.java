@@ -0,0 +1,360 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.parse.expr;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dellroad.stuff.java.Primitive;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Compiles the Java method invocations and field reads in expressions into generated classes, so that frequently
+ * evaluated expressions avoid the overhead of reflection.
+ *
+ * <p>
+ * Expressions are dynamically typed, so a method or field can only be bound once the runtime types seen at an evaluation
+ * site are known. Therefore {@link MethodInvokeNode} and {@link BaseExprParser.PropertyNode} start out interpreting
+ * each site using reflection, remembering which member each combination of runtime types resolved to. Once the same
+ * combination has been seen {@link #COMPILE_THRESHOLD} times, they ask this class for an {@link Invoker} that performs
+ * the access with a statically resolved {@code invokevirtual}, {@code invokeinterface}, {@code invokestatic} or
+ * {@code getfield} instruction. Sites that can't be compiled exactly, e.g., because they require varargs packaging,
+ * primitive widening, or access through a non-public class, continue to be interpreted.
+ * </p>
+ *
+ * <p>
+ * Compilation is enabled by default; it may be disabled by setting the system property {@value #DISABLE_PROPERTY}
+ * to {@code true}, or at runtime via {@link #setEnabled setEnabled()}.
+ * </p>
+ */
+public final class ExprCompiler {
+
+    /**
+     * The name of a system property that disables compilation when set to {@code true}.
+     */
+    public static final String DISABLE_PROPERTY = ExprCompiler.class.getName() + ".disable";
+
+    /**
+     * The number of times an evaluation site must be interpreted with the same runtime types before it is compiled.
+     */
+    public static final int COMPILE_THRESHOLD = 16;
+
+    private static final String INVOKER_METHOD_DESCRIPTOR
+      = Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(Object.class), Type.getType(Object[].class));
+
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+
+    private static volatile boolean enabled = !Boolean.getBoolean(DISABLE_PROPERTY);
+
+    private ExprCompiler() {
+    }
+
+    /**
+     * Determine whether compilation is enabled.
+     *
+     * @return true if compilation is enabled
+     */
+    public static boolean isEnabled() {
+        return ExprCompiler.enabled;
+    }
+
+    /**
+     * Enable or disable compilation. Sites already compiled are not affected.
+     *
+     * @param enabled true to enable compilation, false to interpret all sites
+     */
+    public static void setEnabled(boolean enabled) {
+        ExprCompiler.enabled = enabled;
+    }
+
+    /**
+     * Compile an invocation of the given method.
+     *
+     * <p>
+     * The returned {@link Invoker} may only be used with targets whose class is exactly {@code targetClass} (or any
+     * target if {@code method} is static) and parameters whose classes are exactly {@code paramClasses}, where a null
+     * class means a null parameter value.
+     * </p>
+     *
+     * @param method method to invoke
+     * @param targetClass runtime class of the target object, or the class named in the expression for static methods
+     * @param paramClasses runtime classes of the parameters
+     * @return compiled invoker, or null if the invocation can't be compiled
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public static Invoker compileMethod(Method method, Class<?> targetClass, List<Class<?>> paramClasses) {
+        if (method == null)
+            throw new IllegalArgumentException("null method");
+        if (targetClass == null)
+            throw new IllegalArgumentException("null targetClass");
+        if (paramClasses == null)
+            throw new IllegalArgumentException("null paramClasses");
+
+        // Check parameters; we only handle exact matches, leaving varargs packaging and widening to reflection
+        final Class<?>[] ptypes = method.getParameterTypes();
+        if (method.isVarArgs() || paramClasses.size() != ptypes.length)
+            return null;
+        for (int i = 0; i < ptypes.length; i++) {
+            final Class<?> ptype = ptypes[i];
+            final Class<?> paramClass = paramClasses.get(i);
+            if (ptype.isPrimitive()) {
+                if (paramClass != Primitive.get(ptype).getWrapperType())
+                    return null;
+            } else if (!ExprCompiler.isAccessible(ptype) || (paramClass != null && !ptype.isAssignableFrom(paramClass)))
+                return null;
+        }
+
+        // Find a public class or interface through which the method can be invoked
+        final Class<?> owner = ExprCompiler.findOwner(method, targetClass);
+        if (owner == null)
+            return null;
+        final boolean isStatic = (method.getModifiers() & Modifier.STATIC) != 0;
+
+        // Generate invoke() method
+        final Generator generator = new Generator();
+        final MethodVisitor mv = generator.startInvokeMethod();
+        generator.resolve(owner);
+        if (!isStatic) {
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            generator.emitCast(mv, owner);
+        }
+        for (int i = 0; i < ptypes.length; i++) {
+            mv.visitVarInsn(Opcodes.ALOAD, 2);
+            generator.emitPushInt(mv, i);
+            mv.visitInsn(Opcodes.AALOAD);
+            if (ptypes[i].isPrimitive())
+                generator.emitUnwrap(mv, Primitive.get(ptypes[i]));
+            else
+                generator.emitCast(mv, ptypes[i]);
+        }
+        final boolean isInterface = owner.isInterface();
+        mv.visitMethodInsn(isStatic ? Opcodes.INVOKESTATIC : isInterface ? Opcodes.INVOKEINTERFACE : Opcodes.INVOKEVIRTUAL,
+          Type.getInternalName(owner), method.getName(), Type.getMethodDescriptor(method), isInterface);
+        generator.resolve(method.getReturnType());
+        if (method.getReturnType() == void.class)
+            mv.visitInsn(Opcodes.ACONST_NULL);
+        else if (method.getReturnType().isPrimitive())
+            generator.emitWrap(mv, Primitive.get(method.getReturnType()));
+        return generator.finish(mv);
+    }
+
+    /**
+     * Compile a read of the given instance field.
+     *
+     * <p>
+     * The returned {@link Invoker} may only be used with targets whose class is exactly {@code targetClass};
+     * its parameter array is ignored.
+     * </p>
+     *
+     * @param field field to read
+     * @param targetClass runtime class of the target object
+     * @return compiled invoker, or null if the read can't be compiled
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public static Invoker compileFieldRead(Field field, Class<?> targetClass) {
+        if (field == null)
+            throw new IllegalArgumentException("null field");
+        if (targetClass == null)
+            throw new IllegalArgumentException("null targetClass");
+        if ((field.getModifiers() & (Modifier.PUBLIC | Modifier.STATIC)) != Modifier.PUBLIC)
+            return null;
+
+        // Find a public class through which the field can be read
+        final Class<?> owner = ExprCompiler.isAccessible(targetClass) ? targetClass :
+          ExprCompiler.isAccessible(field.getDeclaringClass()) ? field.getDeclaringClass() : null;
+        if (owner == null)
+            return null;
+
+        // Generate invoke() method
+        final Generator generator = new Generator();
+        final MethodVisitor mv = generator.startInvokeMethod();
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        generator.emitCast(mv, owner);
+        mv.visitFieldInsn(Opcodes.GETFIELD, Type.getInternalName(owner), field.getName(), Type.getDescriptor(field.getType()));
+        generator.resolve(field.getType());
+        if (field.getType().isPrimitive())
+            generator.emitWrap(mv, Primitive.get(field.getType()));
+        return generator.finish(mv);
+    }
+
+// Internal methods
+
+    // Find a public class or interface that is, or is a supertype of, the target class and has the method
+    private static Class<?> findOwner(Method method, Class<?> targetClass) {
+        for (Class<?> cl = targetClass; cl != null; cl = cl.getSuperclass()) {
+            if (ExprCompiler.isAccessible(cl) && ExprCompiler.hasMethod(cl, method))
+                return cl;
+        }
+        if ((method.getModifiers() & Modifier.STATIC) != 0)
+            return null;
+        for (Class<?> iface : ExprCompiler.addInterfaces(targetClass, new LinkedHashSet<Class<?>>())) {
+            if (ExprCompiler.isAccessible(iface) && ExprCompiler.hasMethod(iface, method))
+                return iface;
+        }
+        return null;
+    }
+
+    private static boolean hasMethod(Class<?> cl, Method method) {
+        for (Method other : cl.getMethods()) {
+            if (other.getName().equals(method.getName())
+              && other.getReturnType() == method.getReturnType()
+              && (other.getModifiers() & Modifier.STATIC) == (method.getModifiers() & Modifier.STATIC)
+              && Arrays.equals(other.getParameterTypes(), method.getParameterTypes()))
+                return true;
+        }
+        return false;
+    }
+
+    private static Set<Class<?>> addInterfaces(Class<?> cl, Set<Class<?>> interfaces) {
+        for (Class<?> iface : cl.getInterfaces()) {
+            interfaces.add(iface);
+            ExprCompiler.addInterfaces(iface, interfaces);
+        }
+        if (cl.getSuperclass() != null)
+            ExprCompiler.addInterfaces(cl.getSuperclass(), interfaces);
+        return interfaces;
+    }
+
+    // Determine whether generated code can name the given type
+    private static boolean isAccessible(Class<?> type) {
+        while (type.isArray())
+            type = type.getComponentType();
+        return type.isPrimitive() || (type.getModifiers() & Modifier.PUBLIC) != 0;
+    }
+
+// Generator
+
+    // Generates one Invoker class and collects the classes it refers to, so they resolve to the same Class objects
+    private static final class Generator {
+
+        private final String className = ExprCompiler.class.getName().replace('.', '/') + "$Compiled$"
+          + CLASS_COUNTER.incrementAndGet();
+        private final HashMap<String, Class<?>> classes = new HashMap<>();
+        private final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+        Generator() {
+            this.cw.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC,
+              this.className, null, Type.getInternalName(Object.class), new String[] { Type.getInternalName(Invoker.class) });
+            final MethodVisitor mv = this.cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+            mv.visitCode();
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitMethodInsn(Opcodes.INVOKESPECIAL, Type.getInternalName(Object.class), "<init>", "()V", false);
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        MethodVisitor startInvokeMethod() {
+            final MethodVisitor mv = this.cw.visitMethod(Opcodes.ACC_PUBLIC, "invoke", INVOKER_METHOD_DESCRIPTOR, null, null);
+            mv.visitCode();
+            return mv;
+        }
+
+        Invoker finish(MethodVisitor mv) {
+            mv.visitInsn(Opcodes.ARETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+            this.cw.visitEnd();
+            final byte[] bytes = this.cw.toByteArray();
+            final Loader loader = new Loader(this.classes);
+            try {
+                return (Invoker)loader.define(this.className.replace('/', '.'), bytes).newInstance();
+            } catch (Exception e) {
+                throw new RuntimeException("internal error", e);
+            }
+        }
+
+        // Record a class named by the generated code
+        void resolve(Class<?> type) {
+            while (type.isArray())
+                type = type.getComponentType();
+            if (!type.isPrimitive())
+                this.classes.put(type.getName(), type);
+        }
+
+        void emitCast(MethodVisitor mv, Class<?> type) {
+            this.resolve(type);
+            if (type != Object.class)
+                mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(type));
+        }
+
+        void emitPushInt(MethodVisitor mv, int value) {
+            if (value <= 5)
+                mv.visitInsn(Opcodes.ICONST_0 + value);
+            else if (value <= Byte.MAX_VALUE)
+                mv.visitIntInsn(Opcodes.BIPUSH, value);
+            else
+                mv.visitLdcInsn(value);
+        }
+
+        void emitWrap(MethodVisitor mv, Primitive<?> primitive) {
+            final Type wrapperType = Type.getType(primitive.getWrapperType());
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, wrapperType.getInternalName(), "valueOf",
+              Type.getMethodDescriptor(wrapperType, Type.getType(primitive.getType())), false);
+        }
+
+        void emitUnwrap(MethodVisitor mv, Primitive<?> primitive) {
+            final Type wrapperType = Type.getType(primitive.getWrapperType());
+            final Method unwrapMethod = primitive.getUnwrapMethod();
+            mv.visitTypeInsn(Opcodes.CHECKCAST, wrapperType.getInternalName());
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, wrapperType.getInternalName(), unwrapMethod.getName(),
+              Type.getMethodDescriptor(unwrapMethod), false);
+        }
+    }
+
+// Loader
+
+    private static final class Loader extends ClassLoader {
+
+        private final HashMap<String, Class<?>> classes;
+
+        Loader(HashMap<String, Class<?>> classes) {
+            super(ExprCompiler.class.getClassLoader());
+            this.classes = classes;
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return this.defineClass(name, bytes, 0, bytes.length);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            final Class<?> cl = this.classes.get(name);
+            return cl != null ? cl : super.loadClass(name, resolve);
+        }
+    }
+
+// Invoker
+
+    /**
+     * A compiled method invocation or field read.
+     */
+    public interface Invoker {
+
+        /**
+         * Perform the compiled invocation or field read.
+         *
+         * @param target target object; ignored for static methods
+         * @param params method parameters; ignored for field reads
+         * @return method return value (null for void methods), or field value, with primitive values wrapped
+         * @throws Throwable anything thrown by the invoked method
+         */
+        Object invoke(Object target, Object[] params) throws Throwable;
+    }
+}
+
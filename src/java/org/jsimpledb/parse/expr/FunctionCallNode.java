@@ -0,0 +1,58 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.parse.expr;
+
+import org.jsimpledb.parse.ParseSession;
+import org.jsimpledb.parse.func.AbstractFunction;
+
+/**
+ * {@link Node} that invokes a global function on its parsed parameters.
+ */
+public class FunctionCallNode implements Node {
+
+    private final AbstractFunction function;
+    private final Object params;
+
+    /**
+     * Constructor.
+     *
+     * @param function the function to invoke
+     * @param params parsed parameters returned by {@link AbstractFunction#parseParams AbstractFunction.parseParams()}
+     * @throws IllegalArgumentException if {@code function} is null
+     */
+    public FunctionCallNode(AbstractFunction function, Object params) {
+        if (function == null)
+            throw new IllegalArgumentException("null function");
+        this.function = function;
+        this.params = params;
+    }
+
+    /**
+     * Get the function being invoked.
+     *
+     * @return invoked function
+     */
+    public AbstractFunction getFunction() {
+        return this.function;
+    }
+
+    /**
+     * Get the parsed function parameters.
+     *
+     * @return parameters returned by {@link AbstractFunction#parseParams AbstractFunction.parseParams()}
+     */
+    public Object getParams() {
+        return this.params;
+    }
+
+    @Override
+    public Value evaluate(ParseSession session) {
+        return this.function.apply(session, this.params);
+    }
+}
+
@@ -23,7 +23,7 @@ public class LogicalAndParser extends BinaryExprParser {
     // Overridden to provide short-circuit logic
     @Override
     protected Node createNode(final Op op, final Node lhNode, final Node rhNode) {
-        return new Node() {
+        return new BinaryOpNode(op, lhNode, rhNode) {
             @Override
             public Value evaluate(ParseSession session) {
                 for (Node node : new Node[] { lhNode, rhNode }) {
@@ -12,14 +12,24 @@ import com.google.common.collect.Lists;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jsimpledb.parse.ParseSession;
 
 /**
  * {@link Node} that invokes a Java method when evaluated.
+ *
+ * <p>
+ * Because expressions are dynamically typed, the method to invoke is resolved at evaluation time. To avoid repeating
+ * that resolution for every evaluation, each instance remembers the candidate methods for each target class,
+ * and the method chosen for each combination of target class and parameter types. Combinations that are evaluated
+ * often are compiled into direct invocations by {@link ExprCompiler}.
+ * </p>
  */
 public class MethodInvokeNode implements Node {
 
@@ -28,6 +38,10 @@ public class MethodInvokeNode implements Node {
     private final String name;
     private final List<Node> paramNodes;
 
+    // Caches of method resolution results; note which method is chosen depends only on the target class and parameter types
+    private final ConcurrentHashMap<Class<?>, Method[]> candidatesMap = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<List<Class<?>>, CallSite> siteMap = new ConcurrentHashMap<>();
+
     /**
      * Constructor for static method invocation.
      *
@@ -91,26 +105,59 @@ public class MethodInvokeNode implements Node {
 
     private Value invokeMethod(Class<?> cl, Object obj, String name, Object[] params) {
 
-        // Try interface methods
-        for (Class<?> iface : this.addInterfaces(cl, new LinkedHashSet<Class<?>>())) {
-            for (Method method : iface.getMethods()) {
-                final Value value = this.tryMethod(method, obj, name, params);
-                if (value != null)
-                    return value;
+        // Try the method that was chosen previously for the same class and parameter types, if any
+        final Class<?>[] types = new Class<?>[params.length + 1];
+        types[0] = cl;
+        for (int i = 0; i < params.length; i++)
+            types[i + 1] = params[i] != null ? params[i].getClass() : null;
+        final List<Class<?>> key = Arrays.asList(types);
+        final CallSite site = this.siteMap.get(key);
+        if (site != null) {
+            final ExprCompiler.Invoker invoker = site.invoker;
+            if (invoker != null)
+                return this.invokeCompiled(site.method, invoker, obj, name, params);
+            final Value value = this.tryMethod(site.method, obj, name, params);
+            if (value != null) {
+                if (++site.evaluations == ExprCompiler.COMPILE_THRESHOLD && ExprCompiler.isEnabled())
+                    site.invoker = ExprCompiler.compileMethod(site.method, cl, key.subList(1, types.length));
+                return value;
             }
         }
 
-        // Try class methods
-        for (Method method : cl.getMethods()) {
+        // Try candidate methods in order: interface methods first, then class methods
+        for (Method method : this.getCandidates(cl, name)) {
             final Value value = this.tryMethod(method, obj, name, params);
-            if (value != null)
+            if (value != null) {
+                this.siteMap.put(key, new CallSite(method));
                 return value;
+            }
         }
 
         // Not found
         throw new EvalException("no compatible method `" + name + "()' found in " + cl);
     }
 
+    // Get the methods in the given class having the given name, in the order in which they should be tried
+    private Method[] getCandidates(Class<?> cl, String name) {
+        Method[] candidates = this.candidatesMap.get(cl);
+        if (candidates != null)
+            return candidates;
+        final ArrayList<Method> methods = new ArrayList<>();
+        for (Class<?> iface : this.addInterfaces(cl, new LinkedHashSet<Class<?>>())) {
+            for (Method method : iface.getMethods()) {
+                if (method.getName().equals(name))
+                    methods.add(method);
+            }
+        }
+        for (Method method : cl.getMethods()) {
+            if (method.getName().equals(name))
+                methods.add(method);
+        }
+        candidates = methods.toArray(new Method[methods.size()]);
+        this.candidatesMap.put(cl, candidates);
+        return candidates;
+    }
+
     private Set<Class<?>> addInterfaces(Class<?> cl, Set<Class<?>> interfaces) {
         for (Class<?> iface : cl.getInterfaces()) {
             interfaces.add(iface);
@@ -142,12 +189,43 @@ public class MethodInvokeNode implements Node {
         } catch (IllegalArgumentException e) {
             return null;                            // a parameter type didn't match -> wrong method
         } catch (Exception e) {
-            final Throwable t = e instanceof InvocationTargetException ?
-              ((InvocationTargetException)e).getTargetException() : e;
-            throw new EvalException("error invoking method `" + name + "()' on "
-              + (obj != null ? "object of type " + obj.getClass().getName() : method.getDeclaringClass()) + ": " + t, t);
+            throw this.invocationError(method, obj, name,
+              e instanceof InvocationTargetException ? ((InvocationTargetException)e).getTargetException() : e);
         }
+        return this.toValue(method, result);
+    }
+
+    private Value invokeCompiled(Method method, ExprCompiler.Invoker invoker, Object obj, String name, Object[] params) {
+        final Object result;
+        try {
+            result = invoker.invoke(obj, params);
+        } catch (Throwable t) {
+            throw this.invocationError(method, obj, name, t);
+        }
+        return this.toValue(method, result);
+    }
+
+    private Value toValue(Method method, Object result) {
         return result != null || method.getReturnType() != Void.TYPE ? new ConstValue(result) : Value.NO_VALUE;
     }
+
+    private EvalException invocationError(Method method, Object obj, String name, Throwable t) {
+        return new EvalException("error invoking method `" + name + "()' on "
+          + (obj != null ? "object of type " + obj.getClass().getName() : method.getDeclaringClass()) + ": " + t, t);
+    }
+
+// CallSite
+
+    // The method chosen for one combination of target class and parameter types, and its compiled form once it's hot
+    private static final class CallSite {
+
+        final Method method;
+        volatile ExprCompiler.Invoker invoker;
+        int evaluations;                                // not synchronized; only used to decide when to compile
+
+        CallSite(Method method) {
+            this.method = method;
+        }
+    }
 }
 
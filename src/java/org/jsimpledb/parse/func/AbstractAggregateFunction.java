@@ -0,0 +1,46 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.parse.func;
+
+import org.jsimpledb.parse.ParseSession;
+import org.jsimpledb.parse.expr.ConstValue;
+import org.jsimpledb.parse.expr.Value;
+
+/**
+ * Support superclass for functions that compute a streaming aggregate of a collection.
+ *
+ * <p>
+ * Such functions take either a single items parameter, in which case the items themselves are aggregated,
+ * or items, variable, and expression parameters, in which case the expression is evaluated for each item
+ * and the results are aggregated. Either way the items are iterated once, using constant memory.
+ * </p>
+ */
+abstract class AbstractAggregateFunction extends ApplyExprFunction {
+
+    protected AbstractAggregateFunction(String name) {
+        super(name, true);
+    }
+
+    @Override
+    public String getUsage() {
+        return this.name + "(items[, variable, expression])";
+    }
+
+    @Override
+    protected Value apply(ParseSession session, ParamInfo params) {
+        final Aggregator aggregator = Aggregator.create(this.name);
+        for (Object item : Aggregator.evaluateItems(session, params.getItems(), this.name)) {
+            final Object value = params.getExpr() != null ?
+              this.evaluate(session, params.getVariable(), new ConstValue(item), params.getExpr()).get(session) : item;
+            if (value != null)
+                aggregator.add(session, value);
+        }
+        return new ConstValue(aggregator.getResult());
+    }
+}
+
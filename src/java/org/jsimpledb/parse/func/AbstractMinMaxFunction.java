@@ -0,0 +1,57 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.parse.func;
+
+import com.google.common.collect.Iterables;
+
+import java.util.NavigableSet;
+
+import org.jsimpledb.parse.ParseSession;
+import org.jsimpledb.parse.QueryPlanner;
+import org.jsimpledb.parse.expr.ConstValue;
+import org.jsimpledb.parse.expr.Value;
+
+/**
+ * Support superclass for the {@code min()} and {@code max()} functions.
+ *
+ * <p>
+ * When the items are {@code all()} objects of some type and the expression accesses an indexed field of the variable,
+ * the result is read from the end of the index instead of iterating the items.
+ * </p>
+ *
+ * @see QueryPlanner#getIndexedValues QueryPlanner.getIndexedValues()
+ */
+abstract class AbstractMinMaxFunction extends AbstractAggregateFunction {
+
+    private final boolean max;
+
+    protected AbstractMinMaxFunction(String name, boolean max) {
+        super(name);
+        this.max = max;
+    }
+
+    @Override
+    public String getHelpDetail() {
+        return "Returns the " + (this.max ? "largest" : "smallest") + " of the items, or of the results of evaluating the"
+          + " expression with each item assigned to the variable. Null values are ignored; if there are no non-null values,"
+          + " null is returned. When the items are all() objects of some type and the expression accesses an indexed field of"
+          + " the variable, e.g., " + this.name + "(all(Person), $p, $p.age), the value is read directly from the index.";
+    }
+
+    @Override
+    protected Value apply(ParseSession session, ParamInfo params) {
+        if (params.getExpr() != null) {
+            final NavigableSet<?> values = QueryPlanner.getIndexedValues(session,
+              params.getItems(), params.getVariable(), params.getExpr());
+            if (values != null)
+                return new ConstValue(Iterables.getFirst(this.max ? values.descendingSet() : values, null));
+        }
+        return super.apply(session, params);
+    }
+}
+
@@ -0,0 +1,214 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.parse.func;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.jsimpledb.parse.ParseSession;
+import org.jsimpledb.parse.expr.ConstValue;
+import org.jsimpledb.parse.expr.EvalException;
+import org.jsimpledb.parse.expr.Node;
+import org.jsimpledb.parse.expr.Op;
+import org.jsimpledb.parse.expr.Value;
+import org.jsimpledb.util.HyperLogLog;
+
+/**
+ * Accumulates a streaming aggregate value using a constant amount of memory.
+ *
+ * <p>
+ * Null values are ignored by all aggregates.
+ * </p>
+ */
+abstract class Aggregator {
+
+    /**
+     * Names of the supported aggregates.
+     */
+    static final List<String> NAMES = Arrays.asList("avg", "count", "countDistinct", "max", "min", "sum");
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    /**
+     * Create a new aggregator.
+     *
+     * @param name aggregate name; one of {@link #NAMES}
+     * @return new aggregator
+     * @throws IllegalArgumentException if {@code name} is not recognized
+     */
+    static Aggregator create(String name) {
+        switch (name) {
+        case "avg":
+            return new Sum(name, true);
+        case "count":
+            return new Count();
+        case "countDistinct":
+            return new CountDistinct();
+        case "max":
+            return new MinMax(true);
+        case "min":
+            return new MinMax(false);
+        case "sum":
+            return new Sum(name, false);
+        default:
+            throw new IllegalArgumentException("unknown aggregate `" + name + "'");
+        }
+    }
+
+    /**
+     * Evaluate an items parameter into something that can be iterated.
+     *
+     * @param session parse session
+     * @param items items node
+     * @param function function name for error messages
+     * @return iterable items
+     * @throws EvalException if {@code items} does not evaluate to an {@link Iterable} or {@link Map}
+     */
+    static Iterable<?> evaluateItems(ParseSession session, Node items, String function) {
+        Object obj = items.evaluate(session).checkNotNull(session, function + "()");
+        if (obj instanceof Map)
+            obj = ((Map<?, ?>)obj).entrySet();
+        if (!(obj instanceof Iterable))
+            throw new EvalException("invalid " + function + "() operation on non-Iterable object of type " + obj.getClass().getName());
+        return (Iterable<?>)obj;
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param session parse session
+     * @param value non-null value
+     */
+    abstract void add(ParseSession session, Object value);
+
+    /**
+     * Get the aggregate of the values added so far.
+     *
+     * @return aggregate value
+     */
+    abstract Object getResult();
+
+// Count
+
+    private static class Count extends Aggregator {
+
+        private int count;
+
+        @Override
+        void add(ParseSession session, Object value) {
+            this.count++;
+        }
+
+        @Override
+        Object getResult() {
+            return this.count;
+        }
+    }
+
+// CountDistinct
+
+    private static class CountDistinct extends Aggregator {
+
+        private final HyperLogLog hll = new HyperLogLog();
+
+        // Values that are equal according to the == operator get the same hash
+        @Override
+        void add(ParseSession session, Object value) {
+            final long hash;
+            if (value instanceof String)
+                hash = HASH_FUNCTION.hashString((String)value, Charsets.UTF_8).asLong();
+            else if (value instanceof Byte || value instanceof Short || value instanceof Integer || value instanceof Long)
+                hash = HASH_FUNCTION.hashLong(((Number)value).longValue()).asLong();
+            else if (value instanceof Character)
+                hash = HASH_FUNCTION.hashLong((Character)value).asLong();
+            else if (value instanceof Float || value instanceof Double) {
+                final double d = ((Number)value).doubleValue();
+                hash = d == (long)d ?
+                  HASH_FUNCTION.hashLong((long)d).asLong() : HASH_FUNCTION.hashLong(Double.doubleToLongBits(d)).asLong();
+            } else
+                hash = HASH_FUNCTION.hashInt(value.hashCode()).asLong();
+            this.hll.add(hash);
+        }
+
+        @Override
+        Object getResult() {
+            return this.hll.estimate();
+        }
+    }
+
+// MinMax
+
+    private static class MinMax extends Aggregator {
+
+        private final boolean max;
+        private Value result;
+
+        MinMax(boolean max) {
+            this.max = max;
+        }
+
+        @Override
+        void add(ParseSession session, Object value) {
+            final Value next = new ConstValue(value);
+            if (this.result == null
+              || (Boolean)next.compare(session, this.result, this.max ? Value.GT : Value.LT).get(session))
+                this.result = next;
+        }
+
+        @Override
+        Object getResult() {
+            return this.result != null ? this.result.get(null) : null;
+        }
+    }
+
+// Sum
+
+    private static class Sum extends Aggregator {
+
+        private final String name;
+        private final boolean average;
+        private Value sum = new ConstValue(0L);
+        private long count;
+
+        Sum(String name, boolean average) {
+            this.name = name;
+            this.average = average;
+        }
+
+        @Override
+        void add(ParseSession session, Object value) {
+            if (!(value instanceof Number))
+                throw new EvalException(this.name + "() cannot be applied to non-numeric value of type " + value.getClass().getName());
+            this.sum = Op.PLUS.apply(session, this.sum, new ConstValue(value));
+            this.count++;
+        }
+
+        @Override
+        Object getResult() {
+            final Number total = (Number)this.sum.get(null);
+            if (!this.average)
+                return total;
+            if (this.count == 0)
+                return null;
+            if (total instanceof BigDecimal)
+                return ((BigDecimal)total).divide(BigDecimal.valueOf(this.count), MathContext.DECIMAL128);
+            if (total instanceof BigInteger)
+                return new BigDecimal((BigInteger)total).divide(BigDecimal.valueOf(this.count), MathContext.DECIMAL128);
+            return total.doubleValue() / this.count;
+        }
+    }
+}
+
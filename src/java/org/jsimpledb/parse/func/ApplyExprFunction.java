@@ -18,21 +18,70 @@ import org.jsimpledb.parse.expr.VarNode;
 
 public abstract class ApplyExprFunction extends AbstractFunction {
 
+    private final boolean exprOptional;
+
     protected ApplyExprFunction(String name) {
+        this(name, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param name function name
+     * @param exprOptional true if the variable and expression parameters may be omitted
+     */
+    protected ApplyExprFunction(String name, boolean exprOptional) {
         super(name);
+        this.exprOptional = exprOptional;
     }
 
     @Override
     public ParamInfo parseParams(ParseSession session, ParseContext ctx, boolean complete) {
 
+        // Get items, variable, and expression
+        final ParamInfo params = this.parseItemsVariableAndExpression(session, ctx, complete);
+        if (params.getExpr() == null)
+            return params;
+
+        // Finish parse
+        ctx.skipWhitespace();
+        if (!ctx.tryLiteral(")"))
+            throw new ParseException(ctx, "expected `)'").addCompletion(") ");
+
+        // Done
+        return params;
+    }
+
+    /**
+     * Parse the items, variable, and expression parameters, stopping after the expression.
+     *
+     * <p>
+     * If the variable and expression are optional for this function and the items parameter is followed by the
+     * closing parenthesis, the closing parenthesis is consumed and the returned variable and expression are null.
+     * </p>
+     *
+     * @param session parse session
+     * @param ctx parse context
+     * @param complete false if parse is "for real", true if only for tab completion calculation
+     * @return parsed parameters
+     * @throws ParseException if parse fails, or if {@code complete} is true and there are valid completions
+     */
+    protected ParamInfo parseItemsVariableAndExpression(ParseSession session, ParseContext ctx, boolean complete) {
+
         // Get items
         final int mark = ctx.getIndex();
-        if (ctx.tryLiteral(")"))
-            throw new ParseException(ctx, "three parameters required for " + this.name + "()");
+        if (ctx.tryLiteral(")")) {
+            throw new ParseException(ctx, (this.exprOptional ? "one or three" : "three")
+              + " parameters required for " + this.name + "()");
+        }
         final Node items = new ExprParser().parse(session, ctx, complete);
 
-        // Get variable
+        // Check for items only
         ctx.skipWhitespace();
+        if (this.exprOptional && ctx.tryLiteral(")"))
+            return new ParamInfo(null, items, null);
+
+        // Get variable
         if (!ctx.tryLiteral(","))
             throw new ParseException(ctx, "expected `,'").addCompletion(", ");
         this.spaceParser.parse(ctx, complete);
@@ -50,11 +99,6 @@ public abstract class ApplyExprFunction extends AbstractFunction {
         this.spaceParser.parse(ctx, complete);
         final Node expr = new ExprParser().parse(session, ctx, complete);
 
-        // Finish parse
-        ctx.skipWhitespace();
-        if (!ctx.tryLiteral(")"))
-            throw new ParseException(ctx, "expected `)'").addCompletion(") ");
-
         // Done
         return new ParamInfo(variable, items, expr);
     }
@@ -110,7 +154,10 @@ public abstract class ApplyExprFunction extends AbstractFunction {
 
 // ParamInfo
 
-    static class ParamInfo {
+    /**
+     * Parsed parameters for an {@link ApplyExprFunction}.
+     */
+    public static class ParamInfo {
 
         private final String variable;
         private final Node items;
@@ -0,0 +1,29 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.parse.func;
+
+@Function
+public class AvgFunction extends AbstractAggregateFunction {
+
+    public AvgFunction() {
+        super("avg");
+    }
+
+    @Override
+    public String getHelpSummary() {
+        return "returns the average of the numbers in a collection";
+    }
+
+    @Override
+    public String getHelpDetail() {
+        return "Returns the average of the items, or of the results of evaluating the expression with each item assigned to the"
+          + " variable. The values must be numeric; null values are ignored. The result is a double, or a BigDecimal if any"
+          + " big number values are encountered; if there are no non-null values, null is returned.";
+    }
+}
+
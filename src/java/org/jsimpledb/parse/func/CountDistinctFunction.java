@@ -0,0 +1,32 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.parse.func;
+
+import org.jsimpledb.util.HyperLogLog;
+
+@Function
+public class CountDistinctFunction extends AbstractAggregateFunction {
+
+    public CountDistinctFunction() {
+        super("countDistinct");
+    }
+
+    @Override
+    public String getHelpSummary() {
+        return "estimates the number of distinct values in a collection";
+    }
+
+    @Override
+    public String getHelpDetail() {
+        return "Estimates the number of distinct items, or distinct results of evaluating the expression with each item assigned"
+          + " to the variable, using the HyperLogLog algorithm. Null values are ignored. Memory usage is constant; the result"
+          + " is exact for small counts and typically within " + String.format("%.1f%%",
+          104.0 / Math.sqrt(1 << HyperLogLog.DEFAULT_PRECISION)) + " for large counts. The result is a long.";
+    }
+}
+
@@ -16,6 +16,8 @@ import java.util.NavigableSet;
 import java.util.Set;
 
 import org.jsimpledb.parse.ParseSession;
+import org.jsimpledb.parse.QueryPlan;
+import org.jsimpledb.parse.QueryPlanner;
 import org.jsimpledb.parse.expr.AbstractValue;
 import org.jsimpledb.parse.expr.ConstValue;
 import org.jsimpledb.parse.expr.EvalException;
@@ -42,7 +44,10 @@ public class FilterFunction extends ApplyExprFunction {
     public String getHelpDetail() {
         return "Creates a filtered view of an Iterable, where items are included only if when the item is assigned to the"
           + " specified variable the specified expression evaluates to true. Maps are also supported, in which case the map's"
-          + " entrySet() is filtered.";
+          + " entrySet() is filtered."
+          + "\n\nWhen the items are all() objects of some type and the expression compares an indexed field of the variable"
+          + " with a constant, e.g., filter(all(Person), $p, $p.lastName == \"Smith\"), the index is used to find the"
+          + " matching objects instead of checking every object. Use the `explain' command to see how a filter() is evaluated.";
     }
 
     @Override
@@ -60,8 +65,10 @@ public class FilterFunction extends ApplyExprFunction {
                     }
                 };
 
-                // Evaluate items
-                Object items = params.getItems().evaluate(session).checkNotNull(session, "filter()");
+                // Evaluate items, using an index to find candidates if possible
+                final QueryPlan plan = QueryPlanner.plan(session, params.getItems(), params.getVariable(), params.getExpr());
+                Object items = plan != null ? plan.getCandidates(session) :
+                  params.getItems().evaluate(session).checkNotNull(session, "filter()");
                 if (items instanceof Map)
                     items = ((Map<?, ?>)items).entrySet();
 
@@ -0,0 +1,139 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.parse.func;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+import org.jsimpledb.parse.ParseContext;
+import org.jsimpledb.parse.ParseException;
+import org.jsimpledb.parse.ParseSession;
+import org.jsimpledb.parse.ParseUtil;
+import org.jsimpledb.parse.expr.ConstValue;
+import org.jsimpledb.parse.expr.ExprParser;
+import org.jsimpledb.parse.expr.IdentNode;
+import org.jsimpledb.parse.expr.Node;
+import org.jsimpledb.parse.expr.Value;
+
+@Function
+public class GroupByFunction extends ApplyExprFunction {
+
+    public GroupByFunction() {
+        super("groupBy");
+    }
+
+    @Override
+    public String getHelpSummary() {
+        return "groups a collection and aggregates each group";
+    }
+
+    @Override
+    public String getUsage() {
+        return "groupBy(items, variable, key-expression[, aggregate[, value-expression]])";
+    }
+
+    @Override
+    public String getHelpDetail() {
+        return "Groups the items by the result of evaluating the key expression with each item assigned to the variable, and"
+          + " returns a Map from each key to an aggregate of its group, in the order keys are first encountered. The aggregate"
+          + " is one of " + Aggregator.NAMES + " and defaults to count; it is applied to the items in the group, or to the"
+          + " results of evaluating the value expression for each item in the group. For example, the average order total per"
+          + " customer is groupBy(all(Order), $o, $o.customer, avg, $o.total). The items are iterated once, and only the"
+          + " aggregate for each group is kept in memory.";
+    }
+
+    @Override
+    public ParamInfo parseParams(ParseSession session, ParseContext ctx, boolean complete) {
+
+        // Get items, variable, and key expression
+        final ParamInfo params = this.parseItemsVariableAndExpression(session, ctx, complete);
+
+        // Get optional aggregate and value expression
+        String aggregate = "count";
+        Node value = null;
+        ctx.skipWhitespace();
+        if (ctx.tryLiteral(",")) {
+            this.spaceParser.parse(ctx, complete);
+            final Matcher matcher = ctx.tryPattern(IdentNode.NAME_PATTERN);
+            final String name = matcher != null ? matcher.group() : "";
+            if (!Aggregator.NAMES.contains(name) || (complete && ctx.isEOF())) {
+                throw new ParseException(ctx, "expected aggregate name (one of " + Aggregator.NAMES + ")")
+                  .addCompletions(ParseUtil.complete(Aggregator.NAMES, name));
+            }
+            aggregate = name;
+            ctx.skipWhitespace();
+            if (ctx.tryLiteral(",")) {
+                this.spaceParser.parse(ctx, complete);
+                value = new ExprParser().parse(session, ctx, complete);
+                ctx.skipWhitespace();
+            }
+        }
+
+        // Finish parse
+        if (!ctx.tryLiteral(")"))
+            throw new ParseException(ctx, "expected `)'").addCompletion(") ");
+
+        // Done
+        return new GroupByParamInfo(params, aggregate, value);
+    }
+
+    @Override
+    protected Value apply(ParseSession session, ParamInfo params0) {
+        final GroupByParamInfo params = (GroupByParamInfo)params0;
+        final LinkedHashMap<Object, Aggregator> aggregators = new LinkedHashMap<>();
+        for (Object item : Aggregator.evaluateItems(session, params.getItems(), this.name)) {
+
+            // Get key
+            final ConstValue itemValue = new ConstValue(item);
+            final Object key = this.evaluate(session, params.getVariable(), itemValue, params.getExpr()).get(session);
+
+            // Get value
+            final Object value = params.getValue() != null ?
+              this.evaluate(session, params.getVariable(), itemValue, params.getValue()).get(session) : item;
+
+            // Aggregate
+            Aggregator aggregator = aggregators.get(key);
+            if (aggregator == null) {
+                aggregator = Aggregator.create(params.getAggregate());
+                aggregators.put(key, aggregator);
+            }
+            if (value != null)
+                aggregator.add(session, value);
+        }
+
+        // Build result
+        final LinkedHashMap<Object, Object> result = new LinkedHashMap<>(aggregators.size());
+        for (Map.Entry<Object, Aggregator> entry : aggregators.entrySet())
+            result.put(entry.getKey(), entry.getValue().getResult());
+        return new ConstValue(result);
+    }
+
+// GroupByParamInfo
+
+    static class GroupByParamInfo extends ParamInfo {
+
+        private final String aggregate;
+        private final Node value;
+
+        GroupByParamInfo(ParamInfo params, String aggregate, Node value) {
+            super(params.getVariable(), params.getItems(), params.getExpr());
+            this.aggregate = aggregate;
+            this.value = value;
+        }
+
+        public String getAggregate() {
+            return this.aggregate;
+        }
+
+        public Node getValue() {
+            return this.value;
+        }
+    }
+}
+
@@ -0,0 +1,22 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.parse.func;
+
+@Function
+public class MaxFunction extends AbstractMinMaxFunction {
+
+    public MaxFunction() {
+        super("max", true);
+    }
+
+    @Override
+    public String getHelpSummary() {
+        return "returns the maximum value in a collection";
+    }
+}
+
@@ -0,0 +1,22 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.parse.func;
+
+@Function
+public class MinFunction extends AbstractMinMaxFunction {
+
+    public MinFunction() {
+        super("min", false);
+    }
+
+    @Override
+    public String getHelpSummary() {
+        return "returns the minimum value in a collection";
+    }
+}
+
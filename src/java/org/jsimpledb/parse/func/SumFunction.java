@@ -0,0 +1,30 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.parse.func;
+
+@Function
+public class SumFunction extends AbstractAggregateFunction {
+
+    public SumFunction() {
+        super("sum");
+    }
+
+    @Override
+    public String getHelpSummary() {
+        return "returns the sum of the numbers in a collection";
+    }
+
+    @Override
+    public String getHelpDetail() {
+        return "Returns the sum of the items, or of the results of evaluating the expression with each item assigned to the"
+          + " variable. The values must be numeric; null values are ignored. Values are added using the same numeric promotion"
+          + " rules as the `+' operator, starting with 0L, so the result is long unless floating point or big number values"
+          + " are encountered.";
+    }
+}
+
@@ -7,6 +7,8 @@
 
 package org.jsimpledb.util;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Reads bytes from a buffer.
  */
@@ -145,6 +147,44 @@ public class ByteReader {
         return result;
     }
 
+    /**
+     * Count the number of consecutive bytes, starting at the current read position, whose values lie within
+     * the given range. Does not change the read position.
+     *
+     * @param min minimum byte value (inclusive, 0-255)
+     * @param max maximum byte value (inclusive, 0-255)
+     * @return number of bytes in the range {@code min} to {@code max} before the next byte outside that range,
+     *  or the end of the buffer
+     */
+    public int runLength(int min, int max) {
+        int pos = this.off;
+        while (pos < this.max) {
+            final int value = this.buf[pos] & 0xff;
+            if (value < min || value > max)
+                break;
+            pos++;
+        }
+        return pos - this.off;
+    }
+
+    /**
+     * Read the specified number of bytes and decode them as ISO-8859-1 characters, i.e., one character per byte.
+     *
+     * @param len number of bytes to read
+     * @return decoded characters
+     * @throws IndexOutOfBoundsException if there are not enough bytes
+     * @throws IllegalArgumentException if {@code len} is negative
+     */
+    public String readLatin1(int len) {
+        if (len < 0)
+            throw new IllegalArgumentException("len < 0");
+        if (this.off + len > this.max)
+            throw new IndexOutOfBoundsException();
+        final String result = new String(this.buf, this.off, len, StandardCharsets.ISO_8859_1);
+        this.off += len;
+        return result;
+    }
+
     /**
      * Get the number of bytes remaining.
      *
@@ -124,6 +124,26 @@ public class ByteWriter {
         this.len += len;
     }
 
+    /**
+     * Write a range of characters from the given string, encoding each character as a single byte, i.e., using ISO-8859-1.
+     * All but the lower 8 bits of each character are ignored.
+     *
+     * @param value characters to write
+     * @param off offset into {@code value}
+     * @param len the number of characters to write
+     * @throws IndexOutOfBoundsException if {@code off} or {@code len} is out of bounds
+     */
+    public void writeLatin1(String value, int off, int len) {
+        if (off < 0 || off > value.length() || len < 0 || off + len < 0 || off + len > value.length())
+            throw new IndexOutOfBoundsException("value.length() = " + value.length() + ", off = " + off + ", len = " + len);
+        this.makeRoom(len);
+        final byte[] data = this.buf;
+        int pos = this.len;
+        for (int i = off; i < off + len; i++)
+            data[pos++] = (byte)value.charAt(i);
+        this.len = pos;
+    }
+
     /**
      * Get the current buffer length. Returns the same value as {@code #mark}.
      *
@@ -0,0 +1,134 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.util;
+
+/**
+ * HyperLogLog cardinality estimator.
+ *
+ * <p>
+ * Estimates the number of distinct values in a stream using a fixed amount of memory (2<sup>precision</sup> bytes),
+ * regardless of the number of values. The relative standard error is approximately 1.04 / &radic;(2<sup>precision</sup>),
+ * e.g., about 0.8% for the default precision of 14.
+ * </p>
+ *
+ * <p>
+ * Values are added in the form of uniformly distributed 64-bit hashes; callers are responsible for hashing values
+ * such that equal values have equal hashes (see for example {@link com.google.common.hash.Hashing#murmur3_128()}).
+ * </p>
+ *
+ * <p>
+ * Instances are not thread safe.
+ * </p>
+ *
+ * @see <a href="http://algo.inria.fr/flajolet/Publications/FlFuGaMe07.pdf">HyperLogLog: the analysis of a near-optimal
+ *  cardinality estimation algorithm</a>
+ */
+public class HyperLogLog {
+
+    /**
+     * Default precision.
+     */
+    public static final int DEFAULT_PRECISION = 14;
+
+    /**
+     * Minimum precision.
+     */
+    public static final int MIN_PRECISION = 4;
+
+    /**
+     * Maximum precision.
+     */
+    public static final int MAX_PRECISION = 18;
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * Default constructor. Uses {@link #DEFAULT_PRECISION}.
+     */
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param precision number of hash bits used to select a register
+     * @throws IllegalArgumentException if {@code precision} is less than {@link #MIN_PRECISION}
+     *  or greater than {@link #MAX_PRECISION}
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION)
+            throw new IllegalArgumentException("invalid precision " + precision);
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Get the precision of this instance.
+     *
+     * @return precision
+     */
+    public int getPrecision() {
+        return this.precision;
+    }
+
+    /**
+     * Add a value in the form of its 64-bit hash.
+     *
+     * @param hash uniformly distributed hash of the value
+     */
+    public void add(long hash) {
+        final int index = (int)(hash >>> (64 - this.precision));
+        final long remainder = (hash << this.precision) | (1L << (this.precision - 1));        // bound the rank
+        final byte rank = (byte)(Long.numberOfLeadingZeros(remainder) + 1);
+        if (rank > this.registers[index])
+            this.registers[index] = rank;
+    }
+
+    /**
+     * Merge the values added to another instance into this instance.
+     *
+     * @param that other instance
+     * @throws IllegalArgumentException if {@code that} is null or has a different precision
+     */
+    public void merge(HyperLogLog that) {
+        if (that == null)
+            throw new IllegalArgumentException("null that");
+        if (that.precision != this.precision)
+            throw new IllegalArgumentException("precision mismatch");
+        for (int i = 0; i < this.registers.length; i++) {
+            if (that.registers[i] > this.registers[i])
+                this.registers[i] = that.registers[i];
+        }
+    }
+
+    /**
+     * Estimate the number of distinct values added so far.
+     *
+     * @return estimated distinct count
+     */
+    public long estimate() {
+        final int m = this.registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : this.registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0)
+                zeros++;
+        }
+        final double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1.0 + 1.079 / m);
+        final double estimate = alpha * m * m / sum;
+
+        // Use linear counting for small cardinalities
+        if (estimate <= 2.5 * m && zeros > 0)
+            return Math.round(m * Math.log((double)m / zeros));
+        return Math.round(estimate);
+    }
+}
+
@@ -0,0 +1,97 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb;
+
+import java.util.Arrays;
+
+import org.jsimpledb.annotation.JCompositeIndex;
+import org.jsimpledb.annotation.JField;
+import org.jsimpledb.annotation.JSimpleClass;
+import org.jsimpledb.core.Database;
+import org.jsimpledb.index.Index;
+import org.jsimpledb.index.Index2;
+import org.jsimpledb.kv.RetryTransactionException;
+import org.jsimpledb.kv.mvcc.MemoryAtomicKVStore;
+import org.jsimpledb.kv.mvcc.SnapshotKVDatabase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class IndexSnapshotReadTest extends TestSupport {
+
+    @Test
+    public void testSnapshotReads() throws Exception {
+
+        final Database db = new Database(new SnapshotKVDatabase(new MemoryAtomicKVStore()));
+        final JSimpleDB jdb = new JSimpleDB(db, 1, null, Arrays.<Class<?>>asList(Person.class));
+
+        // Populate
+        JTransaction jtx = jdb.createTransaction(true, ValidationMode.AUTOMATIC);
+        JTransaction.setCurrent(jtx);
+        for (int i = 0; i < 10; i++) {
+            final Person person = jtx.create(Person.class);
+            person.setAge(i);
+            person.setName("name" + i);
+        }
+        jtx.commit();
+
+        // Scan index normally while another transaction modifies it - should conflict
+        final JTransaction jtx1 = jdb.createTransaction(true, ValidationMode.AUTOMATIC);
+        final JTransaction jtx2 = jdb.createTransaction(true, ValidationMode.AUTOMATIC);
+        Assert.assertEquals(jtx1.queryIndex(Person.class, "age", Integer.class).asMap().size(), 10);
+        JTransaction.setCurrent(jtx1);
+        jtx1.create(Person.class).setName("foo");
+        JTransaction.setCurrent(jtx2);
+        jtx2.create(Person.class).setAge(10);
+        jtx2.commit();
+        try {
+            jtx1.commit();
+            assert false;
+        } catch (RetryTransactionException e) {
+            // expected
+        }
+
+        // Scan same indexes using snapshot reads - should not conflict
+        final JTransaction jtx3 = jdb.createTransaction(true, ValidationMode.AUTOMATIC);
+        final JTransaction jtx4 = jdb.createTransaction(true, ValidationMode.AUTOMATIC);
+        final Index<Integer, Person> index = jtx3.queryIndex(Person.class, "age", Integer.class).withSnapshotReads();
+        Assert.assertEquals(index.asMap().size(), 11);
+        final Index2<Integer, String, Person> index2 = jtx3.queryCompositeIndex(Person.class,
+          "ageName", Integer.class, String.class).withSnapshotReads();
+        Assert.assertEquals(index2.asSet().size(), 11);
+        Assert.assertEquals(index2.asIndex().asMap().keySet(), index.asMap().keySet());
+
+        // Snapshot reads should see the transaction's own writes
+        JTransaction.setCurrent(jtx3);
+        final Person person3 = jtx3.create(Person.class);
+        person3.setAge(200);
+        Assert.assertEquals(index.asMap().get(200), buildSet(person3));
+
+        JTransaction.setCurrent(jtx4);
+        jtx4.create(Person.class).setAge(11);
+        jtx4.commit();
+        jtx3.commit();
+        JTransaction.setCurrent(null);
+    }
+
+// Model Classes
+
+    @JSimpleClass(storageId = 100, compositeIndexes = {
+      @JCompositeIndex(storageId = 110, name = "ageName", fields = { "age", "name" })
+    })
+    public abstract static class Person implements JObject {
+
+        @JField(storageId = 101, indexed = true)
+        public abstract int getAge();
+        public abstract void setAge(int age);
+
+        @JField(storageId = 102)
+        public abstract String getName();
+        public abstract void setName(String name);
+    }
+}
+
@@ -0,0 +1,135 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableSet;
+
+import org.jsimpledb.annotation.JField;
+import org.jsimpledb.annotation.JSetField;
+import org.jsimpledb.annotation.JSimpleClass;
+import org.jsimpledb.annotation.OnCreate;
+import org.jsimpledb.core.Database;
+import org.jsimpledb.kv.simple.SimpleKVDatabase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ParallelStartupTest extends TestSupport {
+
+    private static final List<Class<?>> CLASSES = Arrays.<Class<?>>asList(Type1.class, Type2.class, Type3.class,
+      Type4.class, Type5.class, Type6.class, Type7.class, Type8.class);
+
+    @Test
+    public void testParallelStartup() {
+        Assert.assertTrue(CLASSES.size() + 1 >= JSimpleDB.PARALLEL_STARTUP_THRESHOLD);
+
+        // Fields are only created in parallel with the default storage ID generator; compare against sequential creation
+        final JSimpleDB jdb = new JSimpleDB(CLASSES);
+        final JSimpleDB sequentialJdb = new JSimpleDBFactory()
+          .setDatabase(new Database(new SimpleKVDatabase()))
+          .setSchemaVersion(1)
+          .setStorageIdGenerator(new DefaultStorageIdGenerator() { })
+          .setModelClasses(CLASSES)
+          .newJSimpleDB();
+        Assert.assertEquals(jdb.getSchemaModel(), sequentialJdb.getSchemaModel());
+        Assert.assertEquals(jdb.getJClasses().size(), CLASSES.size() + 1);
+        Assert.assertTrue(jdb.hasOnCreateMethods);
+
+        // Create objects using the generated classes
+        final JTransaction jtx = jdb.createTransaction(true, ValidationMode.AUTOMATIC);
+        JTransaction.setCurrent(jtx);
+        try {
+            final Type8 type8 = jtx.create(Type8.class);
+            final Type3 type3 = jtx.create(Type3.class);
+            type8.setFriend(type3);
+            type3.getNumbers().add(123);
+            Assert.assertEquals(type8.getName(), "created");
+            Assert.assertSame(type8.getFriend(), type3);
+            Assert.assertEquals(type3.getNumbers().first(), (Integer)123);
+            jtx.commit();
+        } finally {
+            JTransaction.setCurrent(null);
+        }
+    }
+
+    @Test
+    public void testParallelStartupError() {
+        try {
+            new JSimpleDB(Arrays.<Class<?>>asList(Type1.class, Type2.class, Type3.class, Type4.class,
+              Type5.class, Type6.class, Type7.class, Type8.class, Invalid.class));
+            assert false;
+        } catch (IllegalArgumentException e) {
+            this.log.info("got expected " + e);
+            Assert.assertTrue(e.getMessage().contains(Invalid.class.getName()), "wrong exception: " + e);
+        }
+    }
+
+// Model Classes
+
+    @JSimpleClass
+    public abstract static class Base implements JObject {
+
+        @JField(indexed = true)
+        public abstract String getName();
+        public abstract void setName(String name);
+
+        @JField
+        public abstract Base getFriend();
+        public abstract void setFriend(Base friend);
+
+        @JSetField
+        public abstract NavigableSet<Integer> getNumbers();
+
+        @OnCreate
+        private void created() {
+            this.setName("created");
+        }
+    }
+
+    @JSimpleClass
+    public abstract static class Type1 extends Base {
+    }
+
+    @JSimpleClass
+    public abstract static class Type2 extends Base {
+    }
+
+    @JSimpleClass
+    public abstract static class Type3 extends Base {
+    }
+
+    @JSimpleClass
+    public abstract static class Type4 extends Base {
+    }
+
+    @JSimpleClass
+    public abstract static class Type5 extends Base {
+    }
+
+    @JSimpleClass
+    public abstract static class Type6 extends Base {
+    }
+
+    @JSimpleClass
+    public abstract static class Type7 extends Base {
+    }
+
+    @JSimpleClass
+    public abstract static class Type8 extends Base {
+    }
+
+    @JSimpleClass
+    public abstract static class Invalid extends Base {
+
+        @JField
+        public abstract Thread getBogus();
+        public abstract void setBogus(Thread bogus);
+    }
+}
+
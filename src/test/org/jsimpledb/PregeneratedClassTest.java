@@ -0,0 +1,104 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb;
+
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+
+import org.jsimpledb.annotation.JField;
+import org.jsimpledb.annotation.JSimpleClass;
+import org.jsimpledb.core.Database;
+import org.jsimpledb.kv.simple.SimpleKVDatabase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class PregeneratedClassTest extends TestSupport {
+
+    @Test
+    public void testPregeneratedClasses() throws Exception {
+        final File dir = Files.createTempDir();
+        try {
+
+            // Write generated classes
+            final List<File> files = new JSimpleDB(Person.class).writeGeneratedClasses(dir);
+            Assert.assertEquals(files.size(), 2);
+            for (File file : files)
+                Assert.assertTrue(file.isFile(), "missing " + file);
+
+            // Put them on the classpath
+            final ClassLoader previousLoader = Thread.currentThread().getContextClassLoader();
+            try (URLClassLoader loader = new URLClassLoader(new URL[] { dir.toURI().toURL() }, this.getClass().getClassLoader())) {
+                Thread.currentThread().setContextClassLoader(loader);
+
+                // Up-to-date classes should be used
+                this.check(new JSimpleDB(Person.class), loader, true);
+
+                // Out-of-date classes should be ignored
+                this.check(new JSimpleDBFactory()
+                  .setDatabase(new Database(new SimpleKVDatabase()))
+                  .setSchemaVersion(1)
+                  .setStorageIdGenerator(new DefaultStorageIdGenerator() {
+                    @Override
+                    public int generateFieldStorageId(Method getter, String name) {
+                        return super.generateFieldStorageId(getter, name) + 1;
+                    }
+                  })
+                  .setModelClasses(Person.class)
+                  .newJSimpleDB(), loader, false);
+            } finally {
+                Thread.currentThread().setContextClassLoader(previousLoader);
+            }
+        } finally {
+            this.delete(dir);
+        }
+    }
+
+    private void check(JSimpleDB jdb, ClassLoader loader, boolean pregenerated) {
+        final JTransaction jtx = jdb.createTransaction(true, ValidationMode.AUTOMATIC);
+        JTransaction.setCurrent(jtx);
+        try {
+            final Person person = jtx.create(Person.class);
+            person.setName("Fred");
+            Assert.assertEquals(person.getName(), "Fred");
+            Assert.assertEquals(person.getClass().getClassLoader() == loader, pregenerated);
+            final Person snapshot = (Person)person.copyOut();
+            Assert.assertEquals(snapshot.getName(), "Fred");
+            Assert.assertTrue(snapshot.isSnapshot());
+            Assert.assertEquals(snapshot.getClass().getSuperclass(), person.getClass());
+            Assert.assertEquals(JSimpleDB.getModelClass(snapshot), Person.class);
+            jtx.commit();
+        } finally {
+            JTransaction.setCurrent(null);
+        }
+    }
+
+    private void delete(File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files)
+                this.delete(child);
+        }
+        file.delete();
+    }
+
+// Model Classes
+
+    @JSimpleClass(storageId = 100)
+    public abstract static class Person implements JObject {
+
+        @JField
+        public abstract String getName();
+        public abstract void setName(String name);
+    }
+}
+
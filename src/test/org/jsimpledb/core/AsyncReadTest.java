@@ -0,0 +1,123 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.core;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ExecutionException;
+
+import org.jsimpledb.TestSupport;
+import org.jsimpledb.kv.simple.SimpleKVDatabase;
+import org.jsimpledb.schema.SchemaModel;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class AsyncReadTest extends TestSupport {
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testAsyncReads() throws Exception {
+
+        final SimpleKVDatabase kvstore = new SimpleKVDatabase();
+        final Database db = new Database(kvstore);
+
+        final SchemaModel schema = SchemaModel.fromXML(new ByteArrayInputStream((
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<Schema formatVersion=\"2\">\n"
+          + "  <ObjectType name=\"Foo\" storageId=\"1\">\n"
+          + "    <SimpleField name=\"name\" type=\"java.lang.String\" storageId=\"2\" indexed=\"true\"/>\n"
+          + "    <SimpleField name=\"age\" type=\"int\" storageId=\"3\"/>\n"
+          + "    <ListField name=\"list\" storageId=\"10\">\n"
+          + "        <SimpleField type=\"int\" storageId=\"11\" indexed=\"true\"/>\n"
+          + "    </ListField>"
+          + "  </ObjectType>\n"
+          + "</Schema>\n"
+          ).getBytes("UTF-8")));
+
+        final Transaction tx = db.createTransaction(schema, 1, true);
+
+        final ObjId id1 = tx.create(1);
+        final ObjId id2 = tx.create(1);
+        final ObjId id3 = tx.create(1);
+        tx.writeSimpleField(id1, 2, "fred", true);
+        tx.writeSimpleField(id2, 2, "fred", true);
+        tx.writeSimpleField(id3, 2, "joe", true);
+        tx.writeSimpleField(id1, 3, 23, true);
+        ((List<Integer>)tx.readListField(id1, 10, true)).add(5);
+        ((List<Integer>)tx.readListField(id2, 10, true)).add(5);
+        ((List<Integer>)tx.readListField(id2, 10, true)).add(5);
+
+    // Simple fields
+
+        final ListenableFuture<Object> name1 = tx.readSimpleFieldAsync(id1, 2, false);
+        final ListenableFuture<Object> name3 = tx.readSimpleFieldAsync(id3, 2, true);
+        final ListenableFuture<Object> age1 = tx.readSimpleFieldAsync(id1, 3, false);
+        final ListenableFuture<Object> age2 = tx.readSimpleFieldAsync(id2, 3, true);
+        Assert.assertEquals(name1.get(), "fred");
+        Assert.assertEquals(name3.get(), "joe");
+        Assert.assertEquals(age1.get(), 23);
+        Assert.assertEquals(age2.get(), 0);
+
+    // Errors are reported via the future
+
+        this.checkFailure(tx.readSimpleFieldAsync(id1, 99, false), UnknownFieldException.class);
+        this.checkFailure(tx.readSimpleFieldAsync(id1, 99, true), UnknownFieldException.class);
+        this.checkFailure(tx.readSimpleFieldAsync(new ObjId(1), 2, false), DeletedObjectException.class);
+        this.checkFailure(tx.readSimpleFieldAsync(new ObjId(1), 2, true), DeletedObjectException.class);
+        this.checkFailure(tx.readSimpleFieldAsync(new ObjId(5), 2, false), UnknownTypeException.class);
+
+    // Index queries
+
+        final ListenableFuture<NavigableSet<ObjId>> fred = tx.queryIndexAsync(2, "fred");
+        final ListenableFuture<NavigableSet<ObjId>> joe = tx.queryIndexAsync(2, "joe");
+        final ListenableFuture<NavigableSet<ObjId>> bob = tx.queryIndexAsync(2, "bob");
+        final ListenableFuture<NavigableSet<ObjId>> five = tx.queryIndexAsync(11, 5);
+        Assert.assertEquals(fred.get(), buildSet(id1, id2));
+        Assert.assertEquals(joe.get(), buildSet(id3));
+        Assert.assertEquals(bob.get(), buildSet());
+        Assert.assertEquals(five.get(), buildSet(id1, id2));
+        Assert.assertEquals(fred.get(), tx.queryIndex(2).asMap().get("fred"));
+
+        try {
+            tx.queryIndexAsync(2, 123);
+            assert false;
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            tx.queryIndexAsync(99, "fred");
+            assert false;
+        } catch (UnknownFieldException e) {
+            // expected
+        }
+
+        tx.commit();
+
+    // Stale transaction
+
+        try {
+            tx.readSimpleFieldAsync(id1, 2, false);
+            assert false;
+        } catch (StaleTransactionException e) {
+            // expected
+        }
+    }
+
+    private void checkFailure(ListenableFuture<?> future, Class<? extends Exception> type) throws Exception {
+        try {
+            future.get();
+            assert false : "expected " + type;
+        } catch (ExecutionException e) {
+            Assert.assertTrue(type.isInstance(e.getCause()), "wrong exception: " + e.getCause());
+        }
+    }
+}
+
@@ -0,0 +1,116 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.core;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.NavigableSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jsimpledb.TestSupport;
+import org.jsimpledb.kv.simple.SimpleKVDatabase;
+import org.jsimpledb.schema.SchemaModel;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+// Verify multiple threads may read from the same transaction while another thread is writing to it
+public class ConcurrentReadTest extends TestSupport {
+
+    private static final int NUM_OBJECTS = 20;
+    private static final int NUM_READERS = 4;
+    private static final int NUM_WRITES = 500;
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+
+        final SimpleKVDatabase kvstore = new SimpleKVDatabase();
+        final Database db = new Database(kvstore);
+
+        final SchemaModel schema = SchemaModel.fromXML(new ByteArrayInputStream((
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<Schema formatVersion=\"2\">\n"
+          + "  <ObjectType name=\"Foo\" storageId=\"1\">\n"
+          + "    <SimpleField name=\"value\" type=\"int\" storageId=\"2\" indexed=\"true\"/>\n"
+          + "    <CounterField name=\"counter\" storageId=\"3\"/>\n"
+          + "  </ObjectType>\n"
+          + "</Schema>\n"
+          ).getBytes("UTF-8")));
+
+        final Transaction tx = db.createTransaction(schema, 1, true);
+
+        // Create objects
+        final ObjId[] ids = new ObjId[NUM_OBJECTS];
+        for (int i = 0; i < NUM_OBJECTS; i++)
+            ids[i] = tx.create(1);
+
+        // Start readers, each of which verifies values only increase and are always indexed
+        final AtomicBoolean done = new AtomicBoolean();
+        final ExecutorService executor = Executors.newFixedThreadPool(NUM_READERS + 1);
+        final ArrayList<Future<Integer>> readers = new ArrayList<>();
+        for (int i = 0; i < NUM_READERS; i++) {
+            readers.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    final int[] lastValues = new int[NUM_OBJECTS];
+                    int count = 0;
+                    while (!done.get()) {
+                        for (int j = 0; j < NUM_OBJECTS; j++) {
+                            final int value = (Integer)tx.readSimpleField(ids[j], 2, true);
+                            Assert.assertTrue(value >= lastValues[j], "value went backwards: " + value + " < " + lastValues[j]);
+                            lastValues[j] = value;
+                            Assert.assertTrue(tx.readCounterField(ids[j], 3, true) >= value);
+                            Assert.assertTrue(tx.exists(ids[j]));
+                            final NavigableSet<ObjId> refs = tx.queryIndex(2).asMap().get(value);
+                            final boolean indexed = refs != null && refs.contains(ids[j]);
+                            if ((Integer)tx.readSimpleField(ids[j], 2, true) == value)      // value was stable during lookup
+                                Assert.assertTrue(indexed, "index entry missing for " + value);
+                            count++;
+                        }
+                        Assert.assertEquals(tx.getAll(1).size(), NUM_OBJECTS);
+                    }
+                    return count;
+                }
+            }));
+        }
+
+        // Write values in a separate thread
+        final Future<?> writer = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                try {
+                    for (int i = 1; i <= NUM_WRITES; i++) {
+                        final ObjId id = ids[i % NUM_OBJECTS];
+                        tx.adjustCounterField(id, 3, i, true);
+                        tx.writeSimpleField(id, 2, i, true);
+                    }
+                } finally {
+                    done.set(true);
+                }
+                return null;
+            }
+        });
+
+        // Wait for completion
+        writer.get();
+        for (Future<Integer> reader : readers)
+            Assert.assertTrue(reader.get() > 0);
+        executor.shutdown();
+
+        // Verify final state
+        for (int i = 0; i < NUM_OBJECTS; i++) {
+            final int expected = NUM_WRITES - ((NUM_WRITES - i) % NUM_OBJECTS);
+            Assert.assertEquals(tx.readSimpleField(ids[i], 2, false), expected);
+        }
+        tx.commit();
+    }
+}
+
@@ -18,6 +18,7 @@ import org.jsimpledb.parse.ParseContext;
 import org.jsimpledb.util.ByteReader;
 import org.jsimpledb.util.ByteUtil;
 import org.jsimpledb.util.ByteWriter;
+import org.jsimpledb.util.UnsignedIntEncoder;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -50,6 +51,11 @@ public class FieldTypeTest extends TestSupport {
             final T value2 = fieldType.read(new ByteReader(encodings[i]));
             this.assertEquals(fieldType, value2, value);
 
+            // Skip
+            final ByteReader reader = new ByteReader(encodings[i]);
+            fieldType.skip(reader);
+            Assert.assertEquals(reader.remain(), 0, "skip() failed for " + fieldType.toParseableString(value));
+
             // String encoding
             if (value != null) {
                 Assert.assertEquals(fieldType.toString(value2), fieldType.toString(value));
@@ -104,6 +110,82 @@ public class FieldTypeTest extends TestSupport {
             Assert.assertEquals((double[])expected, (double[])actual);
     }
 
+    @Test
+    public void testStringEncoding() throws Exception {
+        final FieldType<String> fieldType = new StringType();
+        final char[] specials = { '\u0000', '\u0001', '\u0002', '\u007f', '\u0080', '\u00fa', '\u00fb', '\u00ff', '\u0100',
+          '\u20ac', '\ud800', '\udfff', '\uffff' };
+        for (int i = 0; i < 2000; i++) {
+
+            // Build random string mixing long ASCII runs with special characters
+            final StringBuilder buf = new StringBuilder();
+            final int length = this.random.nextInt(50);
+            for (int j = 0; j < length; j++) {
+                buf.append(this.random.nextInt(5) == 0 ?
+                  specials[this.random.nextInt(specials.length)] : (char)(' ' + this.random.nextInt(95)));
+            }
+            final String value = buf.toString();
+
+            // Compare with one character at a time encoding
+            final ByteWriter expected = new ByteWriter();
+            for (int j = 0; j < value.length(); j++) {
+                final int ch = value.charAt(j);
+                if (ch <= 1)
+                    expected.writeByte(0x01);
+                UnsignedIntEncoder.write(expected, ch);
+            }
+            expected.writeByte(0x00);
+            final ByteWriter writer = new ByteWriter();
+            writer.writeByte(0x55);
+            fieldType.write(writer, value);
+            writer.writeByte(0xaa);
+            Assert.assertEquals(writer.getBytes(1, writer.getLength() - 2), expected.getBytes(), "wrong encoding of " + value);
+
+            // Decode and skip
+            final ByteReader reader = new ByteReader(writer.getBytes(), 1);
+            Assert.assertEquals(fieldType.read(reader), value);
+            Assert.assertEquals(reader.readByte(), 0xaa);
+            final ByteReader reader2 = new ByteReader(writer.getBytes(), 1);
+            fieldType.skip(reader2);
+            Assert.assertEquals(reader2.readByte(), 0xaa);
+        }
+    }
+
+    @Test
+    public void testLargeArrays() throws Exception {
+        for (int length : new int[] { 0, 1, 15, 16, 17, 1000 }) {
+            final short[] shorts = new short[length];
+            final int[] ints = new int[length];
+            final long[] longs = new long[length];
+            final float[] floats = new float[length];
+            final double[] doubles = new double[length];
+            for (int i = 0; i < length; i++) {
+                shorts[i] = (short)this.random.nextInt();
+                ints[i] = this.random.nextInt() >> this.random.nextInt(32);
+                longs[i] = this.random.nextLong() >> this.random.nextInt(64);
+                floats[i] = this.random.nextFloat() - 0.5f;
+                doubles[i] = this.random.nextGaussian();
+            }
+            this.testLargeArray(new ShortArrayType(), shorts);
+            this.testLargeArray(new IntegerArrayType(), ints);
+            this.testLargeArray(new LongArrayType(), longs);
+            this.testLargeArray(new FloatArrayType(), floats);
+            this.testLargeArray(new DoubleArrayType(), doubles);
+        }
+    }
+
+    private <T> void testLargeArray(FieldType<T> fieldType, T array) {
+        final ByteWriter writer = new ByteWriter();
+        fieldType.write(writer, array);
+        writer.writeByte(0x55);
+        final ByteReader reader = new ByteReader(writer);
+        this.assertEquals(fieldType, fieldType.read(reader), array);
+        Assert.assertEquals(reader.readByte(), 0x55);
+        final ByteReader reader2 = new ByteReader(writer);
+        fieldType.skip(reader2);
+        Assert.assertEquals(reader2.readByte(), 0x55);
+    }
+
     @DataProvider(name = "cases")
     public Object[][] genCases() throws Exception {
         return new Object[][] {
@@ -183,6 +265,17 @@ public class FieldTypeTest extends TestSupport {
                 "\u0002",
                 "\u0002x",
                 "foo",
+                "foo\u0000bar",
+                "foo\u0001",
+                "foo\u00fa",
+                "foo\u00fabar",
+                "foo\u00fb",
+                "foo\u00fbbar",
+                "\u00fa",
+                "\u00fb",
+                "\u0100",
+                "\u20acx\u20ac",
+                "\uffff",
                 null
             }},
 
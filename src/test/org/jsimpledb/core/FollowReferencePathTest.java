@@ -0,0 +1,145 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.core;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+
+import org.jsimpledb.TestSupport;
+import org.jsimpledb.kv.simple.SimpleKVDatabase;
+import org.jsimpledb.schema.SchemaModel;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class FollowReferencePathTest extends TestSupport {
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testFollowReferencePath() throws Exception {
+
+        final SimpleKVDatabase kvstore = new SimpleKVDatabase();
+        final Database db = new Database(kvstore);
+
+        final SchemaModel schema = SchemaModel.fromXML(new ByteArrayInputStream((
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<Schema formatVersion=\"2\">\n"
+          + "  <ObjectType name=\"Foo\" storageId=\"1\">\n"
+          + "    <ReferenceField name=\"ref\" storageId=\"10\"/>\n"
+          + "    <SetField name=\"set\" storageId=\"20\">\n"
+          + "        <ReferenceField storageId=\"21\"/>\n"
+          + "    </SetField>"
+          + "    <ListField name=\"list\" storageId=\"30\">\n"
+          + "        <ReferenceField storageId=\"31\"/>\n"
+          + "    </ListField>"
+          + "    <MapField name=\"map\" storageId=\"40\">\n"
+          + "        <ReferenceField storageId=\"41\"/>\n"
+          + "        <ReferenceField storageId=\"42\"/>\n"
+          + "    </MapField>"
+          + "    <SimpleField name=\"i\" type=\"int\" storageId=\"50\"/>\n"
+          + "  </ObjectType>\n"
+          + "  <ObjectType name=\"Bar\" storageId=\"2\">\n"
+          + "    <ReferenceField name=\"ref\" storageId=\"10\"/>\n"
+          + "  </ObjectType>\n"
+          + "</Schema>\n"
+          ).getBytes("UTF-8")));
+
+        final Transaction tx = db.createTransaction(schema, 1, true);
+
+        final ObjId f1 = tx.create(1);
+        final ObjId f2 = tx.create(1);
+        final ObjId f3 = tx.create(1);
+        final ObjId b1 = tx.create(2);
+        final ObjId b2 = tx.create(2);
+        final ObjId gone = tx.create(2);
+        tx.delete(gone);
+
+        tx.writeSimpleField(f1, 10, f2, true);
+        tx.writeSimpleField(f2, 10, b1, true);
+        tx.writeSimpleField(b1, 10, f3, true);
+        tx.writeSimpleField(b2, 10, gone, true);
+
+        ((NavigableSet<ObjId>)tx.readSetField(f1, 20, true)).add(f3);
+        ((NavigableSet<ObjId>)tx.readSetField(f1, 20, true)).add(b2);
+        ((NavigableSet<ObjId>)tx.readSetField(f2, 20, true)).add(f1);
+
+        ((List<ObjId>)tx.readListField(f1, 30, true)).add(b1);
+        ((List<ObjId>)tx.readListField(f1, 30, true)).add(null);
+        ((List<ObjId>)tx.readListField(f1, 30, true)).add(b1);
+        ((List<ObjId>)tx.readListField(f3, 30, true)).add(gone);
+
+        ((NavigableMap<ObjId, ObjId>)tx.readMapField(f2, 40, true)).put(f3, b2);
+        ((NavigableMap<ObjId, ObjId>)tx.readMapField(f2, 40, true)).put(b1, null);
+
+
+    // Simple reference field
+
+        Assert.assertEquals(tx.followReferencePath(new int[] { 10 }, Arrays.asList(f1)), buildSet(f2));
+        Assert.assertEquals(tx.followReferencePath(new int[] { 10 }, Arrays.asList(f1, f2, f3)), buildSet(f2, b1));
+        Assert.assertEquals(tx.followReferencePath(new int[] { 10 }, Arrays.asList(b2)), buildSet(gone));
+        Assert.assertEquals(tx.followReferencePath(new int[] { 10, 10 }, Arrays.asList(f1)), buildSet(b1));
+        Assert.assertEquals(tx.followReferencePath(new int[] { 10, 10, 10 }, Arrays.asList(f1)), buildSet(f3));
+        Assert.assertEquals(tx.followReferencePath(new int[] { 10, 10, 10, 10 }, Arrays.asList(f1)), buildSet());
+
+    // Complex sub-fields
+
+        Assert.assertEquals(tx.followReferencePath(new int[] { 21 }, Arrays.asList(f1, f2)), buildSet(f1, f3, b2));
+        Assert.assertEquals(tx.followReferencePath(new int[] { 31 }, Arrays.asList(f1, f2, f3)), buildSet(b1, gone));
+        Assert.assertEquals(tx.followReferencePath(new int[] { 41 }, Arrays.asList(f2)), buildSet(f3, b1));
+        Assert.assertEquals(tx.followReferencePath(new int[] { 42 }, Arrays.asList(f2)), buildSet(b2));
+        Assert.assertEquals(tx.followReferencePath(new int[] { 21, 31 }, Arrays.asList(f1)), buildSet(gone));
+        Assert.assertEquals(tx.followReferencePath(new int[] { 10, 41, 10 }, Arrays.asList(f1)), buildSet(f3));
+        Assert.assertEquals(tx.followReferencePath(new int[] { 31, 10, 21 }, Arrays.asList(f1)), buildSet());
+
+    // Missing objects and objects without the field are ignored
+
+        Assert.assertEquals(tx.followReferencePath(new int[] { 10 }, Arrays.asList(gone, new ObjId(1))), buildSet());
+        Assert.assertEquals(tx.followReferencePath(new int[] { 21 }, Arrays.asList(b1, b2)), buildSet());
+        Assert.assertEquals(tx.followReferencePath(new int[] { 21 }, Collections.<ObjId>emptySet()), buildSet());
+
+    // Consistency with invertReferencePath()
+
+        final int[][] paths = { { 10 }, { 21 }, { 31 }, { 41 }, { 42 }, { 10, 10 }, { 21, 10 }, { 10, 41 }, { 31, 10, 21 } };
+        final List<ObjId> all = Arrays.asList(f1, f2, f3, b1, b2);
+        for (int[] path : paths) {
+            for (ObjId start : all) {
+                for (ObjId target : tx.followReferencePath(path, Collections.singleton(start))) {
+                    if (!target.equals(gone))
+                        Assert.assertTrue(tx.invertReferencePath(path, Collections.singleton(target)).contains(start));
+                }
+            }
+        }
+
+    // Errors
+
+        try {
+            tx.followReferencePath(new int[] { 50 }, Arrays.asList(f1));
+            assert false;
+        } catch (UnknownFieldException e) {
+            // expected
+        }
+        try {
+            tx.followReferencePath(new int[] { 20 }, Arrays.asList(f1));
+            assert false;
+        } catch (UnknownFieldException e) {
+            // expected
+        }
+        try {
+            tx.followReferencePath(new int[0], Arrays.asList(f1));
+            assert false;
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        tx.commit();
+    }
+}
+
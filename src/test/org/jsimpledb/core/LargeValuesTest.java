@@ -0,0 +1,213 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.core;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.jsimpledb.TestSupport;
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.simple.SimpleKVDatabase;
+import org.jsimpledb.schema.SchemaModel;
+import org.jsimpledb.util.ByteUtil;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class LargeValuesTest extends TestSupport {
+
+    @Test(dataProvider = "values")
+    public void testRoundTrip(int length, int chunkSize, boolean compress) throws Exception {
+        final byte[] value = this.randomValue(length);
+        final CountingList chunks = new CountingList();
+        Assert.assertEquals(LargeValues.write(chunks, new ByteArrayInputStream(value), chunkSize, compress), length);
+        Assert.assertEquals(chunks.size(), 1 + (length + chunkSize - 1) / chunkSize);
+        Assert.assertEquals(LargeValues.getLength(chunks), length);
+
+        // Read all
+        final InputStream input = LargeValues.read(chunks);
+        Assert.assertEquals(ByteStreams.toByteArray(input), value);
+        Assert.assertEquals(input.read(), -1);
+        input.close();
+
+        // Skip to the middle; only the chunks actually needed should be read
+        if (length > 0) {
+            final int offset = this.random.nextInt(length);
+            final int num = Math.min(length - offset, 1 + this.random.nextInt(chunkSize));
+            chunks.accessed.clear();
+            final InputStream input2 = LargeValues.read(chunks);
+            Assert.assertEquals(input2.skip(offset), offset);
+            final byte[] buf = new byte[num];
+            ByteStreams.readFully(input2, buf);
+            Assert.assertEquals(buf, Arrays.copyOfRange(value, offset, offset + num));
+            final HashSet<Integer> expected = new HashSet<>();
+            expected.add(0);
+            for (int i = offset / chunkSize; i <= (offset + num - 1) / chunkSize; i++)
+                expected.add(1 + i);
+            Assert.assertEquals(chunks.accessed, expected);
+            Assert.assertEquals(input2.skip(length), length - offset - num);
+            Assert.assertEquals(input2.read(), -1);
+        }
+    }
+
+    @DataProvider(name = "values")
+    public Object[][] genValues() {
+        return new Object[][] {
+            { 0, 100, false },
+            { 0, 100, true },
+            { 1, 100, false },
+            { 100, 100, true },
+            { 101, 100, false },
+            { 101, 100, true },
+            { 12345, 1000, false },
+            { 12345, 1000, true },
+            { 100000, LargeValues.DEFAULT_CHUNK_SIZE, true },
+        };
+    }
+
+    @Test
+    public void testCompression() throws Exception {
+        final byte[] value = new byte[100000];
+        final ArrayList<byte[]> chunks = new ArrayList<>();
+        LargeValues.write(chunks, new ByteArrayInputStream(value), 10000, true);
+        Assert.assertEquals(chunks.size(), 11);
+        for (byte[] chunk : chunks.subList(1, chunks.size()))
+            Assert.assertTrue(chunk.length < 1000, "chunk length " + chunk.length);
+        Assert.assertEquals(ByteStreams.toByteArray(LargeValues.read(chunks)), value);
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        final ArrayList<byte[]> chunks = new ArrayList<>();
+        Assert.assertEquals(LargeValues.getLength(chunks), 0);
+        Assert.assertEquals(LargeValues.read(chunks).read(), -1);
+
+        // Bad header
+        chunks.add(new byte[] { (byte)0x99 });
+        try {
+            LargeValues.read(chunks);
+            assert false;
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // Missing chunk
+        chunks.clear();
+        LargeValues.write(chunks, new ByteArrayInputStream(this.randomValue(250)), 100, false);
+        chunks.remove(2);
+        final InputStream input = LargeValues.read(chunks);
+        try {
+            ByteStreams.toByteArray(input);
+            assert false;
+        } catch (IOException e) {
+            // expected
+        }
+
+        // Corrupt compressed chunk
+        chunks.clear();
+        LargeValues.write(chunks, new ByteArrayInputStream(this.randomValue(250)), 100, true);
+        chunks.set(1, new byte[] { 1, 2, 3 });
+        try {
+            ByteStreams.toByteArray(LargeValues.read(chunks));
+            assert false;
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testTransaction() throws Exception {
+
+        final SimpleKVDatabase kvstore = new SimpleKVDatabase();
+        final Database db = new Database(kvstore);
+
+        final SchemaModel schema = SchemaModel.fromXML(new ByteArrayInputStream((
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<Schema formatVersion=\"2\">\n"
+          + "  <ObjectType name=\"Foo\" storageId=\"1\">\n"
+          + "    <ListField name=\"data\" storageId=\"10\">\n"
+          + "      <SimpleField type=\"byte[]\" storageId=\"11\"/>\n"
+          + "    </ListField>"
+          + "    <ListField name=\"ints\" storageId=\"20\">\n"
+          + "      <SimpleField type=\"int\" storageId=\"21\"/>\n"
+          + "    </ListField>"
+          + "    <ListField name=\"indexed\" storageId=\"30\">\n"
+          + "      <SimpleField type=\"byte[]\" storageId=\"31\" indexed=\"true\"/>\n"
+          + "    </ListField>"
+          + "  </ObjectType>\n"
+          + "</Schema>\n"
+          ).getBytes("UTF-8")));
+
+        final byte[] value = this.randomValue(3 * LargeValues.DEFAULT_CHUNK_SIZE + 17);
+
+        // Write value
+        Transaction tx = db.createTransaction(schema, 1, true);
+        final ObjId id = tx.create(1);
+        Assert.assertEquals(ByteStreams.toByteArray(tx.readLargeValue(id, 10, false)), new byte[0]);
+        Assert.assertEquals(tx.writeLargeValue(id, 10, new ByteArrayInputStream(value), true, false), value.length);
+        Assert.assertEquals(tx.readListField(id, 10, false).size(), 5);
+        tx.commit();
+
+        // Read it back
+        tx = db.createTransaction(schema, 1, true);
+        final InputStream input = tx.readLargeValue(id, 10, false);
+        Assert.assertEquals(input.skip(2 * LargeValues.DEFAULT_CHUNK_SIZE), 2 * LargeValues.DEFAULT_CHUNK_SIZE);
+        Assert.assertEquals(ByteStreams.toByteArray(input),
+          Arrays.copyOfRange(value, 2 * LargeValues.DEFAULT_CHUNK_SIZE, value.length));
+
+        // Replace with a shorter value
+        Assert.assertEquals(tx.writeLargeValue(id, 10, new ByteArrayInputStream(new byte[] { 1, 2, 3 }), false, false), 3);
+        Assert.assertEquals(tx.readListField(id, 10, false).size(), 2);
+        Assert.assertEquals(ByteStreams.toByteArray(tx.readLargeValue(id, 10, false)), new byte[] { 1, 2, 3 });
+
+        // Wrong field types
+        for (int storageId : new int[] { 20, 30 }) {
+            try {
+                tx.readLargeValue(id, storageId, false);
+                assert false;
+            } catch (UnknownFieldException e) {
+                // expected
+            }
+        }
+
+        // Deleting the object deletes the value
+        final byte[] prefix = tx.getKey(id);
+        tx.delete(id);
+        final KVPair pair = tx.getKVTransaction().getAtLeast(prefix);
+        Assert.assertTrue(pair == null || !ByteUtil.isPrefixOf(prefix, pair.getKey()));
+        tx.commit();
+    }
+
+    private byte[] randomValue(int length) {
+        final byte[] value = new byte[length];
+        for (int i = 0; i < length; i++)
+            value[i] = (byte)(this.random.nextBoolean() ? this.random.nextInt(256) : i % 7);
+        return value;
+    }
+
+// CountingList
+
+    @SuppressWarnings("serial")
+    private static class CountingList extends ArrayList<byte[]> {
+
+        final HashSet<Integer> accessed = new HashSet<>();
+
+        @Override
+        public byte[] get(int index) {
+            this.accessed.add(index);
+            return super.get(index);
+        }
+    }
+}
+
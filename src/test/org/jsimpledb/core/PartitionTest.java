@@ -0,0 +1,133 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.core;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jsimpledb.TestSupport;
+import org.jsimpledb.kv.simple.SimpleKVDatabase;
+import org.jsimpledb.schema.SchemaModel;
+import org.jsimpledb.tuple.Tuple3;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class PartitionTest extends TestSupport {
+
+    private static final int NUM_OBJECTS = 300;
+
+    @Test
+    public void testPartition() throws Exception {
+
+        final SimpleKVDatabase kvstore = new SimpleKVDatabase();
+        final Database db = new Database(kvstore);
+
+        final SchemaModel schema = SchemaModel.fromXML(new ByteArrayInputStream((
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<Schema formatVersion=\"2\">\n"
+          + "  <ObjectType name=\"Foo\" storageId=\"1\">\n"
+          + "    <SimpleField name=\"i\" type=\"int\" storageId=\"2\" indexed=\"true\"/>\n"
+          + "    <SimpleField name=\"s\" type=\"java.lang.String\" storageId=\"3\"/>\n"
+          + "    <CompositeIndex storageId=\"10\" name=\"is\">\n"
+          + "      <IndexedField storageId=\"2\"/>\n"
+          + "      <IndexedField storageId=\"3\"/>\n"
+          + "    </CompositeIndex>\n"
+          + "  </ObjectType>\n"
+          + "  <ObjectType name=\"Bar\" storageId=\"4\">\n"
+          + "    <SimpleField name=\"i\" type=\"int\" storageId=\"2\" indexed=\"true\"/>\n"
+          + "  </ObjectType>\n"
+          + "</Schema>\n"
+          ).getBytes("UTF-8")));
+
+        final Transaction tx = db.createTransaction(schema, 1, true);
+
+        // Empty
+        Assert.assertEquals(tx.partitionAll(1, 4).size(), 1);
+        Assert.assertEquals(tx.queryIndex(2).partition(4).size(), 1);
+
+        // Create objects
+        for (int i = 0; i < NUM_OBJECTS; i++) {
+            final ObjId id = tx.create(1);
+            tx.writeSimpleField(id, 2, this.random.nextInt(NUM_OBJECTS / 4), true);
+            tx.writeSimpleField(id, 3, "str" + this.random.nextInt(10), true);
+        }
+        for (int i = 0; i < 10; i++)
+            tx.writeSimpleField(tx.create(4), 2, i, true);
+
+        // Partition objects and scan partitions in parallel
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int maxPartitions : new int[] { 1, 2, 4, 7 }) {
+            final List<NavigableSet<ObjId>> partitions = tx.partitionAll(1, maxPartitions);
+            Assert.assertTrue(partitions.size() > 0 && partitions.size() <= maxPartitions);
+            final ArrayList<Future<List<ObjId>>> futures = new ArrayList<>();
+            for (final NavigableSet<ObjId> partition : partitions) {
+                futures.add(executor.submit(new Callable<List<ObjId>>() {
+                    @Override
+                    public List<ObjId> call() {
+                        final ArrayList<ObjId> ids = new ArrayList<>();
+                        for (ObjId id : partition) {
+                            Assert.assertNotNull(tx.readSimpleField(id, 2, false));
+                            ids.add(id);
+                        }
+                        return ids;
+                    }
+                }));
+            }
+            final ArrayList<ObjId> all = new ArrayList<>();
+            for (Future<List<ObjId>> future : futures)
+                all.addAll(future.get());
+            Assert.assertEquals(all, new ArrayList<ObjId>(tx.getAll(1)));
+        }
+        executor.shutdown();
+
+        // Partition simple index
+        for (int maxPartitions : new int[] { 1, 2, 4, 7 }) {
+            final List<? extends CoreIndex<?, ObjId>> partitions = tx.queryIndex(2).partition(maxPartitions);
+            Assert.assertTrue(partitions.size() > 0 && partitions.size() <= maxPartitions);
+            final ArrayList<Object> all = new ArrayList<>();
+            for (CoreIndex<?, ObjId> partition : partitions)
+                all.addAll(partition.asSet());
+            Assert.assertEquals(all, new ArrayList<Object>(tx.queryIndex(2).asSet()));
+            Assert.assertEquals(new HashSet<Object>(all).size(), all.size());
+        }
+
+        // Partition composite index
+        for (int maxPartitions : new int[] { 1, 3, 5 }) {
+            final List<? extends CoreIndex2<?, ?, ObjId>> partitions = tx.queryCompositeIndex2(10).partition(maxPartitions);
+            Assert.assertTrue(partitions.size() > 0 && partitions.size() <= maxPartitions);
+            final ArrayList<Tuple3<?, ?, ObjId>> all = new ArrayList<>();
+            for (CoreIndex2<?, ?, ObjId> partition : partitions)
+                all.addAll(partition.asSet());
+            Assert.assertEquals(all, new ArrayList<Tuple3<?, ?, ObjId>>(tx.queryCompositeIndex2(10).asSet()));
+        }
+
+        // Errors
+        try {
+            tx.partitionAll(1, 0);
+            assert false;
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            tx.partitionAll(99, 2);
+            assert false;
+        } catch (UnknownTypeException e) {
+            // expected
+        }
+
+        tx.commit();
+    }
+}
+
@@ -0,0 +1,150 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.core;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+
+import org.jsimpledb.TestSupport;
+import org.jsimpledb.kv.ReadOnlyKVTransaction;
+import org.jsimpledb.kv.RetryTransactionException;
+import org.jsimpledb.kv.mvcc.MemoryAtomicKVStore;
+import org.jsimpledb.kv.mvcc.SnapshotKVDatabase;
+import org.jsimpledb.kv.simple.SimpleKVDatabase;
+import org.jsimpledb.schema.SchemaModel;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class SnapshotReadTest extends TestSupport {
+
+    @Test
+    public void testSnapshotReads() throws Exception {
+
+        final Database db = new Database(new SnapshotKVDatabase(new MemoryAtomicKVStore()));
+        final SchemaModel schema = this.getSchema();
+
+        // Populate
+        Transaction tx = db.createTransaction(schema, 1, true);
+        for (int i = 0; i < 10; i++) {
+            final ObjId id = tx.create(1);
+            tx.writeSimpleField(id, 2, i, true);
+            tx.writeSimpleField(id, 3, "str" + i, true);
+        }
+        tx.commit();
+
+        // Scan index normally while another transaction modifies it - should conflict
+        final Transaction tx1 = db.createTransaction(schema, 1, true);
+        final Transaction tx2 = db.createTransaction(schema, 1, true);
+        Assert.assertEquals(tx1.queryIndex(2).asMap().size(), 10);
+        tx1.writeSimpleField(tx1.create(4), 2, 100, true);
+        tx2.writeSimpleField(tx2.create(1), 2, 10, true);
+        tx2.commit();
+        try {
+            tx1.commit();
+            assert false;
+        } catch (RetryTransactionException e) {
+            // expected
+        }
+
+        // Scan same index using snapshot reads - should not conflict
+        final Transaction tx3 = db.createTransaction(schema, 1, true);
+        final Transaction tx4 = db.createTransaction(schema, 1, true);
+        final CoreIndex<?, ObjId> index = tx3.queryIndex(2).withSnapshotReads();
+        Assert.assertEquals(index.asMap().size(), 11);
+        final ArrayList<Object> all = new ArrayList<>();
+        for (CoreIndex<?, ObjId> partition : index.partition(3))
+            all.addAll(partition.asSet());
+        Assert.assertEquals(all, new ArrayList<Object>(index.asSet()));
+        final CoreIndex2<?, ?, ObjId> index2 = tx3.queryCompositeIndex2(10).withSnapshotReads();
+        Assert.assertEquals(index2.asSet().size(), 11);
+        Assert.assertEquals(index2.asIndex().asMap().keySet(), index.asMap().keySet());
+
+        // Snapshot reads should see the transaction's own writes
+        final ObjId id3 = tx3.create(4);
+        tx3.writeSimpleField(id3, 2, 200, true);
+        Assert.assertEquals(index.asMap().size(), 12);
+        Assert.assertEquals(index.asMap().get(200), buildSet(id3));
+
+        tx4.writeSimpleField(tx4.create(1), 2, 11, true);
+        tx4.commit();
+        tx3.commit();
+
+        // Stale transactions
+        try {
+            tx3.queryIndex(2).withSnapshotReads();
+            assert false;
+        } catch (StaleTransactionException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReadOnly() throws Exception {
+
+        final Database db = new Database(new SnapshotKVDatabase(new MemoryAtomicKVStore()));
+        final SchemaModel schema = this.getSchema();
+
+        // First transaction records the schema, so read-only mode is not pushed down and the schema is committed
+        Transaction tx = db.createTransaction(schema, 1, true);
+        tx.setReadOnly(true);
+        Assert.assertFalse(((ReadOnlyKVTransaction)tx.getKVTransaction()).isReadOnly());
+        tx.commit();
+
+        // Read-only mode is pushed down when no changes have been made, and can be disabled again
+        tx = db.createTransaction(schema, 1, true);
+        tx.setReadOnly(true);
+        Assert.assertTrue(((ReadOnlyKVTransaction)tx.getKVTransaction()).isReadOnly());
+        Assert.assertTrue(tx.getAll(1).isEmpty());
+        tx.setReadOnly(false);
+        Assert.assertFalse(((ReadOnlyKVTransaction)tx.getKVTransaction()).isReadOnly());
+        final ObjId id = tx.create(1);
+        tx.commit();
+
+        // Changes made before enabling read-only mode are kept
+        tx = db.createTransaction(schema, 1, true);
+        tx.writeSimpleField(id, 2, 123, true);
+        tx.setReadOnly(true);
+        Assert.assertFalse(((ReadOnlyKVTransaction)tx.getKVTransaction()).isReadOnly());
+        tx.commit();
+        tx = db.createTransaction(schema, 1, true);
+        Assert.assertEquals(tx.readSimpleField(id, 2, true), 123);
+        tx.commit();
+    }
+
+    @Test
+    public void testNotSupported() throws Exception {
+
+        // Key/value stores without snapshot read support behave normally
+        final Database db = new Database(new SimpleKVDatabase());
+        final Transaction tx = db.createTransaction(this.getSchema(), 1, true);
+        for (int i = 0; i < 10; i++)
+            tx.writeSimpleField(tx.create(1), 2, i, true);
+        Assert.assertEquals(tx.queryIndex(2).withSnapshotReads().asSet(), tx.queryIndex(2).asSet());
+        tx.commit();
+    }
+
+    private SchemaModel getSchema() throws Exception {
+        return SchemaModel.fromXML(new ByteArrayInputStream((
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<Schema formatVersion=\"2\">\n"
+          + "  <ObjectType name=\"Foo\" storageId=\"1\">\n"
+          + "    <SimpleField name=\"i\" type=\"int\" storageId=\"2\" indexed=\"true\"/>\n"
+          + "    <SimpleField name=\"s\" type=\"java.lang.String\" storageId=\"3\"/>\n"
+          + "    <CompositeIndex storageId=\"10\" name=\"is\">\n"
+          + "      <IndexedField storageId=\"2\"/>\n"
+          + "      <IndexedField storageId=\"3\"/>\n"
+          + "    </CompositeIndex>\n"
+          + "  </ObjectType>\n"
+          + "  <ObjectType name=\"Bar\" storageId=\"4\">\n"
+          + "    <SimpleField name=\"i\" type=\"int\" storageId=\"2\" indexed=\"true\"/>\n"
+          + "  </ObjectType>\n"
+          + "</Schema>\n"
+          ).getBytes("UTF-8")));
+    }
+}
+
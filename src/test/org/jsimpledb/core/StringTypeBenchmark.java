@@ -0,0 +1,135 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.core;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.jsimpledb.util.ByteReader;
+import org.jsimpledb.util.ByteWriter;
+import org.jsimpledb.util.UnsignedIntEncoder;
+
+/**
+ * Micro-benchmark comparing {@link StringType} encoding and decoding against the original one character at a time
+ * implementation, using a mix of realistic strings (names, e-mail addresses, URLs, and some non-ASCII text).
+ *
+ * <p>
+ * Usage: {@code java org.jsimpledb.core.StringTypeBenchmark [iterations]}
+ * </p>
+ */
+public final class StringTypeBenchmark {
+
+    private static final String[] WORDS = {
+        "alice", "bob", "carol", "smith", "jones", "example", "com", "org", "www", "index", "html", "user", "account",
+        "M\u00fcller", "Fran\u00e7ois", "\u00c5ngstr\u00f6m", "\u65e5\u672c\u8a9e", "\u20ac100"
+    };
+    private static final String[] SEPARATORS = { " ", ".", "@", "/", "-", "_", "://", "?q=" };
+
+    private StringTypeBenchmark() {
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+
+        // Generate strings and their encodings
+        final Random random = new Random(0);
+        final ArrayList<String> strings = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            final StringBuilder buf = new StringBuilder();
+            final int numWords = 1 + random.nextInt(6);
+            for (int j = 0; j < numWords; j++) {
+                if (j > 0)
+                    buf.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+                final String word = WORDS[random.nextInt(random.nextInt(8) == 0 ? WORDS.length : 13)];
+                buf.append(random.nextBoolean() ? word : Character.toUpperCase(word.charAt(0)) + word.substring(1));
+            }
+            strings.add(buf.toString());
+        }
+        final StringType stringType = new StringType();
+        final ByteWriter encoded = new ByteWriter();
+        for (String string : strings)
+            stringType.write(encoded, string);
+        final byte[] data = encoded.getBytes();
+
+        // Run
+        for (int i = 0; i < iterations; i++) {
+            final boolean report = i >= iterations / 2;
+            StringTypeBenchmark.time(report, "write (per character)", new Runnable() {
+                @Override
+                public void run() {
+                    final ByteWriter writer = new ByteWriter(data.length);
+                    for (String string : strings)
+                        StringTypeBenchmark.writePerCharacter(writer, string);
+                }
+            });
+            StringTypeBenchmark.time(report, "write (StringType)", new Runnable() {
+                @Override
+                public void run() {
+                    final ByteWriter writer = new ByteWriter(data.length);
+                    for (String string : strings)
+                        stringType.write(writer, string);
+                }
+            });
+            StringTypeBenchmark.time(report, "read (per character)", new Runnable() {
+                @Override
+                public void run() {
+                    final ByteReader reader = new ByteReader(data);
+                    while (reader.remain() > 0)
+                        StringTypeBenchmark.readPerCharacter(reader);
+                }
+            });
+            StringTypeBenchmark.time(report, "read (StringType)", new Runnable() {
+                @Override
+                public void run() {
+                    final ByteReader reader = new ByteReader(data);
+                    while (reader.remain() > 0)
+                        stringType.read(reader);
+                }
+            });
+        }
+    }
+
+    private static void time(boolean report, String label, Runnable task) {
+        final long start = System.nanoTime();
+        task.run();
+        final long elapsed = System.nanoTime() - start;
+        if (report)
+            System.out.println(String.format("%-24s%8.2f ms", label, elapsed / 1000000.0));
+    }
+
+    // Original implementation
+    private static void writePerCharacter(ByteWriter writer, String value) {
+        final int max = value.length();
+        for (int i = 0; i < max; i++) {
+            final int ch = value.charAt(i);
+            if (ch <= 0x01)
+                writer.writeByte(0x01);
+            UnsignedIntEncoder.write(writer, ch);
+        }
+        writer.writeByte(0x00);
+    }
+
+    // Original implementation
+    private static String readPerCharacter(ByteReader reader) {
+        final StringBuilder buf = new StringBuilder();
+        while (true) {
+            int ch = UnsignedIntEncoder.read(reader);
+            if (ch == 0x00)
+                return buf.toString();
+            if (ch == 0x01)
+                ch = reader.readByte();
+            buf.append((char)ch);
+        }
+    }
+}
+
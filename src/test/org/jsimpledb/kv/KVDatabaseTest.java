@@ -9,6 +9,10 @@ package org.jsimpledb.kv;
 
 import com.google.common.base.Converter;
 import com.mysql.jdbc.jdbc2.optional.MysqlDataSource;
+import com.sleepycat.je.CursorConfig;
+import com.sleepycat.je.Durability;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.TransactionConfig;
 
 import java.io.Closeable;
 import java.io.File;
@@ -27,13 +31,19 @@ import java.util.concurrent.Future;
 
 import org.jsimpledb.TestSupport;
 import org.jsimpledb.kv.bdb.BerkeleyKVDatabase;
+import org.jsimpledb.kv.bdb.BerkeleyKVTransaction;
 import org.jsimpledb.kv.fdb.FoundationKVDatabase;
 import org.jsimpledb.kv.leveldb.LevelDBKVDatabase;
+import org.jsimpledb.kv.mvcc.MemoryAtomicKVStore;
+import org.jsimpledb.kv.mvcc.SnapshotKVDatabase;
+import org.jsimpledb.kv.simple.LogKVDatabase;
 import org.jsimpledb.kv.simple.SimpleKVDatabase;
 import org.jsimpledb.kv.sql.IsolationLevel;
 import org.jsimpledb.kv.sql.MySQLKVDatabase;
 import org.jsimpledb.kv.util.NavigableMapKVStore;
+import org.jsimpledb.util.ByteReader;
 import org.jsimpledb.util.ByteUtil;
+import org.jsimpledb.util.ByteWriter;
 import org.jsimpledb.util.ConvertedNavigableMap;
 import org.testng.Assert;
 import org.testng.annotations.AfterClass;
@@ -63,14 +73,18 @@ public class KVDatabaseTest extends TestSupport {
     private FoundationKVDatabase fdbKV;
     private BerkeleyKVDatabase bdbKV;
     private LevelDBKVDatabase leveldbKV;
+    private LogKVDatabase logKV;
+    private SnapshotKVDatabase snapshotKV;
 
     private long timeoutTestStartTime;
 
     @BeforeClass
     @Parameters("testSimpleKV")
     public void setTestSimpleKV(@Optional String testSimpleKV) {
-        if (testSimpleKV != null && Boolean.valueOf(testSimpleKV))
+        if (testSimpleKV != null && Boolean.valueOf(testSimpleKV)) {
             this.simpleKV = new SimpleKVDatabase(new NavigableMapKVStore(), 250, 500);
+            this.snapshotKV = new SnapshotKVDatabase(new MemoryAtomicKVStore());
+        }
     }
 
     @BeforeClass
@@ -123,6 +137,21 @@ public class KVDatabaseTest extends TestSupport {
         }
     }
 
+    @BeforeClass
+    @Parameters("logKVDirPrefix")
+    public void setLogKVDirPrefix(@Optional String logKVDirPrefix) throws IOException {
+        if (logKVDirPrefix != null) {
+            final File dir = File.createTempFile(logKVDirPrefix, null);
+            Assert.assertTrue(dir.delete());
+            Assert.assertTrue(dir.mkdirs());
+            dir.deleteOnExit();
+            this.logKV = new LogKVDatabase(dir);
+            this.logKV.setWaitTimeout(250);
+            this.logKV.setHoldTimeout(500);
+            this.logKV.start();
+        }
+    }
+
     @BeforeClass
     public void setup() {
         this.executor = Executors.newFixedThreadPool(33);
@@ -137,6 +166,8 @@ public class KVDatabaseTest extends TestSupport {
             this.bdbKV.stop();
         if (this.leveldbKV != null)
             this.leveldbKV.stop();
+        if (this.logKV != null)
+            this.logKV.stop();
     }
 
     @DataProvider(name = "kvdbs")
@@ -147,6 +178,8 @@ public class KVDatabaseTest extends TestSupport {
         list.add(new Object[] { this.fdbKV });
         list.add(new Object[] { this.bdbKV });
         list.add(new Object[] { this.leveldbKV });
+        list.add(new Object[] { this.logKV });
+        list.add(new Object[] { this.snapshotKV });
         for (Iterator<Object[]> i = list.iterator(); i.hasNext(); ) {
             if (i.next()[0] == null)
                 i.remove();
@@ -384,6 +417,49 @@ public class KVDatabaseTest extends TestSupport {
         this.log.info("finished testSequentialTransactions() on " + store);
     }
 
+    @Test
+    public void testBerkeleyTuning() throws Exception {
+        if (this.bdbKV == null)
+            return;
+
+        // Bulk load without synchronous commits, then flush
+        this.bdbKV.setNextTransactionConfig(new TransactionConfig().setDurability(Durability.COMMIT_NO_SYNC));
+        BerkeleyKVTransaction tx = this.bdbKV.createTransaction();
+        tx.removeRange(null, null);
+        for (int i = 0; i < 100; i++)
+            tx.put(new byte[] { 0x20, (byte)i }, new byte[] { (byte)i });
+        tx.commit();
+        this.bdbKV.flushLog(true);
+
+        // A read-committed scan should not retain its read locks
+        tx = this.bdbKV.createTransaction();
+        tx.setCursorConfig(CursorConfig.READ_COMMITTED);
+        tx.setLockMode(LockMode.READ_COMMITTED);
+        int count = 0;
+        try (BerkeleyKVTransaction.CursorIterator i = tx.getRange(b("20"), b("21"), false)) {
+            for ( ; i.hasNext(); i.next())
+                count++;
+        }
+        Assert.assertEquals(count, 100);
+        Assert.assertNotNull(tx.get(b("2000")));
+        this.bdbKV.setNextTransactionConfig(new TransactionConfig().setNoWait(true));
+        final BerkeleyKVTransaction tx2 = this.bdbKV.createTransaction();
+        tx2.put(b("2000"), b("ff"));
+        tx2.put(b("2063"), b("ff"));
+
+        // Check statistics
+        final Map<String, Long> stats = this.bdbKV.getStatistics();
+        for (String name : new String[] {
+          StatisticsKVDatabase.CACHE_MISSES, StatisticsKVDatabase.CACHE_BYTES, StatisticsKVDatabase.LOCK_REQUESTS,
+          StatisticsKVDatabase.LOCK_WAITS, StatisticsKVDatabase.LOG_WRITES, StatisticsKVDatabase.LOG_SYNCS })
+            Assert.assertTrue(stats.get(name) >= 0, "bad value for " + name + " in " + stats);
+        Assert.assertTrue(stats.get(StatisticsKVDatabase.LOCK_REQUESTS) > 0, "stats: " + stats);
+        Assert.assertEquals(stats.get(StatisticsKVDatabase.OPEN_TRANSACTIONS), (Long)2L);
+        tx2.commit();
+        tx.commit();
+        Assert.assertEquals(this.bdbKV.getStatistics().get(StatisticsKVDatabase.OPEN_TRANSACTIONS), (Long)0L);
+    }
+
     @Test
     public void testSimpleKVTimeouts() throws Exception {
 
@@ -432,6 +508,89 @@ public class KVDatabaseTest extends TestSupport {
         Assert.assertEquals(waiterThread.getResult(), "success");
     }
 
+    /**
+     * This test runs mostly-read transactions on a {@link SimpleKVDatabase} from 32 threads at once,
+     * with occasional increments of a per-thread counter, and verifies no reads or increments are lost.
+     */
+    @Test
+    public void testSimpleKVConcurrency() throws Exception {
+        final int numThreads = 32;
+        final int numKeys = 1000;
+        final int numTransactions = 200;
+
+        // Populate database
+        final SimpleKVDatabase store = new SimpleKVDatabase();
+        KVTransaction tx = store.createTransaction();
+        for (int i = 0; i < numKeys; i++)
+            tx.put(this.simpleKVKey(i), this.simpleKVValue(i));
+        for (int i = 0; i < numThreads; i++)
+            tx.put(this.simpleKVCounterKey(i), this.simpleKVValue(0));
+        tx.commit();
+
+        // Run transactions in parallel
+        final ArrayList<Future<Integer>> futures = new ArrayList<>(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            final Random random = new Random(this.random.nextLong());
+            final byte[] counterKey = this.simpleKVCounterKey(i);
+            futures.add(this.executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    int increments = 0;
+                    for (int count = 0; count < numTransactions; count++) {
+                        final boolean increment = count % 10 == 0;
+                        while (true) {
+                            final KVTransaction tx = store.createTransaction();
+                            try {
+                                for (int j = 0; j < 10; j++) {
+                                    final int index = random.nextInt(numKeys);
+                                    Assert.assertEquals(tx.get(KVDatabaseTest.this.simpleKVKey(index)),
+                                      KVDatabaseTest.this.simpleKVValue(index));
+                                }
+                                final KVPair pair = tx.getAtLeast(KVDatabaseTest.this.simpleKVKey(random.nextInt(numKeys)));
+                                Assert.assertNotNull(pair);
+                                if (increment) {
+                                    final int value = ByteUtil.readInt(new ByteReader(tx.get(counterKey)));
+                                    tx.put(counterKey, KVDatabaseTest.this.simpleKVValue(value + 1));
+                                }
+                                tx.commit();
+                            } catch (RetryTransactionException e) {
+                                tx.rollback();
+                                continue;
+                            }
+                            break;
+                        }
+                        if (increment)
+                            increments++;
+                    }
+                    return increments;
+                }
+            }));
+        }
+        final ArrayList<Integer> increments = new ArrayList<>(numThreads);
+        for (Future<Integer> future : futures)
+            increments.add(future.get());
+
+        // Verify counters
+        tx = store.createTransaction();
+        for (int i = 0; i < numThreads; i++)
+            Assert.assertEquals(ByteUtil.readInt(new ByteReader(tx.get(this.simpleKVCounterKey(i)))), (int)increments.get(i));
+        tx.commit();
+    }
+
+    private byte[] simpleKVKey(int index) {
+        return new byte[] { (byte)0x01, (byte)(index >> 8), (byte)index };
+    }
+
+    private byte[] simpleKVCounterKey(int index) {
+        return new byte[] { (byte)0x02, (byte)index };
+    }
+
+    private byte[] simpleKVValue(int value) {
+        final ByteWriter writer = new ByteWriter(4);
+        ByteUtil.writeInt(writer, value);
+        return writer.getBytes();
+    }
+
 // TestThread
 
     public abstract class TestThread extends Thread {
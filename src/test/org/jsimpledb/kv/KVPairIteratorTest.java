@@ -13,10 +13,13 @@ import com.google.common.collect.Lists;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 import org.jsimpledb.TestSupport;
+import org.jsimpledb.kv.util.ForwardingKVStore;
 import org.jsimpledb.kv.util.NavigableMapKVStore;
+import org.jsimpledb.util.ByteUtil;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -39,19 +42,22 @@ public class KVPairIteratorTest extends TestSupport {
         for (byte[] ba : data)
             kv.put(ba, ba);
 
-        // Verify forward iterator matches what we expect
-        final KVPairIterator forwardIterator = new KVPairIterator(kv, null, ranges, false);
-        final List<KVPair> expectedPairsForward = Lists.transform(Arrays.asList(results), pairer);
-        final List<KVPair> actualPairsForward = Lists.newArrayList(forwardIterator);
-        Assert.assertEquals(actualPairsForward, expectedPairsForward);
-
-        // Verify reverse iterator matches what we expect
-        final ArrayList<byte[]> reversedResults = new ArrayList<>(Arrays.asList(results));
-        Collections.reverse(reversedResults);
-        final KVPairIterator reverseIterator = new KVPairIterator(kv, null, ranges, true);
-        final List<KVPair> expectedPairsReverse = Lists.transform(reversedResults, pairer);
-        final List<KVPair> actualPairsReverse = Lists.newArrayList(reverseIterator);
-        Assert.assertEquals(actualPairsReverse, expectedPairsReverse);
+        for (boolean cursorMode : new boolean[] { false, true }) {
+
+            // Verify forward iterator matches what we expect
+            final KVPairIterator forwardIterator = new KVPairIterator(kv, null, ranges, false, cursorMode);
+            final List<KVPair> expectedPairsForward = Lists.transform(Arrays.asList(results), pairer);
+            final List<KVPair> actualPairsForward = Lists.newArrayList(forwardIterator);
+            Assert.assertEquals(actualPairsForward, expectedPairsForward);
+
+            // Verify reverse iterator matches what we expect
+            final ArrayList<byte[]> reversedResults = new ArrayList<>(Arrays.asList(results));
+            Collections.reverse(reversedResults);
+            final KVPairIterator reverseIterator = new KVPairIterator(kv, null, ranges, true, cursorMode);
+            final List<KVPair> expectedPairsReverse = Lists.transform(reversedResults, pairer);
+            final List<KVPair> actualPairsReverse = Lists.newArrayList(reverseIterator);
+            Assert.assertEquals(actualPairsReverse, expectedPairsReverse);
+        }
     }
 
     @DataProvider(name = "iterations")
@@ -181,5 +187,101 @@ public class KVPairIteratorTest extends TestSupport {
         Assert.assertFalse(i.hasNext());
 
     }
+
+    @Test
+    public void testCursorMode() throws Exception {
+        final CountingKVStore kv = new CountingKVStore();
+        for (int i = 0; i < 1000; i++)
+            kv.put(new byte[] { (byte)(i >> 8), (byte)i }, new byte[] { (byte)i });
+
+        // Unfiltered scan should require only one seek in cursor mode, versus one per element in seek mode
+        for (boolean reverse : new boolean[] { false, true }) {
+            kv.reset();
+            Assert.assertEquals(Lists.newArrayList(new KVPairIterator(kv, null, null, reverse, true)).size(), 1000);
+            Assert.assertEquals(kv.seeks, 1);
+            kv.reset();
+            Assert.assertEquals(Lists.newArrayList(new KVPairIterator(kv, null, null, reverse, false)).size(), 1000);
+            Assert.assertEquals(kv.seeks, 1001);
+        }
+
+        // Filter with small gaps: cursor is read through; large gaps: cursor is reopened
+        // (in reverse, there is an additional large gap at the end of the data)
+        final KeyRanges small = krs(kr("0000", "0010"), kr("0012", "0020"), kr("0023", "0030"));
+        final KeyRanges large = krs(kr("0000", "0010"), kr("0080", "0090"), kr("0200", "0210"));
+        for (boolean reverse : new boolean[] { false, true }) {
+            kv.reset();
+            Assert.assertEquals(Lists.newArrayList(new KVPairIterator(kv, null, small, reverse, true)).size(), 43);
+            Assert.assertEquals(kv.seeks, reverse ? 2 : 1);
+            kv.reset();
+            Assert.assertEquals(Lists.newArrayList(new KVPairIterator(kv, null, large, reverse, true)).size(), 48);
+            Assert.assertEquals(kv.seeks, reverse ? 4 : 3);
+        }
+
+        // Random filters and ranges give the same results in both modes
+        for (int count = 0; count < 200; count++) {
+            final ArrayList<KeyRange> list = new ArrayList<>();
+            for (int i = 0; i < this.random.nextInt(10); i++) {
+                final byte[] min = new byte[] { (byte)this.random.nextInt(4), (byte)this.random.nextInt(256) };
+                final byte[] max = new byte[] { (byte)this.random.nextInt(4), (byte)this.random.nextInt(256) };
+                if (ByteUtil.compare(min, max) <= 0)
+                    list.add(new KeyRange(min, max));
+            }
+            final KeyRanges filter = this.random.nextBoolean() ? new KeyRanges(list) : null;
+            final KeyRange range = this.random.nextBoolean() ?
+              new KeyRange(new byte[] { (byte)this.random.nextInt(2) }, new byte[] { (byte)(2 + this.random.nextInt(2)) }) : null;
+            final boolean reverse = this.random.nextBoolean();
+            Assert.assertEquals(Lists.newArrayList(new KVPairIterator(kv, range, filter, reverse, true)),
+              Lists.newArrayList(new KVPairIterator(kv, range, filter, reverse, false)), "range=" + range + " filter=" + filter);
+        }
+
+        // Remove works in cursor mode
+        final KVPairIterator i = new KVPairIterator(kv, null, krs(kr("0100", "0200")), false, true);
+        int removed = 0;
+        while (i.hasNext()) {
+            final KVPair pair = i.next();
+            if ((pair.getKey()[1] & 1) != 0) {
+                i.remove();
+                removed++;
+            }
+        }
+        Assert.assertEquals(removed, 128);
+        Assert.assertEquals(Lists.newArrayList(new KVPairIterator(kv, null, krs(kr("0100", "0200")), false, false)).size(), 128);
+    }
+
+// CountingKVStore
+
+    private static class CountingKVStore extends ForwardingKVStore {
+
+        private final NavigableMapKVStore kv = new NavigableMapKVStore();
+
+        int seeks;
+
+        public void reset() {
+            this.seeks = 0;
+        }
+
+        @Override
+        protected KVStore delegate() {
+            return this.kv;
+        }
+
+        @Override
+        public KVPair getAtLeast(byte[] minKey) {
+            this.seeks++;
+            return super.getAtLeast(minKey);
+        }
+
+        @Override
+        public KVPair getAtMost(byte[] maxKey) {
+            this.seeks++;
+            return super.getAtMost(maxKey);
+        }
+
+        @Override
+        public Iterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+            this.seeks++;
+            return super.getRange(minKey, maxKey, reverse);
+        }
+    }
 }
 
@@ -0,0 +1,172 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Benchmark comparing {@link KeyRanges} against the previous implementation, which re-sorted and re-minimized
+ * the entire list of {@link KeyRange}s on every {@link KeyRanges#add add()} and allocated on every
+ * {@link KeyRanges#contains(byte[]) contains()} and {@link KeyRanges#seekHigher seekHigher()}.
+ *
+ * <p>
+ * Usage: {@code java org.jsimpledb.kv.KeyRangesBenchmark [numRanges [lookups]]}
+ * </p>
+ *
+ * <p>
+ * The default is 20,000 ranges, built up one {@link KeyRanges#add add()} at a time, the way
+ * {@link org.jsimpledb.kv.mvcc.MutableView} records individual removed keys.
+ * </p>
+ */
+public final class KeyRangesBenchmark {
+
+    private static final int LOOKUP_KEYS = 1 << 16;
+
+    private KeyRangesBenchmark() {
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        final int numRanges = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+        final Random random = new Random(0);
+        final byte[][] keys = new byte[LOOKUP_KEYS][];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = KeyRangesBenchmark.key(random);
+        for (int pass = 0; pass < 2; pass++) {
+            KeyRangesBenchmark.runList(numRanges, keys, lookups);
+            KeyRangesBenchmark.run(numRanges, keys, lookups);
+        }
+    }
+
+    private static void run(int numRanges, byte[][] keys, int lookups) {
+
+        // Build
+        final Random random = new Random(1);
+        long start = System.nanoTime();
+        KeyRanges ranges = KeyRanges.EMPTY;
+        for (int i = 0; i < numRanges; i++)
+            ranges = ranges.add(new KeyRange(KeyRangesBenchmark.key(random)));
+        final long buildTime = System.nanoTime() - start;
+
+        // Lookups
+        int found = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            final byte[] key = keys[i & (LOOKUP_KEYS - 1)];
+            if (ranges.contains(key))
+                found++;
+            if (ranges.seekHigher(key) != null)
+                found++;
+        }
+        final long lookupTime = System.nanoTime() - start;
+        KeyRangesBenchmark.report("KeyRanges", buildTime, numRanges, lookupTime, lookups, found);
+    }
+
+    private static void runList(int numRanges, byte[][] keys, int lookups) {
+
+        // Build
+        final Random random = new Random(1);
+        long start = System.nanoTime();
+        ListKeyRanges ranges = new ListKeyRanges(new ArrayList<KeyRange>());
+        for (int i = 0; i < numRanges; i++)
+            ranges = ranges.add(new KeyRange(KeyRangesBenchmark.key(random)));
+        final long buildTime = System.nanoTime() - start;
+
+        // Lookups
+        int found = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            final byte[] key = keys[i & (LOOKUP_KEYS - 1)];
+            if (ranges.contains(key))
+                found++;
+            if (ranges.seekHigher(key) != null)
+                found++;
+        }
+        final long lookupTime = System.nanoTime() - start;
+        KeyRangesBenchmark.report("list (previous)", buildTime, numRanges, lookupTime, lookups, found);
+    }
+
+    private static void report(String label, long buildTime, int numRanges, long lookupTime, int lookups, int found) {
+        System.out.println(String.format("%-20s%10.0f ns/add%8.0f ns/lookup%12d found",
+          label, (double)buildTime / numRanges, (double)lookupTime / (lookups * 2), found));
+    }
+
+    // Key: object type storage ID plus object ID, with a small number of object types
+    private static byte[] key(Random random) {
+        final byte[] key = new byte[9];
+        random.nextBytes(key);
+        key[0] = (byte)(0x0a + random.nextInt(4));
+        return key;
+    }
+
+// ListKeyRanges
+
+    // The previous implementation of the relevant KeyRanges operations
+    private static final class ListKeyRanges {
+
+        private final ArrayList<KeyRange> ranges;
+
+        private volatile KeyRange lastContainingKeyRange;
+
+        ListKeyRanges(ArrayList<KeyRange> ranges) {
+            this.ranges = new ArrayList<>(new KeyRanges(ranges).asList());
+        }
+
+        ListKeyRanges add(KeyRange range) {
+            final ArrayList<KeyRange> list = new ArrayList<>(this.ranges.size() + 1);
+            list.addAll(this.ranges);
+            list.add(range);
+            return new ListKeyRanges(list);
+        }
+
+        boolean contains(byte[] key) {
+            final KeyRange[] pair = this.findKey(key);
+            return pair[0] == pair[1] && pair[0] != null;
+        }
+
+        byte[] seekHigher(byte[] key) {
+            final KeyRange[] pair = this.findKey(key);
+            if (pair[0] == pair[1])
+                return pair[0] != null ? key : null;
+            return pair[1] != null ? pair[1].getMin() : null;
+        }
+
+        KeyRange[] findKey(byte[] key) {
+            final KeyRange temp = this.lastContainingKeyRange;
+            if (temp != null) {
+                if (temp.contains(key))
+                    return new KeyRange[] { temp, temp };
+                this.lastContainingKeyRange = null;
+            }
+            final int i = ~Collections.binarySearch(this.ranges, new KeyRange(key, key), KeyRange.SORT_BY_MIN);
+            KeyRange left = null;
+            if (i > 0) {
+                if ((left = this.ranges.get(i - 1)).contains(key)) {
+                    this.lastContainingKeyRange = left;
+                    return new KeyRange[] { left, left };
+                }
+            }
+            KeyRange right = null;
+            if (i < this.ranges.size()) {
+                if ((right = this.ranges.get(i)).contains(key)) {
+                    this.lastContainingKeyRange = right;
+                    return new KeyRange[] { right, right };
+                }
+            }
+            return new KeyRange[] { left, right };
+        }
+    }
+}
+
@@ -7,11 +7,14 @@
 
 package org.jsimpledb.kv;
 
+import com.google.common.collect.Iterables;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import org.jsimpledb.TestSupport;
+import org.jsimpledb.util.ByteUtil;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -194,6 +197,118 @@ public class KeyRangesTest extends TestSupport {
         return paramsList.toArray(new Object[paramsList.size()][]);
     }
 
+///////////// add(), remove(), union(), intersection(), KeyFilter
+
+    @Test
+    public void testRandomOperations() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            final ArrayList<KeyRange> list1 = new ArrayList<>();
+            final ArrayList<KeyRange> list2 = new ArrayList<>();
+            for (int j = this.random.nextInt(10); j > 0; j--)
+                list1.add(this.randomKeyRange());
+            for (int j = this.random.nextInt(10); j > 0; j--)
+                list2.add(this.randomKeyRange());
+            final KeyRanges ranges1 = new KeyRanges(list1);
+            final KeyRanges ranges2 = new KeyRanges(list2);
+            final KeyRange range = this.randomKeyRange();
+
+            // Collect all boundary keys; membership is constant between them
+            final ArrayList<byte[]> keys = new ArrayList<>();
+            keys.add(new byte[0]);
+            for (KeyRange keyRange : Iterables.concat(list1, list2, Arrays.asList(range))) {
+                keys.add(keyRange.getMin());
+                if (keyRange.getMax() != null)
+                    keys.add(keyRange.getMax());
+            }
+            for (int j = 0; j < 10; j++)
+                keys.add(this.randomBytes(false));
+
+            // Add
+            final ArrayList<KeyRange> list3 = new ArrayList<>(list1);
+            list3.add(range);
+            final KeyRanges added = ranges1.add(range);
+            Assert.assertEquals(added, new KeyRanges(list3));
+            this.checkMinimal(added);
+
+            // Union
+            final ArrayList<KeyRange> list4 = new ArrayList<>(list1);
+            list4.addAll(list2);
+            final KeyRanges union = ranges1.union(ranges2);
+            Assert.assertEquals(union, new KeyRanges(list4));
+            this.checkMinimal(union);
+
+            // Remove and intersection
+            final KeyRanges removed = ranges1.remove(range);
+            final KeyRanges intersection = ranges1.intersection(ranges2);
+            this.checkMinimal(removed);
+            this.checkMinimal(intersection);
+            Assert.assertEquals(removed, ranges1.intersection(new KeyRanges(range).inverse()));
+            for (byte[] key : keys) {
+                Assert.assertEquals(removed.contains(key), ranges1.contains(key) && !range.contains(key),
+                  ranges1 + " minus " + range + " = " + removed + " at key " + s(key));
+                Assert.assertEquals(intersection.contains(key), ranges1.contains(key) && ranges2.contains(key),
+                  ranges1 + " intersect " + ranges2 + " = " + intersection + " at key " + s(key));
+            }
+
+            // KeyFilter methods
+            for (byte[] key : keys) {
+                final boolean contains = this.contains(ranges1, key);
+                Assert.assertEquals(ranges1.contains(key), contains);
+                Assert.assertEquals(ranges1.seekHigher(key), this.seekHigher(ranges1, key),
+                  "seekHigher(" + s(key) + ") in " + ranges1);
+                if (key.length > 0) {
+                    Assert.assertEquals(ranges1.seekLower(key), this.seekLower(ranges1, key),
+                      "seekLower(" + s(key) + ") in " + ranges1);
+                }
+                final KeyRange[] pair = ranges1.findKey(key);
+                Assert.assertEquals(pair[0] == pair[1] && pair[0] != null, contains);
+            }
+            if (!range.isEmpty())
+                Assert.assertEquals(ranges1.contains(range), ranges1.contains(new KeyRanges(range)));
+        }
+    }
+
+    private void checkMinimal(KeyRanges ranges) {
+        final List<KeyRange> list = ranges.asList();
+        for (int i = 0; i < list.size(); i++) {
+            Assert.assertFalse(list.get(i).isEmpty(), "not minimal: " + ranges);
+            if (i > 0)
+                Assert.assertTrue(KeyRange.compare(list.get(i - 1).getMax(), list.get(i).getMin()) < 0, "not minimal: " + ranges);
+        }
+    }
+
+    // Brute force versions of KeyFilter methods
+
+    private boolean contains(KeyRanges ranges, byte[] key) {
+        for (KeyRange range : ranges) {
+            if (range.contains(key))
+                return true;
+        }
+        return false;
+    }
+
+    private byte[] seekHigher(KeyRanges ranges, byte[] key) {
+        for (KeyRange range : ranges) {
+            if (range.contains(key))
+                return key;
+            if (ByteUtil.compare(range.getMin(), key) > 0)
+                return range.getMin();
+        }
+        return null;
+    }
+
+    private byte[] seekLower(KeyRanges ranges, byte[] key) {
+        byte[] result = null;
+        for (KeyRange range : ranges) {
+            if (range.contains(key))
+                return key;
+            if (ByteUtil.compare(range.getMin(), key) > 0)
+                break;
+            result = range.getMax();
+        }
+        return result;
+    }
+
 ///////////// Empty
 
     @Test(dataProvider = "empty")
@@ -0,0 +1,263 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.mvcc;
+
+import com.google.common.collect.Lists;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jsimpledb.TestSupport;
+import org.jsimpledb.kv.CloseableKVStore;
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVStore;
+import org.jsimpledb.kv.KVTransaction;
+import org.jsimpledb.kv.KeyRange;
+import org.jsimpledb.kv.RetryTransactionException;
+import org.jsimpledb.kv.util.NavigableMapKVStore;
+import org.jsimpledb.util.ByteUtil;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CounterDeltaKVStoreTest extends TestSupport {
+
+    private MemoryAtomicKVStore store;
+
+    @BeforeMethod
+    public void createStore() {
+        this.store = new MemoryAtomicKVStore();
+    }
+
+    @Test
+    public void testAdjust() throws Exception {
+        final CounterDeltaKVStore kv = new CounterDeltaKVStore(this.store);
+        kv.setCompactionDelay(Integer.MAX_VALUE);
+        kv.put(b("10"), kv.encodeCounter(100));
+        kv.put(b("11"), b("abcd"));
+
+        // Adjustments should be written as deltas, without changing the counter value
+        this.store.mutations.clear();
+        kv.adjustCounter(b("10"), 5);
+        kv.adjustCounter(b("10"), -2);
+        kv.adjustCounter(b("11"), 1);
+        kv.adjustCounter(b("12"), 1);
+        Assert.assertEquals(this.store.mutations.size(), 4);
+        for (Writes writes : this.store.mutations) {
+            Assert.assertTrue(writes.getAdjusts().isEmpty(), "adjusts: " + writes.getAdjusts());
+            Assert.assertTrue(writes.getRemoves().isEmpty(), "removes: " + writes.getRemoves());
+        }
+        Assert.assertEquals(this.store.mutations.get(1).getPuts().get(b("fffd10")), kv.encodeCounter(3));
+        Assert.assertEquals(this.store.get(b("10")), kv.encodeCounter(100));
+        Assert.assertEquals(kv.getDeltas().get(b("10")), (Long)3L);
+
+        // Reads should see the adjusted values; adjustments to missing or non-counter values have no effect
+        Assert.assertEquals(kv.get(b("10")), kv.encodeCounter(103));
+        Assert.assertEquals(kv.get(b("11")), b("abcd"));
+        Assert.assertNull(kv.get(b("12")));
+        Assert.assertNull(kv.get(b("fffd10")));
+        Assert.assertEquals(this.read(kv, null, null), buildList(
+          new KVPair(b("10"), kv.encodeCounter(103)),
+          new KVPair(b("11"), b("abcd"))));
+        Assert.assertEquals(Lists.newArrayList(kv.getRange(null, null, true)), buildList(
+          new KVPair(b("11"), b("abcd")),
+          new KVPair(b("10"), kv.encodeCounter(103))));
+
+        // Snapshots should remain constant
+        final CloseableKVStore snapshot = kv.snapshot();
+        kv.adjustCounter(b("10"), 10);
+        Assert.assertEquals(snapshot.get(b("10")), kv.encodeCounter(103));
+        Assert.assertEquals(kv.get(b("10")), kv.encodeCounter(113));
+
+        // A put discards the pending delta, and later adjustments start over
+        kv.put(b("10"), kv.encodeCounter(7));
+        Assert.assertNull(this.store.get(b("fffd10")));
+        kv.adjustCounter(b("10"), 1);
+        Assert.assertEquals(kv.get(b("10")), kv.encodeCounter(8));
+
+        // A remove also discards the pending delta
+        kv.removeRange(b("10"), b("11"));
+        Assert.assertNull(this.store.get(b("fffd10")));
+        kv.put(b("10"), kv.encodeCounter(50));
+        Assert.assertEquals(kv.get(b("10")), kv.encodeCounter(50));
+
+        // Meta-data keys are reserved
+        try {
+            kv.put(CounterDeltaKVStore.DEFAULT_META_PREFIX, b("01"));
+            assert false;
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // Compaction should fold the deltas into the stored values
+        kv.adjustCounter(b("10"), 25);
+        kv.setCompactionDelay(0);
+        for (int i = 0; i < 100 && !kv.getDeltas().isEmpty(); i++)
+            Thread.sleep(100);
+        Assert.assertTrue(kv.getDeltas().isEmpty());
+        Assert.assertEquals(this.store.get(b("10")), kv.encodeCounter(75));
+        Assert.assertEquals(this.store.get(b("11")), b("abcd"));
+        Assert.assertNull(this.store.get(b("12")));
+        Assert.assertNull(this.store.getAtLeast(CounterDeltaKVStore.DEFAULT_META_PREFIX));
+        Assert.assertEquals(snapshot.get(b("10")), kv.encodeCounter(103));
+        snapshot.close();
+        kv.close();
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        this.store.put(b("20"), this.store.encodeCounter(10));
+
+        // Write a delta "by hand" and verify it is honored when the store is opened
+        this.store.put(b("fffd20"), this.store.encodeCounter(-4));
+        final CounterDeltaKVStore kv = new CounterDeltaKVStore(this.store);
+        Assert.assertEquals(kv.get(b("20")), kv.encodeCounter(6));
+        for (int i = 0; i < 100 && !kv.getDeltas().isEmpty(); i++)
+            Thread.sleep(100);
+        Assert.assertEquals(this.read(this.store, null, null), buildList(new KVPair(b("20"), kv.encodeCounter(6))));
+        kv.close();
+    }
+
+    @Test
+    public void testRandom() throws Exception {
+        final NavigableMapKVStore expected = new NavigableMapKVStore();
+        final CounterDeltaKVStore kv = new CounterDeltaKVStore(this.store);
+        kv.setCompactionBatchSize(3);
+        kv.setCompactionDelay(5);
+        final ArrayList<CloseableKVStore> snapshots = new ArrayList<>();
+        final ArrayList<List<KVPair>> snapshotContents = new ArrayList<>();
+        for (int count = 0; count < 500; count++) {
+            final Writes writes = new Writes();
+            for (int i = 0; i < 1 + this.random.nextInt(10); i++) {
+                final int choice = this.random.nextInt(10);
+                final byte[] key = this.randomKey();
+                if (choice < 2) {
+                    writes.getAdjusts().remove(key);
+                    writes.getPuts().put(key, kv.encodeCounter(this.random.nextInt(100)));
+                } else if (choice < 7) {
+                    if (writes.getPuts().containsKey(key) || writes.getRemoves().contains(key))
+                        continue;
+                    final Long oldAdjust = writes.getAdjusts().get(key);
+                    writes.getAdjusts().put(key, (oldAdjust != null ? oldAdjust : 0) + this.random.nextInt(21) - 10);
+                } else {
+                    final KeyRange range = choice < 9 ? new KeyRange(key) : this.sortedRange(key, this.randomKey());
+                    writes.getPuts().subMap(range.getMin(), range.getMax()).clear();
+                    writes.getAdjusts().subMap(range.getMin(), range.getMax()).clear();
+                    writes.setRemoves(writes.getRemoves().add(range));
+                }
+            }
+            kv.mutate(writes, false);
+            writes.applyTo(expected);
+            Assert.assertEquals(this.read(kv, null, null), this.read(expected, null, null), "after " + writes);
+
+            // Check some range reads in both directions
+            final KeyRange range = this.sortedRange(this.randomKey(), this.randomKey());
+            Assert.assertEquals(this.read(kv, range.getMin(), range.getMax()),
+              this.read(expected, range.getMin(), range.getMax()));
+            Assert.assertEquals(Lists.newArrayList(kv.getRange(range.getMin(), range.getMax(), true)),
+              Lists.newArrayList(expected.getRange(range.getMin(), range.getMax(), true)));
+
+            // Snapshots should remain constant
+            if (this.random.nextInt(20) == 0) {
+                snapshots.add(kv.snapshot());
+                snapshotContents.add(this.read(expected, null, null));
+            }
+            for (int i = 0; i < snapshots.size(); i++)
+                Assert.assertEquals(this.read(snapshots.get(i), null, null), snapshotContents.get(i));
+        }
+        for (CloseableKVStore snapshot : snapshots)
+            snapshot.close();
+
+        // After compaction, the underlying store should contain exactly the expected keys
+        for (int i = 0; i < 100 && !kv.getDeltas().isEmpty(); i++)
+            Thread.sleep(100);
+        Assert.assertTrue(kv.getDeltas().isEmpty());
+        Assert.assertEquals(this.read(this.store, null, null), this.read(expected, null, null));
+        kv.close();
+    }
+
+    @Test
+    public void testConcurrentAdjusts() throws Exception {
+        final CounterDeltaKVStore kv = new CounterDeltaKVStore(this.store);
+        kv.put(b("30"), kv.encodeCounter(0));
+        final SnapshotKVDatabase db = new SnapshotKVDatabase(kv);
+
+        // Open several transactions on the same snapshot, all adjusting the same counter
+        final ArrayList<KVTransaction> txs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final KVTransaction tx = db.createTransaction();
+            tx.adjustCounter(b("30"), i + 1);
+            txs.add(tx);
+        }
+
+        // Adjust-only transactions should commit without conflict
+        for (KVTransaction tx : txs)
+            tx.commit();
+        KVTransaction tx = db.createTransaction();
+        Assert.assertEquals(tx.decodeCounter(tx.get(b("30"))), 55);
+        tx.commit();
+
+        // Same thing, but from multiple threads
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final ArrayList<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int j = 0; j < 100; j++) {
+                        final KVTransaction tx = db.createTransaction();
+                        tx.adjustCounter(b("30"), 1);
+                        tx.commit();
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : futures)
+            future.get();
+        executor.shutdown();
+        tx = db.createTransaction();
+        Assert.assertEquals(tx.decodeCounter(tx.get(b("30"))), 855);
+        tx.commit();
+
+        // A transaction that reads the counter still conflicts with a concurrent adjustment
+        final KVTransaction tx1 = db.createTransaction();
+        final KVTransaction tx2 = db.createTransaction();
+        tx1.get(b("30"));
+        tx1.put(b("31"), b("01"));
+        tx2.adjustCounter(b("30"), 1);
+        tx2.commit();
+        try {
+            tx1.commit();
+            assert false;
+        } catch (RetryTransactionException e) {
+            // expected
+        }
+        kv.close();
+    }
+
+    private byte[] randomKey() {
+        final byte[] key = new byte[this.random.nextInt(3)];
+        for (int i = 0; i < key.length; i++)
+            key[i] = (byte)(0x10 + this.random.nextInt(8));
+        return key;
+    }
+
+    private KeyRange sortedRange(byte[] key1, byte[] key2) {
+        return ByteUtil.compare(key1, key2) <= 0 ? new KeyRange(key1, key2) : new KeyRange(key2, key1);
+    }
+
+    private List<KVPair> read(KVStore kv, byte[] minKey, byte[] maxKey) {
+        return Lists.newArrayList(kv.getRange(minKey, maxKey, false));
+    }
+}
+
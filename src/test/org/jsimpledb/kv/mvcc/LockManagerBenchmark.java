@@ -0,0 +1,291 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.mvcc;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jsimpledb.kv.KeyRange;
+import org.jsimpledb.util.ByteUtil;
+
+/**
+ * Multi-threaded contention benchmark comparing {@link LockManager} against the previous implementation, which kept
+ * all locks in two {@link TreeSet}s guarded by a single monitor and woke up every waiting thread on every release.
+ *
+ * <p>
+ * Usage: {@code java org.jsimpledb.kv.mvcc.LockManagerBenchmark [threads [transactions [objects]]]}
+ * </p>
+ *
+ * <p>
+ * Each thread runs transactions that lock {@value #LOCKS_PER_TRANSACTION} single keys, each a write lock with
+ * probability {@value #WRITE_PERCENT}%, and then release all of them. A transaction that times out waiting for a lock
+ * is counted as a retry. The defaults are 32 threads, 500,000 transactions in total, and 100,000 objects. Each run is
+ * repeated with keys from a single object type, which all fall into one {@link LockManager} stripe, and with keys spread
+ * over sixteen object types, one per stripe.
+ * </p>
+ */
+public final class LockManagerBenchmark {
+
+    private static final int LOCKS_PER_TRANSACTION = 8;
+    private static final int WRITE_PERCENT = 10;
+    private static final int FIELDS_PER_OBJECT = 5;
+    private static final long WAIT_TIMEOUT = 100;
+
+    private LockManagerBenchmark() {
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args command line arguments
+     * @throws Exception if an error occurs
+     */
+    public static void main(String[] args) throws Exception {
+        final int numThreads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        final int numTransactions = args.length > 1 ? Integer.parseInt(args[1]) : 500000;
+        final int numObjects = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+        System.out.println(String.format("%d threads, %d cores", numThreads, Runtime.getRuntime().availableProcessors()));
+        for (int pass = 0; pass < 2; pass++) {                                                      // first pass is warm-up
+            for (int types : new int[] { 1, 16 }) {
+                LockManagerBenchmark.run(new MonitorLocker(), "monitor (previous)", types,
+                  numThreads, numTransactions, numObjects, pass > 0);
+                LockManagerBenchmark.run(new StripedLocker(), "LockManager", types,
+                  numThreads, numTransactions, numObjects, pass > 0);
+            }
+        }
+    }
+
+    private static void run(final Locker locker, String label, final int types, int numThreads,
+      int numTransactions, final int numObjects, boolean report) throws Exception {
+        final int transactionsPerThread = numTransactions / numThreads;
+        final AtomicLong retries = new AtomicLong();
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final ArrayList<Thread> threads = new ArrayList<>(numThreads);
+        final ArrayList<Throwable> errors = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            final Random random = new Random(i);
+            final Thread thread = new Thread("Locker#" + i) {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                        for (int j = 0; j < transactionsPerThread; j++) {
+                            final LockOwner owner = new LockOwner();
+                            for (int k = 0; k < LOCKS_PER_TRANSACTION; k++) {
+                                final byte[] key = LockManagerBenchmark.key(random, types, numObjects);
+                                final boolean write = random.nextInt(100) < WRITE_PERCENT;
+                                if (!locker.lock(owner, key, ByteUtil.getNextKey(key), write, WAIT_TIMEOUT)) {
+                                    retries.incrementAndGet();
+                                    break;
+                                }
+                            }
+                            locker.release(owner);
+                        }
+                    } catch (Throwable t) {
+                        synchronized (errors) {
+                            errors.add(t);
+                        }
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        final long start = System.nanoTime();
+        startLatch.countDown();
+        for (Thread thread : threads)
+            thread.join();
+        final long elapsed = System.nanoTime() - start;
+        if (!errors.isEmpty())
+            throw new RuntimeException("benchmark thread failed", errors.get(0));
+        if (!report)
+            return;
+        final long total = (long)transactionsPerThread * numThreads;
+        System.out.println(String.format("%-20s%4d type(s)%12.0f tx/sec%10.2f us/lock%8d retries",
+          label, types, total / (elapsed / 1e9), elapsed / 1e3 / (total * LOCKS_PER_TRANSACTION), retries.get()));
+    }
+
+    // Key: object type storage ID, object ID, field storage ID
+    private static byte[] key(Random random, int types, int numObjects) {
+        final int obj = random.nextInt(numObjects);
+        final byte[] key = new byte[6];
+        key[0] = (byte)(types == 1 ? 0x0a : (random.nextInt(types) << 4) | 0x0a);
+        key[1] = (byte)(obj >> 24);
+        key[2] = (byte)(obj >> 16);
+        key[3] = (byte)(obj >> 8);
+        key[4] = (byte)obj;
+        key[5] = (byte)(0x10 + random.nextInt(FIELDS_PER_OBJECT));
+        return key;
+    }
+
+// Locker
+
+    private interface Locker {
+
+        boolean lock(LockOwner owner, byte[] minKey, byte[] maxKey, boolean write, long waitTimeout)
+          throws InterruptedException;
+
+        void release(LockOwner owner);
+    }
+
+    private static final class StripedLocker implements Locker {
+
+        private final LockManager lockManager = new LockManager();
+
+        @Override
+        public boolean lock(LockOwner owner, byte[] minKey, byte[] maxKey, boolean write, long waitTimeout)
+          throws InterruptedException {
+            return this.lockManager.lockOrRelease(owner, minKey, maxKey, write, waitTimeout) == LockManager.LockResult.SUCCESS;
+        }
+
+        @Override
+        public void release(LockOwner owner) {
+            this.lockManager.release(owner);
+        }
+    }
+
+// MonitorLocker
+
+    // The previous implementation of LockManager (less hold timeouts, which this benchmark does not use)
+    private static final class MonitorLocker implements Locker {
+
+        private final HashMap<LockOwner, List<Lock>> ownerLocks = new HashMap<>();
+        private final TreeSet<Lock> locksByMin = new TreeSet<>(Lock.MIN_COMPARATOR);
+        private final TreeSet<Lock> locksByMax = new TreeSet<>(Lock.MAX_COMPARATOR);
+
+        @Override
+        public synchronized boolean lock(LockOwner owner, byte[] minKey, byte[] maxKey, boolean write, long waitTimeout)
+          throws InterruptedException {
+            Lock lock = new Lock(owner, minKey, maxKey, write);
+            final ArrayList<Lock> mergers = new ArrayList<>();
+            final long deadline = System.nanoTime() + waitTimeout * 1000000L;
+            while (!this.checkLock(lock, mergers)) {
+                final long remaining = (deadline - System.nanoTime()) / 1000000L;
+                if (remaining <= 0)
+                    return false;
+                this.wait(remaining);
+            }
+            List<Lock> locks = this.ownerLocks.get(owner);
+            if (locks == null) {
+                locks = new ArrayList<>();
+                this.ownerLocks.put(owner, locks);
+            }
+            for (Lock that : mergers) {
+                final Lock mergedLock = lock.mergeWith(that);
+                if (mergedLock != null) {
+                    this.locksByMin.remove(that);
+                    this.locksByMax.remove(that);
+                    locks.remove(that);
+                    lock = mergedLock;
+                }
+            }
+            this.locksByMin.add(lock);
+            this.locksByMax.add(lock);
+            locks.add(lock);
+            return true;
+        }
+
+        @Override
+        public synchronized void release(LockOwner owner) {
+            final List<Lock> locks = this.ownerLocks.remove(owner);
+            if (locks == null)
+                return;
+            for (Lock lock : locks) {
+                this.locksByMin.remove(lock);
+                this.locksByMax.remove(lock);
+            }
+            this.notifyAll();
+        }
+
+        private boolean checkLock(Lock lock, List<Lock> mergers) {
+            mergers.clear();
+            final NavigableSet<Lock> lhs = lock.getMax() == null ? this.locksByMin :
+              this.locksByMin.headSet(new Lock(null, lock.getMax(), lock.getMax(), false), false);
+            final byte[] next = ByteUtil.getNextKey(lock.getMin());
+            final NavigableSet<Lock> rhs = this.locksByMax.tailSet(new Lock(null, next, next, false), true);
+            for (Lock other : lhs) {
+                if (!rhs.contains(other))
+                    continue;
+                if (lock.conflictsWith(other))
+                    return false;
+                if (lock.mergeWith(other) != null)
+                    mergers.add(other);
+            }
+            return true;
+        }
+    }
+
+// Lock
+
+    private static final class Lock extends KeyRange {
+
+        static final Comparator<Lock> MIN_COMPARATOR = new Comparator<Lock>() {
+            @Override
+            public int compare(Lock lock1, Lock lock2) {
+                final int diff = KeyRange.compare(lock1.getMin(), lock2.getMin());
+                return diff != 0 ? diff : Boolean.compare(lock1.write, lock2.write);
+            }
+        };
+
+        static final Comparator<Lock> MAX_COMPARATOR = new Comparator<Lock>() {
+            @Override
+            public int compare(Lock lock1, Lock lock2) {
+                final int diff = KeyRange.compare(lock1.getMax(), lock2.getMax());
+                return diff != 0 ? diff : Boolean.compare(lock1.write, lock2.write);
+            }
+        };
+
+        final LockOwner owner;
+        final boolean write;
+
+        Lock(LockOwner owner, byte[] min, byte[] max, boolean write) {
+            super(min, max);
+            this.owner = owner;
+            this.write = write;
+        }
+
+        boolean conflictsWith(Lock that) {
+            return this.overlaps(that) && (this.write || that.write) && this.owner != that.owner;
+        }
+
+        Lock mergeWith(Lock that) {
+            if (this.owner != that.owner)
+                return null;
+            if (KeyRange.compare(this.getMin(), that.getMax()) > 0 || KeyRange.compare(that.getMin(), this.getMax()) > 0)
+                return null;
+            if (this.write != that.write && !(this.write ? this.contains(that) : that.contains(this)))
+                return null;
+            final byte[] newMin = KeyRange.compare(this.getMin(), that.getMin()) < 0 ? this.getMin() : that.getMin();
+            final byte[] newMax = KeyRange.compare(this.getMax(), that.getMax()) > 0 ? this.getMax() : that.getMax();
+            return new Lock(this.owner, newMin, newMax, this.write || that.write);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this)
+                return true;
+            if (!super.equals(obj))
+                return false;
+            final Lock that = (Lock)obj;
+            return this.owner == that.owner && this.write == that.write;
+        }
+
+        @Override
+        public int hashCode() {
+            return super.hashCode() ^ System.identityHashCode(this.owner) ^ (this.write ? 1 : 0);
+        }
+    }
+}
+
@@ -0,0 +1,285 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.mvcc;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.jsimpledb.TestSupport;
+import org.jsimpledb.kv.KeyRange;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class LockManagerTest extends TestSupport {
+
+    @Test
+    public void testConflicts() throws Exception {
+        final LockManager lockManager = new LockManager();
+        final LockOwner owner1 = new LockOwner();
+        final LockOwner owner2 = new LockOwner();
+
+        // Read locks are shared
+        Assert.assertEquals(lockManager.tryLock(owner1, b("10"), b("20"), false), LockManager.LockResult.SUCCESS);
+        Assert.assertEquals(lockManager.tryLock(owner2, b("15"), b("25"), false), LockManager.LockResult.SUCCESS);
+
+        // Write locks conflict with other owners' locks, but not our own
+        Assert.assertEquals(lockManager.tryLock(owner1, b("18"), b("19"), true), LockManager.LockResult.WAIT_TIMEOUT_EXPIRED);
+        Assert.assertEquals(lockManager.tryLock(owner1, b("10"), b("15"), true), LockManager.LockResult.SUCCESS);
+        Assert.assertEquals(lockManager.tryLock(owner2, b("12"), b("13"), false), LockManager.LockResult.WAIT_TIMEOUT_EXPIRED);
+        Assert.assertEquals(lockManager.tryLock(owner2, b("20"), null, true), LockManager.LockResult.SUCCESS);
+        Assert.assertEquals(lockManager.tryLock(owner1, b("30"), b("40"), false), LockManager.LockResult.WAIT_TIMEOUT_EXPIRED);
+
+        // Empty ranges never conflict
+        Assert.assertEquals(lockManager.tryLock(owner1, b("30"), b("30"), true), LockManager.LockResult.SUCCESS);
+
+        // Release
+        Assert.assertTrue(lockManager.release(owner2));
+        Assert.assertEquals(lockManager.tryLock(owner1, b("18"), null, true), LockManager.LockResult.SUCCESS);
+        Assert.assertEquals(lockManager.tryLock(owner2, b(""), b("10"), true), LockManager.LockResult.SUCCESS);
+        Assert.assertEquals(lockManager.tryLock(owner2, b(""), b("1000"), false), LockManager.LockResult.WAIT_TIMEOUT_EXPIRED);
+        Assert.assertTrue(lockManager.release(owner1));
+        Assert.assertTrue(lockManager.release(owner2));
+        Assert.assertTrue(lockManager.release(owner2));
+        Assert.assertTrue(lockManager.getSegments().isEmpty());
+    }
+
+    @Test
+    public void testWaitForRelease() throws Exception {
+        final LockManager lockManager = new LockManager();
+        final LockOwner owner1 = new LockOwner();
+        final LockOwner owner2 = new LockOwner();
+        Assert.assertEquals(lockManager.lock(owner1, b("10"), b("20"), true, 0), LockManager.LockResult.SUCCESS);
+
+        // Wait timeout expires
+        long startTime = System.nanoTime();
+        Assert.assertEquals(lockManager.lock(owner2, b("11"), b("12"), false, 100), LockManager.LockResult.WAIT_TIMEOUT_EXPIRED);
+        Assert.assertTrue(System.nanoTime() - startTime >= 100 * 1000000L);
+
+        // Waiter is woken up by release
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final Future<LockManager.LockResult> future = executor.submit(new Callable<LockManager.LockResult>() {
+            @Override
+            public LockManager.LockResult call() throws InterruptedException {
+                return lockManager.lock(owner2, b("11"), b("12"), false, 5000);
+            }
+        });
+        Thread.sleep(50);
+        Assert.assertFalse(future.isDone());
+        startTime = System.nanoTime();
+        Assert.assertTrue(lockManager.release(owner1));
+        Assert.assertEquals(future.get(), LockManager.LockResult.SUCCESS);
+        Assert.assertTrue(System.nanoTime() - startTime < 1000 * 1000000L);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testLockOrRelease() throws Exception {
+        final LockManager lockManager = new LockManager();
+        final LockOwner owner1 = new LockOwner();
+        final LockOwner owner2 = new LockOwner();
+
+        // Both owners read the same key, then both try to write it
+        Assert.assertEquals(lockManager.tryLock(owner1, b("10"), b("11"), false), LockManager.LockResult.SUCCESS);
+        Assert.assertEquals(lockManager.tryLock(owner2, b("10"), b("11"), false), LockManager.LockResult.SUCCESS);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final ArrayList<Future<LockManager.LockResult>> futures = new ArrayList<>(2);
+        for (final LockOwner owner : new LockOwner[] { owner1, owner2 }) {
+            futures.add(executor.submit(new Callable<LockManager.LockResult>() {
+                @Override
+                public LockManager.LockResult call() throws InterruptedException {
+                    return lockManager.lockOrRelease(owner, b("10"), b("11"), true, 100);
+                }
+            }));
+        }
+
+        // Exactly one should succeed
+        final LockManager.LockResult result1 = futures.get(0).get();
+        final LockManager.LockResult result2 = futures.get(1).get();
+        Assert.assertTrue(result1 == LockManager.LockResult.SUCCESS ^ result2 == LockManager.LockResult.SUCCESS,
+          "results: " + result1 + ", " + result2);
+        final LockOwner loser = result1 == LockManager.LockResult.SUCCESS ? owner2 : owner1;
+        Assert.assertTrue(loser.segments.isEmpty());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testHoldTimeout() throws Exception {
+        final LockManager lockManager = new LockManager();
+        lockManager.setHoldTimeout(100);
+        final LockOwner owner1 = new LockOwner();
+        final LockOwner owner2 = new LockOwner();
+        Assert.assertEquals(lockManager.lock(owner1, b("10"), b("20"), true, 0), LockManager.LockResult.SUCCESS);
+
+        // Waiting forces owner1 to release once its hold timeout expires
+        Assert.assertEquals(lockManager.lock(owner2, b("15"), b("16"), true, 1000), LockManager.LockResult.SUCCESS);
+        Assert.assertEquals(lockManager.checkHoldTimeout(owner1), -1);
+        Assert.assertEquals(lockManager.tryLock(owner1, b("30"), b("40"), true), LockManager.LockResult.HOLD_TIMEOUT_EXPIRED);
+        Assert.assertFalse(lockManager.release(owner1));
+        Assert.assertTrue(lockManager.release(owner2));
+    }
+
+    @Test
+    public void testRandom() throws Exception {
+        final LockManager lockManager = new LockManager();
+        final LockOwner[] owners = new LockOwner[5];
+        for (int i = 0; i < owners.length; i++)
+            owners[i] = new LockOwner();
+        final ArrayList<ModelLock> model = new ArrayList<>();
+        for (int count = 0; count < 5000; count++) {
+            final int index = this.random.nextInt(owners.length);
+            final LockOwner owner = owners[index];
+
+            // Sometimes release
+            if (this.random.nextInt(20) == 0) {
+                Assert.assertTrue(lockManager.release(owner));
+                for (Iterator<ModelLock> i = model.iterator(); i.hasNext(); ) {
+                    if (i.next().owner == owner)
+                        i.remove();
+                }
+                continue;
+            }
+
+            // Try to lock and compare with model
+            final KeyRange range = this.randomKeyRange();
+            final byte[] minKey = range.getMin();
+            final byte[] maxKey = range.getMax();
+            final boolean write = this.random.nextBoolean();
+            final boolean empty = maxKey != null && KeyRange.compare(minKey, maxKey) == 0;
+            boolean expected = true;
+            if (!empty) {
+                for (ModelLock lock : model) {
+                    if (lock.owner != owner && (write || lock.write) && lock.range.overlaps(range)) {
+                        expected = false;
+                        break;
+                    }
+                }
+            }
+            final LockManager.LockResult result = lockManager.tryLock(owner, minKey, maxKey, write);
+            Assert.assertEquals(result, expected ? LockManager.LockResult.SUCCESS : LockManager.LockResult.WAIT_TIMEOUT_EXPIRED,
+              "wrong result locking " + range + " for owner " + index + " (write=" + write + ")");
+            if (expected && !empty)
+                model.add(new ModelLock(owner, range, write));
+
+            // Verify segments are disjoint, sorted, and non-empty
+            byte[] prevMax = null;
+            for (LockManager.Segment segment : lockManager.getSegments()) {
+                Assert.assertFalse(segment.holders.isEmpty());
+                Assert.assertTrue(segment.max == null || KeyRange.compare(segment.min, segment.max) < 0);
+                Assert.assertTrue(prevMax == null || KeyRange.compare(prevMax, segment.min) <= 0);
+                prevMax = segment.max;
+            }
+        }
+        for (LockOwner owner : owners)
+            Assert.assertTrue(lockManager.release(owner));
+        Assert.assertTrue(lockManager.getSegments().isEmpty());
+    }
+
+    @Test
+    public void testSegmentsCoalesce() throws Exception {
+        final LockManager lockManager = new LockManager();
+
+        // Establish a baseline of long-lived locks
+        final LockOwner longLived = new LockOwner();
+        Assert.assertEquals(lockManager.tryLock(longLived, b("10"), b("30"), false), LockManager.LockResult.SUCCESS);
+        Assert.assertEquals(lockManager.tryLock(longLived, b("50"), b("5080"), false), LockManager.LockResult.SUCCESS);
+        Assert.assertEquals(lockManager.tryLock(longLived, b("a0"), null, false), LockManager.LockResult.SUCCESS);
+        final int baseline = lockManager.getSegments().size();
+
+        // Churn
+        final LockOwner[] owners = new LockOwner[4];
+        for (int i = 0; i < owners.length; i++)
+            owners[i] = new LockOwner();
+        for (int count = 0; count < 5000; count++) {
+            final LockOwner owner = owners[this.random.nextInt(owners.length)];
+            if (this.random.nextInt(10) == 0) {
+                Assert.assertTrue(lockManager.release(owner));
+                continue;
+            }
+            final KeyRange range = this.randomKeyRange();
+            lockManager.tryLock(owner, range.getMin(), range.getMax(), this.random.nextBoolean());
+
+            // Adjacent segments should never have the same holders
+            LockManager.Segment prev = null;
+            for (LockManager.Segment segment : lockManager.getSegments()) {
+                Assert.assertFalse(prev != null && prev.stripe == segment.stripe
+                  && KeyRange.compare(prev.max, segment.min) == 0 && prev.holders.equals(segment.holders),
+                  "unmerged segments " + prev + " and " + segment);
+                prev = segment;
+            }
+        }
+
+        // Segment count should return to the baseline
+        for (LockOwner owner : owners)
+            Assert.assertTrue(lockManager.release(owner));
+        Assert.assertEquals(lockManager.getSegments().size(), baseline);
+        Assert.assertTrue(lockManager.release(longLived));
+        Assert.assertTrue(lockManager.getSegments().isEmpty());
+    }
+
+    @Test
+    public void testConcurrentExclusion() throws Exception {
+        final LockManager lockManager = new LockManager();
+        final AtomicIntegerArray occupancy = new AtomicIntegerArray(256);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final ArrayList<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final long seed = this.random.nextLong();
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws InterruptedException {
+                    final Random random = new Random(seed);
+                    final LockOwner owner = new LockOwner();
+                    for (int count = 0; count < 500; count++) {
+
+                        // Write lock a range of single byte keys, possibly spanning stripes
+                        final int min = random.nextInt(256);
+                        final int max = Math.min(min + 1 + random.nextInt(40), 256);
+                        final byte[] maxKey = max < 256 ? new byte[] { (byte)max } : null;
+                        Assert.assertEquals(lockManager.lock(owner, new byte[] { (byte)min }, maxKey, true, 0),
+                          LockManager.LockResult.SUCCESS);
+
+                        // Verify nobody else is in there
+                        for (int key = min; key < max; key++)
+                            Assert.assertEquals(occupancy.incrementAndGet(key), 1, "key " + key + " locked twice");
+                        Thread.yield();
+                        for (int key = min; key < max; key++)
+                            occupancy.decrementAndGet(key);
+                        Assert.assertTrue(lockManager.release(owner));
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : futures)
+            future.get();
+        executor.shutdown();
+        Assert.assertTrue(lockManager.getSegments().isEmpty());
+    }
+
+// ModelLock
+
+    private static class ModelLock {
+
+        final LockOwner owner;
+        final KeyRange range;
+        final boolean write;
+
+        ModelLock(LockOwner owner, KeyRange range, boolean write) {
+            this.owner = owner;
+            this.range = range;
+            this.write = write;
+        }
+    }
+}
+
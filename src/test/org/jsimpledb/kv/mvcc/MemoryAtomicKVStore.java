@@ -0,0 +1,59 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.mvcc;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import org.jsimpledb.kv.CloseableKVStore;
+import org.jsimpledb.kv.KVStore;
+import org.jsimpledb.kv.util.NavigableMapKVStore;
+import org.jsimpledb.kv.util.UnmodifiableKVStore;
+
+/**
+ * Simple in-memory {@link AtomicKVStore} for testing. Snapshots are full copies.
+ *
+ * <p>
+ * Mutations made by the thread that created the instance are recorded in {@link #mutations}.
+ * </p>
+ */
+public class MemoryAtomicKVStore extends NavigableMapKVStore implements AtomicKVStore {
+
+    final ArrayList<Writes> mutations = new ArrayList<>();
+    final Thread thread = Thread.currentThread();
+
+    @Override
+    public synchronized CloseableKVStore snapshot() {
+        final NavigableMapKVStore copy = new NavigableMapKVStore();
+        for (Map.Entry<byte[], byte[]> entry : this.getNavigableMap().entrySet())
+            copy.put(entry.getKey(), entry.getValue());
+        return new Snapshot(copy);
+    }
+
+    @Override
+    public synchronized void mutate(Mutations mutations, boolean sync) {
+        final Writes writes = (Writes)mutations;
+        if (Thread.currentThread() == this.thread)
+            this.mutations.add(writes);
+        writes.applyTo(this);
+    }
+
+// Snapshot
+
+    private static class Snapshot extends UnmodifiableKVStore implements CloseableKVStore {
+
+        Snapshot(KVStore kv) {
+            super(kv);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
+
@@ -0,0 +1,164 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.mvcc;
+
+import com.google.common.collect.Lists;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jsimpledb.TestSupport;
+import org.jsimpledb.kv.CloseableKVStore;
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVStore;
+import org.jsimpledb.kv.KeyRange;
+import org.jsimpledb.kv.KeyRanges;
+import org.jsimpledb.kv.util.NavigableMapKVStore;
+import org.jsimpledb.util.ByteUtil;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RangeTombstoneKVStoreTest extends TestSupport {
+
+    private MemoryAtomicKVStore store;
+
+    @BeforeMethod
+    public void createStore() {
+        this.store = new MemoryAtomicKVStore();
+    }
+
+    @Test
+    public void testRangeRemove() throws Exception {
+        final RangeTombstoneKVStore kv = new RangeTombstoneKVStore(this.store);
+        for (int i = 0; i < 1000; i++)
+            kv.put(new byte[] { 0x10, (byte)(i >> 8), (byte)i }, new byte[] { (byte)i });
+        kv.put(b("20"), kv.encodeCounter(7));
+
+        // Remove a big range; only the tombstone should be written
+        final Writes writes = new Writes();
+        writes.setRemoves(new KeyRanges(b("10"), b("20")));
+        writes.getPuts().put(b("100123"), b("aa"));
+        this.store.mutations.clear();
+        kv.mutate(writes, false);
+        Assert.assertEquals(this.store.mutations.size(), 1);
+        final Writes written = this.store.mutations.get(0);
+        Assert.assertTrue(written.getRemoves().isEmpty(), "removes: " + written.getRemoves());
+        Assert.assertEquals(written.getPuts().size(), 3);            // 100123 plus tombstones before and after it
+        Assert.assertEquals(written.getPuts().get(b("fffe10")), b("100123"));
+        Assert.assertEquals(written.getPuts().get(b("fffe10012300")), b("20"));
+
+        // Removed keys should be invisible, except the re-put key
+        Assert.assertEquals(this.read(kv, null, null), buildList(new KVPair(b("100123"), b("aa")), new KVPair(b("20"),
+          kv.encodeCounter(7))));
+        Assert.assertNull(kv.get(b("100000")));
+        Assert.assertEquals(kv.get(b("100123")), b("aa"));
+        Assert.assertEquals(kv.getAtLeast(b("10")), new KVPair(b("100123"), b("aa")));
+        Assert.assertEquals(kv.getAtMost(b("100123")), null);
+
+        // Meta-data keys are reserved
+        try {
+            kv.put(RangeTombstoneKVStore.DEFAULT_META_PREFIX, b("01"));
+            assert false;
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // Wait for compaction; the keys should then be physically gone
+        for (int i = 0; i < 100 && !kv.getTombstones().isEmpty(); i++)
+            Thread.sleep(100);
+        Assert.assertTrue(kv.getTombstones().isEmpty());
+        Assert.assertEquals(this.read(this.store, b("10"), b("20")), buildList(new KVPair(b("100123"), b("aa"))));
+        Assert.assertNull(this.store.getAtLeast(RangeTombstoneKVStore.DEFAULT_META_PREFIX));
+        kv.close();
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        for (int i = 0; i < 100; i++)
+            this.store.put(new byte[] { 0x30, (byte)i }, new byte[] { (byte)i });
+
+        // Write a tombstone "by hand" and verify it is honored when the store is opened
+        final byte[] metaKey = new byte[] { (byte)0xff, (byte)0xfe, 0x30, 0x10 };
+        this.store.put(metaKey, b("3020"));
+        final RangeTombstoneKVStore kv = new RangeTombstoneKVStore(this.store);
+        Assert.assertNull(kv.get(b("3015")));
+        Assert.assertEquals(kv.get(b("3020")), new byte[] { 0x20 });
+        Assert.assertNull(kv.get(metaKey));
+        Assert.assertEquals(this.read(kv, null, null).size(), 84);
+        for (int i = 0; i < 100 && !kv.getTombstones().isEmpty(); i++)
+            Thread.sleep(100);
+        Assert.assertEquals(this.read(this.store, null, null).size(), 84);
+        kv.close();
+    }
+
+    @Test
+    public void testRandom() throws Exception {
+        final NavigableMapKVStore expected = new NavigableMapKVStore();
+        final RangeTombstoneKVStore kv = new RangeTombstoneKVStore(this.store);
+        kv.setCompactionBatchSize(3);
+        final ArrayList<CloseableKVStore> snapshots = new ArrayList<>();
+        final ArrayList<List<KVPair>> snapshotContents = new ArrayList<>();
+        for (int count = 0; count < 500; count++) {
+            final Writes writes = new Writes();
+            for (int i = 0; i < 1 + this.random.nextInt(10); i++) {
+                final int choice = this.random.nextInt(10);
+                final byte[] key = this.randomKey();
+                if (choice < 5)
+                    writes.getPuts().put(key, new byte[] { (byte)this.random.nextInt() });
+                else if (choice < 7)
+                    writes.setRemoves(writes.getRemoves().add(new KeyRange(key)));
+                else
+                    writes.setRemoves(writes.getRemoves().add(this.sortedRange(key, this.randomKey())));
+            }
+            kv.mutate(writes, false);
+            writes.applyTo(expected);
+            Assert.assertEquals(this.read(kv, null, null), this.read(expected, null, null), "after " + writes);
+
+            // Check some range reads in both directions
+            final KeyRange range = this.sortedRange(this.randomKey(), this.randomKey());
+            Assert.assertEquals(this.read(kv, range.getMin(), range.getMax()),
+              this.read(expected, range.getMin(), range.getMax()));
+            Assert.assertEquals(Lists.newArrayList(kv.getRange(range.getMin(), range.getMax(), true)),
+              Lists.newArrayList(expected.getRange(range.getMin(), range.getMax(), true)));
+
+            // Snapshots should remain constant
+            if (this.random.nextInt(20) == 0) {
+                snapshots.add(kv.snapshot());
+                snapshotContents.add(this.read(expected, null, null));
+            }
+            for (int i = 0; i < snapshots.size(); i++)
+                Assert.assertEquals(this.read(snapshots.get(i), null, null), snapshotContents.get(i));
+        }
+        for (CloseableKVStore snapshot : snapshots)
+            snapshot.close();
+
+        // After compaction, the underlying store should contain exactly the expected keys
+        for (int i = 0; i < 100 && !kv.getTombstones().isEmpty(); i++)
+            Thread.sleep(100);
+        Assert.assertTrue(kv.getTombstones().isEmpty());
+        Assert.assertEquals(this.read(this.store, null, null), this.read(expected, null, null));
+        kv.close();
+    }
+
+    private byte[] randomKey() {
+        final byte[] key = new byte[this.random.nextInt(3)];
+        for (int i = 0; i < key.length; i++)
+            key[i] = (byte)(0x10 + this.random.nextInt(8));
+        return key;
+    }
+
+    private KeyRange sortedRange(byte[] key1, byte[] key2) {
+        return ByteUtil.compare(key1, key2) <= 0 ? new KeyRange(key1, key2) : new KeyRange(key2, key1);
+    }
+
+    private List<KVPair> read(KVStore kv, byte[] minKey, byte[] maxKey) {
+        return Lists.newArrayList(kv.getRange(minKey, maxKey, false));
+    }
+}
+
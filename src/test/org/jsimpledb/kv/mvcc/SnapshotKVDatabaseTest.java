@@ -0,0 +1,186 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.mvcc;
+
+import org.jsimpledb.TestSupport;
+import org.jsimpledb.kv.KVTransaction;
+import org.jsimpledb.kv.RetryTransactionException;
+import org.jsimpledb.kv.StaleTransactionException;
+import org.jsimpledb.kv.util.PrefixKVTransaction;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class SnapshotKVDatabaseTest extends TestSupport {
+
+    @Test
+    public void testReadOnly() throws Exception {
+        final SnapshotKVDatabase kvdb = new SnapshotKVDatabase(new MemoryAtomicKVStore());
+
+        // Setup
+        KVTransaction tx = kvdb.createTransaction();
+        tx.put(b("01"), b("02"));
+        tx.commit();
+
+        // Mutations are visible within a read-only transaction, but discarded on commit
+        SnapshotKVTransaction tx1 = (SnapshotKVTransaction)kvdb.createTransaction();
+        Assert.assertFalse(tx1.isReadOnly());
+        tx1.setReadOnly(true);
+        Assert.assertTrue(tx1.isReadOnly());
+        Assert.assertNull(tx1.getMutableView().getReads());
+        Assert.assertEquals(tx1.get(b("01")), b("02"));
+        tx1.put(b("03"), b("04"));
+        Assert.assertEquals(tx1.get(b("03")), b("04"));
+        tx1.put(b("05"), b("06"));
+        Assert.assertEquals(tx1.get(b("05")), b("06"));
+        tx1.commit();
+
+        // Read-only mode can't be enabled once the transaction has been modified
+        tx1 = (SnapshotKVTransaction)kvdb.createTransaction();
+        tx1.put(b("0e"), b("0f"));
+        tx1.setReadOnly(true);
+        Assert.assertFalse(tx1.isReadOnly());
+        Assert.assertNotNull(tx1.getMutableView().getReads());
+        tx1.rollback();
+
+        // Read-only mode is forwarded by wrapper transactions
+        final PrefixKVTransaction ptx = new PrefixKVTransaction(kvdb.createTransaction(), b("ff"));
+        ptx.setReadOnly(true);
+        Assert.assertTrue(ptx.isReadOnly());
+        ptx.put(b("01"), b("02"));
+        ptx.commit();
+
+        // Read-only transactions never conflict
+        tx1 = (SnapshotKVTransaction)kvdb.createTransaction();
+        tx1.setReadOnly(true);
+        Assert.assertEquals(tx1.get(b("01")), b("02"));
+        KVTransaction tx2 = kvdb.createTransaction();
+        tx2.put(b("01"), b("07"));
+        tx2.commit();
+        Assert.assertEquals(tx1.get(b("01")), b("02"));
+        tx1.put(b("01"), b("08"));
+        tx1.commit();
+
+        // Nothing was written by the read-only transactions
+        tx = kvdb.createTransaction();
+        Assert.assertNull(tx.get(b("03")));
+        Assert.assertNull(tx.get(b("05")));
+        Assert.assertNull(tx.get(b("ff01")));
+        Assert.assertEquals(tx.get(b("01")), b("07"));
+        tx.commit();
+
+        // Read-only mode can be disabled; mutations are then committed
+        tx1 = (SnapshotKVTransaction)kvdb.createTransaction();
+        tx1.setReadOnly(true);
+        Assert.assertEquals(tx1.get(b("01")), b("07"));
+        tx1.setReadOnly(false);
+        Assert.assertFalse(tx1.isReadOnly());
+        tx1.put(b("09"), b("0a"));
+        tx1.commit();
+        tx = kvdb.createTransaction();
+        Assert.assertEquals(tx.get(b("09")), b("0a"));
+        tx.commit();
+
+        // A transaction that was read-only for a while and makes no mutations is not affected by intervening commits
+        tx1 = (SnapshotKVTransaction)kvdb.createTransaction();
+        tx1.setReadOnly(true);
+        Assert.assertEquals(tx1.get(b("01")), b("07"));
+        tx1.setReadOnly(false);
+        tx2 = kvdb.createTransaction();
+        tx2.put(b("10"), b("11"));
+        tx2.commit();
+        Assert.assertEquals(tx1.get(b("01")), b("07"));
+        tx1.commit();
+
+        // ... but if it makes mutations, because reads were untracked for a while, any intervening commit is a conflict
+        tx1 = (SnapshotKVTransaction)kvdb.createTransaction();
+        tx1.setReadOnly(true);
+        Assert.assertEquals(tx1.get(b("01")), b("07"));
+        tx1.setReadOnly(false);
+        tx2 = kvdb.createTransaction();
+        tx2.put(b("0b"), b("0c"));
+        tx2.commit();
+        tx1.put(b("01"), b("0d"));
+        try {
+            tx1.commit();
+            assert false;
+        } catch (RetryTransactionException e) {
+            // expected
+        }
+        tx = kvdb.createTransaction();
+        Assert.assertEquals(tx.get(b("01")), b("07"));
+        tx.commit();
+    }
+
+    @Test
+    public void testTwoPhaseCommit() throws Exception {
+        final SnapshotKVDatabase kvdb = new SnapshotKVDatabase(new MemoryAtomicKVStore());
+
+        // Conflicts are detected by prepare()
+        final SnapshotKVTransaction tx1 = (SnapshotKVTransaction)kvdb.createTransaction();
+        Assert.assertNull(tx1.get(b("01")));
+        tx1.put(b("02"), b("03"));
+        KVTransaction tx = kvdb.createTransaction();
+        tx.put(b("01"), b("04"));
+        tx.commit();
+        try {
+            tx1.prepare();
+            assert false;
+        } catch (RetryTransactionException e) {
+            // expected
+        }
+        try {
+            tx1.commit();
+            assert false;
+        } catch (StaleTransactionException e) {
+            // expected
+        }
+
+        // A prepared transaction can't be accessed, and other commits wait until it completes
+        final SnapshotKVTransaction tx2 = (SnapshotKVTransaction)kvdb.createTransaction();
+        Assert.assertEquals(tx2.get(b("01")), b("04"));
+        tx2.put(b("01"), b("05"));
+        tx2.prepare();
+        try {
+            tx2.get(b("01"));
+            assert false;
+        } catch (StaleTransactionException e) {
+            // expected
+        }
+        final KVTransaction tx3 = kvdb.createTransaction();
+        tx3.put(b("06"), b("07"));
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                tx3.commit();
+            }
+        };
+        thread.start();
+        thread.join(200);
+        Assert.assertTrue(thread.isAlive());
+        tx2.commit();
+        thread.join();
+
+        // Check results
+        tx = kvdb.createTransaction();
+        Assert.assertNull(tx.get(b("02")));
+        Assert.assertEquals(tx.get(b("01")), b("05"));
+        Assert.assertEquals(tx.get(b("06")), b("07"));
+        tx.commit();
+
+        // Rolling back a prepared transaction also lets other commits proceed
+        final SnapshotKVTransaction tx4 = (SnapshotKVTransaction)kvdb.createTransaction();
+        tx4.put(b("08"), b("09"));
+        tx4.prepare();
+        tx4.rollback();
+        tx = kvdb.createTransaction();
+        Assert.assertNull(tx.get(b("08")));
+        tx.put(b("0a"), b("0b"));
+        tx.commit();
+    }
+}
+
@@ -0,0 +1,250 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.shard;
+
+import com.google.common.collect.Lists;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+
+import org.jsimpledb.TestSupport;
+import org.jsimpledb.kv.KVDatabase;
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVTransaction;
+import org.jsimpledb.kv.KVTransactionException;
+import org.jsimpledb.kv.ReadOnlyKVTransaction;
+import org.jsimpledb.kv.RetryTransactionException;
+import org.jsimpledb.kv.StaleTransactionException;
+import org.jsimpledb.kv.mvcc.MemoryAtomicKVStore;
+import org.jsimpledb.kv.mvcc.SnapshotKVDatabase;
+import org.jsimpledb.kv.simple.SimpleKVDatabase;
+import org.jsimpledb.kv.util.NavigableMapKVStore;
+import org.jsimpledb.util.ByteUtil;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ShardedKVDatabaseTest extends TestSupport {
+
+    @Test
+    public void testKeyRangeSharder() throws Exception {
+        final KeyRangeSharder sharder = this.createSharder();
+        Assert.assertEquals(sharder.getShard(ByteUtil.EMPTY), 0);
+        Assert.assertEquals(sharder.getShard(b("10")), 0);
+        Assert.assertEquals(sharder.getShard(b("20")), 1);
+        Assert.assertEquals(sharder.getShard(b("20ffff")), 1);
+        Assert.assertEquals(sharder.getShard(b("21")), 0);
+        Assert.assertEquals(sharder.getShard(b("40")), 2);
+        Assert.assertEquals(sharder.getShard(b("50")), 0);
+        Assert.assertEquals(sharder.getShard(b("5000")), 0);
+        Assert.assertEquals(sharder.getShard(b("51")), 2);
+        Assert.assertEquals(sharder.getShard(b("60")), 0);
+        Assert.assertEquals(sharder.getShards(b("00"), b("20")), this.bits(0));
+        Assert.assertEquals(sharder.getShards(b("00"), b("2000")), this.bits(0, 1));
+        Assert.assertEquals(sharder.getShards(b("40"), b("50")), this.bits(2));
+        Assert.assertEquals(sharder.getShards(b("45"), b("52")), this.bits(0, 2));
+        Assert.assertEquals(sharder.getShards(b("60"), null), this.bits(0));
+        Assert.assertEquals(sharder.getShards(ByteUtil.EMPTY, null), this.bits(0, 1, 2));
+    }
+
+    @Test
+    public void testRandomOperations() throws Exception {
+        final ShardedKVDatabase db = new ShardedKVDatabase(Arrays.<KVDatabase>asList(
+          new SnapshotKVDatabase(new MemoryAtomicKVStore()), new SnapshotKVDatabase(new MemoryAtomicKVStore()),
+          new SnapshotKVDatabase(new MemoryAtomicKVStore())), this.createSharder());
+        final NavigableMapKVStore expected = new NavigableMapKVStore();
+        for (int round = 0; round < 10; round++) {
+            final ShardedKVTransaction tx = db.createTransaction();
+            for (int op = 0; op < 200; op++) {
+                final byte[] key = this.randomKey();
+                final int choice = this.random.nextInt(100);
+                if (choice < 40) {
+                    final byte[] value = this.randomBytes(false);
+                    tx.put(key, value);
+                    expected.put(key, value);
+                } else if (choice < 50) {
+                    tx.remove(key);
+                    expected.remove(key);
+                } else if (choice < 55) {
+                    final byte[] key2 = this.randomKey();
+                    final byte[] min = ByteUtil.compare(key, key2) <= 0 ? key : key2;
+                    final byte[] max = min == key ? key2 : key;
+                    tx.removeRange(min, max);
+                    expected.removeRange(min, max);
+                } else if (choice < 60) {
+                    final Iterator<KVPair> i = tx.getRange(key, null, false);
+                    if (i.hasNext()) {
+                        expected.remove(i.next().getKey());
+                        i.remove();
+                    }
+                } else if (choice < 70) {
+                    Assert.assertEquals(tx.get(key), expected.get(key));
+                } else if (choice < 80) {
+                    Assert.assertEquals(tx.getAtLeast(key), expected.getAtLeast(key));
+                    Assert.assertEquals(tx.getAtMost(key), expected.getAtMost(key));
+                } else {
+                    final byte[] key2 = this.random.nextBoolean() ? this.randomKey() : null;
+                    final byte[] min = key2 == null || ByteUtil.compare(key, key2) <= 0 ? key : key2;
+                    final byte[] max = min == key ? key2 : key;
+                    final boolean reverse = this.random.nextBoolean();
+                    Assert.assertEquals(Lists.newArrayList(tx.getRange(min, max, reverse)),
+                      Lists.newArrayList(expected.getRange(min, max, reverse)));
+                }
+            }
+            tx.commit();
+
+            // Verify committed contents
+            final ShardedKVTransaction tx2 = db.createTransaction();
+            Assert.assertEquals(Lists.newArrayList(tx2.getRange(null, null, false)),
+              Lists.newArrayList(expected.getRange(null, null, false)));
+            for (int shard = 0; shard < 3; shard++) {
+                final KVTransaction kv = db.getShards().get(shard).createTransaction();
+                for (Iterator<KVPair> i = kv.getRange(null, null, false); i.hasNext(); )
+                    Assert.assertEquals(db.getKeySharder().getShard(i.next().getKey()), shard);
+                kv.rollback();
+            }
+            tx2.rollback();
+        }
+    }
+
+    @Test
+    public void testCommit() throws Exception {
+        final ShardedKVDatabase db = new ShardedKVDatabase(Arrays.<KVDatabase>asList(
+          new SnapshotKVDatabase(new MemoryAtomicKVStore()), new SnapshotKVDatabase(new MemoryAtomicKVStore())),
+          this.createSharder());
+        final byte[] key0 = b("10");
+        final byte[] key1 = b("2010");
+
+        // Single shard transactions only touch one shard
+        ShardedKVTransaction tx = db.createTransaction();
+        tx.put(key1, b("01"));
+        Assert.assertNull(tx.getShardTransaction(0));
+        Assert.assertNotNull(tx.getShardTransaction(1));
+        tx.commit();
+
+        // Multi-shard transactions are committed
+        tx = db.createTransaction();
+        tx.put(key0, b("00"));
+        tx.put(key1, b("11"));
+        tx.commit();
+        tx = db.createTransaction();
+        Assert.assertEquals(tx.get(key0), b("00"));
+        Assert.assertEquals(tx.get(key1), b("11"));
+        tx.commit();
+
+        // A conflict on a shard that was only read prevents writes to other shards
+        final ShardedKVTransaction tx1 = db.createTransaction();
+        final ShardedKVTransaction tx2 = db.createTransaction();
+        Assert.assertEquals(tx1.get(key0), b("00"));
+        tx1.put(key1, b("22"));
+        tx2.put(key0, b("33"));
+        tx2.commit();
+        try {
+            tx1.commit();
+            assert false;
+        } catch (RetryTransactionException e) {
+            Assert.assertSame(e.getTransaction(), tx1);
+        }
+        tx = db.createTransaction();
+        Assert.assertEquals(tx.get(key0), b("33"));
+        Assert.assertEquals(tx.get(key1), b("11"));
+        tx.rollback();
+
+        // Multi-shard transactions that write can't be committed unless all shards support two-phase commit
+        final ShardedKVDatabase db2 = new ShardedKVDatabase(Arrays.<KVDatabase>asList(
+          new SnapshotKVDatabase(new MemoryAtomicKVStore()), new SimpleKVDatabase()), this.createSharder());
+        tx = db2.createTransaction();
+        Assert.assertNull(tx.get(key1));
+        tx.put(key0, b("44"));
+        try {
+            tx.commit();
+            assert false;
+        } catch (KVTransactionException e) {
+            Assert.assertFalse(e instanceof RetryTransactionException);
+            Assert.assertSame(e.getTransaction(), tx);
+        }
+        tx = db2.createTransaction();
+        Assert.assertNull(tx.get(key0));
+        tx.put(key0, b("44"));
+        tx.commit();
+
+        // ... but read-only multi-shard transactions can
+        tx = db2.createTransaction();
+        Assert.assertEquals(tx.get(key0), b("44"));
+        Assert.assertNull(tx.get(key1));
+        tx.commit();
+
+        // Stale transactions
+        try {
+            tx.get(key0);
+            assert false;
+        } catch (StaleTransactionException e) {
+            Assert.assertSame(e.getTransaction(), tx);
+        }
+    }
+
+    @Test
+    public void testReadOnly() throws Exception {
+        final ShardedKVDatabase db = new ShardedKVDatabase(Arrays.<KVDatabase>asList(
+          new SnapshotKVDatabase(new MemoryAtomicKVStore()), new SimpleKVDatabase()), this.createSharder());
+        final byte[] key0 = b("10");
+        final byte[] key1 = b("2010");
+
+        // Read-only mode is forwarded to shard transactions that support it, including those opened later
+        ShardedKVTransaction tx = db.createTransaction();
+        tx.setReadOnly(true);
+        Assert.assertTrue(tx.isReadOnly());
+        tx.put(key0, b("00"));
+        tx.put(key1, b("11"));
+        Assert.assertTrue(((ReadOnlyKVTransaction)tx.getShardTransaction(0)).isReadOnly());
+        Assert.assertEquals(tx.get(key0), b("00"));
+        Assert.assertEquals(tx.get(key1), b("11"));
+        tx.commit();
+
+        // Nothing was written, even to shards that don't support read-only mode
+        tx = db.createTransaction();
+        Assert.assertNull(tx.get(key0));
+        Assert.assertNull(tx.get(key1));
+
+        tx.commit();
+
+        // Read-only mode can't be enabled once the transaction has been modified
+        tx = db.createTransaction();
+        tx.put(key0, b("22"));
+        tx.setReadOnly(true);
+        Assert.assertFalse(tx.isReadOnly());
+        Assert.assertFalse(((ReadOnlyKVTransaction)tx.getShardTransaction(0)).isReadOnly());
+        tx.commit();
+        tx = db.createTransaction();
+        Assert.assertEquals(tx.get(key0), b("22"));
+        tx.commit();
+    }
+
+    private KeyRangeSharder createSharder() {
+        final KeyRangeSharder sharder = new KeyRangeSharder(0);
+        sharder.assignPrefix(b("20"), 1);
+        sharder.assign(b("40"), b("60"), 2);
+        sharder.assign(b("50"), b("51"), 0);
+        return sharder;
+    }
+
+    private byte[] randomKey() {
+        final byte[] key = this.randomBytes(false);
+        if (key.length > 0)
+            key[0] = (byte)(key[0] & 0x7f);
+        return key;
+    }
+
+    private BitSet bits(int... shards) {
+        final BitSet bits = new BitSet();
+        for (int shard : shards)
+            bits.set(shard);
+        return bits;
+    }
+}
+
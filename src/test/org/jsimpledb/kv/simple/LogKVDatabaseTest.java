@@ -0,0 +1,260 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.simple;
+
+import com.google.common.base.Converter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jsimpledb.TestSupport;
+import org.jsimpledb.kv.KVDatabaseException;
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVTransaction;
+import org.jsimpledb.kv.util.NavigableMapKVStore;
+import org.jsimpledb.util.ByteUtil;
+import org.jsimpledb.util.ConvertedNavigableMap;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class LogKVDatabaseTest extends TestSupport {
+
+    private File dir;
+
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        this.dir = File.createTempFile("LogKVDatabaseTest", null);
+        Assert.assertTrue(this.dir.delete());
+        Assert.assertTrue(this.dir.mkdirs());
+    }
+
+    @AfterMethod
+    public void deleteDirectory() {
+        for (File file : this.dir.listFiles())
+            Assert.assertTrue(file.delete());
+        Assert.assertTrue(this.dir.delete());
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        final NavigableMap<byte[], byte[]> expected = new NavigableMapKVStore().getNavigableMap();
+
+        LogKVDatabase db = new LogKVDatabase(this.dir);
+        db.start();
+        KVTransaction tx = db.createTransaction();
+        Assert.assertNull(tx.getAtLeast(null));
+        tx.put(b("01"), b("aa"));
+        tx.put(b("0201"), b("bb"));
+        tx.put(b("0202"), b("cc"));
+        tx.put(b("03"), b(""));
+        tx.commit();
+        tx = db.createTransaction();
+        tx.removeRange(b("02"), b("03"));
+        tx.remove(b("01"));
+        tx.put(b("04"), b("dd"));
+        tx.commit();
+        tx = db.createTransaction();
+        tx.put(b("05"), b("ee"));
+        tx.rollback();
+        db.stop();
+        expected.put(b("03"), b(""));
+        expected.put(b("04"), b("dd"));
+
+        // Restart and verify
+        db = new LogKVDatabase(this.dir);
+        db.start();
+        Assert.assertEquals(this.read(db), s(expected));
+
+        // Stopped instances can be restarted
+        db.stop();
+        db.start();
+        Assert.assertEquals(this.read(db), s(expected));
+        db.stop();
+        try {
+            db.createTransaction();
+            assert false;
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSnapshots() throws Exception {
+        final NavigableMap<byte[], byte[]> expected = new NavigableMapKVStore().getNavigableMap();
+
+        // Write enough to trigger some background snapshots
+        LogKVDatabase db = new LogKVDatabase(this.dir);
+        db.setSyncPolicy(LogKVDatabase.SyncPolicy.NONE);
+        db.setSnapshotThreshold(2000);
+        db.start();
+        for (int i = 0; i < 200; i++) {
+            final KVTransaction tx = db.createTransaction();
+            for (int j = 0; j < 5; j++) {
+                final byte[] key = new byte[1 + this.random.nextInt(3)];
+                final byte[] value = new byte[this.random.nextInt(20)];
+                this.random.nextBytes(key);
+                this.random.nextBytes(value);
+                key[0] &= 0x7f;
+                if (this.random.nextInt(5) == 0) {
+                    tx.remove(key);
+                    expected.remove(key);
+                } else {
+                    tx.put(key, value);
+                    expected.put(key, value);
+                }
+            }
+            tx.commit();
+        }
+        db.snapshot();
+
+        // Obsolete files should have been deleted
+        final String[] names = this.dir.list();
+        Arrays.sort(names);
+        Assert.assertEquals(names.length, 2, "files: " + Arrays.asList(names));
+        Assert.assertTrue(names[0].startsWith("log."), "files: " + Arrays.asList(names));
+        Assert.assertTrue(names[1].startsWith("snapshot."), "files: " + Arrays.asList(names));
+
+        // Write some more after the snapshot
+        KVTransaction tx = db.createTransaction();
+        tx.put(b("7f00"), b("1234"));
+        tx.commit();
+        expected.put(b("7f00"), b("1234"));
+        db.stop();
+
+        // Restart and verify
+        db = new LogKVDatabase(this.dir);
+        db.start();
+        Assert.assertEquals(this.read(db), s(expected));
+        db.stop();
+    }
+
+    @Test
+    public void testTornLog() throws Exception {
+        LogKVDatabase db = new LogKVDatabase(this.dir);
+        db.start();
+        final KVTransaction tx = db.createTransaction();
+        tx.put(b("10"), b("20"));
+        tx.commit();
+        db.stop();
+
+        // Append a partial record
+        final File[] logs = this.dir.listFiles();
+        Assert.assertEquals(logs.length, 1);
+        final long length = logs[0].length();
+        try (FileOutputStream output = new FileOutputStream(logs[0], true)) {
+            output.write(new byte[] { 0, 0, 0, 100, 1, 2, 3, 4, 5 });
+        }
+
+        // Restart; the partial record should be discarded
+        db = new LogKVDatabase(this.dir);
+        db.start();
+        Assert.assertEquals(logs[0].length(), length);
+        final NavigableMap<byte[], byte[]> expected = new NavigableMapKVStore().getNavigableMap();
+        expected.put(b("10"), b("20"));
+        Assert.assertEquals(this.read(db), s(expected));
+        db.stop();
+    }
+
+    @Test
+    public void testCorruptEarlierLog() throws Exception {
+
+        // Create two log files
+        LogKVDatabase db = new LogKVDatabase(this.dir);
+        for (int i = 0; i < 2; i++) {
+            db.start();
+            final KVTransaction tx = db.createTransaction();
+            tx.put(new byte[] { (byte)i }, b("20"));
+            tx.commit();
+            db.stop();
+        }
+        final File[] logs = this.dir.listFiles();
+        Assert.assertEquals(logs.length, 2);
+        Arrays.sort(logs);
+
+        // Append a partial record to the earlier log file
+        final long length = logs[0].length();
+        try (FileOutputStream output = new FileOutputStream(logs[0], true)) {
+            output.write(new byte[] { 0, 0, 0, 100, 1, 2, 3, 4, 5 });
+        }
+
+        // Restart should fail rather than drop data, and nothing should be truncated
+        db = new LogKVDatabase(this.dir);
+        try {
+            db.start();
+            assert false;
+        } catch (KVDatabaseException e) {
+            this.log.info("got expected " + e);
+        }
+        Assert.assertEquals(logs[0].length(), length + 9);
+    }
+
+    @Test
+    public void testConcurrentCommits() throws Exception {
+        final LogKVDatabase db = new LogKVDatabase(this.dir);
+        db.start();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final ArrayList<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final int thread = i;
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int j = 0; j < 20; j++) {
+                        final KVTransaction tx = db.createTransaction();
+                        tx.put(new byte[] { (byte)thread, (byte)j }, new byte[] { (byte)j });
+                        tx.commit();
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : futures)
+            future.get();
+        executor.shutdown();
+        db.stop();
+
+        // Restart and verify
+        final LogKVDatabase db2 = new LogKVDatabase(this.dir);
+        db2.start();
+        final NavigableMap<byte[], byte[]> expected = new NavigableMapKVStore().getNavigableMap();
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 20; j++)
+                expected.put(new byte[] { (byte)i, (byte)j }, new byte[] { (byte)j });
+        }
+        Assert.assertEquals(this.read(db2), s(expected));
+        db2.stop();
+    }
+
+    private NavigableMap<String, String> read(LogKVDatabase db) {
+        final NavigableMap<byte[], byte[]> map = new NavigableMapKVStore().getNavigableMap();
+        final KVTransaction tx = db.createTransaction();
+        for (Iterator<KVPair> i = tx.getRange(null, null, false); i.hasNext(); ) {
+            final KVPair pair = i.next();
+            map.put(pair.getKey(), pair.getValue());
+        }
+        tx.commit();
+        return s(map);
+    }
+
+    private static NavigableMap<String, String> s(NavigableMap<byte[], byte[]> map) {
+        final Converter<String, byte[]> converter = ByteUtil.STRING_CONVERTER.reverse();
+        return new ConvertedNavigableMap<String, String, byte[], byte[]>(map, converter, converter);
+    }
+}
+
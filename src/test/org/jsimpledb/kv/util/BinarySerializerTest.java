@@ -0,0 +1,240 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.util;
+
+import com.google.common.base.Converter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jsimpledb.TestSupport;
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KeyRange;
+import org.jsimpledb.util.ByteUtil;
+import org.jsimpledb.util.ConvertedNavigableMap;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class BinarySerializerTest extends TestSupport {
+
+    @Test(dataProvider = "formats")
+    public void testRoundTrip(boolean compress, int blockSize) throws Exception {
+        final NavigableMap<byte[], byte[]> data1 = this.randomData(1000);
+
+        // Write
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        final BinaryKVWriter writer = new BinaryKVWriter(buf, KeyRange.FULL, compress, blockSize);
+        for (Map.Entry<byte[], byte[]> entry : data1.entrySet())
+            writer.write(entry.getKey(), entry.getValue());
+        writer.close();
+        Assert.assertEquals(writer.getPairCount(), data1.size());
+
+        // Read
+        final BinaryKVReader reader = new BinaryKVReader(new ByteArrayInputStream(buf.toByteArray()));
+        Assert.assertEquals(reader.isCompressed(), compress);
+        Assert.assertEquals(reader.getRange(), KeyRange.FULL);
+        final NavigableMap<byte[], byte[]> data2 = new NavigableMapKVStore().getNavigableMap();
+        for (KVPair pair; (pair = reader.read()) != null; )
+            data2.put(pair.getKey(), pair.getValue());
+        Assert.assertNull(reader.read());
+        reader.close();
+        Assert.assertEquals(s(data2), s(data1));
+    }
+
+    @DataProvider(name = "formats")
+    public Object[][] genFormats() {
+        return new Object[][] {
+            { false, BinaryKVWriter.DEFAULT_BLOCK_SIZE },
+            { true, BinaryKVWriter.DEFAULT_BLOCK_SIZE },
+            { false, 100 },
+            { true, 100 },
+            { false, 1 },
+        };
+    }
+
+    @Test
+    public void testSerializer() throws Exception {
+        final NavigableMap<byte[], byte[]> data1 = new NavigableMapKVStore().getNavigableMap();
+        data1.put(b("8901"), b(""));
+        data1.put(b("0123"), b("4567"));
+        data1.put(b("012345"), b("4567"));
+        data1.put(b("33"), b("44444444"));
+        data1.put(b("22"), b(""));
+
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        Assert.assertEquals(new BinarySerializer(new NavigableMapKVStore(data1)).write(buf, false), 5);
+        final NavigableMap<byte[], byte[]> data2 = new NavigableMapKVStore().getNavigableMap();
+        final BinarySerializer serializer2 = new BinarySerializer(new NavigableMapKVStore(data2));
+        Assert.assertEquals(serializer2.read(new ByteArrayInputStream(buf.toByteArray())), 5);
+        Assert.assertEquals(s(data2), s(data1));
+
+        // Empty store
+        buf.reset();
+        Assert.assertEquals(new BinarySerializer(new NavigableMapKVStore()).write(buf, true), 0);
+        data2.clear();
+        Assert.assertEquals(serializer2.read(new ByteArrayInputStream(buf.toByteArray())), 0);
+        Assert.assertTrue(data2.isEmpty());
+    }
+
+    @Test
+    public void testCompression() throws Exception {
+        final NavigableMap<byte[], byte[]> data = new NavigableMapKVStore().getNavigableMap();
+        for (int i = 0; i < 1000; i++)
+            data.put(ByteUtil.parse(String.format("0102030405%08x", i)), new byte[100]);
+        final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        new BinarySerializer(new NavigableMapKVStore(data)).write(plain, false);
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new BinarySerializer(new NavigableMapKVStore(data)).write(compressed, true);
+        Assert.assertTrue(compressed.size() < plain.size() / 10, "compressed " + compressed.size() + " vs. " + plain.size());
+
+        // Common key prefixes are compressed even without compression
+        Assert.assertTrue(plain.size() < 1000 * (9 + 101), "size " + plain.size());
+    }
+
+    @Test
+    public void testPartitions() throws Exception {
+        final NavigableMap<byte[], byte[]> data1 = this.randomData(5000);
+        final BinarySerializer serializer = new BinarySerializer(new NavigableMapKVStore(data1));
+        final List<KeyRange> ranges = serializer.partition(4);
+        Assert.assertTrue(ranges.size() > 1, "ranges: " + ranges);
+
+        // Write partitions concurrently
+        final ExecutorService executor = Executors.newFixedThreadPool(ranges.size());
+        final ArrayList<Future<byte[]>> futures = new ArrayList<>();
+        for (final KeyRange range : ranges) {
+            futures.add(executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                    serializer.write(buf, range, BinarySerializerTest.this.random.nextBoolean());
+                    return buf.toByteArray();
+                }
+            }));
+        }
+        final ArrayList<byte[]> dumps = new ArrayList<>();
+        for (Future<byte[]> future : futures)
+            dumps.add(future.get());
+
+        // Read partitions back concurrently into separate stores, in reverse order
+        final ArrayList<Future<NavigableMap<byte[], byte[]>>> futures2 = new ArrayList<>();
+        for (int i = dumps.size() - 1; i >= 0; i--) {
+            final byte[] dump = dumps.get(i);
+            final KeyRange range = ranges.get(i);
+            futures2.add(executor.submit(new Callable<NavigableMap<byte[], byte[]>>() {
+                @Override
+                public NavigableMap<byte[], byte[]> call() throws IOException {
+                    final NavigableMapKVStore kv = new NavigableMapKVStore();
+                    final BinaryKVReader reader = new BinaryKVReader(new ByteArrayInputStream(dump));
+                    Assert.assertEquals(reader.getRange(), range);
+                    for (KVPair pair; (pair = reader.read()) != null; )
+                        kv.put(pair.getKey(), pair.getValue());
+                    return kv.getNavigableMap();
+                }
+            }));
+        }
+        final NavigableMap<byte[], byte[]> data2 = new NavigableMapKVStore().getNavigableMap();
+        for (Future<NavigableMap<byte[], byte[]>> future : futures2)
+            data2.putAll(future.get());
+        executor.shutdown();
+        Assert.assertEquals(s(data2), s(data1));
+    }
+
+    @Test(dataProvider = "formats")
+    public void testCorruption(boolean compress, int blockSize) throws Exception {
+        final NavigableMap<byte[], byte[]> data = this.randomData(200);
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        final BinaryKVWriter writer = new BinaryKVWriter(buf, KeyRange.FULL, compress, blockSize);
+        for (Map.Entry<byte[], byte[]> entry : data.entrySet())
+            writer.write(entry.getKey(), entry.getValue());
+        writer.finish();
+        final byte[] dump = buf.toByteArray();
+
+        // Flip a random bit after the header
+        final int headerLength = BinaryKVWriter.MAGIC.length + 4;
+        for (int i = 0; i < 20; i++) {
+            final byte[] corrupt = dump.clone();
+            final int pos = headerLength + this.random.nextInt(corrupt.length - headerLength);
+            corrupt[pos] ^= 1 << this.random.nextInt(8);
+            this.verifyInvalid(corrupt);
+        }
+
+        // Truncate
+        for (int i = 0; i < 20; i++) {
+            final byte[] truncated = new byte[this.random.nextInt(dump.length)];
+            System.arraycopy(dump, 0, truncated, 0, truncated.length);
+            this.verifyInvalid(truncated);
+        }
+    }
+
+    @Test
+    public void testWriterChecks() throws Exception {
+        final BinaryKVWriter writer = new BinaryKVWriter(new ByteArrayOutputStream(),
+          new KeyRange(b("10"), b("20")), false, BinaryKVWriter.DEFAULT_BLOCK_SIZE);
+        writer.write(b("1234"), b("5678"));
+        try {
+            writer.write(b("1234"), b(""));
+            assert false;
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            writer.write(b("20"), b(""));
+            assert false;
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        writer.close();
+        try {
+            writer.write(b("15"), b(""));
+            assert false;
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private void verifyInvalid(byte[] dump) {
+        try {
+            final BinaryKVReader reader = new BinaryKVReader(new ByteArrayInputStream(dump));
+            while (reader.read() != null)
+                ;
+            assert false : "corrupt dump was read successfully";
+        } catch (IOException e) {
+            this.log.debug("got expected " + e);
+        }
+    }
+
+    private NavigableMap<byte[], byte[]> randomData(int count) {
+        final NavigableMap<byte[], byte[]> data = new NavigableMapKVStore().getNavigableMap();
+        for (int i = 0; i < count; i++) {
+            final byte[] key = new byte[1 + this.random.nextInt(12)];
+            this.random.nextBytes(key);
+            if (this.random.nextBoolean())
+                key[0] = (byte)this.random.nextInt(4);
+            final byte[] value = new byte[this.random.nextInt(3) == 0 ? 0 : this.random.nextInt(200)];
+            this.random.nextBytes(value);
+            data.put(key, value);
+        }
+        return data;
+    }
+
+    private static NavigableMap<String, String> s(NavigableMap<byte[], byte[]> map) {
+        final Converter<String, byte[]> converter = ByteUtil.STRING_CONVERTER.reverse();
+        return new ConvertedNavigableMap<String, String, byte[], byte[]>(map, converter, converter);
+    }
+}
+
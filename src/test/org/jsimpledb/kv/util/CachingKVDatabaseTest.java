@@ -0,0 +1,158 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.util;
+
+import java.util.Map;
+
+import org.jsimpledb.TestSupport;
+import org.jsimpledb.kv.KVTransaction;
+import org.jsimpledb.kv.KeyRanges;
+import org.jsimpledb.kv.StaleTransactionException;
+import org.jsimpledb.kv.StatisticsKVDatabase;
+import org.jsimpledb.kv.mvcc.MemoryAtomicKVStore;
+import org.jsimpledb.kv.mvcc.SnapshotKVDatabase;
+import org.jsimpledb.kv.simple.SimpleKVDatabase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class CachingKVDatabaseTest extends TestSupport {
+
+    @Test
+    public void testCaching() throws Exception {
+        final SimpleKVDatabase kvdb = new SimpleKVDatabase();
+        final CachingKVDatabase db = new CachingKVDatabase(kvdb, KeyRanges.forPrefix(b("10")), 1024 * 1024);
+
+        // Populate
+        KVTransaction tx = db.createTransaction();
+        tx.put(b("1001"), b("01"));
+        tx.put(b("2001"), b("02"));
+        tx.commit();
+
+        // First read misses, subsequent reads hit, including absent keys
+        for (int i = 0; i < 3; i++) {
+            tx = db.createTransaction();
+            Assert.assertEquals(tx.get(b("1001")), b("01"));
+            Assert.assertNull(tx.get(b("1002")));
+            Assert.assertEquals(tx.get(b("2001")), b("02"));
+            tx.commit();
+        }
+        this.checkStats(db, 4, 2, 1);
+
+        // Transactions see their own writes, and committed writes are invalidated
+        tx = db.createTransaction();
+        Assert.assertEquals(tx.get(b("1001")), b("01"));
+        tx.put(b("1001"), b("11"));
+        tx.put(b("1002"), b("12"));
+        Assert.assertEquals(tx.get(b("1001")), b("11"));
+        Assert.assertEquals(tx.get(b("1002")), b("12"));
+        tx.commit();
+        tx = db.createTransaction();
+        Assert.assertEquals(tx.get(b("1001")), b("11"));
+        Assert.assertEquals(tx.get(b("1002")), b("12"));
+        tx.removeRange(b("10"), b("1002"));
+        tx.commit();
+        tx = db.createTransaction();
+        Assert.assertNull(tx.get(b("1001")));
+        Assert.assertEquals(tx.get(b("1002")), b("12"));
+        tx.commit();
+
+        // Rolled back writes are not seen
+        tx = db.createTransaction();
+        tx.put(b("1003"), b("13"));
+        tx.rollback();
+        tx = db.createTransaction();
+        Assert.assertNull(tx.get(b("1003")));
+        tx.commit();
+
+        // Stale transactions
+        try {
+            tx.get(b("1002"));
+            assert false;
+        } catch (StaleTransactionException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSnapshotIsolation() throws Exception {
+        final SnapshotKVDatabase kvdb = new SnapshotKVDatabase(new MemoryAtomicKVStore());
+        final CachingKVDatabase db = new CachingKVDatabase(kvdb, KeyRanges.forPrefix(b("10")), 1024 * 1024);
+
+        // Populate
+        KVTransaction tx = db.createTransaction();
+        tx.put(b("1001"), b("01"));
+        tx.commit();
+
+        // Create a transaction, whose snapshot is fixed at creation, then commit a change before its first read
+        final KVTransaction tx1 = db.createTransaction();
+        final KVTransaction tx2 = db.createTransaction();
+        tx2.put(b("1001"), b("02"));
+        tx2.commit();
+        Assert.assertEquals(tx1.get(b("1001")), b("01"));
+        Assert.assertEquals(tx1.get(b("1001")), b("01"));
+        tx1.rollback();
+
+        // The old value must not have been cached
+        tx = db.createTransaction();
+        Assert.assertEquals(tx.get(b("1001")), b("02"));
+        tx.commit();
+        tx = db.createTransaction();
+        Assert.assertEquals(tx.get(b("1001")), b("02"));
+        tx.commit();
+    }
+
+    @Test
+    public void testEpoch() throws Exception {
+        final SimpleKVDatabase kvdb = new SimpleKVDatabase();
+        final KeyRanges ranges = KeyRanges.forPrefix(b("10"));
+        final CachingKVDatabase db1 = new CachingKVDatabase(kvdb, ranges, 1024 * 1024, b("00ff"));
+        final CachingKVDatabase db2 = new CachingKVDatabase(kvdb, ranges, 1024 * 1024, b("00ff"));
+
+        // Load cache in db1
+        KVTransaction tx = db1.createTransaction();
+        tx.put(b("1001"), b("01"));
+        tx.commit();
+        tx = db1.createTransaction();
+        Assert.assertEquals(tx.get(b("1001")), b("01"));
+        tx.commit();
+        tx = db1.createTransaction();
+        Assert.assertEquals(tx.get(b("1001")), b("01"));
+        tx.commit();
+        this.checkStats(db1, 1, 1, 2);
+
+        // Modify via db2; db1 should see the change
+        tx = db2.createTransaction();
+        tx.put(b("1001"), b("02"));
+        tx.commit();
+        tx = db1.createTransaction();
+        Assert.assertEquals(tx.get(b("1001")), b("02"));
+        tx.commit();
+        tx = db1.createTransaction();
+        Assert.assertEquals(tx.get(b("1001")), b("02"));
+        tx.commit();
+        this.checkStats(db1, 2, 2, 3);
+
+        // Local modifications keep the rest of the cache
+        tx = db1.createTransaction();
+        tx.put(b("1002"), b("03"));
+        tx.commit();
+        tx = db1.createTransaction();
+        Assert.assertEquals(tx.get(b("1001")), b("02"));
+        Assert.assertEquals(tx.get(b("1002")), b("03"));
+        tx.commit();
+        this.checkStats(db1, 3, 3, 4);
+    }
+
+    private void checkStats(CachingKVDatabase db, long hits, long misses, long invalidations) {
+        final Map<String, Long> stats = db.getStatistics();
+        Assert.assertEquals(stats.get(StatisticsKVDatabase.CACHE_HITS), (Long)hits, "stats: " + stats);
+        Assert.assertEquals(stats.get(StatisticsKVDatabase.CACHE_MISSES), (Long)misses, "stats: " + stats);
+        Assert.assertEquals(stats.get("caching.invalidations"), (Long)invalidations, "stats: " + stats);
+    }
+}
+
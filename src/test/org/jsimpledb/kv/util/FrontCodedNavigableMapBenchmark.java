@@ -0,0 +1,115 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.util;
+
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.jsimpledb.util.ByteUtil;
+
+/**
+ * Benchmark comparing heap usage, load time, lookup latency, and range removal time of {@link FrontCodedNavigableMap}
+ * against {@link TreeMap} and {@link ConcurrentSkipListMap}, using keys shaped like JSimpleDB object fields
+ * (object ID plus field storage ID).
+ *
+ * <p>
+ * Usage: {@code java -Xmx4g org.jsimpledb.kv.util.FrontCodedNavigableMapBenchmark [numKeys [lookups]]}
+ * </p>
+ *
+ * <p>
+ * The default is 10,000,000 keys. Heap usage is measured as the difference in used heap after garbage collection.
+ * </p>
+ */
+public final class FrontCodedNavigableMapBenchmark {
+
+    private static final int FIELDS_PER_OBJECT = 5;
+
+    private FrontCodedNavigableMapBenchmark() {
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        final int numKeys = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        final int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        FrontCodedNavigableMapBenchmark.run("TreeMap", new TreeMap<byte[], byte[]>(ByteUtil.COMPARATOR), numKeys, lookups);
+        FrontCodedNavigableMapBenchmark.run("ConcurrentSkipListMap",
+          new ConcurrentSkipListMap<byte[], byte[]>(ByteUtil.COMPARATOR), numKeys, lookups);
+        FrontCodedNavigableMapBenchmark.run("FrontCodedNavigableMap", new FrontCodedNavigableMap(), numKeys, lookups);
+    }
+
+    private static void run(String label, NavigableMap<byte[], byte[]> map, int numKeys, int lookups) {
+
+        // Populate
+        final long before = FrontCodedNavigableMapBenchmark.usedHeap();
+        long start = System.nanoTime();
+        for (int i = 0; i < numKeys; i++)
+            map.put(FrontCodedNavigableMapBenchmark.key(i), FrontCodedNavigableMapBenchmark.value(i));
+        final long loadTime = System.nanoTime() - start;
+        final long heap = FrontCodedNavigableMapBenchmark.usedHeap() - before;
+
+        // Lookups (twice, to warm up)
+        final Random random = new Random(0);
+        long lookupTime = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int found = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                if (map.get(FrontCodedNavigableMapBenchmark.key(random.nextInt(numKeys))) != null)
+                    found++;
+            }
+            lookupTime = System.nanoTime() - start;
+            if (found != lookups)
+                throw new RuntimeException("internal error");
+        }
+
+        // Clear the range of one object type (about one quarter of the keys), as NavigableMapKVStore.removeRange() does
+        start = System.nanoTime();
+        map.subMap(new byte[] { 0x0b }, new byte[] { 0x0c }).clear();
+        final long clearTime = System.nanoTime() - start;
+
+        // Report
+        System.out.println(String.format("%-24s%10.1f MB heap%8.1f bytes/key%10.1f s load%8.0f ns/lookup%8.2f s range clear",
+          label, heap / 1048576.0, (double)heap / numKeys, loadTime / 1e9, (double)lookupTime / lookups, clearTime / 1e9));
+        map.clear();
+    }
+
+    // Key: object type storage ID, seven bytes of object ID, field storage ID
+    private static byte[] key(int i) {
+        final long obj = (i / FIELDS_PER_OBJECT) * 0x9e3779b97f4a7c15L;
+        final byte[] key = new byte[9];
+        key[0] = (byte)(0x0a + (i / FIELDS_PER_OBJECT) % 4);
+        for (int j = 1; j < 8; j++)
+            key[j] = (byte)(obj >>> (64 - j * 8));
+        key[8] = (byte)(0x10 + i % FIELDS_PER_OBJECT);
+        return key;
+    }
+
+    private static byte[] value(int i) {
+        return new byte[] { (byte)(i >> 8), (byte)i, 0x00 };
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
+
@@ -0,0 +1,218 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.util;
+
+import com.google.common.collect.Lists;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.jsimpledb.TestSupport;
+import org.jsimpledb.kv.KVPair;
+import org.jsimpledb.kv.KVTransaction;
+import org.jsimpledb.kv.simple.SimpleKVDatabase;
+import org.jsimpledb.util.ByteUtil;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class FrontCodedNavigableMapTest extends TestSupport {
+
+    @DataProvider(name = "blockSizes")
+    public Object[][] blockSizes() {
+        return new Object[][] { { 2 }, { 5 }, { FrontCodedNavigableMap.DEFAULT_BLOCK_SIZE } };
+    }
+
+    @Test(dataProvider = "blockSizes")
+    public void testRandom(int blockSize) throws Exception {
+        final FrontCodedNavigableMap actual = new FrontCodedNavigableMap(blockSize);
+        final TreeMap<byte[], byte[]> expected = new TreeMap<>(ByteUtil.COMPARATOR);
+        for (int i = 0; i < 5000; i++) {
+            final byte[] key = this.randomKey();
+            final int choice = this.random.nextInt(100);
+            if (choice < 45) {
+                final byte[] value = this.randomBytes(false);
+                this.checkValue(actual.put(key, value), expected.put(key, value));
+            } else if (choice < 65) {
+                this.checkValue(actual.remove(key), expected.remove(key));
+            } else if (choice < 75) {
+                this.checkValue(actual.get(key), expected.get(key));
+                Assert.assertEquals(actual.containsKey(key), expected.containsKey(key));
+            } else if (choice < 85) {
+                this.checkEntry(actual.ceilingEntry(key), expected.ceilingEntry(key));
+                this.checkEntry(actual.higherEntry(key), expected.higherEntry(key));
+                this.checkEntry(actual.floorEntry(key), expected.floorEntry(key));
+                this.checkEntry(actual.lowerEntry(key), expected.lowerEntry(key));
+            } else if (choice < 88) {
+
+                // Remove via iterator
+                final Iterator<Map.Entry<byte[], byte[]>> iter = actual.tailMap(key, true).entrySet().iterator();
+                for (int j = this.random.nextInt(5); iter.hasNext() && j > 0; j--) {
+                    expected.remove(iter.next().getKey());
+                    iter.remove();
+                }
+            } else if (choice < 90) {
+
+                // Clear a range
+                final byte[] key2 = this.randomKey();
+                final byte[] min = ByteUtil.compare(key, key2) <= 0 ? key : key2;
+                final byte[] max = min == key ? key2 : key;
+                actual.subMap(min, max).clear();
+                expected.subMap(min, max).clear();
+            } else {
+
+                // Compare views
+                final byte[] key2 = this.randomKey();
+                final byte[] min = ByteUtil.compare(key, key2) <= 0 ? key : key2;
+                final byte[] max = min == key ? key2 : key;
+                final boolean minInclusive = this.random.nextBoolean();
+                final boolean maxInclusive = this.random.nextBoolean();
+                this.checkMap(actual.subMap(min, minInclusive, max, maxInclusive),
+                  expected.subMap(min, minInclusive, max, maxInclusive));
+                this.checkMap(actual.headMap(max, maxInclusive).descendingMap(),
+                  expected.headMap(max, maxInclusive).descendingMap());
+                this.checkMap(actual.descendingMap().headMap(max, maxInclusive),
+                  expected.descendingMap().headMap(max, maxInclusive));
+                this.checkMap(actual.tailMap(min, minInclusive), expected.tailMap(min, minInclusive));
+            }
+            Assert.assertEquals(actual.size(), expected.size());
+        }
+        this.checkMap(actual, expected);
+        this.checkMap(actual.descendingMap(), expected.descendingMap());
+        Assert.assertEquals(Lists.newArrayList(actual.navigableKeySet()).size(), expected.size());
+        actual.clear();
+        Assert.assertTrue(actual.isEmpty());
+        Assert.assertNull(actual.firstEntry());
+    }
+
+    @Test(dataProvider = "blockSizes")
+    public void testClearRange(int blockSize) throws Exception {
+        for (int i = 0; i < 200; i++) {
+            final FrontCodedNavigableMap actual = new FrontCodedNavigableMap(blockSize);
+            final TreeMap<byte[], byte[]> expected = new TreeMap<>(ByteUtil.COMPARATOR);
+            for (int j = this.random.nextInt(300); j > 0; j--) {
+                final byte[] key = this.randomKey();
+                final byte[] value = this.randomBytes(false);
+                actual.put(key, value);
+                expected.put(key, value);
+            }
+            final byte[] key1 = this.randomKey();
+            final byte[] key2 = this.randomKey();
+            final byte[] min = ByteUtil.compare(key1, key2) <= 0 ? key1 : key2;
+            final byte[] max = min == key1 ? key2 : key1;
+            final boolean minInclusive = this.random.nextBoolean();
+            final boolean maxInclusive = this.random.nextBoolean();
+            switch (this.random.nextInt(4)) {
+            case 0:
+                actual.subMap(min, minInclusive, max, maxInclusive).clear();
+                expected.subMap(min, minInclusive, max, maxInclusive).clear();
+                break;
+            case 1:
+                actual.descendingMap().subMap(max, maxInclusive, min, minInclusive).navigableKeySet().clear();
+                expected.descendingMap().subMap(max, maxInclusive, min, minInclusive).navigableKeySet().clear();
+                break;
+            case 2:
+                actual.headMap(max, maxInclusive).clear();
+                expected.headMap(max, maxInclusive).clear();
+                break;
+            default:
+                actual.tailMap(min, minInclusive).clear();
+                expected.tailMap(min, minInclusive).clear();
+                break;
+            }
+            Assert.assertEquals(actual.size(), expected.size());
+            this.checkMap(actual, expected);
+            this.checkMap(actual.descendingMap(), expected.descendingMap());
+            for (byte[] key : expected.keySet())
+                this.checkValue(actual.get(key), expected.get(key));
+
+            // Map should still be usable afterward
+            final byte[] key = this.randomKey();
+            actual.put(key, key);
+            expected.put(key, key);
+            this.checkMap(actual, expected);
+        }
+    }
+
+    @Test
+    public void testConcurrentModification() throws Exception {
+        final FrontCodedNavigableMap map = new FrontCodedNavigableMap(4);
+        for (int i = 0; i < 100; i++)
+            map.put(new byte[] { (byte)i }, new byte[] { (byte)i });
+
+        // Iterators should be weakly consistent: ascending, and containing every key that was never removed
+        final ArrayList<Integer> keys = new ArrayList<>();
+        for (Iterator<byte[]> i = map.navigableKeySet().iterator(); i.hasNext(); ) {
+            final int key = i.next()[0] & 0xff;
+            keys.add(key);
+            if (key == 10) {
+                for (int j = 51; j < 100; j += 2)
+                    map.remove(new byte[] { (byte)j });
+                map.put(new byte[] { (byte)150 }, new byte[0]);
+            }
+        }
+        for (int i = 1; i < keys.size(); i++)
+            Assert.assertTrue(keys.get(i) > keys.get(i - 1), "keys: " + keys);
+        for (int i = 0; i < 100; i++)
+            Assert.assertEquals(keys.contains(i), i < 50 || i % 2 == 0, "keys: " + keys);
+        Assert.assertTrue(keys.contains(150), "keys: " + keys);
+    }
+
+    @Test
+    public void testSimpleKVDatabase() throws Exception {
+        final SimpleKVDatabase db = new SimpleKVDatabase(new NavigableMapKVStore(new FrontCodedNavigableMap()));
+        KVTransaction tx = db.createTransaction();
+        tx.put(b("0102"), b("aa"));
+        tx.put(b("010203"), b("bb"));
+        tx.put(b("0104"), b(""));
+        tx.commit();
+        tx = db.createTransaction();
+        Assert.assertEquals(tx.get(b("010203")), b("bb"));
+        Assert.assertNull(tx.get(b("0103")));
+        Assert.assertEquals(Lists.newArrayList(tx.getRange(b("0102"), b("0104"), true)),
+          buildList(new KVPair(b("010203"), b("bb")), new KVPair(b("0102"), b("aa"))));
+        tx.removeRange(b("0102"), b("0103"));
+        Assert.assertEquals(Lists.newArrayList(tx.getRange(null, null, false)), buildList(new KVPair(b("0104"), b(""))));
+        tx.commit();
+    }
+
+    private void checkMap(NavigableMap<byte[], byte[]> actual, NavigableMap<byte[], byte[]> expected) {
+        final ArrayList<KVPair> actualList = new ArrayList<>();
+        for (Map.Entry<byte[], byte[]> entry : actual.entrySet())
+            actualList.add(new KVPair(entry));
+        final ArrayList<KVPair> expectedList = new ArrayList<>();
+        for (Map.Entry<byte[], byte[]> entry : expected.entrySet())
+            expectedList.add(new KVPair(entry));
+        Assert.assertEquals(actualList, expectedList);
+        Assert.assertEquals(actual.size(), expected.size());
+        Assert.assertEquals(actual.isEmpty(), expected.isEmpty());
+        this.checkEntry(actual.firstEntry(), expected.firstEntry());
+        this.checkEntry(actual.lastEntry(), expected.lastEntry());
+    }
+
+    private void checkEntry(Map.Entry<byte[], byte[]> actual, Map.Entry<byte[], byte[]> expected) {
+        Assert.assertEquals(actual != null ? new KVPair(actual) : null, expected != null ? new KVPair(expected) : null);
+    }
+
+    private void checkValue(byte[] actual, byte[] expected) {
+        Assert.assertEquals(actual != null ? ByteUtil.toString(actual) : null,
+          expected != null ? ByteUtil.toString(expected) : null);
+    }
+
+    // Generate keys with lots of shared prefixes
+    private byte[] randomKey() {
+        final byte[] key = new byte[this.random.nextInt(6)];
+        for (int i = 0; i < key.length; i++)
+            key[i] = (byte)this.random.nextInt(i < 2 ? 3 : 256);
+        return key;
+    }
+}
+
@@ -0,0 +1,111 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.kv.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jsimpledb.TestSupport;
+import org.jsimpledb.kv.KeyRange;
+import org.jsimpledb.util.ByteUtil;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class KeyRangePartitionerTest extends TestSupport {
+
+    @Test
+    public void testUniform() throws Exception {
+
+        // Populate with random keys under a prefix, plus some keys outside of it
+        final NavigableMapKVStore kv = new NavigableMapKVStore();
+        final byte[] prefix = ByteUtil.parse("33");
+        final KeyRange range = KeyRange.forPrefix(prefix);
+        final int numKeys = 4000;
+        while (kv.getNavigableMap().size() < numKeys) {
+            final byte[] key = new byte[1 + 1 + this.random.nextInt(10)];
+            this.random.nextBytes(key);
+            key[0] = prefix[0];
+            kv.put(key, ByteUtil.EMPTY);
+        }
+        kv.put(ByteUtil.parse("32ffff"), ByteUtil.EMPTY);
+        kv.put(ByteUtil.parse("34"), ByteUtil.EMPTY);
+
+        // Partition and verify
+        for (int maxPartitions : new int[] { 1, 2, 3, 8, 17 }) {
+            final List<KeyRange> partitions = KeyRangePartitioner.partition(kv, range, maxPartitions);
+            this.checkPartitions(kv, range, partitions, maxPartitions);
+            Assert.assertEquals(partitions.size(), maxPartitions);
+            final int expected = numKeys / maxPartitions;
+            for (KeyRange partition : partitions) {
+                final int count = this.count(kv, partition);
+                Assert.assertTrue(count > expected / 2 && count < expected * 2,
+                  "unbalanced partition " + partition + " with " + count + " keys (expected about " + expected + ")");
+            }
+        }
+    }
+
+    @Test
+    public void testSmall() throws Exception {
+        final NavigableMapKVStore kv = new NavigableMapKVStore();
+        final KeyRange range = new KeyRange(ByteUtil.parse("10"), ByteUtil.parse("20"));
+
+        // Empty
+        this.checkPartitions(kv, range, KeyRangePartitioner.partition(kv, range, 10), 1);
+
+        // One key
+        kv.put(ByteUtil.parse("15"), ByteUtil.EMPTY);
+        this.checkPartitions(kv, range, KeyRangePartitioner.partition(kv, range, 10), 1);
+
+        // Three keys
+        kv.put(ByteUtil.parse("1500"), ByteUtil.EMPTY);
+        kv.put(ByteUtil.parse("1f"), ByteUtil.EMPTY);
+        final List<KeyRange> partitions = KeyRangePartitioner.partition(kv, range, 10);
+        this.checkPartitions(kv, range, partitions, 3);
+        Assert.assertTrue(partitions.size() > 1);
+
+        // Skewed keys
+        for (int i = 0; i < 100; i++)
+            kv.put(ByteUtil.parse(String.format("1f%02x", i)), ByteUtil.EMPTY);
+        this.checkPartitions(kv, range, KeyRangePartitioner.partition(kv, range, 4), 4);
+    }
+
+    @Test
+    public void testBoundaries() throws Exception {
+        final KeyRange range = new KeyRange(ByteUtil.parse("10"), ByteUtil.parse("20"));
+        final List<KeyRange> partitions = KeyRangePartitioner.partition(range, Arrays.asList(
+          ByteUtil.parse("10"), ByteUtil.parse("12"), ByteUtil.parse("11"), ByteUtil.parse("12"), ByteUtil.parse("18"),
+          ByteUtil.parse("20"), ByteUtil.parse("21")));
+        Assert.assertEquals(partitions, Arrays.asList(
+          new KeyRange(ByteUtil.parse("10"), ByteUtil.parse("12")),
+          new KeyRange(ByteUtil.parse("12"), ByteUtil.parse("18")),
+          new KeyRange(ByteUtil.parse("18"), ByteUtil.parse("20"))));
+    }
+
+    private void checkPartitions(NavigableMapKVStore kv, KeyRange range, List<KeyRange> partitions, int maxPartitions) {
+        Assert.assertTrue(!partitions.isEmpty() && partitions.size() <= maxPartitions, "bad size: " + partitions);
+        Assert.assertEquals(partitions.get(0).getMin(), range.getMin());
+        Assert.assertEquals(partitions.get(partitions.size() - 1).getMax(), range.getMax());
+        int total = 0;
+        for (int i = 0; i < partitions.size(); i++) {
+            final KeyRange partition = partitions.get(i);
+            if (i > 0) {
+                Assert.assertEquals(partition.getMin(), partitions.get(i - 1).getMax());
+                Assert.assertTrue(this.count(kv, partition) > 0, "empty partition " + partition);
+            }
+            total += this.count(kv, partition);
+        }
+        Assert.assertEquals(total, this.count(kv, range));
+    }
+
+    private int count(NavigableMapKVStore kv, KeyRange range) {
+        return range.getMax() != null ?
+          kv.getNavigableMap().subMap(range.getMin(), range.getMax()).size() :
+          kv.getNavigableMap().tailMap(range.getMin()).size();
+    }
+}
+
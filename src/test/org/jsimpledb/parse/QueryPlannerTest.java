@@ -0,0 +1,179 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.parse;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.jsimpledb.TestSupport;
+import org.jsimpledb.core.Database;
+import org.jsimpledb.core.ObjId;
+import org.jsimpledb.core.Transaction;
+import org.jsimpledb.kv.simple.SimpleKVDatabase;
+import org.jsimpledb.parse.expr.ExprParser;
+import org.jsimpledb.parse.expr.Node;
+import org.jsimpledb.schema.SchemaModel;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class QueryPlannerTest extends TestSupport {
+
+    private static final String[] LAST_NAMES = { "Smith", "Jones", "Brown", "Lee", "Smithers" };
+    private static final String[] FIRST_NAMES = { "Bob", "Alice", "Carol" };
+
+    @Test(dataProvider = "cases")
+    public void testQueryPlanner(final String expr, final String expectedPlan) throws Exception {
+        final Database db = new Database(new SimpleKVDatabase());
+        final SchemaModel schema = this.getSchema();
+        final Transaction tx = this.populate(db, schema);
+
+        // Compare filtering all(Person), which may use an index, with all(1), which never does
+        final boolean success = this.createSession(db, schema).perform(tx, new ParseSession.Action() {
+            @Override
+            public void run(ParseSession session) throws Exception {
+                final Node indexed = new ExprParser().parse(session,
+                  new ParseContext("filter(all(Person), $p, " + expr + ")"), false);
+                final Node scanned = new ExprParser().parse(session,
+                  new ParseContext("filter(all(1), $p, " + expr + ")"), false);
+
+                // Check plan
+                final List<String> plans = QueryPlanner.explain(session, indexed);
+                Assert.assertEquals(plans.size(), 1);
+                Assert.assertEquals(plans.get(0), "filter($p): " + expectedPlan);
+                Assert.assertTrue(QueryPlanner.explain(session, scanned).get(0).endsWith("(no usable index)"));
+
+                // Check results
+                final ArrayList<Object> expected = new ArrayList<Object>((Collection<?>)scanned.evaluate(session).get(session));
+                final ArrayList<Object> actual = new ArrayList<Object>((Collection<?>)indexed.evaluate(session).get(session));
+                Assert.assertEquals(actual, expected, "wrong result for " + expr);
+                QueryPlannerTest.this.log.debug("`" + expr + "' matched " + actual.size() + " objects");
+            }
+        });
+        Assert.assertTrue(success);
+        tx.commit();
+    }
+
+    @Test(dataProvider = "minMaxCases")
+    public void testMinMax(final String expr, final String expectedPlan) throws Exception {
+        final Database db = new Database(new SimpleKVDatabase());
+        final SchemaModel schema = this.getSchema();
+        final Transaction tx = this.populate(db, schema);
+
+        // Compare min/max over all(Person), which may use an index, with all(1), which never does
+        final boolean success = this.createSession(db, schema).perform(tx, new ParseSession.Action() {
+            @Override
+            public void run(ParseSession session) throws Exception {
+                final Node indexed = new ExprParser().parse(session, new ParseContext(expr.replace("ITEMS", "all(Person)")), false);
+                final Node scanned = new ExprParser().parse(session, new ParseContext(expr.replace("ITEMS", "all(1)")), false);
+                Assert.assertEquals(QueryPlanner.explain(session, indexed), Arrays.asList(expectedPlan));
+                Assert.assertEquals(indexed.evaluate(session).get(session), scanned.evaluate(session).get(session),
+                  "wrong result for " + expr);
+            }
+        });
+        Assert.assertTrue(success);
+        tx.commit();
+    }
+
+    @DataProvider(name = "minMaxCases")
+    public Object[][] genMinMaxCases() {
+        final String scan = "scan all items (no usable index)";
+        return new Object[][] {
+            { "min(ITEMS, $p, $p.age)", "min($p): first value in index Person.age" },
+            { "max(ITEMS, $p, $p.age)", "max($p): last value in index Person.age" },
+            { "max(ITEMS, $p, $p.lastName)", "max($p): last value in index Person.lastName" },
+            { "min(ITEMS, $p, $p.score)", "min($p): " + scan },
+            { "max(ITEMS, $p, $p.firstName)", "max($p): " + scan },
+            { "max(ITEMS, $p, $p.age + 1)", "max($p): " + scan },
+        };
+    }
+
+    @DataProvider(name = "cases")
+    public Object[][] genCases() {
+        final String scan = "scan all items (no usable index)";
+        return new Object[][] {
+
+            // Simple equality
+            { "$p.lastName == \"Smith\"", "index lookup Person.lastName == \"Smith\"" },
+            { "\"Smith\" == $p.lastName", "index lookup Person.lastName == \"Smith\"" },
+            { "$p.lastName == \"Nobody\"", "index lookup Person.lastName == \"Nobody\"" },
+            { "$p.age == 5L", "index lookup Person.age == 5" },
+            { "$p.lastName == \"Smith\" && $p.age > 20", "index lookup Person.lastName == \"Smith\"" },
+            { "$p.age > 20 && $p.firstName != \"Bob\" && $p.lastName == \"Lee\"", "index lookup Person.lastName == \"Lee\"" },
+
+            // Composite index equality
+            { "$p.lastName == \"Smith\" && $p.firstName == \"Bob\"",
+              "composite index lookup Person.fullName (lastName, firstName) == (\"Smith\", \"Bob\")" },
+            { "$p.firstName == \"Alice\" && $p.age < 10 && \"Jones\" == $p.lastName",
+              "composite index lookup Person.fullName (lastName, firstName) == (\"Jones\", \"Alice\")" },
+
+            // Ranges
+            { "$p.age >= 10 && $p.age < 20", "index range scan Person.age in [10, 20)" },
+            { "$p.age > 30 && $p.age > 40 && 45 >= $p.age", "index range scan Person.age in (40, 45]" },
+            { "$p.age > 40 && $p.age < 10", "index range scan Person.age in (40, 10)" },
+            { "$p.age <= 3", "index range scan Person.age in (-inf, 3]" },
+            { "$p.lastName >= \"Smith\"", "index range scan Person.lastName in [\"Smith\", +inf)" },
+
+            // Not optimizable
+            { "$p.age == 5.0", scan },
+            { "$p.age < 10000000000L", scan },
+            { "$p.score == 0.5", scan },
+            { "$p.firstName == \"Bob\"", scan },
+            { "$p.lastName == \"Smith\" || $p.age == 3", scan },
+            { "!($p.lastName == \"Smith\")", scan },
+            { "$p.age + 1 == 5", scan },
+        };
+    }
+
+    private SchemaModel getSchema() throws Exception {
+        return SchemaModel.fromXML(new ByteArrayInputStream((
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<Schema formatVersion=\"2\">\n"
+          + "  <ObjectType name=\"Person\" storageId=\"1\">\n"
+          + "    <SimpleField name=\"lastName\" type=\"java.lang.String\" storageId=\"2\" indexed=\"true\"/>\n"
+          + "    <SimpleField name=\"age\" type=\"int\" storageId=\"3\" indexed=\"true\"/>\n"
+          + "    <SimpleField name=\"firstName\" type=\"java.lang.String\" storageId=\"4\"/>\n"
+          + "    <SimpleField name=\"score\" type=\"double\" storageId=\"5\" indexed=\"true\"/>\n"
+          + "    <CompositeIndex storageId=\"10\" name=\"fullName\">\n"
+          + "      <IndexedField storageId=\"2\"/>\n"
+          + "      <IndexedField storageId=\"4\"/>\n"
+          + "    </CompositeIndex>\n"
+          + "  </ObjectType>\n"
+          + "  <ObjectType name=\"Pet\" storageId=\"20\">\n"
+          + "    <SimpleField name=\"lastName\" type=\"java.lang.String\" storageId=\"2\" indexed=\"true\"/>\n"
+          + "  </ObjectType>\n"
+          + "</Schema>\n"
+          ).getBytes("UTF-8")));
+    }
+
+    private Transaction populate(Database db, SchemaModel schema) {
+        final Transaction tx = db.createTransaction(schema, 1, true);
+        for (int i = 0; i < 200; i++) {
+            final ObjId id = tx.create(1);
+            tx.writeSimpleField(id, 2, LAST_NAMES[this.random.nextInt(LAST_NAMES.length)], true);
+            tx.writeSimpleField(id, 3, this.random.nextInt(50), true);
+            tx.writeSimpleField(id, 4, FIRST_NAMES[this.random.nextInt(FIRST_NAMES.length)], true);
+            tx.writeSimpleField(id, 5, this.random.nextInt(4) / 4.0, true);
+        }
+        for (int i = 0; i < 20; i++)
+            tx.writeSimpleField(tx.create(20), 2, LAST_NAMES[this.random.nextInt(LAST_NAMES.length)], true);
+        return tx;
+    }
+
+    private ParseSession createSession(Database db, SchemaModel schema) {
+        final ParseSession session = new ParseSession(db);
+        session.setSchemaModel(schema);
+        session.setSchemaVersion(1);
+        session.registerStandardFunctions();
+        return session;
+    }
+}
+
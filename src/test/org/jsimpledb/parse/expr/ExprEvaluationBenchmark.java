@@ -0,0 +1,92 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.parse.expr;
+
+import java.util.Arrays;
+
+import org.jsimpledb.core.Database;
+import org.jsimpledb.kv.simple.SimpleKVDatabase;
+import org.jsimpledb.parse.ParseContext;
+import org.jsimpledb.parse.ParseSession;
+
+/**
+ * Benchmark measuring the benefit of the call-site caches in {@link MethodInvokeNode} and the property nodes
+ * created by {@link BaseExprParser}, and of compiling hot call sites with {@link ExprCompiler}.
+ *
+ * <p>
+ * Usage: {@code java org.jsimpledb.parse.expr.ExprEvaluationBenchmark [evaluations [expression]]}
+ * </p>
+ *
+ * <p>
+ * The "cold" run evaluates each of a set of separately parsed (but otherwise identical) expression trees once,
+ * so every method and property lookup is resolved reflectively, as it was on every evaluation before the caches
+ * were added. The "warm" runs evaluate a single expression tree repeatedly, so lookups are resolved once per
+ * call site and target class; the "interpreted" run has {@link ExprCompiler} disabled, so every method invocation
+ * and property read still goes through reflection, while in the "compiled" run they are compiled into generated
+ * classes after {@value ExprCompiler#COMPILE_THRESHOLD} evaluations. Parsing is not included in any timing.
+ * </p>
+ */
+public final class ExprEvaluationBenchmark {
+
+    private static final String DEFAULT_EXPRESSION = "$obj.toString().length() > 3 && $obj.class.simpleName.startsWith(\"S\")";
+
+    private static final Object[] OBJS = new Object[] { "hello", 12345, Arrays.asList(1, 2), new StringBuilder("xy") };
+
+    private ExprEvaluationBenchmark() {
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        final int evaluations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final String expr = args.length > 1 ? args[1] : DEFAULT_EXPRESSION;
+        final ParseSession session = new ParseSession(new Database(new SimpleKVDatabase()));
+        session.getVars().put("obj", new ConstValue(OBJS[0]));
+        for (int pass = 0; pass < 3; pass++) {
+            ExprEvaluationBenchmark.runCold(session, expr, evaluations);
+            ExprCompiler.setEnabled(false);
+            ExprEvaluationBenchmark.runWarm(session, expr, evaluations, "warm (interpreted)");
+            ExprCompiler.setEnabled(true);
+            ExprEvaluationBenchmark.runWarm(session, expr, evaluations, "warm (compiled)");
+        }
+    }
+
+    private static void runCold(ParseSession session, String expr, int evaluations) {
+        final Node[] nodes = new Node[evaluations];
+        for (int i = 0; i < evaluations; i++)
+            nodes[i] = new ExprParser().parse(session, new ParseContext(expr), false);
+        int matches = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < evaluations; i++) {
+            session.getVars().put("obj", new ConstValue(OBJS[i % OBJS.length]));
+            if (Boolean.TRUE.equals(nodes[i].evaluate(session).get(session)))
+                matches++;
+        }
+        ExprEvaluationBenchmark.report("cold (uncached)", System.nanoTime() - start, evaluations, matches);
+    }
+
+    private static void runWarm(ParseSession session, String expr, int evaluations, String label) {
+        final Node node = new ExprParser().parse(session, new ParseContext(expr), false);
+        int matches = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < evaluations; i++) {
+            session.getVars().put("obj", new ConstValue(OBJS[i % OBJS.length]));
+            if (Boolean.TRUE.equals(node.evaluate(session).get(session)))
+                matches++;
+        }
+        ExprEvaluationBenchmark.report(label, System.nanoTime() - start, evaluations, matches);
+    }
+
+    private static void report(String label, long time, int evaluations, int matches) {
+        System.out.println(String.format("%-20s%10.0f ns/evaluation%10d matches", label, (double)time / evaluations, matches));
+    }
+}
+
@@ -7,7 +7,11 @@
 
 package org.jsimpledb.parse.expr;
 
+import java.io.IOException;
+import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.jsimpledb.TestSupport;
 import org.jsimpledb.core.Database;
@@ -106,6 +110,84 @@ public class ExprParseTest extends TestSupport {
             Assert.assertEquals(actual, expected);
     }
 
+    @Test
+    public void testRepeatedEvaluation() {
+
+        // Call sites that see varying target classes and parameter types must behave as if evaluated fresh each time
+        final String expr = "$obj.class.simpleName + \"/\" + $obj.toString().length() + \"/\" + $obj.equals($arg)"
+          + " + \"/\" + java.lang.String.valueOf($arg)";
+        final Object[] objs = new Object[] { "hello", 12345, Arrays.asList(1, 2), new StringBuilder("xy") };
+        final Object[] args = new Object[] { 7, "hello", 12345L, new char[] { 'a', 'b' } };
+        this.session.getVars().put("obj", new ConstValue(objs[0]));
+        this.session.getVars().put("arg", new ConstValue(args[0]));
+        final Node node = new ExprParser().parse(this.session, new ParseContext(expr), false);
+        for (int i = 0; i < 50; i++) {
+            this.session.getVars().put("obj", new ConstValue(objs[this.random.nextInt(objs.length)]));
+            this.session.getVars().put("arg", new ConstValue(args[this.random.nextInt(args.length)]));
+            final Node fresh = new ExprParser().parse(this.session, new ParseContext(expr), false);
+            Assert.assertEquals(node.evaluate(this.session).get(this.session), fresh.evaluate(this.session).get(this.session));
+        }
+        this.session.getVars().remove("obj");
+        this.session.getVars().remove("arg");
+    }
+
+    @Test
+    public void testCompiledEvaluation() throws Throwable {
+
+        // Compiled sites must give the same results as freshly parsed (i.e., interpreted) ones
+        final Bean bean = new Bean();
+        this.session.getVars().put("bean", new ConstValue(bean));
+        final String[] exprs = new String[] {
+            "$bean.count",                                                          // field read
+            "$bean.name",                                                           // bean property
+            "$bean.name.length()",                                                  // virtual method
+            "$bean.add($bean.count, 4L)",                                           // primitive parameters
+            "$bean.add($bean.count, 4)",                                            // widening (interpreted)
+            "java.lang.String.format(\"%d\", $bean.count)",                         // varargs (interpreted)
+            "java.util.Collections.unmodifiableList($bean.list).size()",            // non-public class, public interface
+            "java.lang.Integer.toHexString($bean.count)",                           // static method
+        };
+        for (String expr : exprs) {
+            final Node node = new ExprParser().parse(this.session, new ParseContext(expr), false);
+            for (int i = 0; i < ExprCompiler.COMPILE_THRESHOLD * 2; i++) {
+                bean.count = i;
+                bean.setName("name" + i);
+                final Node fresh = new ExprParser().parse(this.session, new ParseContext(expr), false);
+                Assert.assertEquals(node.evaluate(this.session).get(this.session), fresh.evaluate(this.session).get(this.session),
+                  "evaluation #" + i + " of `" + expr + "'");
+            }
+        }
+
+        // Exceptions thrown by compiled invocations are reported like interpreted ones
+        final Node node = new ExprParser().parse(this.session, new ParseContext("$bean.fail()"), false);
+        for (int i = 0; i < ExprCompiler.COMPILE_THRESHOLD * 2; i++) {
+            try {
+                node.evaluate(this.session);
+                assert false;
+            } catch (EvalException e) {
+                Assert.assertTrue(e.getCause() instanceof IOException, "got " + e.getCause());
+            }
+        }
+        this.session.getVars().remove("bean");
+
+        // Check which invocations can be compiled
+        final List<Class<?>> none = Collections.<Class<?>>emptyList();
+        final Method add = Bean.class.getMethod("add", int.class, long.class);
+        Assert.assertEquals(ExprCompiler.compileMethod(add, Bean.class,
+          Arrays.<Class<?>>asList(Integer.class, Long.class)).invoke(bean, new Object[] { 3, 4L }), 7L);
+        Assert.assertNull(ExprCompiler.compileMethod(add, Bean.class, Arrays.<Class<?>>asList(Integer.class, Integer.class)));
+        Assert.assertNull(ExprCompiler.compileMethod(String.class.getMethod("format", String.class, Object[].class),
+          String.class, Arrays.<Class<?>>asList(String.class, Integer.class)));
+        final List<Integer> list = Collections.unmodifiableList(bean.list);
+        Assert.assertEquals(ExprCompiler.compileMethod(List.class.getMethod("size"), list.getClass(), none)
+          .invoke(list, new Object[0]), 2);
+        Assert.assertNull(ExprCompiler.compileMethod(Hidden.class.getMethod("get"), Hidden.class, none));
+        Assert.assertEquals(ExprCompiler.compileFieldRead(Bean.class.getField("count"), Bean.class).invoke(bean, null),
+          bean.count);
+        Assert.assertNull(ExprCompiler.compileMethod(Bean.class.getMethod("reset"), Bean.class, none).invoke(bean, null));
+        Assert.assertEquals(bean.count, 0);
+    }
+
     @DataProvider(name = "cases")
     @SuppressWarnings("rawtypes")
     public Object[][] genExprParseCases() {
@@ -280,5 +362,41 @@ public class ExprParseTest extends TestSupport {
             }
         };
     }
+
+// Model Classes
+
+    public static class Bean {
+
+        public int count;
+        public final List<Integer> list = Arrays.asList(1, 2);
+
+        private String name;
+
+        public String getName() {
+            return this.name;
+        }
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public long add(int x, long y) {
+            return x + y;
+        }
+
+        public void reset() {
+            this.count = 0;
+        }
+
+        public void fail() throws IOException {
+            throw new IOException("failed");
+        }
+    }
+
+    private static class Hidden {
+
+        public int get() {
+            return 0;
+        }
+    }
 }
 
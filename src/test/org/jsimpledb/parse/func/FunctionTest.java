@@ -7,6 +7,8 @@
 
 package org.jsimpledb.parse.func;
 
+import java.util.Arrays;
+
 import org.jsimpledb.BasicTest;
 import org.jsimpledb.JSimpleDB;
 import org.jsimpledb.JTransaction;
@@ -17,6 +19,7 @@ import org.jsimpledb.demo.Planet;
 import org.jsimpledb.demo.Star;
 import org.jsimpledb.parse.ParseContext;
 import org.jsimpledb.parse.ParseSession;
+import org.jsimpledb.parse.QueryPlanner;
 import org.jsimpledb.parse.expr.ExprParser;
 import org.jsimpledb.spring.AnnotatedClassScanner;
 import org.testng.Assert;
@@ -46,10 +49,12 @@ public class FunctionTest extends TestSupport {
             this.earth = jtx.create(Planet.class);
             this.earth.setName("Earth");
             this.earth.setParent(this.sun);
+            this.earth.setMass(6);
 
             this.mars = jtx.create(Planet.class);
             this.mars.setName("Mars");
             this.mars.setParent(this.sun);
+            this.mars.setMass(1);
 
             this.moon = jtx.create(Moon.class);
             this.moon.setName("Moon");
@@ -74,6 +79,52 @@ public class FunctionTest extends TestSupport {
           + this.earth.getObjId() + ").iterator().next().getObjId()", this.moon.getObjId());
     }
 
+    @Test
+    public void testFilterIndexed() throws Exception {
+        this.testExpression("filter(all(Planet), $p, $p.name == \"Mars\").iterator().next()", this.mars);
+        this.testExpression("filter(all(Planet), $p, $p.name > \"E\" && $p.name < \"F\").size()", 1);
+        this.testExpression("filter(all(Planet), $p, $p.name == \"Moon\").isEmpty()", true);
+        final Object[] plans = new Object[1];
+        this.session.perform(new ParseSession.Action() {
+            @Override
+            public void run(ParseSession session) throws Exception {
+                plans[0] = QueryPlanner.explain(session, new ExprParser().parse(session,
+                  new ParseContext("filter(all(Planet), $p, $p.name == \"Mars\")"), false));
+            }
+        });
+        Assert.assertEquals(plans[0], Arrays.asList("filter($p): index lookup Planet.name == \"Mars\""));
+    }
+
+    @Test
+    public void testAggregates() throws Exception {
+        this.testExpression("min(all(Planet), $p, $p.name)", "Earth");
+        this.testExpression("max(all(Planet), $p, $p.name)", "Mars");
+        this.testExpression("max(all(), $b, $b.name)", "Sun");
+        this.testExpression("min(filter(all(Planet), $p, $p.name == \"Venus\"), $p, $p.name)", null);
+        this.testExpression("max(list(3, 7L, 5))", 7L);
+        this.testExpression("sum(all(Planet), $p, $p.mass)", 7.0f);
+        this.testExpression("sum(list())", 0L);
+        this.testExpression("avg(list(1, 2, 3, 6))", 3.0);
+        this.testExpression("avg(list())", null);
+        this.testExpression("countDistinct(concat(list(all(Planet), all(Moon))), $b, $b.parent)", 2L);
+        this.testExpression("countDistinct(list(1, 1L, 2, \"2\", null))", 3L);
+        this.testExpression("groupBy(all(), $b, $b.name.length()).get(4)", 2);
+        this.testExpression("groupBy(all(Planet), $p, $p.parent).values().iterator().next()", 2);
+        this.testExpression("groupBy(all(Planet), $p, $p.parent, min, $p.name).values().iterator().next()", "Earth");
+        this.testExpression("groupBy(list(1, 2, 3, 4, 5), $i, $i % 2, sum).get(1)", 9L);
+        final Object[] plans = new Object[1];
+        this.session.perform(new ParseSession.Action() {
+            @Override
+            public void run(ParseSession session) throws Exception {
+                plans[0] = QueryPlanner.explain(session, new ExprParser().parse(session,
+                  new ParseContext("min(all(Planet), $p, $p.name) + max(all(Planet), $p, $p.mass)"), false));
+            }
+        });
+        Assert.assertEquals(plans[0], Arrays.asList(
+          "min($p): first value in index Planet.name",
+          "max($p): scan all items (no usable index)"));
+    }
+
     private void testExpression(final String expression, Object expected) {
         final Object[] actual = new Object[1];
         this.session.perform(new ParseSession.Action() {
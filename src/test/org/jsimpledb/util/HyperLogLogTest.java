@@ -0,0 +1,77 @@
+
+/*
+ * Copyright (C) 2014 Archie L. Cobbs. All rights reserved.
+ *
+ * $Id$
+ */
+
+package org.jsimpledb.util;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import org.jsimpledb.TestSupport;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class HyperLogLogTest extends TestSupport {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    @Test(dataProvider = "counts")
+    public void testEstimate(int count, double tolerance) {
+        final HyperLogLog hll = new HyperLogLog();
+        final long base = this.random.nextLong();
+        for (int i = 0; i < count; i++) {
+            hll.add(HASH_FUNCTION.hashLong(base + i).asLong());
+            hll.add(HASH_FUNCTION.hashLong(base + this.random.nextInt(i + 1)).asLong());    // duplicates don't count
+        }
+        final long estimate = hll.estimate();
+        this.log.debug("HyperLogLog estimated " + estimate + " for actual count " + count);
+        Assert.assertTrue(Math.abs(estimate - count) <= count * tolerance, "estimate " + estimate + " for count " + count);
+    }
+
+    @DataProvider(name = "counts")
+    public Object[][] genCounts() {
+        return new Object[][] {
+            { 0, 0.0 },
+            { 1, 0.0 },
+            { 10, 0.1 },
+            { 100, 0.05 },
+            { 1000, 0.03 },
+            { 100000, 0.03 },
+            { 1000000, 0.03 },
+        };
+    }
+
+    @Test
+    public void testMerge() {
+        final HyperLogLog hll1 = new HyperLogLog();
+        final HyperLogLog hll2 = new HyperLogLog();
+        for (int i = 0; i < 60000; i++)
+            hll1.add(HASH_FUNCTION.hashInt(i).asLong());
+        for (int i = 40000; i < 100000; i++)
+            hll2.add(HASH_FUNCTION.hashInt(i).asLong());
+        hll1.merge(hll2);
+        Assert.assertTrue(Math.abs(hll1.estimate() - 100000) <= 3000, "estimate " + hll1.estimate());
+    }
+
+    @Test
+    public void testPrecision() {
+        Assert.assertEquals(new HyperLogLog().getPrecision(), HyperLogLog.DEFAULT_PRECISION);
+        try {
+            new HyperLogLog(HyperLogLog.MIN_PRECISION - 1);
+            assert false;
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new HyperLogLog(HyperLogLog.DEFAULT_PRECISION).merge(new HyperLogLog(HyperLogLog.MIN_PRECISION));
+            assert false;
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
+